@@ -0,0 +1,50 @@
+package upao.edu.pe.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Ejecutor para el trabajo bloqueante de la sincronización (guardado de detalles y clasificación).
+ *
+ * Con spring.threads.virtual.enabled=true y Java 21 o superior se usan hilos virtuales: Tomcat,
+ * las tareas @Scheduled (EmailMonitoringService) y este ejecutor dejan de depender del tamaño
+ * de un pool. En Java 17, o sin la propiedad, se mantiene un pool fijo de hilos de plataforma.
+ */
+@Configuration
+public class EjecucionConfig {
+
+    public static final String EJECUTOR_SINCRONIZACION = "ejecutorSincronizacion";
+
+    @Bean(name = EJECUTOR_SINCRONIZACION)
+    @ConditionalOnThreading(Threading.PLATFORM)
+    public ThreadPoolTaskExecutor ejecutorSincronizacionPlataforma(
+            @Value("${sunat.detalle.hilos:4}") int hilos) {
+        ThreadPoolTaskExecutor ejecutor = new ThreadPoolTaskExecutor();
+        ejecutor.setCorePoolSize(Math.max(1, hilos));
+        ejecutor.setMaxPoolSize(Math.max(1, hilos));
+        ejecutor.setThreadNamePrefix("sync-sunat-");
+        ejecutor.setWaitForTasksToCompleteOnShutdown(true);
+        ejecutor.setAwaitTerminationSeconds(10);
+        return ejecutor;
+    }
+
+    /**
+     * Un hilo virtual por tarea. El límite opcional evita agotar el pool de conexiones JDBC
+     * cuando llegan miles de detalles a la vez (-1 = sin límite).
+     */
+    @Bean(name = EJECUTOR_SINCRONIZACION)
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public SimpleAsyncTaskExecutor ejecutorSincronizacionVirtual(
+            @Value("${sunat.sync.virtual.max-concurrencia:-1}") int maxConcurrencia) {
+        SimpleAsyncTaskExecutor ejecutor = new SimpleAsyncTaskExecutor("sync-sunat-");
+        ejecutor.setVirtualThreads(true);
+        ejecutor.setConcurrencyLimit(maxConcurrencia);
+        ejecutor.setTaskTerminationTimeout(10_000);
+        return ejecutor;
+    }
+}
@@ -0,0 +1,71 @@
+package upao.edu.pe.config;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * Cliente HTTP no bloqueante para la API de Gemini.
+ * Todas las llamadas van al mismo host, así que el tamaño del pool (gemini.http.max-en-vuelo) es el
+ * máximo de peticiones simultáneas; las demás esperan una conexión libre hasta timeout-adquisicion-ms.
+ * La API key va en la cabecera x-goog-api-key de todas las peticiones, así no forma parte de la URI que
+ * WebClientResponseException incluye en su mensaje. El plazo de cada petición lo aplica GeminiCliente.
+ */
+@Configuration
+public class GeminiWebClientConfig {
+
+    static final String CABECERA_API_KEY = "x-goog-api-key";
+
+    @Value("${gemini.api.key}")
+    private String apiKey;
+
+    @Value("${gemini.http.max-en-vuelo:16}")
+    private int maxEnVuelo;
+
+    @Value("${gemini.http.max-pendientes:1000}")
+    private int maxPendientes;
+
+    @Value("${gemini.http.timeout-adquisicion-ms:60000}")
+    private long timeoutAdquisicionMs;
+
+    @Value("${gemini.http.timeout-conexion-ms:5000}")
+    private int timeoutConexionMs;
+
+    @Value("${gemini.http.max-inactividad-ms:30000}")
+    private long maxInactividadMs;
+
+    @Value("${gemini.http.max-respuesta-bytes:2097152}")
+    private int maxRespuestaBytes;
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider geminiConnectionProvider() {
+        return ConnectionProvider.builder("gemini")
+                .maxConnections(maxEnVuelo)
+                .pendingAcquireMaxCount(maxPendientes)
+                .pendingAcquireTimeout(Duration.ofMillis(timeoutAdquisicionMs))
+                .maxIdleTime(Duration.ofMillis(maxInactividadMs))
+                .evictInBackground(Duration.ofMillis(maxInactividadMs))
+                .build();
+    }
+
+    @Bean
+    public WebClient geminiWebClient(@Qualifier("geminiConnectionProvider") ConnectionProvider geminiConnectionProvider) {
+        HttpClient httpClient = HttpClient.create(geminiConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, timeoutConexionMs)
+                .option(ChannelOption.SO_KEEPALIVE, true);
+
+        return WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .defaultHeader(CABECERA_API_KEY, apiKey)
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(maxRespuestaBytes))
+                .build();
+    }
+}
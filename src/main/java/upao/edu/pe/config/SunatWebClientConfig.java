@@ -0,0 +1,93 @@
+package upao.edu.pe.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.reactive.function.client.ExchangeStrategies;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cliente HTTP no bloqueante para la API de SUNAT.
+ * El pool de Reactor Netty se mantiene por host remoto, por lo que max-conexiones
+ * actúa como tope de peticiones simultáneas contra SUNAT.
+ */
+@Configuration
+public class SunatWebClientConfig {
+
+    @Value("${sunat.api.url}")
+    private String apiUrl;
+
+    @Value("${sunat.http.max-conexiones:50}")
+    private int maxConexiones;
+
+    @Value("${sunat.http.max-pendientes:1000}")
+    private int maxPendientes;
+
+    @Value("${sunat.http.timeout-adquisicion-ms:30000}")
+    private long timeoutAdquisicionMs;
+
+    @Value("${sunat.http.timeout-conexion-ms:5000}")
+    private int timeoutConexionMs;
+
+    @Value("${sunat.http.timeout-lectura-ms:20000}")
+    private long timeoutLecturaMs;
+
+    @Value("${sunat.http.max-inactividad-ms:30000}")
+    private long maxInactividadMs;
+
+    @Value("${sunat.http.max-respuesta-bytes:2097152}")
+    private int maxRespuestaBytes;
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider sunatConnectionProvider() {
+        return ConnectionProvider.builder("sunat")
+                .maxConnections(maxConexiones)
+                .pendingAcquireMaxCount(maxPendientes)
+                .pendingAcquireTimeout(Duration.ofMillis(timeoutAdquisicionMs))
+                .maxIdleTime(Duration.ofMillis(maxInactividadMs))
+                .evictInBackground(Duration.ofMillis(maxInactividadMs))
+                .build();
+    }
+
+    @Bean
+    public WebClient sunatWebClient(@Qualifier("sunatConnectionProvider") ConnectionProvider sunatConnectionProvider) {
+        HttpClient httpClient = HttpClient.create(sunatConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, timeoutConexionMs)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .responseTimeout(Duration.ofMillis(timeoutLecturaMs))
+                .doOnConnected(conexion -> conexion.addHandlerLast(
+                        new ReadTimeoutHandler(timeoutLecturaMs, TimeUnit.MILLISECONDS)));
+
+        // SUNAT responde en camelCase: no se usa el ObjectMapper principal (SNAKE_CASE) de la aplicación
+        ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+        Jackson2JsonDecoder decoder = new Jackson2JsonDecoder(mapper);
+        decoder.setMaxInMemorySize(maxRespuestaBytes);
+
+        ExchangeStrategies estrategias = ExchangeStrategies.builder()
+                .codecs(codecs -> {
+                    codecs.defaultCodecs().maxInMemorySize(maxRespuestaBytes);
+                    codecs.defaultCodecs().jackson2JsonDecoder(decoder);
+                    codecs.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(mapper));
+                })
+                .build();
+
+        return WebClient.builder()
+                .baseUrl(apiUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .exchangeStrategies(estrategias)
+                .build();
+    }
+}
@@ -2,8 +2,11 @@ package upao.edu.pe.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import upao.edu.pe.dto.AsistenteConsultaDTO;
@@ -57,6 +60,26 @@ public class AsistenteVirtualController {
                                 .build()));
     }
 
+    /**
+     * Consulta al asistente virtual con la respuesta enviada por Server-Sent Events a medida que
+     * Gemini la genera: eventos "fragmento", y al final "fin" (con tiempoPrimerToken y
+     * tiempoRespuesta) o "error"
+     *
+     * @param consulta DTO con la consulta del usuario
+     */
+    @PostMapping(value = "/consultar/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> procesarConsultaEnFlujo(@RequestBody AsistenteConsultaDTO consulta) {
+        log.info("📩 Nueva consulta en streaming para el asistente virtual");
+
+        if (consulta.getConsulta() == null || consulta.getConsulta().trim().isEmpty()) {
+            log.error("❌ Consulta vacía recibida");
+            return Flux.just(ServerSentEvent.<Object>builder(java.util.Map.of("mensaje", "La consulta no puede estar vacía"))
+                    .event("error")
+                    .build());
+        }
+        return asistenteService.procesarConsultaEnFlujo(consulta);
+    }
+
     /**
      * Endpoint para obtener el estado del asistente
      */
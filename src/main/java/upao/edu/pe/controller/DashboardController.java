@@ -10,7 +10,9 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import upao.edu.pe.dto.response.RespuestaControlador;
+import upao.edu.pe.service.DashboardCacheServicio;
 import upao.edu.pe.service.DashboardService;
+import upao.edu.pe.service.ResumenDiarioServicio;
 
 import java.util.Map;
 import java.util.List;
@@ -24,6 +26,47 @@ public class DashboardController {
     @Autowired
     private DashboardService dashboardService;
 
+    @Autowired
+    private ResumenDiarioServicio resumenDiarioServicio;
+
+    @Autowired
+    private DashboardCacheServicio dashboardCache;
+
+    /**
+     * Obtiene todos los widgets del dashboard en una sola petición
+     */
+    @Operation(summary = "Snapshot del dashboard", 
+               description = "Obtiene métricas, tendencias, distribuciones, alertas, ranking y correos críticos en una sola respuesta")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Snapshot obtenido exitosamente"),
+        @ApiResponse(responseCode = "500", description = "Error interno del servidor")
+    })
+    @GetMapping("/snapshot")
+    public ResponseEntity<RespuestaControlador<Map<String, Object>>> obtenerSnapshot(
+            @Parameter(description = "RUC del contribuyente", required = true)
+            @RequestParam("ruc") String ruc,
+            @Parameter(description = "Período en días", required = false)
+            @RequestParam(value = "dias", defaultValue = "30") Integer dias,
+            @Parameter(description = "Período en días para correos críticos", required = false)
+            @RequestParam(value = "diasCriticos", defaultValue = "7") Integer diasCriticos,
+            @Parameter(description = "Cantidad máxima de correos críticos", required = false)
+            @RequestParam(value = "limiteCriticos", defaultValue = "5") Integer limiteCriticos) {
+        
+        try {
+            Map<String, Object> snapshot = dashboardCache.obtener(ruc, "snapshot",
+                    () -> dashboardService.obtenerSnapshot(ruc, dias, diasCriticos, limiteCriticos), dias, diasCriticos, limiteCriticos);
+            
+            return ResponseEntity.ok(
+                new RespuestaControlador<>("Snapshot obtenido exitosamente", 200, snapshot, null)
+            );
+            
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
+                new RespuestaControlador<>("Error al obtener snapshot: " + e.getMessage(), 500, null, null)
+            );
+        }
+    }
+
     /**
      * Obtiene métricas principales del dashboard
      */
@@ -42,7 +85,8 @@ public class DashboardController {
             @RequestParam(value = "dias", defaultValue = "30") Integer dias) {
         
         try {
-            Map<String, Object> metricas = dashboardService.obtenerMetricasPrincipales(ruc, dias);
+            Map<String, Object> metricas = dashboardCache.obtener(ruc, "metricasPrincipales",
+                    () -> dashboardService.obtenerMetricasPrincipales(ruc, dias), dias);
             
             return ResponseEntity.ok(
                 new RespuestaControlador<>("Métricas obtenidas exitosamente", 200, metricas, null)
@@ -64,7 +108,8 @@ public class DashboardController {
             @RequestParam(value = "dias", defaultValue = "30") Integer dias) {
         
         try {
-            Map<String, Object> tendencias = dashboardService.obtenerTendencias(ruc, dias);
+            Map<String, Object> tendencias = dashboardCache.obtener(ruc, "tendencias",
+                    () -> dashboardService.obtenerTendencias(ruc, dias), dias);
             
             return ResponseEntity.ok(
                 new RespuestaControlador<>("Tendencias obtenidas exitosamente", 200, tendencias, null)
@@ -86,7 +131,8 @@ public class DashboardController {
             @RequestParam(value = "dias", defaultValue = "30") Integer dias) {
         
         try {
-            Map<String, Object> distribucion = dashboardService.obtenerDistribucionEtiquetas(ruc, dias);
+            Map<String, Object> distribucion = dashboardCache.obtener(ruc, "distribucionEtiquetas",
+                    () -> dashboardService.obtenerDistribucionEtiquetas(ruc, dias), dias);
             
             return ResponseEntity.ok(
                 new RespuestaControlador<>("Distribución obtenida exitosamente", 200, distribucion, null)
@@ -109,7 +155,8 @@ public class DashboardController {
             @RequestParam(value = "limite", defaultValue = "5") Integer limite) {
         
         try {
-            List<Map<String, Object>> correosCriticos = dashboardService.obtenerCorreosCriticos(ruc, dias, limite);
+            List<Map<String, Object>> correosCriticos = dashboardCache.obtener(ruc, "correosCriticos",
+                    () -> dashboardService.obtenerCorreosCriticos(ruc, dias, limite), dias, limite);
             
             return ResponseEntity.ok(
                 new RespuestaControlador<>("Correos críticos obtenidos exitosamente", 200, correosCriticos, null)
@@ -130,7 +177,8 @@ public class DashboardController {
             @RequestParam(value = "semanas", defaultValue = "4") Integer semanas) {
         
         try {
-            Map<String, Object> heatmap = dashboardService.obtenerHeatmapActividad(ruc, semanas);
+            Map<String, Object> heatmap = dashboardCache.obtener(ruc, "heatmapActividad",
+                    () -> dashboardService.obtenerHeatmapActividad(ruc, semanas), semanas);
             
             return ResponseEntity.ok(
                 new RespuestaControlador<>("Heatmap obtenido exitosamente", 200, heatmap, null)
@@ -151,7 +199,8 @@ public class DashboardController {
             @RequestParam("ruc") String ruc) {
         
         try {
-            List<Map<String, Object>> alertas = dashboardService.obtenerAlertasActivas(ruc);
+            List<Map<String, Object>> alertas = dashboardCache.obtener(ruc, "alertasActivas",
+                    () -> dashboardService.obtenerAlertasActivas(ruc));
             
             return ResponseEntity.ok(
                 new RespuestaControlador<>("Alertas obtenidas exitosamente", 200, alertas, null)
@@ -195,8 +244,9 @@ public class DashboardController {
             @RequestParam(value = "periodoAnterior", defaultValue = "30") Integer periodoAnterior) {
         
         try {
-            Map<String, Object> comparativo = dashboardService.obtenerComparativoPeriodos(
-                ruc, periodoActual, periodoAnterior);
+            Map<String, Object> comparativo = dashboardCache.obtener(ruc, "comparativoPeriodos",
+                    () -> dashboardService.obtenerComparativoPeriodos(ruc, periodoActual, periodoAnterior),
+                    periodoActual, periodoAnterior);
             
             return ResponseEntity.ok(
                 new RespuestaControlador<>("Comparativo obtenido exitosamente", 200, comparativo, null)
@@ -218,7 +268,8 @@ public class DashboardController {
             @RequestParam(value = "dias", defaultValue = "90") Integer dias) {
         
         try {
-            List<Map<String, Object>> ranking = dashboardService.obtenerRankingNotificaciones(ruc, dias);
+            List<Map<String, Object>> ranking = dashboardCache.obtener(ruc, "rankingNotificaciones",
+                    () -> dashboardService.obtenerRankingNotificaciones(ruc, dias), dias);
             
             return ResponseEntity.ok(
                 new RespuestaControlador<>("Ranking obtenido exitosamente", 200, ranking, null)
@@ -248,7 +299,8 @@ public class DashboardController {
             @RequestParam("ruc") String ruc) {
         
         try {
-            List<Map<String, Object>> alertasCriticas = dashboardService.obtenerAlertasCriticas(ruc);
+            List<Map<String, Object>> alertasCriticas = dashboardCache.obtener(ruc, "alertasCriticas",
+                    () -> dashboardService.obtenerAlertasCriticas(ruc));
             
             return ResponseEntity.ok(
                 new RespuestaControlador<>("Alertas críticas obtenidas exitosamente", 200, alertasCriticas, null)
@@ -272,7 +324,8 @@ public class DashboardController {
             @RequestParam(value = "dias", defaultValue = "30") Integer dias) {
         
         try {
-            Map<String, Object> distribucion = dashboardService.obtenerDistribucionClasificacion(ruc, dias);
+            Map<String, Object> distribucion = dashboardCache.obtener(ruc, "distribucionClasificacion",
+                    () -> dashboardService.obtenerDistribucionClasificacion(ruc, dias), dias);
             
             return ResponseEntity.ok(
                 new RespuestaControlador<>("Distribución por clasificación obtenida exitosamente", 200, distribucion, null)
@@ -284,4 +337,38 @@ public class DashboardController {
             );
         }
     }
+
+    /**
+     * Recalcula el resumen diario desde los mensajes guardados
+     */
+    @Operation(summary = "Reconstruir resumen diario", 
+               description = "Vacía T_RESUMEN_DIARIO_MENSAJES y lo vuelve a calcular desde todos los mensajes (carga inicial o corrección)")
+    @PostMapping("/resumen-diario/reconstruir")
+    public ResponseEntity<RespuestaControlador<Map<String, Object>>> reconstruirResumenDiario() {
+        
+        try {
+            int filas = resumenDiarioServicio.reconstruir();
+            
+            return ResponseEntity.ok(
+                new RespuestaControlador<>("Resumen diario reconstruido exitosamente", 200, Map.of("filas", filas), null)
+            );
+            
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
+                new RespuestaControlador<>("Error al reconstruir resumen diario: " + e.getMessage(), 500, null, null)
+            );
+        }
+    }
+
+    /**
+     * Aciertos, fallos e invalidaciones de la caché del dashboard
+     */
+    @Operation(summary = "Estadísticas de la caché del dashboard", 
+               description = "Aciertos, fallos, invalidaciones por cambios en los buzones y entradas actuales")
+    @GetMapping("/cache/estadisticas")
+    public ResponseEntity<RespuestaControlador<Map<String, Object>>> obtenerEstadisticasCache() {
+        return ResponseEntity.ok(
+            new RespuestaControlador<>("Estadísticas de caché obtenidas exitosamente", 200, dashboardCache.estadisticas(), null)
+        );
+    }
 }
@@ -12,10 +12,16 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import upao.edu.pe.dto.response.RespuestaControlador;
+import upao.edu.pe.dto.response.ResultadoSincronizacionDTO;
 import upao.edu.pe.model.MensajeSunat;
 import upao.edu.pe.model.Etiqueta;
+import upao.edu.pe.model.TrabajoReclasificacion;
+import upao.edu.pe.service.ClasificacionMasivaServicio;
+import upao.edu.pe.service.ColaClasificacionServicio;
+import upao.edu.pe.service.DetallePendienteServicio;
 import upao.edu.pe.service.EtiquetaServicio;
 import upao.edu.pe.service.MensajeSunatServicio;
+import upao.edu.pe.service.ReclasificacionServicio;
 import upao.edu.pe.service.SunatNotificacionService;
 import upao.edu.pe.service.SunatServicio;
 import upao.edu.pe.service.EmailMonitoringService;
@@ -50,21 +56,56 @@ public class SunatControlador {
     @Autowired
     private GeminiAIService geminiAIService;
 
+    @Autowired
+    private DetallePendienteServicio detallePendienteServicio;
+
+    @Autowired
+    private ReclasificacionServicio reclasificacionServicio;
+
+    @Autowired
+    private ClasificacionMasivaServicio clasificacionMasivaServicio;
+
+    @Autowired
+    private ColaClasificacionServicio colaClasificacionServicio;
+
     /**
      * Inicia el proceso de sincronización manual
      */
     @GetMapping("/sincronizar")
-    public ResponseEntity<RespuestaControlador<String>> sincronizarMensajes(
+    public ResponseEntity<RespuestaControlador<ResultadoSincronizacionDTO>> sincronizarMensajes(
             @RequestParam("cookie") String cookieSunat) {
 
-        sunatServicio.SP_CONSULTAR_Y_GUARDAR_MENSAJES(cookieSunat);
+        ResultadoSincronizacionDTO resultado = sunatServicio.SP_CONSULTAR_Y_GUARDAR_MENSAJES(cookieSunat);
 
         return new ResponseEntity<>(
-                RespuestaControlador.exito("Sincronización iniciada manualmente", null),
+                RespuestaControlador.exito("Sincronización iniciada manualmente", resultado),
                 HttpStatus.OK
         );
     }
 
+    /**
+     * Progreso de la descarga en segundo plano de los detalles encolados por la sincronización
+     */
+    @Operation(summary = "Progreso de descarga de detalles",
+               description = "Cantidad de detalles pendientes, en proceso, completados y fallidos de la cola de descarga")
+    @GetMapping("/detalles/progreso")
+    public ResponseEntity<RespuestaControlador<Map<String, Object>>> obtenerProgresoDetalles(
+            @Parameter(description = "RUC a consultar (opcional, todos si se omite)")
+            @RequestParam(value = "ruc", required = false) String ruc) {
+        try {
+            Map<String, Object> progreso = detallePendienteServicio.obtenerProgreso(ruc);
+            return new ResponseEntity<>(
+                    RespuestaControlador.exito("Progreso obtenido correctamente", progreso),
+                    HttpStatus.OK
+            );
+        } catch (Exception e) {
+            return new ResponseEntity<>(
+                    new RespuestaControlador<>("Error al obtener progreso: " + e.getMessage(), 500, null, null),
+                    HttpStatus.INTERNAL_SERVER_ERROR
+            );
+        }
+    }
+
     /**
      * Obtiene todos los mensajes sin paginación (método original) - Solo etiqueta "00"
      */
@@ -173,6 +214,58 @@ public class SunatControlador {
         );
     }
 
+    /**
+     * Obtiene mensajes por cursor - Solo etiqueta "00" (scroll infinito, sin COUNT ni OFFSET)
+     * @param cursor Valor de "siguienteCursor" de la respuesta anterior; se omite en la primera página
+     * @param cantidad Cantidad de elementos por página (por defecto 10, máximo 100)
+     * @param incluirTotal Si se agrega "totalAproximado"
+     */
+    @GetMapping("/mensajes/cursor")
+    public ResponseEntity<RespuestaControlador<Map<String, Object>>> obtenerMensajesConCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int cantidad,
+            @RequestParam(defaultValue = "false") boolean incluirTotal) {
+
+        try {
+            MensajeSunatServicio.PaginaMensajes pagina = mensajeSunatServicio.obtenerMensajesConCursor(cursor, cantidad, incluirTotal);
+            return new ResponseEntity<>(RespuestaControlador.exito(respuestaCursor(pagina)), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(new RespuestaControlador<>(e.getMessage(), 400, null, null), HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Obtiene mensajes filtrados por etiqueta por cursor
+     * @param etiqueta Código de etiqueta (10, 11, 13, 14, 15, 16)
+     * @param cursor Valor de "siguienteCursor" de la respuesta anterior; se omite en la primera página
+     * @param cantidad Cantidad de elementos por página (por defecto 10, máximo 100)
+     * @param incluirTotal Si se agrega "totalAproximado"
+     */
+    @GetMapping("/mensajes/etiqueta/{etiqueta}/cursor")
+    public ResponseEntity<RespuestaControlador<Map<String, Object>>> obtenerMensajesPorEtiquetaConCursor(
+            @PathVariable String etiqueta,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int cantidad,
+            @RequestParam(defaultValue = "false") boolean incluirTotal) {
+
+        try {
+            MensajeSunatServicio.PaginaMensajes pagina =
+                    mensajeSunatServicio.obtenerMensajesPorEtiquetaConCursor(etiqueta, cursor, cantidad, incluirTotal);
+            String descripcionEtiqueta = mensajeSunatServicio.obtenerDescripcionEtiqueta(etiqueta);
+
+            Map<String, Object> respuesta = respuestaCursor(pagina);
+            respuesta.put("etiqueta", etiqueta);
+            respuesta.put("descripcionEtiqueta", descripcionEtiqueta);
+
+            return new ResponseEntity<>(
+                    RespuestaControlador.exito("Mensajes de etiqueta: " + descripcionEtiqueta, respuesta),
+                    HttpStatus.OK
+            );
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(new RespuestaControlador<>(e.getMessage(), 400, null, null), HttpStatus.BAD_REQUEST);
+        }
+    }
+
     /**
      * Obtiene el listado de etiquetas disponibles
      */
@@ -290,24 +383,67 @@ public class SunatControlador {
     }
 
     /**
-     * Actualiza las clasificaciones de todos los mensajes existentes
+     * Inicia en segundo plano la reclasificación con IA de los mensajes existentes
      */
+    @Operation(summary = "Reclasificar mensajes existentes",
+               description = "Crea un trabajo de reclasificación por lotes (o devuelve el que está en curso); el avance se consulta en /actualizar-clasificaciones/estado")
     @PostMapping("/actualizar-clasificaciones")
-    public ResponseEntity<RespuestaControlador<String>> actualizarClasificaciones() {
+    public ResponseEntity<RespuestaControlador<Map<String, Object>>> actualizarClasificaciones() {
+        try {
+            TrabajoReclasificacion trabajo = reclasificacionServicio.iniciar();
+            Map<String, Object> estado = reclasificacionServicio.obtenerEstado(trabajo.getNuIdTrabajo()).orElse(null);
+            return new ResponseEntity<>(
+                    RespuestaControlador.exito("Reclasificación iniciada en segundo plano", estado),
+                    HttpStatus.ACCEPTED
+            );
+        } catch (Exception e) {
+            return new ResponseEntity<>(
+                    new RespuestaControlador<>("Error al iniciar la reclasificación: " + e.getMessage(), 500, null, null),
+                    HttpStatus.INTERNAL_SERVER_ERROR
+            );
+        }
+    }
+
+    /**
+     * Progreso y velocidad de un trabajo de reclasificación
+     */
+    @Operation(summary = "Estado de la reclasificación",
+               description = "Progreso, punto de control y mensajes por segundo de un trabajo de reclasificación")
+    @GetMapping("/actualizar-clasificaciones/estado")
+    public ResponseEntity<RespuestaControlador<Map<String, Object>>> obtenerEstadoReclasificacion(
+            @Parameter(description = "Id del trabajo (opcional, el último si se omite)")
+            @RequestParam(value = "idTrabajo", required = false) Long idTrabajo) {
         try {
-            sunatServicio.actualizarClasificacionesExistentes();
+            return reclasificacionServicio.obtenerEstado(idTrabajo)
+                    .map(estado -> new ResponseEntity<>(
+                            RespuestaControlador.exito("Estado obtenido correctamente", estado),
+                            HttpStatus.OK))
+                    .orElseGet(() -> new ResponseEntity<>(
+                            new RespuestaControlador<>("Trabajo de reclasificación no encontrado", 404, null, null),
+                            HttpStatus.NOT_FOUND));
+        } catch (Exception e) {
             return new ResponseEntity<>(
-                    RespuestaControlador.exito("Clasificaciones actualizadas correctamente", null),
+                    new RespuestaControlador<>("Error al obtener estado: " + e.getMessage(), 500, null, null),
+                    HttpStatus.INTERNAL_SERVER_ERROR
+            );
+        }
+    }
+
+    /**
+     * Mensajes que esperan cuota de Gemini para clasificarse
+     */
+    @Operation(summary = "Estado de la cola de clasificación",
+               description = "Profundidad por estado y prioridad, ritmo de vaciado por minuto y tiempo estimado de la cola de mensajes pendientes de clasificar con Gemini")
+    @GetMapping("/cola-clasificacion/estado")
+    public ResponseEntity<RespuestaControlador<Map<String, Object>>> obtenerEstadoColaClasificacion() {
+        try {
+            return new ResponseEntity<>(
+                    RespuestaControlador.exito("Estado obtenido correctamente", colaClasificacionServicio.obtenerEstado()),
                     HttpStatus.OK
             );
         } catch (Exception e) {
-            RespuestaControlador<String> respuestaError = new RespuestaControlador<>();
-            respuestaError.setVcMensaje("Error al actualizar clasificaciones: " + e.getMessage());
-            respuestaError.setNuCodigo(500);
-            respuestaError.setDatos(null);
-            
             return new ResponseEntity<>(
-                    respuestaError,
+                    new RespuestaControlador<>("Error al obtener estado: " + e.getMessage(), 500, null, null),
                     HttpStatus.INTERNAL_SERVER_ERROR
             );
         }
@@ -707,8 +843,12 @@ public class SunatControlador {
             estadoDetallado.put("requestsInLastMinute", status.getRequestsInLastMinute());
             estadoDetallado.put("maxRequestsPerMinute", status.getMaxRequestsPerMinute());
             estadoDetallado.put("availableRequests", status.getMaxRequestsPerMinute() - status.getRequestsInLastMinute());
+            estadoDetallado.put("tokensInLastMinute", status.getTokensInLastMinute());
+            estadoDetallado.put("maxTokensPerMinute", status.getMaxTokensPerMinute());
             estadoDetallado.put("circuitBreakerOpen", status.isCircuitBreakerOpen());
             estadoDetallado.put("consecutiveFailures", status.getConsecutiveFailures());
+            estadoDetallado.put("cache", geminiAIService.obtenerEstadisticasCache());
+            estadoDetallado.put("cuotaCompartida", geminiAIService.obtenerEstadoCuotaCompartida());
             
             if (status.getCircuitBreakerOpenTime() != null) {
                 estadoDetallado.put("circuitBreakerOpenSince", status.getCircuitBreakerOpenTime().toString());
@@ -919,65 +1059,37 @@ public class SunatControlador {
 
     /**
      * ENDPOINT PARA CLASIFICAR AUTOMATICAMENTE TODOS LOS CORREOS BASADO EN PALABRAS CLAVE
+     * Con asincrono=true, o si la tabla supera el umbral configurado, responde 202 y sigue en segundo plano
      */
     @PostMapping("/clasificar-automatico")
-    public ResponseEntity<RespuestaControlador<Map<String, Object>>> clasificarAutomatico() {
+    public ResponseEntity<RespuestaControlador<Map<String, Object>>> clasificarAutomatico(
+            @RequestParam(value = "asincrono", required = false) Boolean asincrono) {
         try {
-            // Obtener todos los mensajes extraidos
-            List<MensajeSunat> todosMensajes = mensajeSunatServicio.obtenerTodosMensajes("");
-            
-            Map<String, Object> resultado = new HashMap<>();
-            Map<String, Integer> contadores = new HashMap<>();
-            contadores.put("MUY_IMPORTANTE", 0);
-            contadores.put("IMPORTANTE", 0);
-            contadores.put("INFORMATIVO", 0);
-            contadores.put("RECURRENTE", 0);
-            contadores.put("NO_CLASIFICADOS", 0);
-            
-            int procesados = 0;
-            int exitosos = 0;
-            
-            for (MensajeSunat mensaje : todosMensajes) {
-                try {
-                    procesados++;
-                    String asunto = mensaje.getVcAsunto();
-                    
-                    if (asunto == null || asunto.trim().isEmpty()) {
-                        contadores.put("NO_CLASIFICADOS", contadores.get("NO_CLASIFICADOS") + 1);
-                        continue;
-                    }
-                    
-                    // Clasificar basado en palabras clave
-                    String clasificacion = clasificarPorPalabrasClave(asunto);
-                    
-                    // Buscar la etiqueta correspondiente
-                    String codigoEtiqueta = obtenerCodigoEtiqueta(clasificacion);
-                    
-                    // Actualizar el mensaje con la nueva etiqueta usando el servicio
-                    mensajeSunatServicio.actualizarEtiqueta(mensaje.getNuCodigoMensaje(), codigoEtiqueta);
-                    
-                    contadores.put(clasificacion, contadores.get(clasificacion) + 1);
-                    exitosos++;
-                    
-                } catch (Exception e) {
-                    System.err.println("Error al procesar mensaje ID " + mensaje.getNuCodigoMensaje() + ": " + e.getMessage());
-                    contadores.put("NO_CLASIFICADOS", contadores.get("NO_CLASIFICADOS") + 1);
-                }
+            boolean enSegundoPlano = asincrono != null ? asincrono : clasificacionMasivaServicio.requiereSegundoPlano();
+            if (enSegundoPlano) {
+                String mensaje = clasificacionMasivaServicio.iniciarEnSegundoPlano()
+                        ? "Clasificación automática iniciada en segundo plano"
+                        : "Ya hay una clasificación automática en curso";
+                return new ResponseEntity<>(
+                    RespuestaControlador.exito(mensaje, clasificacionMasivaServicio.obtenerEstado()),
+                    HttpStatus.ACCEPTED
+                );
             }
-            
-            resultado.put("total_procesados", procesados);
-            resultado.put("exitosos", exitosos);
-            resultado.put("errores", procesados - exitosos);
-            resultado.put("contadores_por_clasificacion", contadores);
-            
+
+            Map<String, Object> resultado = clasificacionMasivaServicio.clasificar();
             String mensaje = String.format("Clasificación automática completada: %d/%d correos procesados exitosamente", 
-                                         exitosos, procesados);
+                                         resultado.get("exitosos"), resultado.get("total_procesados"));
             
             return new ResponseEntity<>(
                 RespuestaControlador.exito(mensaje, resultado),
                 HttpStatus.OK
             );
             
+        } catch (IllegalStateException e) {
+            return new ResponseEntity<>(
+                new RespuestaControlador<>(e.getMessage(), 409, null, null),
+                HttpStatus.CONFLICT
+            );
         } catch (Exception e) {
             Map<String, Object> error = new HashMap<>();
             error.put("error", "Error en clasificación automática: " + e.getMessage());
@@ -995,81 +1107,25 @@ public class SunatControlador {
     }
 
     /**
-     * Clasifica un correo basado en palabras clave del asunto
+     * Contadores de la clasificación automática en curso o de la última ejecución
      */
-    private String clasificarPorPalabrasClave(String asunto) {
-        String asuntoLower = asunto.toLowerCase();
-        
-        // MUY IMPORTANTE - Pagos, ordenes, vencimientos críticos
-        if (asuntoLower.contains("orden de pago") || 
-            asuntoLower.contains("pago de") ||
-            asuntoLower.contains("vencimiento") ||
-            asuntoLower.contains("vence") ||
-            asuntoLower.contains("deuda") ||
-            asuntoLower.contains("cobranza") ||
-            asuntoLower.contains("intimación") ||
-            asuntoLower.contains("embargo") ||
-            asuntoLower.contains("multa") ||
-            asuntoLower.contains("sanción") ||
-            asuntoLower.contains("requerimiento") ||
-            asuntoLower.contains("urgente")) {
-            return "MUY_IMPORTANTE";
-        }
-        
-        // IMPORTANTE - Declaraciones, autorizaciones, certificados
-        if (asuntoLower.contains("declaración") ||
-            asuntoLower.contains("declarar") ||
-            asuntoLower.contains("autorización") ||
-            asuntoLower.contains("certificado") ||
-            asuntoLower.contains("comprobante") ||
-            asuntoLower.contains("validación") ||
-            asuntoLower.contains("verificación") ||
-            asuntoLower.contains("constancia") ||
-            asuntoLower.contains("resolución") ||
-            asuntoLower.contains("notificación") ||
-            asuntoLower.contains("renta") ||
-            asuntoLower.contains("igv") ||
-            asuntoLower.contains("essalud") ||
-            asuntoLower.contains("afp")) {
-            return "IMPORTANTE";
-        }
-        
-        // INFORMATIVO - Formularios, cambios, actualizaciones
-        if (asuntoLower.contains("formulario") ||
-            asuntoLower.contains("cambio") ||
-            asuntoLower.contains("modificación") ||
-            asuntoLower.contains("actualización") ||
-            asuntoLower.contains("nuevo") ||
-            asuntoLower.contains("nueva") ||
-            asuntoLower.contains("información") ||
-            asuntoLower.contains("comunicado") ||
-            asuntoLower.contains("aviso") ||
-            asuntoLower.contains("procedimiento") ||
-            asuntoLower.contains("sistema") ||
-            asuntoLower.contains("plataforma") ||
-            asuntoLower.contains("servicio")) {
-            return "INFORMATIVO";
-        }
-        
-        // Si no coincide con ninguna categoría específica, es RECURRENTE
-        return "RECURRENTE";
+    @GetMapping("/clasificar-automatico/estado")
+    public ResponseEntity<RespuestaControlador<Map<String, Object>>> obtenerEstadoClasificacionAutomatica() {
+        return new ResponseEntity<>(
+            RespuestaControlador.exito("Estado obtenido correctamente", clasificacionMasivaServicio.obtenerEstado()),
+            HttpStatus.OK
+        );
     }
 
-    /**
-     * Obtiene el código de etiqueta correspondiente a la clasificación
-     */
-    private String obtenerCodigoEtiqueta(String clasificacion) {
-        switch (clasificacion) {
-            case "MUY_IMPORTANTE":
-                return "10"; // Etiqueta roja
-            case "IMPORTANTE":
-                return "11"; // Etiqueta amarilla  
-            case "INFORMATIVO":
-                return "13"; // Etiqueta azul
-            case "RECURRENTE":
-            default:
-                return "14"; // Etiqueta verde
+    private Map<String, Object> respuestaCursor(MensajeSunatServicio.PaginaMensajes pagina) {
+        Map<String, Object> respuesta = new HashMap<>();
+        respuesta.put("mensajes", pagina.mensajes());
+        respuesta.put("siguienteCursor", pagina.siguienteCursor());
+        respuesta.put("hayMas", pagina.siguienteCursor() != null);
+        if (pagina.totalAproximado() != null) {
+            respuesta.put("totalAproximado", pagina.totalAproximado());
         }
+        return respuesta;
     }
 
     /**
@@ -47,6 +47,11 @@ public class AsistenteRespuestaDTO {
      */
     private Long tiempoRespuesta;
     
+    /**
+     * Tiempo hasta el primer fragmento en milisegundos (solo en respuestas por streaming)
+     */
+    private Long tiempoPrimerToken;
+    
     /**
      * Timestamp de la respuesta
      */
@@ -0,0 +1,54 @@
+package upao.edu.pe.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO con el resumen de una sincronización de mensajes SUNAT
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ResultadoSincronizacionDTO {
+
+    private String ruc;
+
+    /**
+     * Páginas del listado efectivamente solicitadas a SUNAT
+     */
+    private int paginasConsultadas;
+
+    /**
+     * Páginas cuya consulta falló
+     */
+    private int paginasFallidas;
+
+    /**
+     * Mensajes nuevos guardados
+     */
+    private int mensajesNuevos;
+
+    /**
+     * Mensajes recibidos que ya estaban registrados
+     */
+    private int mensajesOmitidos;
+
+    /**
+     * Indica si la consulta se detuvo al alcanzar mensajes ya ingeridos
+     */
+    private boolean marcaAlcanzada;
+
+    /**
+     * Marca de agua vigente tras la sincronización
+     */
+    private Long ultimoCodigoMensaje;
+    private String ultimaFechaPublica;
+
+    /**
+     * Duración total de la sincronización en milisegundos
+     */
+    private long tiempoMs;
+}
@@ -8,9 +8,11 @@ import upao.edu.pe.dto.MensajeSunatDTO;
 import upao.edu.pe.model.MensajeSunat;
 import upao.edu.pe.service.SunatServicio;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.List;
 
 @Component
 @Slf4j
@@ -18,6 +20,16 @@ public class MensajeSunatMapper {
 
     private static final Logger logger = (Logger) LoggerFactory.getLogger(MensajeSunatMapper.class);
 
+    // Formatos de VC_FECHA_ENVIO y VC_FECHA_PUBLICA: SUNAT envía "dd/MM/yyyy HH:mm:ss"; hay registros antiguos en ISO
+    private static final List<DateTimeFormatter> FORMATOS_FECHA_HORA = List.of(
+            DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss"),
+            DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm"),
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"),
+            DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+    private static final List<DateTimeFormatter> FORMATOS_FECHA = List.of(
+            DateTimeFormatter.ofPattern("dd/MM/yyyy"),
+            DateTimeFormatter.ISO_LOCAL_DATE);
+
     /**
      * Convierte un DTO a una entidad MensajeSunat
      * @param dto DTO con los datos de origen
@@ -43,6 +55,8 @@ public class MensajeSunatMapper {
         entidad.setVcAsunto(dto.getVcAsunto());
         entidad.setVcFechaEnvio(dto.getVcFechaEnvio());
         entidad.setVcFechaPublica(dto.getVcFechaPublica());
+        entidad.setDtFechaEnvio(parsearFechaSunat(dto.getVcFechaEnvio()));
+        entidad.setDtFechaPublica(parsearFechaSunat(dto.getVcFechaPublica()));
         entidad.setVcUsuarioEmisor(dto.getVcUsuarioEmisor());
         entidad.setNuIndicadorTexto(dto.getNuIndicadorTexto());
         entidad.setNuTipoGenerador(dto.getNuTipoGenerador());
@@ -77,6 +91,33 @@ public class MensajeSunatMapper {
         }
     }
 
+    /**
+     * Parsea las fechas de envío y publicación que llegan como texto desde SUNAT
+     * @param fechaStr Fecha con hora ("dd/MM/yyyy HH:mm:ss", ISO...) o solo fecha (inicio del día)
+     * @return LocalDateTime o null si está vacía o no tiene un formato conocido
+     */
+    public static LocalDateTime parsearFechaSunat(String fechaStr) {
+        if (fechaStr == null || fechaStr.isBlank()) {
+            return null;
+        }
+        String fecha = fechaStr.trim();
+        for (DateTimeFormatter formato : FORMATOS_FECHA_HORA) {
+            try {
+                return LocalDateTime.parse(fecha, formato);
+            } catch (DateTimeParseException e) {
+                // Se prueba el siguiente formato
+            }
+        }
+        for (DateTimeFormatter formato : FORMATOS_FECHA) {
+            try {
+                return LocalDate.parse(fecha, formato).atStartOfDay();
+            } catch (DateTimeParseException e) {
+                // Se prueba el siguiente formato
+            }
+        }
+        return null;
+    }
+
     public MensajeSunatDTO mapearADTO(MensajeSunat entidad) {
         if (entidad == null) {
             return null;
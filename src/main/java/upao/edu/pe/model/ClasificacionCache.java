@@ -0,0 +1,69 @@
+package upao.edu.pe.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Clasificación de Gemini guardada por huella del asunto normalizado y versión del prompt, compartida
+ * entre nodos. Durante un despliegue escalonado los nodos con versiones distintas conviven sin pisarse.
+ */
+@Entity
+@Table(name = "T_CLASIFICACION_CACHE", indexes = {
+        @Index(name = "idx_clasificacion_cache_version", columnList = "VC_VERSION_PROMPT")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@IdClass(ClasificacionCache.Clave.class)
+public class ClasificacionCache {
+
+    @Id
+    @Column(name = "VC_HUELLA", length = 64)
+    private String vcHuella;
+
+    @Id
+    @Column(name = "VC_VERSION_PROMPT", length = 40)
+    private String vcVersionPrompt;
+
+    @Column(name = "VC_ASUNTO_NORMALIZADO", length = 500)
+    private String vcAsuntoNormalizado;
+
+    @Column(name = "VC_CLASIFICACION", length = 30)
+    private String vcClasificacion;
+
+    @Column(name = "VC_ETIQUETA_CODIGO", length = 5)
+    private String vcEtiquetaCodigo;
+
+    @Column(name = "VC_ETIQUETA_NOMBRE", length = 100)
+    private String vcEtiquetaNombre;
+
+    @Column(name = "VC_RAZON", length = 1000)
+    private String vcRazon;
+
+    @Column(name = "NU_CONFIANZA")
+    private Double nuConfianza;
+
+    @Column(name = "DT_ACTUALIZACION")
+    private LocalDateTime dtActualizacion;
+
+    @PrePersist
+    @PreUpdate
+    public void preGuardar() {
+        this.dtActualizacion = LocalDateTime.now();
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Clave implements Serializable {
+        private String vcHuella;
+        private String vcVersionPrompt;
+    }
+}
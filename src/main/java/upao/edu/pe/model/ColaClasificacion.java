@@ -0,0 +1,84 @@
+package upao.edu.pe.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Cola persistente de mensajes cuya clasificación con Gemini se pospuso por falta de cuota.
+ * Se atiende por DT_ORDEN ascendente: la fecha de ingreso adelantada según la prioridad, de modo
+ * que la prioridad da ventaja pero un mensaje que espera lo suficiente termina pasando adelante.
+ */
+@Entity
+@Table(name = "T_COLA_CLASIFICACION", indexes = {
+        @Index(name = "idx_cola_clasificacion_estado_orden", columnList = "VC_ESTADO, DT_ORDEN"),
+        @Index(name = "idx_cola_clasificacion_completado", columnList = "DT_COMPLETADO")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ColaClasificacion {
+
+    public static final String PENDIENTE = "PENDIENTE";
+    public static final String EN_PROCESO = "EN_PROCESO";
+    public static final String COMPLETADO = "COMPLETADO";
+    public static final String FALLIDO = "FALLIDO";
+
+    public static final int PRIORIDAD_ALTA = 2;
+    public static final int PRIORIDAD_MEDIA = 1;
+    public static final int PRIORIDAD_BAJA = 0;
+
+    @Id
+    @Column(name = "NU_CODIGO_MENSAJE")
+    private Long nuCodigoMensaje;
+
+    @Column(name = "VC_NUMERO_RUC", length = 20)
+    private String vcNumeroRuc;
+
+    @Column(name = "NU_PRIORIDAD")
+    @Builder.Default
+    private Integer nuPrioridad = PRIORIDAD_BAJA;
+
+    @Column(name = "VC_ESTADO", length = 20)
+    @Builder.Default
+    private String vcEstado = PENDIENTE;
+
+    // Reintentos por error de Gemini (las esperas por cuota no cuentan)
+    @Column(name = "NU_INTENTOS")
+    @Builder.Default
+    private Integer nuIntentos = 0;
+
+    @Column(name = "DT_ORDEN")
+    private LocalDateTime dtOrden;
+
+    @Column(name = "DT_COMPLETADO")
+    private LocalDateTime dtCompletado;
+
+    @Column(name = "DT_CREACION")
+    private LocalDateTime dtCreacion;
+
+    @Column(name = "DT_ACTUALIZACION")
+    private LocalDateTime dtActualizacion;
+
+    @PrePersist
+    public void prePersist() {
+        LocalDateTime ahora = LocalDateTime.now();
+        if (this.dtCreacion == null) {
+            this.dtCreacion = ahora;
+        }
+        this.dtActualizacion = ahora;
+        if (this.dtOrden == null) {
+            this.dtOrden = ahora;
+        }
+    }
+
+    @PreUpdate
+    public void preUpdate() {
+        this.dtActualizacion = LocalDateTime.now();
+    }
+}
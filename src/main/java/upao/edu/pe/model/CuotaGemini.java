@@ -0,0 +1,33 @@
+package upao.edu.pe.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Cuota de Gemini concedida a los nodos del clúster en una ventana de un minuto.
+ * NU_VENTANA es el minuto desde epoch; NU_PETICIONES y NU_TOKENS suman lo arrendado por todos los nodos
+ * y nunca superan el límite de la API key (la condición va en el mismo UPDATE que los incrementa).
+ */
+@Entity
+@Table(name = "T_CUOTA_GEMINI")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CuotaGemini {
+
+    @Id
+    @Column(name = "NU_VENTANA")
+    private Long nuVentana;
+
+    @Column(name = "NU_PETICIONES", nullable = false)
+    @Builder.Default
+    private Long nuPeticiones = 0L;
+
+    @Column(name = "NU_TOKENS", nullable = false)
+    @Builder.Default
+    private Long nuTokens = 0L;
+}
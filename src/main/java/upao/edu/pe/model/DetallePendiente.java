@@ -0,0 +1,71 @@
+package upao.edu.pe.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Cola persistente de detalles de notificación pendientes de descargar desde SUNAT
+ */
+@Entity
+@Table(name = "T_DETALLE_PENDIENTE", indexes = {
+        @Index(name = "idx_detalle_pendiente_estado", columnList = "VC_ESTADO, DT_PROXIMO_INTENTO"),
+        @Index(name = "idx_detalle_pendiente_ruc", columnList = "VC_NUMERO_RUC")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DetallePendiente {
+
+    public static final String PENDIENTE = "PENDIENTE";
+    public static final String EN_PROCESO = "EN_PROCESO";
+    public static final String COMPLETADO = "COMPLETADO";
+    public static final String FALLIDO = "FALLIDO";
+
+    @Id
+    @Column(name = "NU_CODIGO_MENSAJE")
+    private Long nuCodigoMensaje;
+
+    @Column(name = "VC_NUMERO_RUC", length = 20)
+    private String vcNumeroRuc;
+
+    @Column(name = "VC_ESTADO", length = 20)
+    @Builder.Default
+    private String vcEstado = PENDIENTE;
+
+    @Column(name = "NU_INTENTOS")
+    @Builder.Default
+    private Integer nuIntentos = 0;
+
+    @Column(name = "DT_PROXIMO_INTENTO")
+    private LocalDateTime dtProximoIntento;
+
+    @Column(name = "VC_ULTIMO_ERROR", length = 500)
+    private String vcUltimoError;
+
+    @Column(name = "DT_CREACION")
+    private LocalDateTime dtCreacion;
+
+    @Column(name = "DT_ACTUALIZACION")
+    private LocalDateTime dtActualizacion;
+
+    @PrePersist
+    public void prePersist() {
+        LocalDateTime ahora = LocalDateTime.now();
+        this.dtCreacion = ahora;
+        this.dtActualizacion = ahora;
+        if (this.dtProximoIntento == null) {
+            this.dtProximoIntento = ahora;
+        }
+    }
+
+    @PreUpdate
+    public void preUpdate() {
+        this.dtActualizacion = LocalDateTime.now();
+    }
+}
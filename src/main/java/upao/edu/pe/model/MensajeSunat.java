@@ -9,7 +9,11 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "T_MENSAJE_SUNAT")
+@Table(name = "T_MENSAJE_SUNAT", indexes = {
+        @Index(name = "idx_mensaje_ruc_fecha_publica", columnList = "VC_NUMERO_RUC, DT_FECHA_PUBLICA DESC"),
+        @Index(name = "idx_mensaje_etiqueta_fecha_publica", columnList = "VC_CODIGO_ETIQUETA, DT_FECHA_PUBLICA DESC"),
+        @Index(name = "idx_mensaje_ruc_fecha_envio", columnList = "VC_NUMERO_RUC, DT_FECHA_ENVIO DESC")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -47,6 +51,13 @@ public class MensajeSunat {
     @Column(name = "VC_FECHA_PUBLICA", length = 30)
     private String vcFechaPublica;
 
+    // Fechas tipadas de VC_FECHA_ENVIO y VC_FECHA_PUBLICA (ordenamiento y filtros por índice)
+    @Column(name = "DT_FECHA_ENVIO")
+    private LocalDateTime dtFechaEnvio;
+
+    @Column(name = "DT_FECHA_PUBLICA")
+    private LocalDateTime dtFechaPublica;
+
     @Column(name = "VC_USUARIO_EMISOR", length = 50)
     private String vcUsuarioEmisor;
 
@@ -0,0 +1,31 @@
+package upao.edu.pe.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Nodo de la aplicación que arrienda cuota de Gemini. DT_ULTIMO_LATIDO se actualiza en cada arriendo
+ * y sirve para contar los nodos vivos entre los que se reparte la cuota.
+ */
+@Entity
+@Table(name = "T_NODO_GEMINI", indexes = {
+        @Index(name = "idx_nodo_gemini_latido", columnList = "DT_ULTIMO_LATIDO")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class NodoGemini {
+
+    @Id
+    @Column(name = "VC_NODO", length = 100)
+    private String vcNodo;
+
+    @Column(name = "DT_ULTIMO_LATIDO")
+    private LocalDateTime dtUltimoLatido;
+}
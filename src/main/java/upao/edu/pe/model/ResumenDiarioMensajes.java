@@ -0,0 +1,64 @@
+package upao.edu.pe.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * Conteos diarios de mensajes por RUC, día de envío, etiqueta y clasificación.
+ * Se mantiene de forma incremental en la misma transacción que guarda cada mensaje, así el
+ * dashboard lee una fila por día y combinación en lugar de recorrer T_MENSAJE_SUNAT.
+ *
+ * Los valores nulos se guardan como cadena vacía (forman parte de la clave única) y los mensajes
+ * sin fecha de envío reconocible se agrupan en DIA_SIN_FECHA.
+ */
+@Entity
+@Table(name = "T_RESUMEN_DIARIO_MENSAJES",
+        uniqueConstraints = @UniqueConstraint(name = "uk_resumen_diario_clave",
+                columnNames = {"VC_NUMERO_RUC", "DT_DIA", "VC_CODIGO_ETIQUETA", "VC_CLASIFICACION"}),
+        indexes = @Index(name = "idx_resumen_diario_dia", columnList = "DT_DIA"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ResumenDiarioMensajes {
+
+    public static final LocalDate DIA_SIN_FECHA = LocalDate.of(1900, 1, 1);
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "NU_ID_RESUMEN")
+    private Long nuIdResumen;
+
+    @Column(name = "VC_NUMERO_RUC", length = 20, nullable = false)
+    private String vcNumeroRuc;
+
+    @Column(name = "DT_DIA", nullable = false)
+    private LocalDate dtDia;
+
+    @Column(name = "VC_CODIGO_ETIQUETA", length = 20, nullable = false)
+    private String vcCodigoEtiqueta;
+
+    @Column(name = "VC_CLASIFICACION", length = 30, nullable = false)
+    private String vcClasificacion;
+
+    @Column(name = "NU_CANTIDAD")
+    @Builder.Default
+    private Long nuCantidad = 0L;
+
+    @Column(name = "NU_NO_LEIDOS")
+    @Builder.Default
+    private Long nuNoLeidos = 0L;
+
+    @Column(name = "NU_URGENTES")
+    @Builder.Default
+    private Long nuUrgentes = 0L;
+
+    @Column(name = "NU_CON_ARCHIVOS")
+    @Builder.Default
+    private Long nuConArchivos = 0L;
+}
@@ -0,0 +1,49 @@
+package upao.edu.pe.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Marca de agua de la última sincronización con SUNAT por RUC
+ */
+@Entity
+@Table(name = "T_SINCRONIZACION_RUC")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SincronizacionRuc {
+
+    @Id
+    @Column(name = "VC_NUMERO_RUC", length = 20)
+    private String vcNumeroRuc;
+
+    // Código de mensaje más alto ya ingerido
+    @Column(name = "NU_ULTIMO_CODIGO_MENSAJE")
+    private Long nuUltimoCodigoMensaje;
+
+    // Fecha de publicación más reciente ya ingerida (formato SUNAT dd/MM/yyyy HH:mm:ss)
+    @Column(name = "VC_ULTIMA_FECHA_PUBLICA", length = 30)
+    private String vcUltimaFechaPublica;
+
+    @Column(name = "DT_ULTIMA_SINCRONIZACION")
+    private LocalDateTime dtUltimaSincronizacion;
+
+    // Resumen de la última sincronización
+    @Column(name = "NU_PAGINAS_CONSULTADAS")
+    private Integer nuPaginasConsultadas;
+
+    @Column(name = "NU_MENSAJES_NUEVOS")
+    private Integer nuMensajesNuevos;
+
+    @Column(name = "NU_MENSAJES_OMITIDOS")
+    private Integer nuMensajesOmitidos;
+
+    @Column(name = "NU_TIEMPO_MS")
+    private Long nuTiempoMs;
+}
@@ -0,0 +1,89 @@
+package upao.edu.pe.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Trabajo de reclasificación con IA de los mensajes guardados.
+ * NU_ULTIMO_CODIGO es el punto de control: el último código de un lote ya confirmado.
+ * VC_NODO es el nodo que lo ejecuta y DT_LATIDO su último latido; otro nodo solo puede reclamar
+ * el trabajo cuando no tiene dueño o el latido venció.
+ */
+@Entity
+@Table(name = "T_TRABAJO_RECLASIFICACION", indexes = {
+        @Index(name = "idx_trabajo_reclasificacion_estado", columnList = "VC_ESTADO")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TrabajoReclasificacion {
+
+    public static final String EN_PROCESO = "EN_PROCESO";
+    public static final String COMPLETADO = "COMPLETADO";
+    public static final String FALLIDO = "FALLIDO";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "NU_ID_TRABAJO")
+    private Long nuIdTrabajo;
+
+    @Column(name = "VC_ESTADO", length = 20)
+    @Builder.Default
+    private String vcEstado = EN_PROCESO;
+
+    @Column(name = "NU_ULTIMO_CODIGO")
+    private Long nuUltimoCodigo;
+
+    // Candidatos contados al crear el trabajo
+    @Column(name = "NU_TOTAL")
+    private Long nuTotal;
+
+    @Column(name = "NU_PROCESADOS")
+    @Builder.Default
+    private Long nuProcesados = 0L;
+
+    @Column(name = "NU_LOTES")
+    @Builder.Default
+    private Integer nuLotes = 0;
+
+    // Tiempo acumulado procesando lotes (sin contar esperas por cuota ni reinicios)
+    @Column(name = "NU_TIEMPO_MS")
+    @Builder.Default
+    private Long nuTiempoMs = 0L;
+
+    @Column(name = "VC_ULTIMO_ERROR", length = 500)
+    private String vcUltimoError;
+
+    @Column(name = "DT_INICIO")
+    private LocalDateTime dtInicio;
+
+    @Column(name = "DT_ACTUALIZACION")
+    private LocalDateTime dtActualizacion;
+
+    @Column(name = "DT_FIN")
+    private LocalDateTime dtFin;
+
+    @Column(name = "VC_NODO", length = 100)
+    private String vcNodo;
+
+    @Column(name = "DT_LATIDO")
+    private LocalDateTime dtLatido;
+
+    @PrePersist
+    public void prePersist() {
+        LocalDateTime ahora = LocalDateTime.now();
+        this.dtInicio = ahora;
+        this.dtActualizacion = ahora;
+    }
+
+    @PreUpdate
+    public void preUpdate() {
+        this.dtActualizacion = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,24 @@
+package upao.edu.pe.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import upao.edu.pe.model.ClasificacionCache;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface ClasificacionCacheRepositorio extends JpaRepository<ClasificacionCache, ClasificacionCache.Clave> {
+
+    Optional<ClasificacionCache> findByVcHuellaAndVcVersionPrompt(String vcHuella, String vcVersionPrompt);
+
+    // Entradas de otras versiones del prompt que ningún nodo actualiza desde :antesDe
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ClasificacionCache c WHERE c.vcVersionPrompt <> :version AND c.dtActualizacion < :antesDe")
+    int eliminarOtrasVersionesAntesDe(@Param("version") String version, @Param("antesDe") LocalDateTime antesDe);
+}
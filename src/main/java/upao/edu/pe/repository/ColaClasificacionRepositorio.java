@@ -0,0 +1,65 @@
+package upao.edu.pe.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import upao.edu.pe.model.ColaClasificacion;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ColaClasificacionRepositorio extends JpaRepository<ColaClasificacion, Long> {
+
+    // Siguientes mensajes a clasificar según prioridad y antigüedad (DT_ORDEN ya combina ambas)
+    @Query("SELECT c FROM ColaClasificacion c WHERE c.vcEstado = 'PENDIENTE' ORDER BY c.dtOrden ASC, c.nuCodigoMensaje ASC")
+    List<ColaClasificacion> encontrarSiguientes(Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE ColaClasificacion c SET c.vcEstado = 'EN_PROCESO', c.dtActualizacion = :ahora " +
+           "WHERE c.nuCodigoMensaje IN :codigos AND c.vcEstado = 'PENDIENTE'")
+    int marcarEnProceso(@Param("codigos") Collection<Long> codigos, @Param("ahora") LocalDateTime ahora);
+
+    // Los que se volvieron a posponer durante el proceso ya están PENDIENTE y no se tocan
+    @Modifying
+    @Transactional
+    @Query("UPDATE ColaClasificacion c SET c.vcEstado = 'COMPLETADO', c.dtCompletado = :ahora, c.dtActualizacion = :ahora " +
+           "WHERE c.nuCodigoMensaje IN :codigos AND c.vcEstado = 'EN_PROCESO'")
+    int completar(@Param("codigos") Collection<Long> codigos, @Param("ahora") LocalDateTime ahora);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE ColaClasificacion c SET c.vcEstado = 'PENDIENTE' WHERE c.nuCodigoMensaje IN :codigos AND c.vcEstado = 'EN_PROCESO'")
+    int liberar(@Param("codigos") Collection<Long> codigos);
+
+    // Lo que sigue EN_PROCESO desde antes de :vencido quedó de un nodo caído y vuelve a la cola;
+    // marcarEnProceso deja en DT_ACTUALIZACION el momento del reclamo
+    @Modifying
+    @Transactional
+    @Query("UPDATE ColaClasificacion c SET c.vcEstado = 'PENDIENTE' " +
+           "WHERE c.vcEstado = 'EN_PROCESO' AND c.dtActualizacion < :vencido")
+    int liberarEnProcesoVencidos(@Param("vencido") LocalDateTime vencido);
+
+    @Query("SELECT c.vcEstado, COUNT(c) FROM ColaClasificacion c GROUP BY c.vcEstado")
+    List<Object[]> contarPorEstado();
+
+    @Query("SELECT c.nuPrioridad, COUNT(c) FROM ColaClasificacion c WHERE c.vcEstado = 'PENDIENTE' GROUP BY c.nuPrioridad")
+    List<Object[]> contarPendientesPorPrioridad();
+
+    @Query("SELECT COUNT(c) FROM ColaClasificacion c WHERE c.vcEstado = 'COMPLETADO' AND c.dtCompletado >= :desde")
+    long contarCompletadosDesde(@Param("desde") LocalDateTime desde);
+
+    Optional<ColaClasificacion> findFirstByVcEstadoOrderByDtCreacionAsc(String vcEstado);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ColaClasificacion c WHERE c.vcEstado = 'COMPLETADO' AND c.dtCompletado < :antesDe")
+    int eliminarCompletadosAntesDe(@Param("antesDe") LocalDateTime antesDe);
+}
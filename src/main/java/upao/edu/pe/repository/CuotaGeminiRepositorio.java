@@ -0,0 +1,45 @@
+package upao.edu.pe.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import upao.edu.pe.model.CuotaGemini;
+
+/**
+ * Las escrituras van en su propia transacción: un arriendo queda confirmado aunque la operación
+ * que lo pidió haga rollback.
+ */
+@Repository
+public interface CuotaGeminiRepositorio extends JpaRepository<CuotaGemini, Long> {
+
+    /**
+     * Suma el arriendo a la ventana solo si el total del clúster sigue dentro de los límites
+     * @return 1 si se concedió, 0 si no cabe o la ventana aún no existe
+     */
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query("UPDATE CuotaGemini c SET c.nuPeticiones = c.nuPeticiones + :peticiones, c.nuTokens = c.nuTokens + :tokens " +
+           "WHERE c.nuVentana = :ventana AND c.nuPeticiones + :peticiones <= :maxPeticiones " +
+           "AND c.nuTokens + :tokens <= :maxTokens")
+    int arrendar(@Param("ventana") long ventana,
+                 @Param("peticiones") long peticiones,
+                 @Param("tokens") long tokens,
+                 @Param("maxPeticiones") long maxPeticiones,
+                 @Param("maxTokens") long maxTokens);
+
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query(value = "INSERT INTO T_CUOTA_GEMINI (NU_VENTANA, NU_PETICIONES, NU_TOKENS) " +
+                   "SELECT :ventana, 0, 0 WHERE NOT EXISTS (SELECT 1 FROM T_CUOTA_GEMINI WHERE NU_VENTANA = :ventana)",
+           nativeQuery = true)
+    int crearVentana(@Param("ventana") long ventana);
+
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query("DELETE FROM CuotaGemini c WHERE c.nuVentana < :ventana")
+    int eliminarAnterioresA(@Param("ventana") long ventana);
+}
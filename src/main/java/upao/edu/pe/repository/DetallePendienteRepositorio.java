@@ -0,0 +1,48 @@
+package upao.edu.pe.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import upao.edu.pe.model.DetallePendiente;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+@Repository
+public interface DetallePendienteRepositorio extends JpaRepository<DetallePendiente, Long> {
+
+    // Siguientes detalles listos para procesar de un RUC, los más antiguos primero
+    @Query("SELECT d FROM DetallePendiente d WHERE d.vcNumeroRuc = :ruc AND d.vcEstado = 'PENDIENTE' " +
+           "AND d.dtProximoIntento <= :ahora ORDER BY d.dtCreacion ASC")
+    List<DetallePendiente> encontrarListosParaProcesar(@Param("ruc") String ruc,
+                                                       @Param("ahora") LocalDateTime ahora,
+                                                       Pageable pageable);
+
+    @Query("SELECT d.nuCodigoMensaje FROM DetallePendiente d WHERE d.nuCodigoMensaje IN :codigos")
+    Set<Long> encontrarCodigosEncolados(@Param("codigos") Collection<Long> codigos);
+
+    // Conteo por estado para el endpoint de progreso (ruc nulo = todos)
+    @Query("SELECT d.vcEstado, COUNT(d) FROM DetallePendiente d WHERE (:ruc IS NULL OR d.vcNumeroRuc = :ruc) GROUP BY d.vcEstado")
+    List<Object[]> contarPorEstado(@Param("ruc") String ruc);
+
+    // Reclamo condicional: solo un nodo consigue pasar el registro de PENDIENTE a EN_PROCESO (devuelve 1)
+    @Modifying
+    @Transactional
+    @Query("UPDATE DetallePendiente d SET d.vcEstado = 'EN_PROCESO', d.dtActualizacion = :ahora " +
+           "WHERE d.nuCodigoMensaje = :codigo AND d.vcEstado = 'PENDIENTE'")
+    int reclamar(@Param("codigo") Long codigo, @Param("ahora") LocalDateTime ahora);
+
+    // Lo que sigue EN_PROCESO desde antes de :vencido quedó de un nodo caído y vuelve a la cola;
+    // DT_ACTUALIZACION es el momento en que se reclamó
+    @Modifying
+    @Transactional
+    @Query("UPDATE DetallePendiente d SET d.vcEstado = 'PENDIENTE' " +
+           "WHERE d.vcEstado = 'EN_PROCESO' AND d.dtActualizacion < :vencido")
+    int liberarEnProcesoVencidos(@Param("vencido") LocalDateTime vencido);
+}
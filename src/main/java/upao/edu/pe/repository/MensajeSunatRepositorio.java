@@ -9,18 +9,25 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import upao.edu.pe.model.MensajeSunat;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 
 @Repository
 public interface MensajeSunatRepositorio extends JpaRepository<MensajeSunat, Long> {
     boolean existsByNuCodigoMensaje(Long nuCodigoMensaje);
 
+    // Códigos de una página que ya existen en base de datos (una sola consulta por página)
+    @Query("SELECT m.nuCodigoMensaje FROM MensajeSunat m WHERE m.nuCodigoMensaje IN :codigos")
+    Set<Long> encontrarCodigosExistentes(@Param("codigos") Collection<Long> codigos);
+
     @Query(value = """
     SELECT * 
     FROM t_mensaje_sunat 
     WHERE vc_numero_ruc = :vc_numero_ruc
-    ORDER BY TO_TIMESTAMP(vc_fecha_publica, 'DD/MM/YYYY HH24:MI:SS') DESC
+    ORDER BY dt_fecha_publica DESC
     """, nativeQuery = true)
     List<MensajeSunat> findMensajesOrdenadosPorFecha(String vc_numero_ruc);
 
@@ -29,7 +36,7 @@ public interface MensajeSunatRepositorio extends JpaRepository<MensajeSunat, Lon
     SELECT * 
     FROM t_mensaje_sunat 
     WHERE vc_codigo_etiqueta = :vcCodigoEtiqueta 
-    ORDER BY TO_TIMESTAMP(vc_fecha_publica, 'DD/MM/YYYY HH24:MI:SS') DESC
+    ORDER BY dt_fecha_publica DESC
     """, nativeQuery = true)
     Page<MensajeSunat> encontrarVcCodigoEtiquetaOrderByVcFechaPublicaDesc(String vcCodigoEtiqueta, Pageable pageable);
 
@@ -41,17 +48,172 @@ public interface MensajeSunatRepositorio extends JpaRepository<MensajeSunat, Lon
     SELECT * 
     FROM t_mensaje_sunat 
     WHERE vc_codigo_etiqueta = :vcCodigoEtiqueta 
-    ORDER BY TO_TIMESTAMP(vc_fecha_publica, 'DD/MM/YYYY HH24:MI:SS') DESC
+    ORDER BY dt_fecha_publica DESC
     """, nativeQuery = true)
     Page<MensajeSunat> encontrarVcCodigoEtiqueta(String vcCodigoEtiqueta, Pageable pageable);
 
+    // ========== PAGINACIÓN POR CURSOR ==========
+    // Orden (dt_fecha_publica DESC, nu_codigo_mensaje DESC) sobre idx_mensaje_etiqueta_fecha_publica,
+    // sin OFFSET ni COUNT; los mensajes sin fecha se recorren al final por código
+
+    @Query("""
+    SELECT m FROM MensajeSunat m
+    WHERE m.vcCodigoEtiqueta = :etiqueta AND m.dtFechaPublica IS NOT NULL
+    ORDER BY m.dtFechaPublica DESC, m.nuCodigoMensaje DESC
+    """)
+    List<MensajeSunat> encontrarPrimerosPorEtiqueta(@Param("etiqueta") String etiqueta, Pageable pageable);
+
+    @Query("""
+    SELECT m FROM MensajeSunat m
+    WHERE m.vcCodigoEtiqueta = :etiqueta
+      AND (m.dtFechaPublica < :fecha OR (m.dtFechaPublica = :fecha AND m.nuCodigoMensaje < :codigo))
+    ORDER BY m.dtFechaPublica DESC, m.nuCodigoMensaje DESC
+    """)
+    List<MensajeSunat> encontrarPorEtiquetaDespuesDe(@Param("etiqueta") String etiqueta,
+                                                     @Param("fecha") LocalDateTime fecha,
+                                                     @Param("codigo") long codigo,
+                                                     Pageable pageable);
+
+    @Query("""
+    SELECT m FROM MensajeSunat m
+    WHERE m.vcCodigoEtiqueta = :etiqueta AND m.dtFechaPublica IS NULL AND m.nuCodigoMensaje < :codigo
+    ORDER BY m.nuCodigoMensaje DESC
+    """)
+    List<MensajeSunat> encontrarSinFechaPorEtiquetaDespuesDe(@Param("etiqueta") String etiqueta,
+                                                             @Param("codigo") long codigo,
+                                                             Pageable pageable);
+
     // Método para actualizar mensajes que tienen una etiqueta específica a "00"
     @Modifying
     @Query("UPDATE MensajeSunat m SET m.vcCodigoEtiqueta = '00' WHERE m.vcCodigoEtiqueta = :codigoEtiqueta")
     int actualizarMensajesANoEtiquetados(@Param("codigoEtiqueta") String codigoEtiqueta);
 
+    // ========== CLASIFICACIÓN MASIVA POR PALABRAS CLAVE ==========
+
+    // Código, asunto y etiqueta actual recorridos por código, sin cargar las entidades
+    // (más las columnas que forman su aporte al resumen diario)
+    @Query("""
+    SELECT m.nuCodigoMensaje AS codigo, m.vcAsunto AS asunto, m.vcCodigoEtiqueta AS etiqueta,
+           m.vcNumeroRuc AS ruc, m.vcFechaEnvio AS fechaEnvio, m.clasificacion AS clasificacion,
+           m.nuLeido AS leido, m.nuUrgente AS urgente, m.nuCantidadArchivos AS cantidadArchivos
+    FROM MensajeSunat m
+    WHERE m.nuCodigoMensaje > :despuesDe
+    ORDER BY m.nuCodigoMensaje
+    """)
+    List<AsuntoMensaje> encontrarAsuntosDespuesDe(@Param("despuesDe") long despuesDe, Pageable pageable);
+
+    // Una sentencia por etiqueta destino y lote
+    @Modifying
+    @Query("UPDATE MensajeSunat m SET m.vcCodigoEtiqueta = :codigoEtiqueta WHERE m.nuCodigoMensaje IN :codigos")
+    int actualizarEtiquetaEnLote(@Param("codigoEtiqueta") String codigoEtiqueta, @Param("codigos") Collection<Long> codigos);
+
     // Métodos para obtener estadísticas
     long countByVcCodigoEtiqueta(String vcCodigoEtiqueta);
     long countByNuDestacado(Integer nuDestacado);
     long countByNuUrgente(Integer nuUrgente);
+
+    // ========== CONSULTAS PARA EL DASHBOARD ==========
+    // Los conteos se leen de T_RESUMEN_DIARIO_MENSAJES (ResumenDiarioMensajesRepositorio)
+
+    // Asuntos más recientes de una clasificación, sin cargar las entidades
+    @Query(value = """
+    SELECT vc_asunto
+    FROM t_mensaje_sunat
+    WHERE (CAST(:ruc AS VARCHAR) IS NULL OR vc_numero_ruc = :ruc)
+      AND clasificacion = :clasificacion
+    ORDER BY dt_fecha_publica DESC
+    LIMIT :limite
+    """, nativeQuery = true)
+    List<String> encontrarAsuntosRecientesPorClasificacion(@Param("ruc") String ruc,
+                                                           @Param("clasificacion") String clasificacion,
+                                                           @Param("limite") int limite);
+
+    // Correos críticos recientes ya ordenados por prioridad de etiqueta, no leídos, con archivos y fecha;
+    // solo viajan las columnas que muestra el dashboard y como máximo :limite filas
+    @Query(value = """
+    SELECT nu_codigo_mensaje AS codigo, vc_asunto AS asunto, vc_fecha_envio AS fecha,
+           nu_tipo_mensaje AS tipo, nu_leido AS leido, nu_cantidad_archivos AS archivos,
+           vc_codigo_etiqueta AS etiqueta
+    FROM t_mensaje_sunat
+    WHERE (CAST(:ruc AS VARCHAR) IS NULL OR vc_numero_ruc = :ruc)
+      AND (dt_fecha_envio IS NULL OR dt_fecha_envio > :desde)
+      AND (vc_codigo_etiqueta IN ('10', '11', '14') OR nu_leido = 0 OR nu_cantidad_archivos > 0)
+    ORDER BY CASE vc_codigo_etiqueta WHEN '10' THEN 5 WHEN '11' THEN 4 WHEN '14' THEN 3 WHEN '12' THEN 2 ELSE 1 END DESC,
+             nu_leido ASC,
+             CASE WHEN nu_cantidad_archivos > 0 THEN 0 ELSE 1 END,
+             dt_fecha_envio DESC NULLS LAST,
+             nu_codigo_mensaje DESC
+    LIMIT :limite
+    """, nativeQuery = true)
+    List<CorreoCritico> encontrarCorreosCriticos(@Param("ruc") String ruc,
+                                                 @Param("desde") LocalDateTime desde,
+                                                 @Param("limite") int limite);
+
+    // Publicaciones por día ISO de la semana (lunes = 1) y hora desde una fecha, para el heatmap de actividad
+    @Query(value = """
+    SELECT CAST(EXTRACT(ISODOW FROM dt_fecha_publica) AS INTEGER) AS dia,
+           CAST(EXTRACT(HOUR FROM dt_fecha_publica) AS INTEGER) AS hora,
+           COUNT(*) AS cantidad
+    FROM t_mensaje_sunat
+    WHERE (CAST(:ruc AS VARCHAR) IS NULL OR vc_numero_ruc = :ruc)
+      AND dt_fecha_publica >= :desde
+    GROUP BY 1, 2
+    """, nativeQuery = true)
+    List<ConteoPorDiaHora> contarPublicacionesPorDiaYHora(@Param("ruc") String ruc, @Param("desde") LocalDateTime desde);
+
+    // ========== MIGRACIÓN DE FECHAS TIPADAS ==========
+
+    // Mensajes guardados antes de DT_FECHA_ENVIO/DT_FECHA_PUBLICA, recorridos por código
+    @Query("""
+    SELECT m FROM MensajeSunat m
+    WHERE m.nuCodigoMensaje > :despuesDe
+      AND ((m.dtFechaPublica IS NULL AND m.vcFechaPublica IS NOT NULL)
+        OR (m.dtFechaEnvio IS NULL AND m.vcFechaEnvio IS NOT NULL))
+    ORDER BY m.nuCodigoMensaje
+    """)
+    List<MensajeSunat> encontrarSinFechasTipadas(@Param("despuesDe") long despuesDe, Pageable pageable);
+
+    // ========== RECLASIFICACIÓN ==========
+
+    // Candidatos a reclasificar con IA, recorridos por código para avanzar por lotes desde un punto de control
+    @Query("""
+    SELECT m FROM MensajeSunat m
+    WHERE m.nuCodigoMensaje > :despuesDe
+      AND (m.clasificacion IS NULL OR m.clasificacion IN :clasificaciones)
+    ORDER BY m.nuCodigoMensaje
+    """)
+    List<MensajeSunat> encontrarParaReclasificar(@Param("despuesDe") long despuesDe,
+                                                 @Param("clasificaciones") Collection<String> clasificaciones,
+                                                 Pageable pageable);
+
+    @Query("SELECT COUNT(m) FROM MensajeSunat m WHERE m.clasificacion IS NULL OR m.clasificacion IN :clasificaciones")
+    long contarParaReclasificar(@Param("clasificaciones") Collection<String> clasificaciones);
+
+    interface AsuntoMensaje {
+        Long getCodigo();
+        String getAsunto();
+        String getEtiqueta();
+        String getRuc();
+        String getFechaEnvio();
+        String getClasificacion();
+        Integer getLeido();
+        Integer getUrgente();
+        Integer getCantidadArchivos();
+    }
+
+    interface CorreoCritico {
+        Long getCodigo();
+        String getAsunto();
+        String getFecha();
+        Integer getTipo();
+        Integer getLeido();
+        Integer getArchivos();
+        String getEtiqueta();
+    }
+
+    interface ConteoPorDiaHora {
+        int getDia();
+        int getHora();
+        long getCantidad();
+    }
 }
@@ -0,0 +1,36 @@
+package upao.edu.pe.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import upao.edu.pe.model.NodoGemini;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface NodoGeminiRepositorio extends JpaRepository<NodoGemini, String> {
+
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query("UPDATE NodoGemini n SET n.dtUltimoLatido = :ahora WHERE n.vcNodo = :nodo")
+    int registrarLatido(@Param("nodo") String nodo, @Param("ahora") LocalDateTime ahora);
+
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query(value = "INSERT INTO T_NODO_GEMINI (VC_NODO, DT_ULTIMO_LATIDO) " +
+                   "SELECT :nodo, :ahora WHERE NOT EXISTS (SELECT 1 FROM T_NODO_GEMINI WHERE VC_NODO = :nodo)",
+           nativeQuery = true)
+    int registrarNodo(@Param("nodo") String nodo, @Param("ahora") LocalDateTime ahora);
+
+    @Query("SELECT COUNT(n) FROM NodoGemini n WHERE n.dtUltimoLatido >= :desde")
+    long contarVivosDesde(@Param("desde") LocalDateTime desde);
+
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query("DELETE FROM NodoGemini n WHERE n.dtUltimoLatido < :antesDe")
+    int eliminarInactivos(@Param("antesDe") LocalDateTime antesDe);
+}
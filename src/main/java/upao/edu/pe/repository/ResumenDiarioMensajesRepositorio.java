@@ -0,0 +1,116 @@
+package upao.edu.pe.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import upao.edu.pe.model.ResumenDiarioMensajes;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface ResumenDiarioMensajesRepositorio extends JpaRepository<ResumenDiarioMensajes, Long>,
+        ResumenDiarioMensajesRepositorioPersonalizado {
+
+    // Suma los deltas sobre la fila de la clave sin crearla; devuelve 0 si la fila aún no existe.
+    // Los aportes que pueden crear la fila van por acumular()
+    @Modifying(flushAutomatically = true)
+    @Query("""
+    UPDATE ResumenDiarioMensajes r
+    SET r.nuCantidad = r.nuCantidad + :cantidad,
+        r.nuNoLeidos = r.nuNoLeidos + :noLeidos,
+        r.nuUrgentes = r.nuUrgentes + :urgentes,
+        r.nuConArchivos = r.nuConArchivos + :conArchivos
+    WHERE r.vcNumeroRuc = :ruc AND r.dtDia = :dia
+      AND r.vcCodigoEtiqueta = :etiqueta AND r.vcClasificacion = :clasificacion
+    """)
+    int incrementar(@Param("ruc") String ruc, @Param("dia") LocalDate dia,
+                    @Param("etiqueta") String etiqueta, @Param("clasificacion") String clasificacion,
+                    @Param("cantidad") long cantidad, @Param("noLeidos") long noLeidos,
+                    @Param("urgentes") long urgentes, @Param("conArchivos") long conArchivos);
+
+    List<ResumenDiarioMensajes> findByVcCodigoEtiqueta(String vcCodigoEtiqueta);
+
+    // ========== LECTURAS DEL DASHBOARD ==========
+    // Con ruc = null se agregan todos los RUC
+
+    @Query("""
+    SELECT r.vcClasificacion AS clasificacion, r.vcCodigoEtiqueta AS etiqueta,
+           SUM(r.nuCantidad) AS cantidad, SUM(r.nuNoLeidos) AS noLeidos,
+           SUM(r.nuUrgentes) AS urgentes, SUM(r.nuConArchivos) AS conArchivos
+    FROM ResumenDiarioMensajes r
+    WHERE (:ruc IS NULL OR r.vcNumeroRuc = :ruc)
+    GROUP BY r.vcClasificacion, r.vcCodigoEtiqueta
+    """)
+    List<ConteoResumen> sumarPorClasificacionYEtiqueta(@Param("ruc") String ruc);
+
+    @Query("""
+    SELECT r.vcClasificacion AS clasificacion, r.vcCodigoEtiqueta AS etiqueta,
+           SUM(r.nuCantidad) AS cantidad, SUM(r.nuNoLeidos) AS noLeidos,
+           SUM(r.nuUrgentes) AS urgentes, SUM(r.nuConArchivos) AS conArchivos
+    FROM ResumenDiarioMensajes r
+    WHERE (:ruc IS NULL OR r.vcNumeroRuc = :ruc)
+      AND r.dtDia BETWEEN :desde AND :hasta
+    GROUP BY r.vcClasificacion, r.vcCodigoEtiqueta
+    """)
+    List<ConteoResumen> sumarPorClasificacionYEtiquetaEntre(@Param("ruc") String ruc,
+                                                            @Param("desde") LocalDate desde,
+                                                            @Param("hasta") LocalDate hasta);
+
+    @Query("""
+    SELECT r.dtDia AS dia, r.vcClasificacion AS clasificacion, SUM(r.nuCantidad) AS cantidad
+    FROM ResumenDiarioMensajes r
+    WHERE (:ruc IS NULL OR r.vcNumeroRuc = :ruc)
+      AND r.dtDia BETWEEN :desde AND :hasta
+    GROUP BY r.dtDia, r.vcClasificacion
+    """)
+    List<ConteoDiario> contarPorDiaYClasificacion(@Param("ruc") String ruc,
+                                                  @Param("desde") LocalDate desde,
+                                                  @Param("hasta") LocalDate hasta);
+
+    @Query("SELECT COALESCE(SUM(r.nuCantidad), 0) FROM ResumenDiarioMensajes r WHERE r.vcCodigoEtiqueta = :etiqueta")
+    long sumarCantidadPorEtiqueta(@Param("etiqueta") String etiqueta);
+
+    // ========== RECONSTRUCCIÓN ==========
+
+    // El día es el prefijo de 10 caracteres de VC_FECHA_ENVIO ("dd/MM/yyyy" o "yyyy-MM-dd"); se interpreta en Java
+    @Query("""
+    SELECT m.vcNumeroRuc AS ruc, SUBSTRING(m.vcFechaEnvio, 1, 10) AS dia,
+           m.vcCodigoEtiqueta AS etiqueta, m.clasificacion AS clasificacion,
+           COUNT(m) AS cantidad,
+           COALESCE(SUM(CASE WHEN m.nuLeido = 0 THEN 1 ELSE 0 END), 0) AS noLeidos,
+           COALESCE(SUM(CASE WHEN m.nuUrgente = 1 THEN 1 ELSE 0 END), 0) AS urgentes,
+           COALESCE(SUM(CASE WHEN m.nuCantidadArchivos > 0 THEN 1 ELSE 0 END), 0) AS conArchivos
+    FROM MensajeSunat m
+    GROUP BY m.vcNumeroRuc, SUBSTRING(m.vcFechaEnvio, 1, 10), m.vcCodigoEtiqueta, m.clasificacion
+    """)
+    List<ConteoMensajes> agruparMensajes();
+
+    interface ConteoResumen {
+        String getClasificacion();
+        String getEtiqueta();
+        long getCantidad();
+        long getNoLeidos();
+        long getUrgentes();
+        long getConArchivos();
+    }
+
+    interface ConteoDiario {
+        LocalDate getDia();
+        String getClasificacion();
+        long getCantidad();
+    }
+
+    interface ConteoMensajes {
+        String getRuc();
+        String getDia();
+        String getEtiqueta();
+        String getClasificacion();
+        long getCantidad();
+        long getNoLeidos();
+        long getUrgentes();
+        long getConArchivos();
+    }
+}
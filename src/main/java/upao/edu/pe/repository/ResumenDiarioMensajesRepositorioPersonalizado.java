@@ -0,0 +1,13 @@
+package upao.edu.pe.repository;
+
+import java.time.LocalDate;
+
+public interface ResumenDiarioMensajesRepositorioPersonalizado {
+
+    /**
+     * Suma los deltas en la fila de la clave creándola si no existe, en una sola sentencia atómica:
+     * dos transacciones que crean la misma fila a la vez no chocan con uk_resumen_diario_clave
+     */
+    void acumular(String ruc, LocalDate dia, String etiqueta, String clasificacion,
+                  long cantidad, long noLeidos, long urgentes, long conArchivos);
+}
@@ -0,0 +1,84 @@
+package upao.edu.pe.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import org.hibernate.Session;
+
+import java.time.LocalDate;
+
+class ResumenDiarioMensajesRepositorioPersonalizadoImpl implements ResumenDiarioMensajesRepositorioPersonalizado {
+
+    private static final String UPSERT = """
+    INSERT INTO t_resumen_diario_mensajes AS t
+        (vc_numero_ruc, dt_dia, vc_codigo_etiqueta, vc_clasificacion, nu_cantidad, nu_no_leidos, nu_urgentes, nu_con_archivos)
+    VALUES (:ruc, :dia, :etiqueta, :clasificacion, :cantidad, :noLeidos, :urgentes, :conArchivos)
+    ON CONFLICT (vc_numero_ruc, dt_dia, vc_codigo_etiqueta, vc_clasificacion) DO UPDATE
+    SET nu_cantidad = t.nu_cantidad + EXCLUDED.nu_cantidad,
+        nu_no_leidos = t.nu_no_leidos + EXCLUDED.nu_no_leidos,
+        nu_urgentes = t.nu_urgentes + EXCLUDED.nu_urgentes,
+        nu_con_archivos = t.nu_con_archivos + EXCLUDED.nu_con_archivos
+    """;
+
+    // H2 (base de las pruebas, en modo PostgreSQL) no admite ON CONFLICT DO UPDATE: la fila se crea
+    // vacía con DO NOTHING, que espera a la transacción que la esté creando, y después se suma
+    private static final String CREAR_SI_NO_EXISTE = """
+    INSERT INTO t_resumen_diario_mensajes
+        (vc_numero_ruc, dt_dia, vc_codigo_etiqueta, vc_clasificacion, nu_cantidad, nu_no_leidos, nu_urgentes, nu_con_archivos)
+    VALUES (:ruc, :dia, :etiqueta, :clasificacion, 0, 0, 0, 0)
+    ON CONFLICT DO NOTHING
+    """;
+
+    private static final String SUMAR = """
+    UPDATE t_resumen_diario_mensajes
+    SET nu_cantidad = nu_cantidad + :cantidad,
+        nu_no_leidos = nu_no_leidos + :noLeidos,
+        nu_urgentes = nu_urgentes + :urgentes,
+        nu_con_archivos = nu_con_archivos + :conArchivos
+    WHERE vc_numero_ruc = :ruc AND dt_dia = :dia AND vc_codigo_etiqueta = :etiqueta AND vc_clasificacion = :clasificacion
+    """;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private volatile Boolean postgres;
+
+    @Override
+    public void acumular(String ruc, LocalDate dia, String etiqueta, String clasificacion,
+                         long cantidad, long noLeidos, long urgentes, long conArchivos) {
+        entityManager.flush();
+        if (esPostgres()) {
+            conContadores(conClave(entityManager.createNativeQuery(UPSERT), ruc, dia, etiqueta, clasificacion),
+                    cantidad, noLeidos, urgentes, conArchivos).executeUpdate();
+            return;
+        }
+        conClave(entityManager.createNativeQuery(CREAR_SI_NO_EXISTE), ruc, dia, etiqueta, clasificacion).executeUpdate();
+        conContadores(conClave(entityManager.createNativeQuery(SUMAR), ruc, dia, etiqueta, clasificacion),
+                cantidad, noLeidos, urgentes, conArchivos).executeUpdate();
+    }
+
+    private boolean esPostgres() {
+        Boolean valor = postgres;
+        if (valor == null) {
+            valor = entityManager.unwrap(Session.class)
+                    .doReturningWork(conexion -> conexion.getMetaData().getDatabaseProductName())
+                    .toLowerCase().contains("postgresql");
+            postgres = valor;
+        }
+        return valor;
+    }
+
+    private static Query conClave(Query query, String ruc, LocalDate dia, String etiqueta, String clasificacion) {
+        return query.setParameter("ruc", ruc)
+                .setParameter("dia", dia)
+                .setParameter("etiqueta", etiqueta)
+                .setParameter("clasificacion", clasificacion);
+    }
+
+    private static Query conContadores(Query query, long cantidad, long noLeidos, long urgentes, long conArchivos) {
+        return query.setParameter("cantidad", cantidad)
+                .setParameter("noLeidos", noLeidos)
+                .setParameter("urgentes", urgentes)
+                .setParameter("conArchivos", conArchivos);
+    }
+}
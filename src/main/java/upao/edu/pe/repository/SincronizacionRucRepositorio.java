@@ -0,0 +1,9 @@
+package upao.edu.pe.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import upao.edu.pe.model.SincronizacionRuc;
+
+@Repository
+public interface SincronizacionRucRepositorio extends JpaRepository<SincronizacionRuc, String> {
+}
@@ -0,0 +1,43 @@
+package upao.edu.pe.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import upao.edu.pe.model.TrabajoReclasificacion;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface TrabajoReclasificacionRepositorio extends JpaRepository<TrabajoReclasificacion, Long> {
+
+    List<TrabajoReclasificacion> findByVcEstadoOrderByNuIdTrabajoAsc(String vcEstado);
+
+    Optional<TrabajoReclasificacion> findFirstByOrderByNuIdTrabajoDesc();
+
+    // Solo un nodo gana: el trabajo no tiene dueño, ya es de este nodo o el latido del dueño venció
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query("UPDATE TrabajoReclasificacion t SET t.vcNodo = :nodo, t.dtLatido = :ahora " +
+           "WHERE t.nuIdTrabajo = :id AND t.vcEstado = 'EN_PROCESO' " +
+           "AND (t.vcNodo IS NULL OR t.vcNodo = :nodo OR t.dtLatido IS NULL OR t.dtLatido < :vencido)")
+    int reclamar(@Param("id") Long id, @Param("nodo") String nodo,
+                 @Param("ahora") LocalDateTime ahora, @Param("vencido") LocalDateTime vencido);
+
+    // 0 si otro nodo reclamó el trabajo
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query("UPDATE TrabajoReclasificacion t SET t.dtLatido = :ahora WHERE t.nuIdTrabajo = :id AND t.vcNodo = :nodo")
+    int renovarLatido(@Param("id") Long id, @Param("nodo") String nodo, @Param("ahora") LocalDateTime ahora);
+
+    // Al detenerse el nodo el trabajo queda libre para que otro lo continúe sin esperar a que venza el latido
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query("UPDATE TrabajoReclasificacion t SET t.vcNodo = NULL, t.dtLatido = NULL WHERE t.nuIdTrabajo = :id AND t.vcNodo = :nodo")
+    int liberar(@Param("id") Long id, @Param("nodo") String nodo);
+}
@@ -0,0 +1,66 @@
+package upao.edu.pe.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import upao.edu.pe.util.CacheLruTtl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Caché del análisis predictivo de Gemini por RUC. Cada entrada guarda la huella (SHA-256) de los
+ * datos que se enviaron al modelo: mientras las estadísticas y los asuntos recientes no cambien, la
+ * huella coincide y se reutiliza el análisis; si cambian, la entrada se ignora y se vuelve a consultar.
+ * El TTL solo evita mantener indefinidamente un análisis que el modelo daría distinto con el tiempo.
+ */
+@Component
+public class AnalisisPredictivoCache {
+
+    private static final String TODOS_LOS_RUC = "";
+
+    private final CacheLruTtl<String, Entrada> analisis;
+
+    public AnalisisPredictivoCache(@Value("${dashboard.analisis-predictivo.max-entradas:500}") int maxEntradas,
+                                   @Value("${dashboard.analisis-predictivo.ttl-horas:24}") long ttlHoras) {
+        this.analisis = new CacheLruTtl<>(maxEntradas, ttlHoras * 3_600_000L);
+    }
+
+    /**
+     * @return Copia del análisis guardado para el RUC si se calculó con la misma huella, null en otro caso
+     */
+    public Map<String, Object> obtener(String ruc, String huella) {
+        Entrada entrada = analisis.obtener(clave(ruc));
+        if (entrada == null || !entrada.huella().equals(huella)) {
+            return null;
+        }
+        return new HashMap<>(entrada.analisis());
+    }
+
+    public void guardar(String ruc, String huella, Map<String, Object> resultado) {
+        analisis.guardar(clave(ruc), new Entrada(huella, Collections.unmodifiableMap(new HashMap<>(resultado))));
+    }
+
+    /**
+     * Huella hexadecimal de los datos que recibe el modelo
+     */
+    public static String huella(String datos) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(datos.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    private static String clave(String ruc) {
+        return ruc == null || ruc.isBlank() ? TODOS_LOS_RUC : ruc.trim();
+    }
+
+    private record Entrada(String huella, Map<String, Object> analisis) {
+    }
+}
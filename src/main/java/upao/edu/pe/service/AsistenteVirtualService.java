@@ -1,19 +1,25 @@
 package upao.edu.pe.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import upao.edu.pe.dto.AsistenteConsultaDTO;
 import upao.edu.pe.dto.response.AsistenteRespuestaDTO;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Servicio del Asistente Virtual Contable
@@ -24,13 +30,22 @@ import java.util.UUID;
 @Slf4j
 public class AsistenteVirtualService {
 
-    private final WebClient.Builder webClientBuilder;
-    
-    @Value("${gemini.api.key}")
-    private String apiKey;
-    
-    @Value("${gemini.api.url}")
-    private String apiUrl;
+    private final GeminiCliente geminiCliente;
+    private final LimitadorGemini limitador;
+
+    @Value("${gemini.rate.limit.espera-maxima-ms:10000}")
+    private long esperaMaximaCupoMs = 10000;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final Map<String, Object> CONFIGURACION_GENERACION = Map.of(
+        "temperature", 0.3,
+        "topK", 20,
+        "topP", 0.8,
+        "maxOutputTokens", 2048
+    );
+
+    private static final String MENSAJE_ERROR = "Lo siento, ocurrió un error procesando tu consulta. Por favor, intenta nuevamente.";
     
     private static final String PROMPT_SISTEMA = """
         Eres un Contador Público Colegiado especializado en tributación peruana y normativa SUNAT.
@@ -75,6 +90,47 @@ public class AsistenteVirtualService {
                 .doOnError(error -> log.error("❌ Error procesando consulta: {}", error.getMessage()));
     }
     
+    /**
+     * Procesa una consulta enviando la respuesta de Gemini por fragmentos a medida que se genera.
+     * Emite eventos "fragmento" ({"texto": ...}), un evento "fin" con la respuesta completa, el tiempo
+     * hasta el primer fragmento y el tiempo total, o un evento "error".
+     */
+    public Flux<ServerSentEvent<Object>> procesarConsultaEnFlujo(AsistenteConsultaDTO consulta) {
+        return Flux.defer(() -> {
+            long startTime = System.currentTimeMillis();
+            AtomicLong tiempoPrimerToken = new AtomicLong(-1);
+            StringBuilder respuestaCompleta = new StringBuilder();
+
+            Flux<ServerSentEvent<Object>> fragmentos = construirContexto(consulta)
+                    .flatMapMany(prompt -> reservarCupo(prompt)
+                            .thenMany(geminiCliente.generarEnFlujo(prompt, CONFIGURACION_GENERACION)))
+                    .map(this::extraerTextoDeFragmento)
+                    .filter(texto -> !texto.isEmpty())
+                    .doOnNext(texto -> {
+                        if (tiempoPrimerToken.compareAndSet(-1, System.currentTimeMillis() - startTime)) {
+                            log.info("⚡ Primer fragmento del asistente en {}ms", tiempoPrimerToken.get());
+                        }
+                        respuestaCompleta.append(texto);
+                    })
+                    .map(texto -> ServerSentEvent.<Object>builder(Map.of("texto", texto)).event("fragmento").build());
+
+            Mono<ServerSentEvent<Object>> fin = Mono.fromSupplier(() -> {
+                AsistenteRespuestaDTO respuesta = construirRespuesta(respuestaCompleta.toString(), startTime);
+                respuesta.setTiempoPrimerToken(tiempoPrimerToken.get() < 0 ? null : tiempoPrimerToken.get());
+                log.info("✅ Consulta en streaming completada: primer fragmento {}ms, total {}ms",
+                        respuesta.getTiempoPrimerToken(), respuesta.getTiempoRespuesta());
+                return ServerSentEvent.<Object>builder(respuesta).event("fin").build();
+            });
+
+            return fragmentos.concatWith(fin)
+                    .onErrorResume(error -> {
+                        log.error("❌ Error en consulta en streaming: {}", error.getMessage());
+                        return Mono.just(ServerSentEvent.<Object>builder(Map.of("mensaje", MENSAJE_ERROR))
+                                .event("error").build());
+                    });
+        });
+    }
+
     /**
      * Construye el contexto completo para la consulta
      */
@@ -106,34 +162,25 @@ public class AsistenteVirtualService {
      * Envía la consulta a Gemini AI
      */
     private Mono<String> enviarConsultaAGemini(String promptCompleto) {
-        Map<String, Object> requestBody = Map.of(
-            "contents", List.of(
-                Map.of(
-                    "parts", List.of(
-                        Map.of("text", promptCompleto)
-                    )
-                )
-            ),
-            "generationConfig", Map.of(
-                "temperature", 0.3,
-                "topK", 20,
-                "topP", 0.8,
-                "maxOutputTokens", 2048
-            )
-        );
-        
-        return webClientBuilder.build()
-                .post()
-                .uri(apiUrl + "?key=" + apiKey)
-                .header("Content-Type", "application/json")
-                .bodyValue(requestBody)
-                .retrieve()
-                .bodyToMono(Map.class)
+        Mono<String> llamada = geminiCliente.generar(promptCompleto, CONFIGURACION_GENERACION, Map.class)
                 .map(this::extraerRespuestaDeGemini)
                 .onErrorMap(error -> {
                     log.error("Error llamando a Gemini API: {}", error.getMessage());
                     return new RuntimeException("Error procesando consulta. Intente nuevamente.");
                 });
+        return reservarCupo(promptCompleto).then(llamada);
+    }
+
+    /**
+     * Reserva cupo en el limitador compartido de Gemini; la espera bloqueante corre en boundedElastic
+     */
+    private Mono<Void> reservarCupo(String promptCompleto) {
+        int tokens = LimitadorGemini.estimarTokens(promptCompleto);
+        return Mono.fromCallable(() -> limitador.acquire(tokens, Duration.ofMillis(esperaMaximaCupoMs)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(reservado -> reservado
+                        ? Mono.<Void>empty()
+                        : Mono.error(new IllegalStateException("Límite de consultas a Gemini alcanzado. Intente en unos segundos.")));
     }
     
     /**
@@ -157,6 +204,22 @@ public class AsistenteVirtualService {
         }
     }
     
+    /**
+     * Texto de un fragmento de streamGenerateContent; vacío si el fragmento solo trae metadatos
+     */
+    String extraerTextoDeFragmento(String fragmento) {
+        try {
+            JsonNode candidates = OBJECT_MAPPER.readTree(fragmento).path("candidates");
+            StringBuilder texto = new StringBuilder();
+            for (JsonNode part : candidates.path(0).path("content").path("parts")) {
+                texto.append(part.path("text").asText(""));
+            }
+            return texto.toString();
+        } catch (Exception e) {
+            throw new IllegalStateException("Fragmento inesperado de Gemini API", e);
+        }
+    }
+    
     /**
      * Construye la respuesta final del asistente
      */
@@ -0,0 +1,13 @@
+package upao.edu.pe.service;
+
+/**
+ * Se publica cuando cambian los mensajes de un buzón (sincronización, clasificación, marcas o etiquetas).
+ * Lo escucha DashboardCacheServicio para descartar los widgets calculados con los datos anteriores.
+ * @param ruc RUC afectado, o null si el cambio alcanza a todos los RUC
+ */
+public record BuzonModificadoEvento(String ruc) {
+
+    public static BuzonModificadoEvento todos() {
+        return new BuzonModificadoEvento(null);
+    }
+}
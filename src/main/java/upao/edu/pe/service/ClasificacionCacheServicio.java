@@ -0,0 +1,197 @@
+package upao.edu.pe.service;
+
+import ch.qos.logback.classic.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import upao.edu.pe.model.ClasificacionCache;
+import upao.edu.pe.repository.ClasificacionCacheRepositorio;
+import upao.edu.pe.util.CacheLruTtl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Caché de clasificaciones de Gemini por huella del asunto normalizado.
+ * Primer nivel en memoria (LRU/TTL) y segundo nivel en T_CLASIFICACION_CACHE, que sobrevive
+ * a reinicios y se comparte entre nodos. La clave es la huella más la versión del prompt: al cambiar
+ * la versión las entradas anteriores dejan de usarse, pero se conservan mientras algún nodo con esa
+ * versión siga actualizándolas y se eliminan tras gemini.cache.retencion-otras-versiones-dias.
+ */
+@Service
+public class ClasificacionCacheServicio {
+
+    private static final Logger log = (Logger) LoggerFactory.getLogger(ClasificacionCacheServicio.class);
+
+    private static final Pattern MARCAS_DIACRITICAS = Pattern.compile("\\p{M}+");
+    // Números de documento, códigos y series (0621, E001-123, N°12345...) se reemplazan por #
+    private static final Pattern TOKENS_CON_DIGITOS = Pattern.compile("[\\p{L}°º]*\\d[\\p{L}\\d°º]*");
+    private static final Pattern SECUENCIA_MASCARAS = Pattern.compile("#(?:[\\s./:-]*#)+");
+    private static final Pattern ESPACIOS = Pattern.compile("\\s+");
+
+    private final ClasificacionCacheRepositorio clasificacionCacheRepositorio;
+    private final CacheLruTtl<String, GeminiAIService.EmailAnalysisResult> memoria;
+
+    @Value("${gemini.cache.ttl-dias:30}")
+    private int ttlDias = 30;
+
+    @Value("${gemini.cache.retencion-otras-versiones-dias:7}")
+    private int retencionOtrasVersionesDias = 7;
+
+    private final AtomicLong aciertosMemoria = new AtomicLong();
+    private final AtomicLong aciertosBaseDatos = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+    private final AtomicLong escrituras = new AtomicLong();
+
+    public ClasificacionCacheServicio(ClasificacionCacheRepositorio clasificacionCacheRepositorio,
+                                      @Value("${gemini.cache.max-entradas:5000}") int maxEntradas,
+                                      @Value("${gemini.cache.ttl-memoria-minutos:60}") long ttlMemoriaMinutos) {
+        this.clasificacionCacheRepositorio = clasificacionCacheRepositorio;
+        this.memoria = new CacheLruTtl<>(maxEntradas, ttlMemoriaMinutos * 60_000L);
+    }
+
+    /**
+     * Minúsculas, sin tildes, con números y códigos enmascarados y espacios colapsados
+     */
+    public static String normalizarAsunto(String asunto) {
+        if (asunto == null) {
+            return "";
+        }
+        String texto = Normalizer.normalize(asunto, Normalizer.Form.NFD);
+        texto = MARCAS_DIACRITICAS.matcher(texto).replaceAll("").toLowerCase();
+        texto = TOKENS_CON_DIGITOS.matcher(texto).replaceAll("#");
+        texto = SECUENCIA_MASCARAS.matcher(texto).replaceAll("#");
+        return ESPACIOS.matcher(texto).replaceAll(" ").trim();
+    }
+
+    public static String huella(String asuntoNormalizado) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha.digest(asuntoNormalizado.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    /**
+     * Busca una clasificación vigente para el asunto, primero en memoria y luego en base de datos
+     *
+     * @return la clasificación o null si no hay una válida para la versión del prompt
+     */
+    public GeminiAIService.EmailAnalysisResult buscar(String asunto, String versionPrompt) {
+        String normalizado = normalizarAsunto(asunto);
+        if (normalizado.isEmpty()) {
+            return null;
+        }
+        String huella = huella(normalizado);
+        String claveMemoria = versionPrompt + ":" + huella;
+
+        GeminiAIService.EmailAnalysisResult enMemoria = memoria.obtener(claveMemoria);
+        if (enMemoria != null) {
+            aciertosMemoria.incrementAndGet();
+            return copiar(enMemoria);
+        }
+
+        try {
+            Optional<ClasificacionCache> guardada =
+                    clasificacionCacheRepositorio.findByVcHuellaAndVcVersionPrompt(huella, versionPrompt);
+            if (guardada.isPresent() && vigente(guardada.get())) {
+                GeminiAIService.EmailAnalysisResult resultado = aResultado(guardada.get());
+                memoria.guardar(claveMemoria, resultado);
+                aciertosBaseDatos.incrementAndGet();
+                return copiar(resultado);
+            }
+        } catch (Exception e) {
+            log.warn("⚠️ No se pudo consultar la caché de clasificaciones: {}", e.getMessage());
+        }
+
+        fallos.incrementAndGet();
+        return null;
+    }
+
+    public void guardar(String asunto, String versionPrompt, GeminiAIService.EmailAnalysisResult resultado) {
+        String normalizado = normalizarAsunto(asunto);
+        if (normalizado.isEmpty() || resultado == null) {
+            return;
+        }
+        String huella = huella(normalizado);
+        memoria.guardar(versionPrompt + ":" + huella, copiar(resultado));
+        try {
+            clasificacionCacheRepositorio.save(ClasificacionCache.builder()
+                    .vcHuella(huella)
+                    .vcAsuntoNormalizado(truncar(normalizado, 500))
+                    .vcVersionPrompt(versionPrompt)
+                    .vcClasificacion(resultado.getClasificacion())
+                    .vcEtiquetaCodigo(resultado.getEtiquetaCodigo())
+                    .vcEtiquetaNombre(resultado.getEtiquetaNombre())
+                    .vcRazon(truncar(resultado.getRazon(), 1000))
+                    .nuConfianza(resultado.getConfianza())
+                    .build());
+            escrituras.incrementAndGet();
+        } catch (Exception e) {
+            log.warn("⚠️ No se pudo persistir la clasificación en caché: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Elimina las entradas de otras versiones del prompt sin actualizar durante el periodo de retención.
+     * La memoria no se toca: su clave ya incluye la versión.
+     */
+    public int eliminarOtrasVersionesAntiguas(String versionPrompt) {
+        int eliminadas = clasificacionCacheRepositorio.eliminarOtrasVersionesAntesDe(
+                versionPrompt, LocalDateTime.now().minusDays(retencionOtrasVersionesDias));
+        if (eliminadas > 0) {
+            log.info("🧹 {} clasificaciones en caché de versiones anteriores del prompt eliminadas", eliminadas);
+        }
+        return eliminadas;
+    }
+
+    public Map<String, Object> obtenerEstadisticas() {
+        long hitsMemoria = aciertosMemoria.get();
+        long hitsBd = aciertosBaseDatos.get();
+        long misses = fallos.get();
+        long total = hitsMemoria + hitsBd + misses;
+
+        Map<String, Object> estadisticas = new HashMap<>();
+        estadisticas.put("aciertosMemoria", hitsMemoria);
+        estadisticas.put("aciertosBaseDatos", hitsBd);
+        estadisticas.put("fallos", misses);
+        estadisticas.put("escrituras", escrituras.get());
+        estadisticas.put("entradasEnMemoria", memoria.tamanio());
+        estadisticas.put("tasaAciertos", total == 0 ? 0.0 : (double) (hitsMemoria + hitsBd) / total);
+        return estadisticas;
+    }
+
+    private boolean vigente(ClasificacionCache entrada) {
+        return ttlDias <= 0 || entrada.getDtActualizacion() == null
+                || entrada.getDtActualizacion().isAfter(LocalDateTime.now().minusDays(ttlDias));
+    }
+
+    private GeminiAIService.EmailAnalysisResult aResultado(ClasificacionCache entrada) {
+        return GeminiAIService.EmailAnalysisResult.builder()
+                .clasificacion(entrada.getVcClasificacion())
+                .etiquetaCodigo(entrada.getVcEtiquetaCodigo())
+                .etiquetaNombre(entrada.getVcEtiquetaNombre())
+                .razon(entrada.getVcRazon())
+                .confianza(entrada.getNuConfianza() == null ? 0.8 : entrada.getNuConfianza())
+                .build();
+    }
+
+    private GeminiAIService.EmailAnalysisResult copiar(GeminiAIService.EmailAnalysisResult resultado) {
+        return new GeminiAIService.EmailAnalysisResult(resultado.getClasificacion(), resultado.getEtiquetaCodigo(),
+                resultado.getEtiquetaNombre(), resultado.getRazon(), resultado.getConfianza());
+    }
+
+    private String truncar(String texto, int max) {
+        return texto == null || texto.length() <= max ? texto : texto.substring(0, max);
+    }
+}
@@ -0,0 +1,296 @@
+package upao.edu.pe.service;
+
+import ch.qos.logback.classic.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import upao.edu.pe.config.EjecucionConfig;
+import upao.edu.pe.repository.MensajeSunatRepositorio;
+import upao.edu.pe.repository.MensajeSunatRepositorio.AsuntoMensaje;
+import upao.edu.pe.service.ResumenDiarioServicio.Aporte;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Clasificación automática de todos los mensajes por palabras clave del asunto.
+ * Los asuntos se leen por lotes ordenados por código (solo código, asunto y etiqueta), las reglas se
+ * evalúan en memoria y cada lote se escribe con una sentencia UPDATE ... IN por etiqueta destino,
+ * omitiendo los mensajes que ya tienen la etiqueta correcta. En la misma transacción el resumen diario
+ * recibe la diferencia de los mensajes cambiados, agrupada por fila.
+ */
+@Service
+public class ClasificacionMasivaServicio {
+
+    private static final Logger log = (Logger) LoggerFactory.getLogger(ClasificacionMasivaServicio.class);
+
+    static final String NO_CLASIFICADOS = "NO_CLASIFICADOS";
+
+    private final MensajeSunatRepositorio mensajeSunatRepositorio;
+    private final ResumenDiarioServicio resumenDiarioServicio;
+    private final TransactionTemplate transactionTemplate;
+    private final Executor ejecutorSincronizacion;
+
+    @Value("${clasificador.masivo.tamanio-lote:1000}")
+    private int tamanioLote = 1000;
+
+    // Con más mensajes que este umbral el endpoint responde de inmediato y la clasificación sigue en segundo plano
+    @Value("${clasificador.masivo.umbral-asincrono:20000}")
+    private long umbralAsincrono = 20000;
+
+    private final AtomicBoolean enCurso = new AtomicBoolean();
+    private final AtomicReference<Map<String, Object>> ultimaEjecucion = new AtomicReference<>();
+
+    public ClasificacionMasivaServicio(MensajeSunatRepositorio mensajeSunatRepositorio,
+                                       ResumenDiarioServicio resumenDiarioServicio,
+                                       TransactionTemplate transactionTemplate,
+                                       @Qualifier(EjecucionConfig.EJECUTOR_SINCRONIZACION) Executor ejecutorSincronizacion) {
+        this.mensajeSunatRepositorio = mensajeSunatRepositorio;
+        this.resumenDiarioServicio = resumenDiarioServicio;
+        this.transactionTemplate = transactionTemplate;
+        this.ejecutorSincronizacion = ejecutorSincronizacion;
+    }
+
+    public boolean requiereSegundoPlano() {
+        return mensajeSunatRepositorio.count() > umbralAsincrono;
+    }
+
+    /**
+     * Clasifica todos los mensajes en el hilo actual
+     * @return Contadores de la ejecución
+     * @throws IllegalStateException si ya hay una clasificación masiva en curso
+     */
+    public Map<String, Object> clasificar() {
+        if (!enCurso.compareAndSet(false, true)) {
+            throw new IllegalStateException("Ya hay una clasificación automática en curso");
+        }
+        try {
+            return ejecutar();
+        } finally {
+            enCurso.set(false);
+        }
+    }
+
+    /**
+     * Lanza la clasificación en el ejecutor de sincronización; el avance se consulta con obtenerEstado()
+     * @return false si ya había una en curso
+     */
+    public boolean iniciarEnSegundoPlano() {
+        if (!enCurso.compareAndSet(false, true)) {
+            return false;
+        }
+        ultimaEjecucion.set(new Conteo().resumen("EN_PROCESO"));
+        ejecutorSincronizacion.execute(() -> {
+            try {
+                ejecutar();
+            } catch (Exception e) {
+                log.error("❌ Error en clasificación automática en segundo plano: {}", e.getMessage());
+                Map<String, Object> fallo = new LinkedHashMap<>(ultimaEjecucion.get());
+                fallo.put("estado", "FALLIDO");
+                fallo.put("error", e.getMessage());
+                ultimaEjecucion.set(fallo);
+            } finally {
+                enCurso.set(false);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Contadores de la ejecución en curso o de la última terminada (vacío si nunca se ejecutó)
+     */
+    public Map<String, Object> obtenerEstado() {
+        Map<String, Object> estado = ultimaEjecucion.get();
+        return estado == null ? Map.of() : estado;
+    }
+
+    private Map<String, Object> ejecutar() {
+        long inicio = System.currentTimeMillis();
+        Conteo conteo = new Conteo();
+        long ultimoCodigo = Long.MIN_VALUE;
+        while (true) {
+            List<AsuntoMensaje> lote = mensajeSunatRepositorio.encontrarAsuntosDespuesDe(ultimoCodigo, PageRequest.of(0, tamanioLote));
+            if (lote.isEmpty()) {
+                break;
+            }
+            procesarLote(lote, conteo);
+            ultimoCodigo = lote.get(lote.size() - 1).getCodigo();
+            conteo.tiempoMs = System.currentTimeMillis() - inicio;
+            ultimaEjecucion.set(conteo.resumen("EN_PROCESO"));
+            if (lote.size() < tamanioLote) {
+                break;
+            }
+        }
+        conteo.tiempoMs = System.currentTimeMillis() - inicio;
+        Map<String, Object> resultado = conteo.resumen("COMPLETADO");
+        ultimaEjecucion.set(resultado);
+        log.info("🏷️ Clasificación automática: {} mensajes, {} etiquetas cambiadas en {} ms",
+                conteo.procesados, conteo.actualizados, conteo.tiempoMs);
+        return resultado;
+    }
+
+    private void procesarLote(List<AsuntoMensaje> lote, Conteo conteo) {
+        Map<String, Integer> porClasificacion = new HashMap<>();
+        Map<String, List<AsuntoMensaje>> cambiosPorEtiqueta = new HashMap<>();
+        int sinAsunto = 0;
+        for (AsuntoMensaje mensaje : lote) {
+            String asunto = mensaje.getAsunto();
+            if (asunto == null || asunto.trim().isEmpty()) {
+                sinAsunto++;
+                continue;
+            }
+            String clasificacion = clasificarPorPalabrasClave(asunto);
+            porClasificacion.merge(clasificacion, 1, Integer::sum);
+            String codigoEtiqueta = codigoEtiqueta(clasificacion);
+            if (!codigoEtiqueta.equals(mensaje.getEtiqueta())) {
+                cambiosPorEtiqueta.computeIfAbsent(codigoEtiqueta, k -> new ArrayList<>()).add(mensaje);
+            }
+        }
+
+        conteo.procesados += lote.size();
+        conteo.sumar(NO_CLASIFICADOS, sinAsunto);
+        try {
+            Integer actualizados = transactionTemplate.execute(estado -> aplicarCambios(cambiosPorEtiqueta));
+            conteo.actualizados += actualizados == null ? 0 : actualizados;
+            conteo.exitosos += lote.size() - sinAsunto;
+            porClasificacion.forEach(conteo::sumar);
+        } catch (Exception e) {
+            log.error("Error al actualizar el lote de mensajes desde el código {}: {}", lote.get(0).getCodigo(), e.getMessage());
+            conteo.sumar(NO_CLASIFICADOS, lote.size() - sinAsunto);
+        }
+    }
+
+    /**
+     * Aplica los UPDATE ... IN del lote y su diferencia en el resumen diario (dentro de la transacción del lote)
+     */
+    private int aplicarCambios(Map<String, List<AsuntoMensaje>> cambiosPorEtiqueta) {
+        int actualizados = 0;
+        for (Map.Entry<String, List<AsuntoMensaje>> cambio : cambiosPorEtiqueta.entrySet()) {
+            List<AsuntoMensaje> mensajes = cambio.getValue();
+            actualizados += mensajeSunatRepositorio.actualizarEtiquetaEnLote(cambio.getKey(),
+                    mensajes.stream().map(AsuntoMensaje::getCodigo).toList());
+            resumenDiarioServicio.cambiarEtiqueta(mensajes.stream().map(Aporte::de).toList(), cambio.getKey());
+        }
+        return actualizados;
+    }
+
+    /**
+     * Clasificación por palabras clave del asunto (la misma que usaba el endpoint de clasificación automática)
+     */
+    static String clasificarPorPalabrasClave(String asunto) {
+        String asuntoLower = asunto.toLowerCase();
+
+        // MUY IMPORTANTE - Pagos, ordenes, vencimientos críticos
+        if (asuntoLower.contains("orden de pago") ||
+            asuntoLower.contains("pago de") ||
+            asuntoLower.contains("vencimiento") ||
+            asuntoLower.contains("vence") ||
+            asuntoLower.contains("deuda") ||
+            asuntoLower.contains("cobranza") ||
+            asuntoLower.contains("intimación") ||
+            asuntoLower.contains("embargo") ||
+            asuntoLower.contains("multa") ||
+            asuntoLower.contains("sanción") ||
+            asuntoLower.contains("requerimiento") ||
+            asuntoLower.contains("urgente")) {
+            return "MUY_IMPORTANTE";
+        }
+
+        // IMPORTANTE - Declaraciones, autorizaciones, certificados
+        if (asuntoLower.contains("declaración") ||
+            asuntoLower.contains("declarar") ||
+            asuntoLower.contains("autorización") ||
+            asuntoLower.contains("certificado") ||
+            asuntoLower.contains("comprobante") ||
+            asuntoLower.contains("validación") ||
+            asuntoLower.contains("verificación") ||
+            asuntoLower.contains("constancia") ||
+            asuntoLower.contains("resolución") ||
+            asuntoLower.contains("notificación") ||
+            asuntoLower.contains("renta") ||
+            asuntoLower.contains("igv") ||
+            asuntoLower.contains("essalud") ||
+            asuntoLower.contains("afp")) {
+            return "IMPORTANTE";
+        }
+
+        // INFORMATIVO - Formularios, cambios, actualizaciones
+        if (asuntoLower.contains("formulario") ||
+            asuntoLower.contains("cambio") ||
+            asuntoLower.contains("modificación") ||
+            asuntoLower.contains("actualización") ||
+            asuntoLower.contains("nuevo") ||
+            asuntoLower.contains("nueva") ||
+            asuntoLower.contains("información") ||
+            asuntoLower.contains("comunicado") ||
+            asuntoLower.contains("aviso") ||
+            asuntoLower.contains("procedimiento") ||
+            asuntoLower.contains("sistema") ||
+            asuntoLower.contains("plataforma") ||
+            asuntoLower.contains("servicio")) {
+            return "INFORMATIVO";
+        }
+
+        // Si no coincide con ninguna categoría específica, es RECURRENTE
+        return "RECURRENTE";
+    }
+
+    /**
+     * Código de etiqueta correspondiente a la clasificación
+     */
+    static String codigoEtiqueta(String clasificacion) {
+        switch (clasificacion) {
+            case "MUY_IMPORTANTE":
+                return "10"; // Etiqueta roja
+            case "IMPORTANTE":
+                return "11"; // Etiqueta amarilla
+            case "INFORMATIVO":
+                return "13"; // Etiqueta azul
+            case "RECURRENTE":
+            default:
+                return "14"; // Etiqueta verde
+        }
+    }
+
+    /**
+     * Contadores de una ejecución (solo los modifica el hilo que clasifica; se publican como copia)
+     */
+    private static class Conteo {
+        private final Map<String, Integer> contadores = new LinkedHashMap<>();
+        private int procesados;
+        private int exitosos;
+        private int actualizados;
+        private long tiempoMs;
+
+        private Conteo() {
+            for (String clasificacion : List.of("MUY_IMPORTANTE", "IMPORTANTE", "INFORMATIVO", "RECURRENTE", NO_CLASIFICADOS)) {
+                contadores.put(clasificacion, 0);
+            }
+        }
+
+        private void sumar(String clasificacion, int cantidad) {
+            contadores.merge(clasificacion, cantidad, Integer::sum);
+        }
+
+        private Map<String, Object> resumen(String estado) {
+            Map<String, Object> resumen = new LinkedHashMap<>();
+            resumen.put("estado", estado);
+            resumen.put("total_procesados", procesados);
+            resumen.put("exitosos", exitosos);
+            resumen.put("errores", procesados - exitosos);
+            resumen.put("etiquetas_actualizadas", actualizados);
+            resumen.put("contadores_por_clasificacion", new LinkedHashMap<>(contadores));
+            resumen.put("tiempo_ms", tiempoMs);
+            return resumen;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package upao.edu.pe.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Filtro en memoria de códigos de mensaje ya conocidos por RUC.
+ * Permite que las sincronizaciones repetidas descarten sin ir a base de datos
+ * los códigos que ya se vieron en este proceso.
+ */
+@Component
+public class CodigosVistosPorRuc {
+
+    @Value("${sunat.sync.codigos-vistos.max-por-ruc:100000}")
+    private int maximoPorRuc = 100000;
+
+    private final Map<String, ConjuntoLong> codigosPorRuc = new ConcurrentHashMap<>();
+
+    /**
+     * Devuelve los códigos de la lista que ya se registraron para el RUC
+     */
+    public Set<Long> filtrarConocidos(String ruc, Collection<Long> codigos) {
+        Set<Long> conocidos = new HashSet<>();
+        ConjuntoLong conjunto = codigosPorRuc.get(ruc);
+        if (conjunto == null) {
+            return conocidos;
+        }
+        synchronized (conjunto) {
+            for (Long codigo : codigos) {
+                if (codigo != null && conjunto.contiene(codigo)) {
+                    conocidos.add(codigo);
+                }
+            }
+        }
+        return conocidos;
+    }
+
+    /**
+     * Marca los códigos como conocidos para el RUC
+     */
+    public void registrar(String ruc, Collection<Long> codigos) {
+        if (ruc == null || codigos == null || codigos.isEmpty()) {
+            return;
+        }
+        ConjuntoLong conjunto = codigosPorRuc.computeIfAbsent(ruc, k -> new ConjuntoLong());
+        synchronized (conjunto) {
+            // Al llegar al límite se reinicia: el filtro es solo un atajo y la BD sigue siendo la fuente de verdad
+            if (conjunto.tamanio() + codigos.size() > maximoPorRuc) {
+                conjunto.limpiar();
+            }
+            for (Long codigo : codigos) {
+                if (codigo != null) {
+                    conjunto.agregar(codigo);
+                }
+            }
+        }
+    }
+
+    public int cantidadConocidos(String ruc) {
+        ConjuntoLong conjunto = codigosPorRuc.get(ruc);
+        if (conjunto == null) {
+            return 0;
+        }
+        synchronized (conjunto) {
+            return conjunto.tamanio();
+        }
+    }
+
+    /**
+     * Conjunto de long primitivos con direccionamiento abierto (evita el boxing de HashSet<Long>).
+     * No es thread-safe: el acceso se sincroniza desde fuera.
+     */
+    static class ConjuntoLong {
+        private static final long VACIO = 0L;
+
+        private long[] tabla = new long[64];
+        private int tamanio;
+        private boolean contieneCero;
+
+        boolean contiene(long valor) {
+            if (valor == VACIO) {
+                return contieneCero;
+            }
+            int mascara = tabla.length - 1;
+            int i = indice(valor, mascara);
+            while (tabla[i] != VACIO) {
+                if (tabla[i] == valor) {
+                    return true;
+                }
+                i = (i + 1) & mascara;
+            }
+            return false;
+        }
+
+        boolean agregar(long valor) {
+            if (valor == VACIO) {
+                if (contieneCero) {
+                    return false;
+                }
+                contieneCero = true;
+                tamanio++;
+                return true;
+            }
+            // Factor de carga máximo de 0.5 para mantener las secuencias de sondeo cortas
+            if ((tamanio + 1) * 2 > tabla.length) {
+                redimensionar();
+            }
+            int mascara = tabla.length - 1;
+            int i = indice(valor, mascara);
+            while (tabla[i] != VACIO) {
+                if (tabla[i] == valor) {
+                    return false;
+                }
+                i = (i + 1) & mascara;
+            }
+            tabla[i] = valor;
+            tamanio++;
+            return true;
+        }
+
+        int tamanio() {
+            return tamanio;
+        }
+
+        void limpiar() {
+            tabla = new long[64];
+            tamanio = 0;
+            contieneCero = false;
+        }
+
+        private void redimensionar() {
+            long[] anterior = tabla;
+            tabla = new long[anterior.length * 2];
+            int mascara = tabla.length - 1;
+            for (long valor : anterior) {
+                if (valor != VACIO) {
+                    int i = indice(valor, mascara);
+                    while (tabla[i] != VACIO) {
+                        i = (i + 1) & mascara;
+                    }
+                    tabla[i] = valor;
+                }
+            }
+        }
+
+        private static int indice(long valor, int mascara) {
+            long h = valor * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mascara;
+        }
+    }
+}
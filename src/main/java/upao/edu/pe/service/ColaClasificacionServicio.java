@@ -0,0 +1,216 @@
+package upao.edu.pe.service;
+
+import ch.qos.logback.classic.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import upao.edu.pe.model.ColaClasificacion;
+import upao.edu.pe.model.MensajeSunat;
+import upao.edu.pe.repository.ColaClasificacionRepositorio;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Cola de mensajes cuya clasificación con Gemini se pospone cuando no hay cuota, en lugar de dejarlos
+ * con la clasificación por defecto. Cada mensaje está una sola vez (la clave es su código).
+ * Prioridad ALTA: urgentes y reglas prioritarias (embargo, cobranza, fiscalización...); MEDIA: reglas
+ * muy importantes o importantes; BAJA: el resto. DT_ORDEN es la fecha de ingreso adelantada
+ * gemini.cola.envejecimiento-minutos por cada nivel de prioridad, así que un mensaje BAJA que espera
+ * dos periodos de envejecimiento ya no lo adelanta ninguno ALTA que llegue después.
+ * La cola la vacía ProcesadorColaClasificacion.
+ */
+@Service
+public class ColaClasificacionServicio {
+
+    private static final Logger log = (Logger) LoggerFactory.getLogger(ColaClasificacionServicio.class);
+
+    // Ventana sobre la que se calcula el ritmo de vaciado
+    private static final int MINUTOS_RITMO = 10;
+
+    private final ColaClasificacionRepositorio colaRepositorio;
+    private final MotorReglasClasificacion motorReglas;
+
+    @Value("${gemini.cola.envejecimiento-minutos:30}")
+    private long envejecimientoMinutos = 30;
+
+    @Value("${gemini.cola.max-intentos:5}")
+    private int maxIntentos = 5;
+
+    // Tiempo máximo que un mensaje puede seguir EN_PROCESO antes de considerarlo abandonado
+    @Value("${gemini.cola.arriendo-segundos:600}")
+    private long arriendoSegundos = 600;
+
+    public ColaClasificacionServicio(ColaClasificacionRepositorio colaRepositorio, MotorReglasClasificacion motorReglas) {
+        this.colaRepositorio = colaRepositorio;
+        this.motorReglas = motorReglas;
+    }
+
+    /**
+     * Los mensajes que quedaron EN_PROCESO por una caída vuelven a estar pendientes una vez vencido
+     * su arriendo; los que otros nodos vivos están clasificando no se tocan
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${gemini.cola.intervalo-recuperacion-ms:60000}",
+            initialDelayString = "${gemini.cola.intervalo-recuperacion-ms:60000}")
+    public void recuperarEnProceso() {
+        int liberados = colaRepositorio.liberarEnProcesoVencidos(LocalDateTime.now().minusSeconds(arriendoSegundos));
+        if (liberados > 0) {
+            log.info("🔄 {} mensajes en clasificación con el arriendo vencido vuelven a la cola", liberados);
+        }
+    }
+
+    /**
+     * Encola (o vuelve a dejar pendientes) los mensajes. Un mensaje ya atendido entra con un orden
+     * nuevo; uno que sigue en la cola conserva su antigüedad.
+     *
+     * @param porError true si Gemini falló (cuenta como intento), false si solo faltó cuota
+     * @return cantidad de mensajes pendientes tras la operación
+     */
+    public int encolar(Collection<MensajeSunat> mensajes, boolean porError) {
+        Map<Long, MensajeSunat> porCodigo = mensajes.stream()
+                .filter(mensaje -> mensaje.getNuCodigoMensaje() != null)
+                .collect(Collectors.toMap(MensajeSunat::getNuCodigoMensaje, Function.identity(),
+                        (primero, repetido) -> primero, LinkedHashMap::new));
+        if (porCodigo.isEmpty()) {
+            return 0;
+        }
+
+        LocalDateTime ahora = LocalDateTime.now();
+        Map<Long, ColaClasificacion> existentes = colaRepositorio.findAllById(porCodigo.keySet()).stream()
+                .collect(Collectors.toMap(ColaClasificacion::getNuCodigoMensaje, Function.identity()));
+        List<ColaClasificacion> guardar = new ArrayList<>();
+        int pendientes = 0;
+        for (MensajeSunat mensaje : porCodigo.values()) {
+            int prioridad = prioridad(mensaje);
+            ColaClasificacion entrada = existentes.get(mensaje.getNuCodigoMensaje());
+            if (entrada == null || ColaClasificacion.COMPLETADO.equals(entrada.getVcEstado())
+                    || ColaClasificacion.FALLIDO.equals(entrada.getVcEstado())) {
+                entrada = ColaClasificacion.builder()
+                        .nuCodigoMensaje(mensaje.getNuCodigoMensaje())
+                        .vcNumeroRuc(mensaje.getVcNumeroRuc())
+                        .nuPrioridad(prioridad)
+                        .dtOrden(orden(ahora, prioridad))
+                        .dtCreacion(ahora)
+                        .build();
+            }
+            entrada.setVcEstado(ColaClasificacion.PENDIENTE);
+            if (porError) {
+                entrada.setNuIntentos(entrada.getNuIntentos() + 1);
+                if (entrada.getNuIntentos() >= maxIntentos) {
+                    entrada.setVcEstado(ColaClasificacion.FALLIDO);
+                    log.error("❌ Mensaje {} sale de la cola de clasificación tras {} errores de Gemini",
+                            entrada.getNuCodigoMensaje(), entrada.getNuIntentos());
+                }
+            }
+            if (ColaClasificacion.PENDIENTE.equals(entrada.getVcEstado())) {
+                pendientes++;
+            }
+            guardar.add(entrada);
+        }
+        colaRepositorio.saveAll(guardar);
+        log.info("📥 {} mensajes en cola para clasificar con Gemini cuando haya cuota", pendientes);
+        return pendientes;
+    }
+
+    /**
+     * Toma los siguientes mensajes de la cola y los marca EN_PROCESO
+     * @return códigos reclamados, en orden de atención
+     */
+    public List<Long> reclamar(int cantidad) {
+        List<Long> codigos = colaRepositorio.encontrarSiguientes(PageRequest.of(0, Math.max(1, cantidad))).stream()
+                .map(ColaClasificacion::getNuCodigoMensaje)
+                .toList();
+        if (!codigos.isEmpty()) {
+            colaRepositorio.marcarEnProceso(codigos, LocalDateTime.now());
+        }
+        return codigos;
+    }
+
+    public void completar(Collection<Long> codigos) {
+        colaRepositorio.completar(codigos, LocalDateTime.now());
+    }
+
+    public void liberar(Collection<Long> codigos) {
+        colaRepositorio.liberar(codigos);
+    }
+
+    /**
+     * Borra los completados anteriores al plazo indicado
+     */
+    public int purgarCompletados(Duration antiguedad) {
+        return colaRepositorio.eliminarCompletadosAntesDe(LocalDateTime.now().minus(antiguedad));
+    }
+
+    int prioridad(MensajeSunat mensaje) {
+        if (mensaje.getNuUrgente() != null && mensaje.getNuUrgente() == 1) {
+            return ColaClasificacion.PRIORIDAD_ALTA;
+        }
+        MotorReglasClasificacion.ResultadoReglas reglas = motorReglas.evaluar(mensaje.getVcAsunto());
+        if (reglas.prioritaria()) {
+            return ColaClasificacion.PRIORIDAD_ALTA;
+        }
+        if (reglas.confianza() > 0 && (MotorReglasClasificacion.MUY_IMPORTANTE.equals(reglas.clasificacion())
+                || MotorReglasClasificacion.IMPORTANTE.equals(reglas.clasificacion()))) {
+            return ColaClasificacion.PRIORIDAD_MEDIA;
+        }
+        return ColaClasificacion.PRIORIDAD_BAJA;
+    }
+
+    LocalDateTime orden(LocalDateTime ingreso, int prioridad) {
+        return ingreso.minusMinutes(prioridad * envejecimientoMinutos);
+    }
+
+    /**
+     * Profundidad de la cola por estado y prioridad, ritmo de vaciado y tiempo estimado para vaciarla
+     */
+    public Map<String, Object> obtenerEstado() {
+        Map<String, Long> porEstado = new HashMap<>();
+        for (Object[] fila : colaRepositorio.contarPorEstado()) {
+            porEstado.put((String) fila[0], ((Number) fila[1]).longValue());
+        }
+        Map<String, Long> porPrioridad = new LinkedHashMap<>();
+        porPrioridad.put("ALTA", 0L);
+        porPrioridad.put("MEDIA", 0L);
+        porPrioridad.put("BAJA", 0L);
+        for (Object[] fila : colaRepositorio.contarPendientesPorPrioridad()) {
+            int prioridad = ((Number) fila[0]).intValue();
+            String nombre = prioridad >= ColaClasificacion.PRIORIDAD_ALTA ? "ALTA"
+                    : prioridad == ColaClasificacion.PRIORIDAD_MEDIA ? "MEDIA" : "BAJA";
+            porPrioridad.merge(nombre, ((Number) fila[1]).longValue(), Long::sum);
+        }
+
+        LocalDateTime ahora = LocalDateTime.now();
+        long pendientes = porEstado.getOrDefault(ColaClasificacion.PENDIENTE, 0L);
+        long completadosRecientes = colaRepositorio.contarCompletadosDesde(ahora.minusMinutes(MINUTOS_RITMO));
+        double ritmoPorMinuto = Math.round(completadosRecientes * 10.0 / MINUTOS_RITMO) / 10.0;
+
+        Map<String, Object> estado = new LinkedHashMap<>();
+        estado.put("pendientes", pendientes);
+        estado.put("enProceso", porEstado.getOrDefault(ColaClasificacion.EN_PROCESO, 0L));
+        estado.put("completados", porEstado.getOrDefault(ColaClasificacion.COMPLETADO, 0L));
+        estado.put("fallidos", porEstado.getOrDefault(ColaClasificacion.FALLIDO, 0L));
+        estado.put("pendientesPorPrioridad", porPrioridad);
+        estado.put("completadosUltimos" + MINUTOS_RITMO + "Minutos", completadosRecientes);
+        estado.put("ritmoPorMinuto", ritmoPorMinuto);
+        estado.put("minutosEstimados", pendientes == 0 ? 0.0
+                : ritmoPorMinuto == 0 ? null : Math.round(pendientes * 10.0 / ritmoPorMinuto) / 10.0);
+        estado.put("pendienteMasAntiguo", colaRepositorio
+                .findFirstByVcEstadoOrderByDtCreacionAsc(ColaClasificacion.PENDIENTE)
+                .map(ColaClasificacion::getDtCreacion)
+                .orElse(null));
+        return estado;
+    }
+}
@@ -0,0 +1,221 @@
+package upao.edu.pe.service;
+
+import ch.qos.logback.classic.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import upao.edu.pe.repository.CuotaGeminiRepositorio;
+import upao.edu.pe.repository.NodoGeminiRepositorio;
+
+import java.net.InetAddress;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cuota de Gemini compartida entre las instancias de la aplicación (gemini.cuota-compartida.habilitada).
+ * Cada nodo arrienda de T_CUOTA_GEMINI lotes de peticiones y tokens de la ventana del minuto actual y
+ * los consume en memoria; el UPDATE que concede un arriendo solo suma si el total del clúster sigue
+ * dentro de gemini.rate.limit.per.minute y gemini.rate.limit.tokens.per.minute, que en este modo son
+ * los límites de la API key. El tamaño del lote es la cuota dividida entre los nodos vivos (los que
+ * arrendaron en el último minuto) y entre los arriendos por minuto, así que se adapta al escalar.
+ * Lo que un nodo no consume se pierde al cerrar la ventana; las ventanas usan el reloj de cada nodo.
+ */
+@Component
+public class CuotaGeminiCompartida {
+
+    private static final Logger log = (Logger) LoggerFactory.getLogger(CuotaGeminiCompartida.class);
+
+    private static final long MS_POR_VENTANA = 60_000L;
+    // Ventanas anteriores que se conservan para diagnóstico
+    private static final int VENTANAS_CONSERVADAS = 5;
+
+    private final CuotaGeminiRepositorio cuotaRepositorio;
+    private final NodoGeminiRepositorio nodoRepositorio;
+    private final Clock reloj;
+
+    @Value("${gemini.cuota-compartida.habilitada:false}")
+    private boolean habilitada = false;
+
+    @Value("${gemini.rate.limit.per.minute:12}")
+    private int maxPeticionesPorMinuto = 12;
+
+    @Value("${gemini.rate.limit.tokens.per.minute:1000000}")
+    private long maxTokensPorMinuto = 1_000_000;
+
+    // Más arriendos por minuto dejan menos cuota ociosa en cada nodo a cambio de más escrituras
+    @Value("${gemini.cuota-compartida.arriendos-por-minuto:10}")
+    private int arriendosPorMinuto = 10;
+
+    @Value("${gemini.cuota-compartida.nodo-vivo-segundos:60}")
+    private long nodoVivoSegundos = 60;
+
+    // Vacío: nombre del host más un sufijo aleatorio
+    @Value("${gemini.cuota-compartida.nodo:}")
+    private String nodo = "";
+
+    private final AtomicReference<Arriendo> arriendo = new AtomicReference<>(new Arriendo(-1, 0, 0));
+    private final ReentrantLock candadoArriendo = new ReentrantLock();
+    private volatile long ventanaPreparada = -1;
+    private volatile long nodosVivos = 1;
+
+    @Autowired
+    public CuotaGeminiCompartida(CuotaGeminiRepositorio cuotaRepositorio, NodoGeminiRepositorio nodoRepositorio) {
+        this(cuotaRepositorio, nodoRepositorio, Clock.systemUTC());
+    }
+
+    CuotaGeminiCompartida(CuotaGeminiRepositorio cuotaRepositorio, NodoGeminiRepositorio nodoRepositorio, Clock reloj) {
+        this.cuotaRepositorio = cuotaRepositorio;
+        this.nodoRepositorio = nodoRepositorio;
+        this.reloj = reloj;
+    }
+
+    public boolean isHabilitada() {
+        return habilitada;
+    }
+
+    /**
+     * Consume una petición y los tokens indicados del arriendo local, arrendando otro lote si no alcanza.
+     * Si la base de datos no responde se sigue solo con el límite local del nodo.
+     * @return 0 si se consumió, o los nanosegundos hasta la próxima ventana si el clúster agotó la cuota
+     */
+    public long consumir(long tokens) {
+        long ventana = reloj.millis() / MS_POR_VENTANA;
+        if (descontar(ventana, tokens)) {
+            return 0;
+        }
+        candadoArriendo.lock();
+        try {
+            // Otro hilo pudo renovar el arriendo mientras se esperaba el candado
+            if (descontar(ventana, tokens)) {
+                return 0;
+            }
+            if (arrendar(ventana, tokens) && descontar(ventana, tokens)) {
+                return 0;
+            }
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(1, (ventana + 1) * MS_POR_VENTANA - reloj.millis()));
+        } catch (DataAccessException e) {
+            log.warn("⚠️ No se pudo arrendar cuota compartida de Gemini, se usa solo el límite local: {}", e.getMessage());
+            return 0;
+        } finally {
+            candadoArriendo.unlock();
+        }
+    }
+
+    private boolean descontar(long ventana, long tokens) {
+        while (true) {
+            Arriendo actual = arriendo.get();
+            if (actual.ventana() != ventana || actual.peticiones() < 1 || actual.tokens() < tokens) {
+                return false;
+            }
+            if (arriendo.compareAndSet(actual, new Arriendo(ventana, actual.peticiones() - 1, actual.tokens() - tokens))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Arrienda la parte de este nodo; si no cabe, intenta con lo justo para la petición en curso
+     */
+    private boolean arrendar(long ventana, long tokens) {
+        LocalDateTime ahora = LocalDateTime.now(reloj);
+        registrarLatido(ahora);
+        prepararVentana(ventana, ahora);
+        nodosVivos = Math.max(1, nodoRepositorio.contarVivosDesde(ahora.minusSeconds(nodoVivoSegundos)));
+
+        long divisor = nodosVivos * Math.max(1, arriendosPorMinuto);
+        long peticiones = Math.max(1, maxPeticionesPorMinuto / divisor);
+        long tokensLote = Math.max(tokens, maxTokensPorMinuto / divisor);
+        if (cuotaRepositorio.arrendar(ventana, peticiones, tokensLote, maxPeticionesPorMinuto, maxTokensPorMinuto) == 0) {
+            peticiones = 1;
+            tokensLote = tokens;
+            if (cuotaRepositorio.arrendar(ventana, peticiones, tokensLote, maxPeticionesPorMinuto, maxTokensPorMinuto) == 0) {
+                log.debug("⏳ Cuota de Gemini del clúster agotada en la ventana {}", ventana);
+                return false;
+            }
+        }
+        long peticionesConcedidas = peticiones;
+        long tokensConcedidos = tokensLote;
+        arriendo.updateAndGet(actual -> actual.ventana() == ventana
+                ? new Arriendo(ventana, actual.peticiones() + peticionesConcedidas, actual.tokens() + tokensConcedidos)
+                : new Arriendo(ventana, peticionesConcedidas, tokensConcedidos));
+        log.debug("🎟️ Arriendo de cuota Gemini: {} peticiones y {} tokens ({} nodos vivos)", peticiones, tokensLote, nodosVivos);
+        return true;
+    }
+
+    private void registrarLatido(LocalDateTime ahora) {
+        String id = identificadorNodo();
+        if (nodoRepositorio.registrarLatido(id, ahora) == 0) {
+            try {
+                nodoRepositorio.registrarNodo(id, ahora);
+            } catch (DataIntegrityViolationException e) {
+                nodoRepositorio.registrarLatido(id, ahora);
+            }
+        }
+    }
+
+    /**
+     * Crea la fila de la ventana una vez por minuto y de paso limpia ventanas y nodos viejos
+     */
+    private void prepararVentana(long ventana, LocalDateTime ahora) {
+        if (ventanaPreparada == ventana) {
+            return;
+        }
+        try {
+            cuotaRepositorio.crearVentana(ventana);
+        } catch (DataIntegrityViolationException e) {
+            // Otro nodo la creó al mismo tiempo
+        }
+        cuotaRepositorio.eliminarAnterioresA(ventana - VENTANAS_CONSERVADAS);
+        nodoRepositorio.eliminarInactivos(ahora.minusDays(1));
+        ventanaPreparada = ventana;
+    }
+
+    String identificadorNodo() {
+        if (nodo == null || nodo.isBlank()) {
+            nodo = generarIdentificadorNodo();
+        }
+        return nodo;
+    }
+
+    /**
+     * Nombre del host más un sufijo aleatorio, distinto en cada arranque de la aplicación
+     */
+    static String generarIdentificadorNodo() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "nodo";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    /**
+     * Estado del modo compartido para /gemini/status
+     */
+    public Map<String, Object> obtenerEstado() {
+        Map<String, Object> estado = new LinkedHashMap<>();
+        estado.put("habilitada", habilitada);
+        if (habilitada) {
+            Arriendo actual = arriendo.get();
+            estado.put("nodo", identificadorNodo());
+            estado.put("nodosVivos", nodosVivos);
+            estado.put("ventana", actual.ventana());
+            estado.put("peticionesArrendadas", actual.peticiones());
+            estado.put("tokensArrendados", actual.tokens());
+        }
+        return estado;
+    }
+
+    private record Arriendo(long ventana, long peticiones, long tokens) {
+    }
+}
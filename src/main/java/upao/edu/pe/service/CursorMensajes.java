@@ -0,0 +1,43 @@
+package upao.edu.pe.service;
+
+import upao.edu.pe.model.MensajeSunat;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Posición en el listado de mensajes ordenado por (DT_FECHA_PUBLICA DESC, NU_CODIGO_MENSAJE DESC),
+ * con los mensajes sin fecha al final. Al cliente se entrega como texto opaco (Base64 URL).
+ * @param fecha Fecha de publicación del último mensaje entregado, null si ya se está en el tramo sin fecha
+ * @param codigo Código del último mensaje entregado
+ */
+public record CursorMensajes(LocalDateTime fecha, long codigo) {
+
+    private static final String SIN_FECHA = "-";
+
+    public static CursorMensajes despuesDe(MensajeSunat mensaje) {
+        return new CursorMensajes(mensaje.getDtFechaPublica(), mensaje.getNuCodigoMensaje());
+    }
+
+    public String codificar() {
+        String texto = (fecha == null ? SIN_FECHA : fecha.toString()) + "|" + codigo;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(texto.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException si el texto no es un cursor emitido por codificar()
+     */
+    public static CursorMensajes decodificar(String cursor) {
+        try {
+            String texto = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separador = texto.lastIndexOf('|');
+            String fecha = texto.substring(0, separador);
+            return new CursorMensajes(SIN_FECHA.equals(fecha) ? null : LocalDateTime.parse(fecha),
+                    Long.parseLong(texto.substring(separador + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Cursor inválido");
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package upao.edu.pe.service;
+
+import ch.qos.logback.classic.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import upao.edu.pe.util.CacheLruTtl;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Caché de resultados del dashboard por (RUC, widget, parámetros), delante de DashboardService.
+ * Las entradas de un RUC se descartan cuando se publica un BuzonModificadoEvento para ese RUC
+ * (después del commit de la transacción que lo publicó); las de "todos los RUC" se descartan con
+ * cualquier evento. El TTL solo acota widgets que dependen de la fecha actual.
+ */
+@Service
+public class DashboardCacheServicio {
+
+    private static final Logger log = (Logger) LoggerFactory.getLogger(DashboardCacheServicio.class);
+
+    private final CacheLruTtl<Clave, Object> resultados;
+
+    // Cambia en cada invalidación: un cálculo que empezó antes no se guarda con datos viejos
+    private final AtomicLong generacion = new AtomicLong();
+
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+    private final AtomicLong invalidaciones = new AtomicLong();
+
+    public DashboardCacheServicio(@Value("${dashboard.cache.max-entradas:1000}") int maxEntradas,
+                                  @Value("${dashboard.cache.ttl-minutos:15}") long ttlMinutos) {
+        this.resultados = new CacheLruTtl<>(maxEntradas, ttlMinutos * 60_000L);
+    }
+
+    /**
+     * Devuelve el resultado guardado o lo calcula y lo guarda
+     * @param ruc RUC consultado (vacío o null = todos los RUC)
+     * @param widget Nombre del widget
+     * @param calculo Cálculo en DashboardService; si lanza excepción no se guarda nada
+     * @param parametros Parámetros de la consulta que cambian el resultado
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T obtener(String ruc, String widget, Supplier<T> calculo, Object... parametros) {
+        Clave clave = new Clave(normalizarRuc(ruc), widget, Arrays.asList(parametros));
+        Object guardado = resultados.obtener(clave);
+        if (guardado != null) {
+            aciertos.incrementAndGet();
+            return (T) guardado;
+        }
+        fallos.incrementAndGet();
+        long generacionInicial = generacion.get();
+        T resultado = calculo.get();
+        if (resultado != null && generacion.get() == generacionInicial) {
+            resultados.guardar(clave, resultado);
+        }
+        return resultado;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void alModificarBuzon(BuzonModificadoEvento evento) {
+        String ruc = normalizarRuc(evento.ruc());
+        generacion.incrementAndGet();
+        invalidaciones.incrementAndGet();
+        if (ruc == null) {
+            resultados.limpiar();
+        } else {
+            resultados.eliminarClavesSi(clave -> clave.ruc() == null || clave.ruc().equals(ruc));
+        }
+        log.debug("🧹 Caché del dashboard invalidada para RUC: {}", ruc == null ? "todos" : ruc);
+    }
+
+    public Map<String, Object> estadisticas() {
+        long totalAciertos = aciertos.get();
+        long totalConsultas = totalAciertos + fallos.get();
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("aciertos", totalAciertos);
+        estadisticas.put("fallos", fallos.get());
+        estadisticas.put("invalidaciones", invalidaciones.get());
+        estadisticas.put("entradas", resultados.tamanio());
+        estadisticas.put("tasaAciertos", totalConsultas == 0 ? 0.0 : Math.round(totalAciertos * 1000.0 / totalConsultas) / 10.0);
+        return estadisticas;
+    }
+
+    private static String normalizarRuc(String ruc) {
+        return ruc == null || ruc.isBlank() ? null : ruc.trim();
+    }
+
+    private record Clave(String ruc, String widget, List<Object> parametros) {
+    }
+}
@@ -5,7 +5,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import upao.edu.pe.model.MensajeSunat;
 import upao.edu.pe.repository.MensajeSunatRepositorio;
+import upao.edu.pe.repository.MensajeSunatRepositorio.ConteoPorDiaHora;
+import upao.edu.pe.repository.MensajeSunatRepositorio.CorreoCritico;
+import upao.edu.pe.repository.ResumenDiarioMensajesRepositorio;
+import upao.edu.pe.repository.ResumenDiarioMensajesRepositorio.ConteoDiario;
+import upao.edu.pe.repository.ResumenDiarioMensajesRepositorio.ConteoResumen;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
@@ -15,57 +21,97 @@ import java.util.stream.Collectors;
 @Slf4j
 public class DashboardService {
 
+    private static final String SIN_CLASIFICAR = "SIN CLASIFICAR";
+    private static final int MAX_SEMANAS_HEATMAP = 52;
+
     @Autowired
     private MensajeSunatRepositorio mensajeSunatRepositorio;
 
+    @Autowired
+    private ResumenDiarioMensajesRepositorio resumenDiarioRepositorio;
+
     @Autowired
     private MensajeSunatServicio mensajeSunatServicio;
 
     @Autowired
     private GeminiAIService geminiAIService;
 
+    @Autowired
+    private HeatmapActividadPorRuc heatmapActividad;
+
+    @Autowired
+    private AnalisisPredictivoCache analisisPredictivoCache;
+
+    /**
+     * Obtiene todos los widgets del dashboard en una sola respuesta.
+     * Los conteos salen del resumen diario y se comparten entre widgets; solo los correos críticos se leen aparte.
+     */
+    public Map<String, Object> obtenerSnapshot(String ruc, Integer dias, Integer diasCriticos, Integer limiteCriticos) {
+        log.info("🧩 Generando snapshot del dashboard para RUC: {} - Período: {} días", ruc, dias);
+        
+        try {
+            // Todos los widgets comparten los conteos: cada consulta al resumen diario se hace una sola vez
+            ConteosResumenDiario conteos = new ConteosResumenDiario(ruc);
+            
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("generadoEn", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+            snapshot.put("metricasPrincipales", obtenerMetricasPrincipales(conteos, ruc, dias));
+            snapshot.put("tendencias", obtenerTendencias(conteos, ruc, dias));
+            snapshot.put("distribucionEtiquetas", obtenerDistribucionEtiquetas(conteos, ruc, dias));
+            snapshot.put("distribucionClasificacion", obtenerDistribucionClasificacion(conteos, ruc, dias));
+            snapshot.put("alertasActivas", obtenerAlertasActivas(conteos, ruc));
+            snapshot.put("alertasCriticas", obtenerAlertasCriticas(conteos, ruc));
+            snapshot.put("rankingNotificaciones", obtenerRankingNotificaciones(conteos, ruc, dias));
+            snapshot.put("comparativoPeriodos", obtenerComparativoPeriodos(conteos, ruc, dias, dias));
+            snapshot.put("correosCriticos", obtenerCorreosCriticos(ruc, diasCriticos, limiteCriticos));
+            
+            log.info("✅ Snapshot del dashboard generado exitosamente");
+            return snapshot;
+            
+        } catch (Exception e) {
+            log.error("❌ Error al generar snapshot del dashboard: {}", e.getMessage());
+            throw new RuntimeException("Error al generar snapshot del dashboard", e);
+        }
+    }
+
     /**
      * Obtiene métricas principales del dashboard
      */
     public Map<String, Object> obtenerMetricasPrincipales(String ruc, Integer dias) {
+        return obtenerMetricasPrincipales(new ConteosResumenDiario(ruc), ruc, dias);
+    }
+
+    private Map<String, Object> obtenerMetricasPrincipales(ConteosBuzon conteos, String ruc, Integer dias) {
         log.info("🎯 Obteniendo métricas principales para RUC: {} - Período: {} días", ruc, dias);
         
         Map<String, Object> metricas = new HashMap<>();
         
         try {
-            // Obtener todos los mensajes del RUC
-            List<MensajeSunat> mensajes = mensajeSunatServicio.obtenerTodosMensajes(ruc);
+            // Conteos agregados en base de datos (sin cargar los mensajes)
+            EstadisticasBuzon estadisticas = conteos.estadisticas();
+            Map<String, Long> clasificaciones = estadisticas.clasificaciones();
+            Map<String, Long> etiquetas = estadisticas.etiquetas();
             
             // Total de correos
-            int totalCorreos = mensajes.size();
-            
-            // Correos por clasificación
-            Map<String, Long> clasificaciones = mensajes.stream()
-                .filter(m -> m.getClasificacion() != null)
-                .collect(Collectors.groupingBy(
-                    MensajeSunat::getClasificacion, 
-                    Collectors.counting()
-                ));
-            
-            // Correos por etiqueta
-            Map<String, Long> etiquetas = mensajes.stream()
-                .filter(m -> m.getVcCodigoEtiqueta() != null)
-                .collect(Collectors.groupingBy(
-                    MensajeSunat::getVcCodigoEtiqueta,
-                    Collectors.counting()
-                ));
+            int totalCorreos = (int) estadisticas.total();
+            
+            // Últimas dos semanas por día: correos de hoy y tendencia semanal
+            LocalDate hoy = LocalDate.now();
+            Map<LocalDate, Map<String, Long>> ultimosDias = conteos.porDia(hoy.minusDays(13), hoy);
             
             // Construir respuesta
             Map<String, Object> resumenGeneral = new HashMap<>();
             resumenGeneral.put("totalCorreos", totalCorreos);
-            resumenGeneral.put("correosNuevos", contarCorreosHoy(mensajes));
+            resumenGeneral.put("correosNuevos", contarCorreosDelDia(ultimosDias, hoy));
             resumenGeneral.put("muyImportantes", clasificaciones.getOrDefault("MUY IMPORTANTE", 0L));
             resumenGeneral.put("importantes", clasificaciones.getOrDefault("IMPORTANTE", 0L));
             resumenGeneral.put("recurrentes", clasificaciones.getOrDefault("RECURRENTE", 0L));
             resumenGeneral.put("multas", etiquetas.getOrDefault("10", 0L)); // Código 10 = VALORES
             resumenGeneral.put("cobranzas", etiquetas.getOrDefault("11", 0L)); // Código 11 = COBRANZAS
             resumenGeneral.put("fiscalizaciones", etiquetas.getOrDefault("14", 0L)); // Código 14 = FISCALIZACIONES
-            resumenGeneral.put("tendenciaSemanal", calcularTendencia(mensajes, 7));
+            resumenGeneral.put("noLeidos", estadisticas.noLeidos());
+            resumenGeneral.put("conArchivos", estadisticas.conArchivos());
+            resumenGeneral.put("tendenciaSemanal", calcularTendencia(ultimosDias, hoy, 7));
             
             metricas.put("resumenGeneral", resumenGeneral);
             
@@ -81,7 +127,7 @@ public class DashboardService {
             Map<String, Object> estadoSistema = new HashMap<>();
             estadoSistema.put("estadoGeminiAI", obtenerEstadoGeminiAI());
             estadoSistema.put("ultimaSincronizacion", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-            estadoSistema.put("rendimientoClasificacion", calcularRendimientoClasificacion(mensajes));
+            estadoSistema.put("rendimientoClasificacion", calcularRendimientoClasificacion(estadisticas));
             
             metricas.put("estadoSistema", estadoSistema);
             
@@ -98,13 +144,15 @@ public class DashboardService {
      * Obtiene datos para gráfico de tendencias
      */
     public Map<String, Object> obtenerTendencias(String ruc, Integer dias) {
+        return obtenerTendencias(new ConteosResumenDiario(ruc), ruc, dias);
+    }
+
+    private Map<String, Object> obtenerTendencias(ConteosBuzon conteos, String ruc, Integer dias) {
         log.info("📈 Obteniendo tendencias para RUC: {} - Período: {} días", ruc, dias);
         
         Map<String, Object> tendencias = new HashMap<>();
         
         try {
-            List<MensajeSunat> mensajes = mensajeSunatServicio.obtenerTodosMensajes(ruc);
-            
             // Agrupar por fecha y clasificación
             Map<String, Map<String, Long>> tendenciasPorFecha = new LinkedHashMap<>();
             
@@ -121,29 +169,19 @@ public class DashboardService {
                 
                 tendenciasPorFecha.put(fechaStr, clasificacionesPorFecha);
             }
-              // Contar mensajes reales por fecha
-            for (MensajeSunat mensaje : mensajes) {
-                if (mensaje.getClasificacion() != null && mensaje.getVcFechaEnvio() != null) {
-                    try {
-                        // Parsear fecha del mensaje
-                        LocalDateTime fechaMensaje;
-                        if (mensaje.getVcFechaEnvio().contains("/")) {
-                            fechaMensaje = LocalDateTime.parse(mensaje.getVcFechaEnvio(), DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm"));
-                        } else {
-                            fechaMensaje = LocalDateTime.parse(mensaje.getVcFechaEnvio(), DateTimeFormatter.ISO_LOCAL_DATE_TIME);
-                        }
-                        
-                        String fechaStr = fechaMensaje.format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-                        
-                        if (tendenciasPorFecha.containsKey(fechaStr)) {
-                            Map<String, Long> clasificaciones = tendenciasPorFecha.get(fechaStr);
-                            String clasificacion = mensaje.getClasificacion();
-                            clasificaciones.put(clasificacion, clasificaciones.getOrDefault(clasificacion, 0L) + 1);
-                        }
-                    } catch (Exception e) {
-                        log.warn("Error al parsear fecha del mensaje {}: {}", mensaje.getNuCodigoMensaje(), e.getMessage());
-                    }
+            // Contar mensajes reales por fecha (una fila por día y clasificación)
+            LocalDate primerDia = fechaInicio.toLocalDate();
+            Map<LocalDate, Map<String, Long>> conteosPorDia = conteos.porDia(primerDia, primerDia.plusDays(dias - 1L));
+            for (Map.Entry<LocalDate, Map<String, Long>> conteoDia : conteosPorDia.entrySet()) {
+                Map<String, Long> clasificaciones = tendenciasPorFecha.get(conteoDia.getKey().format(DateTimeFormatter.ISO_LOCAL_DATE));
+                if (clasificaciones == null) {
+                    continue;
                 }
+                conteoDia.getValue().forEach((clasificacion, cantidad) -> {
+                    if (!SIN_CLASIFICAR.equals(clasificacion)) {
+                        clasificaciones.merge(clasificacion, cantidad, Long::sum);
+                    }
+                });
             }
             
             tendencias.put("datos", tendenciasPorFecha);
@@ -162,19 +200,17 @@ public class DashboardService {
      * Obtiene distribución por etiquetas
      */
     public Map<String, Object> obtenerDistribucionEtiquetas(String ruc, Integer dias) {
+        return obtenerDistribucionEtiquetas(new ConteosResumenDiario(ruc), ruc, dias);
+    }
+
+    private Map<String, Object> obtenerDistribucionEtiquetas(ConteosBuzon conteos, String ruc, Integer dias) {
         log.info("🏷️ Obteniendo distribución por etiquetas para RUC: {} - Período: {} días", ruc, dias);
         
         Map<String, Object> distribucion = new HashMap<>();
         
         try {
-            List<MensajeSunat> mensajes = mensajeSunatServicio.obtenerTodosMensajes(ruc);
-            
-            Map<String, Long> conteoEtiquetas = mensajes.stream()
-                .filter(m -> m.getVcCodigoEtiqueta() != null)
-                .collect(Collectors.groupingBy(
-                    MensajeSunat::getVcCodigoEtiqueta,
-                    Collectors.counting()
-                ));
+            long totalMensajes = conteos.estadisticas().total();
+            Map<String, Long> conteoEtiquetas = conteos.estadisticas().etiquetas();
             
             // Convertir códigos a nombres descriptivos
             List<Map<String, Object>> datosGrafico = new ArrayList<>();
@@ -186,7 +222,7 @@ public class DashboardService {
                 item.put("codigo", entry.getKey());
                 item.put("nombre", nombresEtiquetas.getOrDefault(entry.getKey(), "Desconocido"));
                 item.put("cantidad", entry.getValue());
-                item.put("porcentaje", Math.round((entry.getValue() * 100.0) / mensajes.size()));
+                item.put("porcentaje", Math.round((entry.getValue() * 100.0) / totalMensajes));
                 item.put("color", obtenerColorPorEtiqueta(entry.getKey()));
                 
                 datosGrafico.add(item);
@@ -196,7 +232,7 @@ public class DashboardService {
             datosGrafico.sort((a, b) -> Long.compare((Long) b.get("cantidad"), (Long) a.get("cantidad")));
             
             distribucion.put("datos", datosGrafico);
-            distribucion.put("totalMensajes", mensajes.size());
+            distribucion.put("totalMensajes", (int) totalMensajes);
             
             log.info("✅ Distribución por etiquetas obtenida exitosamente");
             return distribucion;
@@ -216,23 +252,18 @@ public class DashboardService {
         Map<String, Object> heatmap = new HashMap<>();
         
         try {
-            // Simular datos de heatmap (7 días x 24 horas)
-            List<List<Integer>> datosHeatmap = new ArrayList<>();
-            Random random = new Random();
+            // Conteos reales por día de la semana y hora de publicación (7 días x 24 horas), cacheados por semana
+            int semanasConsulta = Math.max(1, Math.min(semanas, MAX_SEMANAS_HEATMAP));
+            String rucConsulta = rucFiltro(ruc);
+            int[] celdas = heatmapActividad.obtener(rucConsulta, semanasConsulta, desde -> contarPublicacionesPorCelda(rucConsulta, desde));
             
             String[] diasSemana = {"Lunes", "Martes", "Miércoles", "Jueves", "Viernes", "Sábado", "Domingo"};
             
-            for (int dia = 0; dia < 7; dia++) {
-                List<Integer> horasDelDia = new ArrayList<>();
-                for (int hora = 0; hora < 24; hora++) {
-                    // Simular más actividad en horarios laborales
-                    int actividad = 0;
-                    if (hora >= 8 && hora <= 17 && dia < 5) { // Horario laboral, días laborables
-                        actividad = random.nextInt(10) + 5;
-                    } else if (hora >= 6 && hora <= 22) { // Horario extendido
-                        actividad = random.nextInt(5);
-                    }
-                    horasDelDia.add(actividad);
+            List<List<Integer>> datosHeatmap = new ArrayList<>();
+            for (int dia = 1; dia <= 7; dia++) {
+                List<Integer> horasDelDia = new ArrayList<>(HeatmapActividadPorRuc.HORAS_DIA);
+                for (int hora = 0; hora < HeatmapActividadPorRuc.HORAS_DIA; hora++) {
+                    horasDelDia.add(celdas[HeatmapActividadPorRuc.celda(dia, hora)]);
                 }
                 datosHeatmap.add(horasDelDia);
             }
@@ -240,7 +271,7 @@ public class DashboardService {
             heatmap.put("datos", datosHeatmap);
             heatmap.put("diasSemana", Arrays.asList(diasSemana));
             heatmap.put("horas", generarHoras());
-            heatmap.put("periodo", semanas + " semanas");
+            heatmap.put("periodo", semanasConsulta + " semanas");
             
             log.info("✅ Heatmap de actividad obtenido exitosamente");
             return heatmap;
@@ -251,21 +282,32 @@ public class DashboardService {
         }
     }
 
+    private int[] contarPublicacionesPorCelda(String ruc, LocalDateTime desde) {
+        int[] celdas = new int[HeatmapActividadPorRuc.CELDAS];
+        for (ConteoPorDiaHora conteo : mensajeSunatRepositorio.contarPublicacionesPorDiaYHora(ruc, desde)) {
+            celdas[HeatmapActividadPorRuc.celda(conteo.getDia(), conteo.getHora())] += (int) conteo.getCantidad();
+        }
+        return celdas;
+    }
+
     /**
      * Obtiene alertas activas del sistema
      */
     public List<Map<String, Object>> obtenerAlertasActivas(String ruc) {
+        return obtenerAlertasActivas(new ConteosResumenDiario(ruc), ruc);
+    }
+
+    private List<Map<String, Object>> obtenerAlertasActivas(ConteosBuzon conteos, String ruc) {
         log.info("🚨 Obteniendo alertas activas para RUC: {}", ruc);
         
         List<Map<String, Object>> alertas = new ArrayList<>();
         
         try {
-            List<MensajeSunat> mensajes = mensajeSunatServicio.obtenerTodosMensajes(ruc);
+            Map<String, Long> clasificaciones = conteos.estadisticas().clasificaciones();
+            Map<String, Long> etiquetas = conteos.estadisticas().etiquetas();
             
             // Alerta por correos muy importantes
-            long muyImportantes = mensajes.stream()
-                .filter(m -> "MUY IMPORTANTE".equals(m.getClasificacion()))
-                .count();
+            long muyImportantes = clasificaciones.getOrDefault("MUY IMPORTANTE", 0L);
             
             if (muyImportantes > 0) {
                 Map<String, Object> alerta = new HashMap<>();
@@ -280,9 +322,7 @@ public class DashboardService {
             }
             
             // Alerta por fiscalizaciones
-            long fiscalizaciones = mensajes.stream()
-                .filter(m -> "14".equals(m.getVcCodigoEtiqueta()))
-                .count();
+            long fiscalizaciones = etiquetas.getOrDefault("14", 0L);
             
             if (fiscalizaciones > 0) {
                 Map<String, Object> alerta = new HashMap<>();
@@ -297,9 +337,7 @@ public class DashboardService {
             }
             
             // Alerta por multas y valores
-            long multas = mensajes.stream()
-                .filter(m -> "10".equals(m.getVcCodigoEtiqueta()))
-                .count();
+            long multas = etiquetas.getOrDefault("10", 0L);
             
             if (multas > 0) {
                 Map<String, Object> alerta = new HashMap<>();
@@ -343,9 +381,9 @@ public class DashboardService {
         Map<String, Object> analisis = new HashMap<>();
         
         try {
-            List<MensajeSunat> mensajes = mensajeSunatServicio.obtenerTodosMensajes(ruc);
+            EstadisticasBuzon estadisticas = new ConteosResumenDiario(ruc).estadisticas();
               // 🤖 ANÁLISIS REAL CON GEMINI AI
-            Map<String, Object> analisisGemini = analizarConGeminiAI(mensajes, ruc);
+            Map<String, Object> analisisGemini = analizarConGeminiAI(estadisticas, ruc);
               if (analisisGemini != null && !analisisGemini.isEmpty()) {
                 // Usar análisis real de Gemini AI
                 analisis.putAll(analisisGemini);
@@ -353,7 +391,7 @@ public class DashboardService {
                 log.info("📊 Componentes del análisis: {}", analisisGemini.keySet());
             } else {
                 // Fallback con datos inteligentes basados en datos reales
-                analisis = generarAnalisisFallback(mensajes, ruc);
+                analisis = generarAnalisisFallback(estadisticas, ruc);
                 log.warn("⚠️ Usando análisis fallback - Gemini AI no disponible o falló");
             }
             
@@ -362,8 +400,7 @@ public class DashboardService {
               } catch (Exception e) {
             log.error("❌ Error al obtener análisis predictivo: {}", e.getMessage());
             // En caso de error, devolver análisis fallback básico
-            List<MensajeSunat> mensajes = mensajeSunatServicio.obtenerTodosMensajes(ruc);
-            return generarAnalisisFallback(mensajes, ruc);
+            return generarAnalisisFallback(new ConteosResumenDiario(ruc).estadisticas(), ruc);
         }
     }
 
@@ -371,24 +408,31 @@ public class DashboardService {
      * Obtiene comparativo con períodos anteriores
      */
     public Map<String, Object> obtenerComparativoPeriodos(String ruc, Integer periodoActual, Integer periodoAnterior) {
+        return obtenerComparativoPeriodos(new ConteosResumenDiario(ruc), ruc, periodoActual, periodoAnterior);
+    }
+
+    private Map<String, Object> obtenerComparativoPeriodos(ConteosBuzon conteos, String ruc, Integer periodoActual, Integer periodoAnterior) {
         log.info("📊 Obteniendo comparativo de períodos para RUC: {} - Actual: {} días, Anterior: {} días", 
                  ruc, periodoActual, periodoAnterior);
         
         Map<String, Object> comparativo = new HashMap<>();
         
         try {
-            List<MensajeSunat> mensajes = mensajeSunatServicio.obtenerTodosMensajes(ruc);
+            // Período actual: los últimos periodoActual días; el anterior termina justo antes
+            LocalDate hoy = LocalDate.now();
+            LocalDate inicioActual = hoy.minusDays(periodoActual - 1L);
+            EstadisticasBuzon actual = conteos.periodo(inicioActual, hoy);
+            EstadisticasBuzon anterior = conteos.periodo(inicioActual.minusDays(periodoAnterior), inicioActual.minusDays(1));
             
-            // Simular comparativo (en implementación real se usarían fechas reales)
             Map<String, Object> periodoActualData = new HashMap<>();
-            periodoActualData.put("totalCorreos", mensajes.size());
-            periodoActualData.put("muyImportantes", mensajes.stream().filter(m -> "MUY IMPORTANTE".equals(m.getClasificacion())).count());
-            periodoActualData.put("fiscalizaciones", mensajes.stream().filter(m -> "14".equals(m.getVcCodigoEtiqueta())).count());
+            periodoActualData.put("totalCorreos", (int) actual.total());
+            periodoActualData.put("muyImportantes", actual.clasificaciones().getOrDefault("MUY IMPORTANTE", 0L));
+            periodoActualData.put("fiscalizaciones", actual.etiquetas().getOrDefault("14", 0L));
             
             Map<String, Object> periodoAnteriorData = new HashMap<>();
-            periodoAnteriorData.put("totalCorreos", Math.max(0, mensajes.size() - 5)); // Simular período anterior
-            periodoAnteriorData.put("muyImportantes", Math.max(0, (long)(mensajes.stream().filter(m -> "MUY IMPORTANTE".equals(m.getClasificacion())).count() - 2)));
-            periodoAnteriorData.put("fiscalizaciones", Math.max(0, (long)(mensajes.stream().filter(m -> "14".equals(m.getVcCodigoEtiqueta())).count() - 1)));
+            periodoAnteriorData.put("totalCorreos", (int) anterior.total());
+            periodoAnteriorData.put("muyImportantes", anterior.clasificaciones().getOrDefault("MUY IMPORTANTE", 0L));
+            periodoAnteriorData.put("fiscalizaciones", anterior.etiquetas().getOrDefault("14", 0L));
             
             // Calcular variaciones
             Map<String, Object> variaciones = new HashMap<>();
@@ -413,19 +457,24 @@ public class DashboardService {
      * Obtiene ranking de tipos de notificaciones más frecuentes
      */
     public List<Map<String, Object>> obtenerRankingNotificaciones(String ruc, Integer dias) {
+        return obtenerRankingNotificaciones(new ConteosResumenDiario(ruc), ruc, dias);
+    }
+
+    private List<Map<String, Object>> obtenerRankingNotificaciones(ConteosBuzon conteos, String ruc, Integer dias) {
         log.info("🏆 Obteniendo ranking de notificaciones para RUC: {} - Período: {} días", ruc, dias);
         
         try {
-            List<MensajeSunat> mensajes = mensajeSunatServicio.obtenerTodosMensajes(ruc);
+            long totalMensajes = conteos.estadisticas().total();
             
             Map<String, String> nombresEtiquetas = mensajeSunatServicio.obtenerTodasLasEtiquetas();
             
-            Map<String, Long> conteoEtiquetas = mensajes.stream()
-                .filter(m -> m.getVcCodigoEtiqueta() != null)
-                .collect(Collectors.groupingBy(
-                    MensajeSunat::getVcCodigoEtiqueta,
-                    Collectors.counting()
-                ));
+            Map<String, Long> conteoEtiquetas = conteos.estadisticas().etiquetas();
+            
+            // Tendencia de cada etiqueta: últimos días del período contra los mismos días anteriores
+            LocalDate hoy = LocalDate.now();
+            LocalDate inicioPeriodo = hoy.minusDays(dias - 1L);
+            Map<String, Long> etiquetasPeriodo = conteos.periodo(inicioPeriodo, hoy).etiquetas();
+            Map<String, Long> etiquetasAnteriores = conteos.periodo(inicioPeriodo.minusDays(dias), inicioPeriodo.minusDays(1)).etiquetas();
             
             List<Map<String, Object>> ranking = new ArrayList<>();
             int posicion = 1;
@@ -440,8 +489,9 @@ public class DashboardService {
                 item.put("codigo", entry.getKey());
                 item.put("nombre", nombresEtiquetas.getOrDefault(entry.getKey(), "Desconocido"));
                 item.put("cantidad", entry.getValue());
-                item.put("porcentaje", Math.round((entry.getValue() * 100.0) / mensajes.size()));
-                item.put("tendencia", posicion <= 3 ? "⬆️" : "➡️"); // Simular tendencia
+                item.put("porcentaje", Math.round((entry.getValue() * 100.0) / totalMensajes));
+                item.put("tendencia", simboloTendencia(etiquetasPeriodo.getOrDefault(entry.getKey(), 0L),
+                        etiquetasAnteriores.getOrDefault(entry.getKey(), 0L)));
                 
                 ranking.add(item);
             }
@@ -456,75 +506,32 @@ public class DashboardService {
     }
 
     // ==================== MÉTODOS AUXILIARES ====================
-      private int contarCorreosNuevos(List<MensajeSunat> mensajes, int dias) {
-        LocalDateTime fechaLimite = LocalDateTime.now().minusDays(dias);
-        
-        return (int) mensajes.stream()
-            .filter(m -> {
-                if (m.getVcFechaEnvio() == null) return false;
-                try {
-                    LocalDateTime fechaMensaje = parsearFechaMensaje(m.getVcFechaEnvio());
-                    return fechaMensaje.isAfter(fechaLimite);
-                } catch (Exception e) {
-                    return false;
-                }
-            })
-            .count();
-    }
-
     /**
-     * Cuenta correos recibidos hoy específicamente
+     * Cuenta correos recibidos en el día indicado
      */
-    private int contarCorreosHoy(List<MensajeSunat> mensajes) {
-        LocalDateTime inicioDelDia = LocalDateTime.now().withHour(0).withMinute(0).withSecond(0).withNano(0);
-        LocalDateTime finDelDia = LocalDateTime.now().withHour(23).withMinute(59).withSecond(59).withNano(999999999);
-        
-        return (int) mensajes.stream()
-            .filter(m -> {
-                if (m.getVcFechaEnvio() == null) return false;
-                try {
-                    LocalDateTime fechaMensaje = parsearFechaMensaje(m.getVcFechaEnvio());
-                    return fechaMensaje.isAfter(inicioDelDia) && fechaMensaje.isBefore(finDelDia);
-                } catch (Exception e) {
-                    return false;
-                }
-            })
-            .count();
+    private int contarCorreosDelDia(Map<LocalDate, Map<String, Long>> conteosPorDia, LocalDate dia) {
+        return (int) conteosPorDia.getOrDefault(dia, Map.of()).values().stream()
+            .mapToLong(Long::longValue)
+            .sum();
     }
 
-    private String calcularTendencia(List<MensajeSunat> mensajes, int dias) {
+    private String calcularTendencia(Map<LocalDate, Map<String, Long>> conteosPorDia, LocalDate hoy, int dias) {
         try {
-            LocalDateTime ahora = LocalDateTime.now();
-            LocalDateTime inicioSemanaActual = ahora.minusDays(dias);
-            LocalDateTime inicioSemanaAnterior = inicioSemanaActual.minusDays(dias);
-            
-            // Contar mensajes críticos de esta semana
-            long mensajesSemanaActual = mensajes.stream()
-                .filter(m -> {
-                    if (m.getVcFechaEnvio() == null) return false;
-                    try {
-                        LocalDateTime fechaMensaje = parsearFechaMensaje(m.getVcFechaEnvio());
-                        return fechaMensaje.isAfter(inicioSemanaActual);
-                    } catch (Exception e) {
-                        return false;
-                    }
-                })
-                .filter(m -> "MUY IMPORTANTE".equals(m.getClasificacion()) || "IMPORTANTE".equals(m.getClasificacion()))
-                .count();
-            
-            // Contar mensajes críticos de la semana anterior
-            long mensajesSemanaAnterior = mensajes.stream()
-                .filter(m -> {
-                    if (m.getVcFechaEnvio() == null) return false;
-                    try {
-                        LocalDateTime fechaMensaje = parsearFechaMensaje(m.getVcFechaEnvio());
-                        return fechaMensaje.isAfter(inicioSemanaAnterior) && fechaMensaje.isBefore(inicioSemanaActual);
-                    } catch (Exception e) {
-                        return false;
-                    }
-                })
-                .filter(m -> "MUY IMPORTANTE".equals(m.getClasificacion()) || "IMPORTANTE".equals(m.getClasificacion()))
-                .count();
+            LocalDate inicioSemanaActual = hoy.minusDays(dias - 1L);
+            LocalDate inicioSemanaAnterior = inicioSemanaActual.minusDays(dias);
+            
+            // Contar mensajes críticos de esta semana y de la semana anterior
+            long mensajesSemanaActual = 0;
+            long mensajesSemanaAnterior = 0;
+            for (Map.Entry<LocalDate, Map<String, Long>> conteoDia : conteosPorDia.entrySet()) {
+                long criticos = conteoDia.getValue().getOrDefault("MUY IMPORTANTE", 0L)
+                        + conteoDia.getValue().getOrDefault("IMPORTANTE", 0L);
+                if (!conteoDia.getKey().isBefore(inicioSemanaActual)) {
+                    mensajesSemanaActual += criticos;
+                } else if (!conteoDia.getKey().isBefore(inicioSemanaAnterior)) {
+                    mensajesSemanaAnterior += criticos;
+                }
+            }
             
             // Determinar tendencia
             if (mensajesSemanaActual > mensajesSemanaAnterior * 1.2) {
@@ -541,22 +548,6 @@ public class DashboardService {
         }
     }
     
-    /**
-     * Parsea fechas en diferentes formatos
-     */
-    private LocalDateTime parsearFechaMensaje(String fechaStr) {
-        try {
-            if (fechaStr.contains("/")) {
-                return LocalDateTime.parse(fechaStr, DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm"));
-            } else {
-                return LocalDateTime.parse(fechaStr, DateTimeFormatter.ISO_LOCAL_DATE_TIME);
-            }
-        } catch (Exception e) {
-            // Si no se puede parsear, asumir fecha muy antigua
-            return LocalDateTime.of(2020, 1, 1, 0, 0);
-        }
-    }
-
     private String obtenerEstadoGeminiAI() {
         try {
             if (geminiAIService != null) {
@@ -575,14 +566,10 @@ public class DashboardService {
         return "DESCONOCIDO";
     }
 
-    private double calcularRendimientoClasificacion(List<MensajeSunat> mensajes) {
-        long clasificados = mensajes.stream()
-            .filter(m -> m.getClasificacion() != null && !m.getClasificacion().isEmpty())
-            .count();
-        
-        if (mensajes.isEmpty()) return 0.0;
+    private double calcularRendimientoClasificacion(EstadisticasBuzon estadisticas) {
+        if (estadisticas.total() == 0) return 0.0;
         
-        return Math.round((clasificados * 100.0) / mensajes.size());
+        return Math.round((estadisticas.clasificados() * 100.0) / estadisticas.total());
     }
 
     private String obtenerColorPorEtiqueta(String codigo) {
@@ -605,6 +592,13 @@ public class DashboardService {
         return horas;
     }
 
+    private String simboloTendencia(long actual, long anterior) {
+        if (actual > anterior) {
+            return "⬆️";
+        }
+        return actual < anterior ? "⬇️" : "➡️";
+    }
+
     private Map<String, Object> calcularVariacion(int actual, int anterior) {
         Map<String, Object> variacion = new HashMap<>();
         
@@ -622,12 +616,140 @@ public class DashboardService {
         return variacion;
     }
     
+    // ==================== CONSULTAS AGREGADAS ====================
+
+    /**
+     * Totales y conteos por clasificación y etiqueta (sin claves vacías), sumados desde el resumen diario
+     */
+    private record EstadisticasBuzon(long total, long noLeidos, long conArchivos, long clasificados,
+                                     Map<String, Long> clasificaciones, Map<String, Long> etiquetas) {
+    }
+
+    /**
+     * Conteos que usa cada widget
+     */
+    private interface ConteosBuzon {
+
+        EstadisticasBuzon estadisticas();
+
+        Map<String, Long> porClasificacionConSinClasificar();
+
+        /**
+         * Conteos por día de envío y clasificación entre dos fechas (inclusive)
+         */
+        Map<LocalDate, Map<String, Long>> porDia(LocalDate desde, LocalDate hasta);
+
+        /**
+         * Estadísticas de los mensajes enviados entre dos fechas (inclusive)
+         */
+        EstadisticasBuzon periodo(LocalDate desde, LocalDate hasta);
+    }
+
+    /**
+     * Conteos leídos de T_RESUMEN_DIARIO_MENSAJES: las consultas recorren una fila por día y combinación
+     * de etiqueta y clasificación, no los mensajes. Cada consulta se hace una vez por instancia, así el
+     * snapshot comparte los resultados entre todos sus widgets.
+     */
+    private class ConteosResumenDiario implements ConteosBuzon {
+
+        private final String ruc;
+        private EstadisticasBuzon estadisticas;
+        private final Map<List<LocalDate>, EstadisticasBuzon> periodos = new HashMap<>();
+        private Map<LocalDate, Map<String, Long>> conteosPorDia;
+        private LocalDate desdeCargado;
+        private LocalDate hastaCargado;
+
+        ConteosResumenDiario(String ruc) {
+            this.ruc = rucFiltro(ruc);
+        }
+
+        @Override
+        public EstadisticasBuzon estadisticas() {
+            if (estadisticas == null) {
+                estadisticas = sumar(resumenDiarioRepositorio.sumarPorClasificacionYEtiqueta(ruc));
+            }
+            return estadisticas;
+        }
+
+        @Override
+        public Map<String, Long> porClasificacionConSinClasificar() {
+            EstadisticasBuzon totales = estadisticas();
+            Map<String, Long> conteos = new HashMap<>(totales.clasificaciones());
+            if (totales.total() > totales.clasificados()) {
+                conteos.put(SIN_CLASIFICAR, totales.total() - totales.clasificados());
+            }
+            return conteos;
+        }
+
+        @Override
+        public Map<LocalDate, Map<String, Long>> porDia(LocalDate desde, LocalDate hasta) {
+            if (conteosPorDia == null || desde.isBefore(desdeCargado) || hasta.isAfter(hastaCargado)) {
+                desdeCargado = conteosPorDia == null || desde.isBefore(desdeCargado) ? desde : desdeCargado;
+                hastaCargado = conteosPorDia == null || hasta.isAfter(hastaCargado) ? hasta : hastaCargado;
+                conteosPorDia = new HashMap<>();
+                for (ConteoDiario conteo : resumenDiarioRepositorio.contarPorDiaYClasificacion(ruc, desdeCargado, hastaCargado)) {
+                    String clasificacion = conteo.getClasificacion().isEmpty() ? SIN_CLASIFICAR : conteo.getClasificacion();
+                    conteosPorDia.computeIfAbsent(conteo.getDia(), d -> new HashMap<>())
+                            .merge(clasificacion, conteo.getCantidad(), Long::sum);
+                }
+            }
+            Map<LocalDate, Map<String, Long>> enRango = new HashMap<>();
+            conteosPorDia.forEach((dia, conteos) -> {
+                if (!dia.isBefore(desde) && !dia.isAfter(hasta)) {
+                    enRango.put(dia, conteos);
+                }
+            });
+            return enRango;
+        }
+
+        @Override
+        public EstadisticasBuzon periodo(LocalDate desde, LocalDate hasta) {
+            return periodos.computeIfAbsent(List.of(desde, hasta),
+                    rango -> sumar(resumenDiarioRepositorio.sumarPorClasificacionYEtiquetaEntre(ruc, desde, hasta)));
+        }
+    }
+
+    /**
+     * Las claves vacías del resumen corresponden a mensajes sin clasificación o sin etiqueta
+     */
+    private EstadisticasBuzon sumar(List<ConteoResumen> conteos) {
+        long total = 0;
+        long noLeidos = 0;
+        long conArchivos = 0;
+        long clasificados = 0;
+        Map<String, Long> clasificaciones = new HashMap<>();
+        Map<String, Long> etiquetas = new HashMap<>();
+        for (ConteoResumen conteo : conteos) {
+            total += conteo.getCantidad();
+            noLeidos += conteo.getNoLeidos();
+            conArchivos += conteo.getConArchivos();
+            if (!conteo.getClasificacion().isEmpty()) {
+                clasificaciones.merge(conteo.getClasificacion(), conteo.getCantidad(), Long::sum);
+                clasificados += conteo.getCantidad();
+            }
+            if (!conteo.getEtiqueta().isEmpty()) {
+                etiquetas.merge(conteo.getEtiqueta(), conteo.getCantidad(), Long::sum);
+            }
+        }
+        return new EstadisticasBuzon(total, noLeidos, conArchivos, clasificados, clasificaciones, etiquetas);
+    }
+
+    /**
+     * Con RUC vacío se agregan todos los mensajes, igual que obtenerTodosMensajes
+     */
+    private String rucFiltro(String ruc) {
+        return ruc == null || ruc.trim().isEmpty() ? null : ruc;
+    }
+
     // ==================== MÉTODOS GEMINI AI AVANZADOS ====================
     
     /**
      * 🤖 ANÁLISIS PREDICTIVO REAL CON GEMINI AI
-     * Este método hace llamadas intensivas a Gemini AI para obtener insights reales
-     */    private Map<String, Object> analizarConGeminiAI(List<MensajeSunat> mensajes, String ruc) {
+     * Patrones, predicciones, recomendaciones y score se piden en una sola llamada con salida JSON.
+     * El resultado se guarda por RUC con la huella de los datos enviados, así el modelo solo se vuelve
+     * a consultar cuando cambian las estadísticas o los asuntos recientes.
+     */
+    private Map<String, Object> analizarConGeminiAI(EstadisticasBuzon estadisticas, String ruc) {
         Map<String, Object> analisisCompleto = new HashMap<>();
         
         try {
@@ -638,16 +760,11 @@ public class DashboardService {
             datosParaAnalisis.append("ANÁLISIS TRIBUTARIO SUNAT - RUC: ").append(ruc).append("\n\n");
             
             // Estadísticas básicas
-            Map<String, Long> clasificaciones = mensajes.stream()
-                .filter(m -> m.getClasificacion() != null)
-                .collect(Collectors.groupingBy(MensajeSunat::getClasificacion, Collectors.counting()));
-            
-            Map<String, Long> etiquetas = mensajes.stream()
-                .filter(m -> m.getVcCodigoEtiqueta() != null)
-                .collect(Collectors.groupingBy(MensajeSunat::getVcCodigoEtiqueta, Collectors.counting()));
+            Map<String, Long> clasificaciones = estadisticas.clasificaciones();
+            Map<String, Long> etiquetas = estadisticas.etiquetas();
             
             datosParaAnalisis.append("📈 ESTADÍSTICAS ACTUALES:\n");
-            datosParaAnalisis.append("- Total de notificaciones: ").append(mensajes.size()).append("\n");
+            datosParaAnalisis.append("- Total de notificaciones: ").append(estadisticas.total()).append("\n");
             datosParaAnalisis.append("- Muy importantes: ").append(clasificaciones.getOrDefault("MUY IMPORTANTE", 0L)).append("\n");
             datosParaAnalisis.append("- Importantes: ").append(clasificaciones.getOrDefault("IMPORTANTE", 0L)).append("\n");
             datosParaAnalisis.append("- Recurrentes: ").append(clasificaciones.getOrDefault("RECURRENTE", 0L)).append("\n");
@@ -657,53 +774,49 @@ public class DashboardService {
             
             // Últimos asuntos para análisis de contexto
             datosParaAnalisis.append("\n📋 ÚLTIMOS ASUNTOS IMPORTANTES:\n");
-            mensajes.stream()
-                .filter(m -> "MUY IMPORTANTE".equals(m.getClasificacion()))
-                .limit(5)
-                .forEach(m -> datosParaAnalisis.append("- ").append(m.getVcAsunto()).append("\n"));
-            
-            log.info("📋 Datos preparados para análisis Gemini: {} caracteres", datosParaAnalisis.length());
-            
-            // 🤖 LLAMADA 1: ANÁLISIS DE PATRONES
-            log.info("🔄 Consultando Gemini para patrones...");
-            String promptPatrones = construirPromptPatrones(datosParaAnalisis.toString());
-            Map<String, Object> patrones = consultarGeminiParaPatrones(promptPatrones);
-            if (patrones != null && !patrones.isEmpty()) {
+            mensajeSunatRepositorio.encontrarAsuntosRecientesPorClasificacion(rucFiltro(ruc), "MUY IMPORTANTE", 5)
+                .forEach(asunto -> datosParaAnalisis.append("- ").append(asunto).append("\n"));
+            
+            String datos = datosParaAnalisis.toString();
+            String huella = AnalisisPredictivoCache.huella(datos);
+            Map<String, Object> guardado = analisisPredictivoCache.obtener(ruc, huella);
+            if (guardado != null) {
+                log.info("♻️ Análisis predictivo reutilizado, los datos del RUC {} no cambiaron", ruc);
+                return guardado;
+            }
+            
+            log.info("📋 Datos preparados para análisis Gemini: {} caracteres", datos.length());
+            
+            // 🤖 UNA SOLA LLAMADA CON LAS CUATRO SECCIONES
+            if (geminiAIService == null) {
+                log.warn("⚠️ GeminiAIService es null");
+                return null;
+            }
+            String respuesta = geminiAIService.callGeminiAPIJson(construirPromptAnalisisCompleto(datos));
+            Map<String, Object> json = procesarRespuestaGeminiComoJSON(respuesta);
+            
+            // Cada sección se toma si vino bien formada; las que falten no invalidan el resto
+            if (json.get("patrones") instanceof Map<?, ?> patrones && !patrones.isEmpty()) {
                 analisisCompleto.put("patrones", patrones);
-                log.info("✅ Patrones obtenidos: {}", patrones.keySet());
             } else {
                 log.warn("⚠️ No se obtuvieron patrones de Gemini");
             }
-            
-            // 🤖 LLAMADA 2: PREDICCIONES ESPECÍFICAS
-            log.info("🔄 Consultando Gemini para predicciones...");
-            String promptPredicciones = construirPromptPredicciones(datosParaAnalisis.toString());
-            Map<String, Object> predicciones = consultarGeminiParaPredicciones(promptPredicciones);
-            if (predicciones != null && !predicciones.isEmpty()) {
+            if (json.get("predicciones") instanceof Map<?, ?> predicciones && !predicciones.isEmpty()) {
                 analisisCompleto.put("predicciones", predicciones);
-                log.info("✅ Predicciones obtenidas: {}", predicciones.keySet());
             } else {
                 log.warn("⚠️ No se obtuvieron predicciones de Gemini");
             }
-            
-            // 🤖 LLAMADA 3: RECOMENDACIONES ACCIONABLES
-            log.info("🔄 Consultando Gemini para recomendaciones...");
-            String promptRecomendaciones = construirPromptRecomendaciones(datosParaAnalisis.toString());
-            List<String> recomendaciones = consultarGeminiParaRecomendaciones(promptRecomendaciones);
-            if (recomendaciones != null && !recomendaciones.isEmpty()) {
+            if (json.get("recomendaciones") instanceof List<?> recomendaciones && !recomendaciones.isEmpty()) {
                 analisisCompleto.put("recomendaciones", recomendaciones);
-                log.info("✅ Recomendaciones obtenidas: {} items", recomendaciones.size());
             } else {
                 log.warn("⚠️ No se obtuvieron recomendaciones de Gemini");
             }
-            
-            // 🤖 LLAMADA 4: SCORE DE CUMPLIMIENTO
-            log.info("🔄 Consultando Gemini para score de cumplimiento...");
-            String promptScore = construirPromptScore(datosParaAnalisis.toString());
-            Map<String, Object> scoreCompliance = consultarGeminiParaScore(promptScore);
-            if (scoreCompliance != null && !scoreCompliance.isEmpty()) {
-                analisisCompleto.putAll(scoreCompliance);
-                log.info("✅ Score de cumplimiento obtenido: {}", scoreCompliance.keySet());
+            if (json.get("scoreCompliance") != null) {
+                for (String campo : List.of("scoreCompliance", "nivelRiesgo", "justificacion", "areasMejora")) {
+                    if (json.get(campo) != null) {
+                        analisisCompleto.put(campo, json.get(campo));
+                    }
+                }
             } else {
                 log.warn("⚠️ No se obtuvo score de cumplimiento de Gemini");
             }
@@ -711,6 +824,9 @@ public class DashboardService {
             log.info("🎯 Análisis completo con Gemini AI realizado: {} secciones", analisisCompleto.size());
             log.info("📊 Contenido del análisis: {}", analisisCompleto.keySet());
             
+            if (!analisisCompleto.isEmpty()) {
+                analisisPredictivoCache.guardar(ruc, huella, analisisCompleto);
+            }
             return analisisCompleto;
             
         } catch (Exception e) {
@@ -720,136 +836,32 @@ public class DashboardService {
     }
     
     /**
-     * 🔮 ANÁLISIS DE PATRONES CON GEMINI AI
-     */
-    private String construirPromptPatrones(String datos) {
-        return "Actúa como experto en análisis tributario peruano y SUNAT. " +
-               "Analiza los siguientes datos y identifica PATRONES ESPECÍFICOS:\n\n" + datos + "\n\n" +
-               "Responde SOLO en formato JSON con:\n" +
-               "{\n" +
-               "  \"tendenciaGeneral\": \"descripción de la tendencia principal\",\n" +
-               "  \"tipoMasFrecuente\": \"tipo de notificación más común\",\n" +
-               "  \"nivelRiesgoActual\": \"BAJO|MEDIO|ALTO\",\n" +
-               "  \"observacionesClave\": \"insights importantes detectados\"\n" +
-               "}";
-    }
-      private Map<String, Object> consultarGeminiParaPatrones(String prompt) {
-        try {
-            log.debug("🔄 Iniciando consulta Gemini para patrones...");
-            if (geminiAIService != null) {
-                String respuesta = geminiAIService.callGeminiAPI(prompt);
-                log.debug("📥 Respuesta Gemini patrones recibida: {} caracteres", respuesta != null ? respuesta.length() : 0);
-                Map<String, Object> resultado = procesarRespuestaGeminiComoJSON(respuesta);
-                log.debug("✅ Resultado patrones procesado: {} claves", resultado.size());
-                return resultado;
-            } else {
-                log.warn("⚠️ GeminiAIService es null");
-            }
-        } catch (Exception e) {
-            log.warn("⚠️ Error en consulta Gemini para patrones: {}", e.getMessage(), e);
-        }
-        return new HashMap<>();
-    }
-    
-    /**
-     * 📊 PREDICCIONES ESPECÍFICAS CON GEMINI AI
-     */
-    private String construirPromptPredicciones(String datos) {
-        return "Como experto en tributación peruana, analiza estos datos SUNAT y genera PREDICCIONES ESPECÍFICAS:\n\n" + datos + "\n\n" +
-               "Responde SOLO en formato JSON con predicciones específicas:\n" +
-               "{\n" +
-               "  \"proximaSemana\": \"predicción para los próximos 7 días\",\n" +
-               "  \"alertaFiscalizacion\": \"probabilidad y timing de fiscalización\",\n" +
-               "  \"tendenciaMultas\": \"evolución esperada de multas\",\n" +
-               "  \"recomendacionUrgente\": \"acción más crítica a tomar\"\n" +
-               "}";
-    }
-      private Map<String, Object> consultarGeminiParaPredicciones(String prompt) {
-        try {
-            log.debug("🔄 Iniciando consulta Gemini para predicciones...");
-            if (geminiAIService != null) {
-                String respuesta = geminiAIService.callGeminiAPI(prompt);
-                log.debug("📥 Respuesta Gemini predicciones recibida: {} caracteres", respuesta != null ? respuesta.length() : 0);
-                Map<String, Object> resultado = procesarRespuestaGeminiComoJSON(respuesta);
-                log.debug("✅ Resultado predicciones procesado: {} claves", resultado.size());
-                return resultado;
-            } else {
-                log.warn("⚠️ GeminiAIService es null");
-            }
-        } catch (Exception e) {
-            log.warn("⚠️ Error en consulta Gemini para predicciones: {}", e.getMessage(), e);
-        }
-        return new HashMap<>();
-    }
-    
-    /**
-     * 💡 RECOMENDACIONES ACCIONABLES CON GEMINI AI
-     */
-    private String construirPromptRecomendaciones(String datos) {
-        return "Como consultor tributario senior especializado en SUNAT, analiza estos datos y proporciona RECOMENDACIONES ACCIONABLES:\n\n" + datos + "\n\n" +
-               "Genera exactamente 4 recomendaciones específicas y accionables en formato JSON:\n" +
-               "{\n" +
-               "  \"recomendaciones\": [\n" +
-               "    \"Recomendación específica 1 con acción clara\",\n" +
-               "    \"Recomendación específica 2 con acción clara\",\n" +
-               "    \"Recomendación específica 3 con acción clara\",\n" +
-               "    \"Recomendación específica 4 con acción clara\"\n" +
-               "  ]\n" +
-               "}";
-    }
-      private List<String> consultarGeminiParaRecomendaciones(String prompt) {
-        try {
-            log.debug("🔄 Iniciando consulta Gemini para recomendaciones...");
-            if (geminiAIService != null) {
-                String respuesta = geminiAIService.callGeminiAPI(prompt);
-                log.debug("📥 Respuesta Gemini recomendaciones recibida: {} caracteres", respuesta != null ? respuesta.length() : 0);
-                Map<String, Object> json = procesarRespuestaGeminiComoJSON(respuesta);
-                if (json != null && json.containsKey("recomendaciones")) {
-                    @SuppressWarnings("unchecked")
-                    List<String> recomendaciones = (List<String>) json.get("recomendaciones");
-                    log.debug("✅ Recomendaciones procesadas: {} items", recomendaciones != null ? recomendaciones.size() : 0);
-                    return recomendaciones;                } else {
-                    log.warn("⚠️ JSON no contiene clave 'recomendaciones': {}", json != null ? json.keySet() : "null");
-                }
-            } else {
-                log.warn("⚠️ GeminiAIService es null");
-            }
-        } catch (Exception e) {
-            log.warn("⚠️ Error en consulta Gemini para recomendaciones: {}", e.getMessage(), e);
-        }
-        return new ArrayList<>();
-    }
-    
-    /**
-     * 🏆 SCORE DE CUMPLIMIENTO CON GEMINI AI
+     * 🔮 PROMPT ÚNICO: PATRONES, PREDICCIONES, RECOMENDACIONES Y SCORE
      */
-    private String construirPromptScore(String datos) {
-        return "Como auditor tributario experto en SUNAT, evalúa el CUMPLIMIENTO TRIBUTARIO basado en estos datos:\n\n" + datos + "\n\n" +
-               "Calcula un score de cumplimiento del 0-100 y nivel de riesgo. Responde en JSON:\n" +
+    private String construirPromptAnalisisCompleto(String datos) {
+        return "Actúa como auditor y consultor tributario senior experto en SUNAT. " +
+               "Analiza los siguientes datos y responde SOLO con un objeto JSON:\n\n" + datos + "\n\n" +
                "{\n" +
+               "  \"patrones\": {\n" +
+               "    \"tendenciaGeneral\": \"descripción de la tendencia principal\",\n" +
+               "    \"tipoMasFrecuente\": \"tipo de notificación más común\",\n" +
+               "    \"nivelRiesgoActual\": \"BAJO|MEDIO|ALTO\",\n" +
+               "    \"observacionesClave\": \"insights importantes detectados\"\n" +
+               "  },\n" +
+               "  \"predicciones\": {\n" +
+               "    \"proximaSemana\": \"predicción para los próximos 7 días\",\n" +
+               "    \"alertaFiscalizacion\": \"probabilidad y timing de fiscalización\",\n" +
+               "    \"tendenciaMultas\": \"evolución esperada de multas\",\n" +
+               "    \"recomendacionUrgente\": \"acción más crítica a tomar\"\n" +
+               "  },\n" +
+               "  \"recomendaciones\": [\"exactamente 4 recomendaciones específicas, cada una con una acción clara\"],\n" +
                "  \"scoreCompliance\": 85,\n" +
                "  \"nivelRiesgo\": \"BAJO|MEDIO|ALTO\",\n" +
-               "  \"justificacion\": \"explicación del score asignado\",\n" +
+               "  \"justificacion\": \"explicación del score de cumplimiento (0-100) asignado\",\n" +
                "  \"areasMejora\": \"áreas que necesitan atención\"\n" +
                "}";
     }
-      private Map<String, Object> consultarGeminiParaScore(String prompt) {
-        try {
-            log.debug("🔄 Iniciando consulta Gemini para score...");
-            if (geminiAIService != null) {
-                String respuesta = geminiAIService.callGeminiAPI(prompt);
-                log.debug("📥 Respuesta Gemini score recibida: {} caracteres", respuesta != null ? respuesta.length() : 0);
-                Map<String, Object> resultado = procesarRespuestaGeminiComoJSON(respuesta);
-                log.debug("✅ Resultado score procesado: {} claves", resultado.size());
-                return resultado;
-            } else {
-                log.warn("⚠️ GeminiAIService es null");
-            }
-        } catch (Exception e) {
-            log.warn("⚠️ Error en consulta Gemini para score: {}", e.getMessage(), e);
-        }
-        return new HashMap<>();
-    }
+    
       /**
      * 🔧 PROCESADOR DE RESPUESTAS JSON DE GEMINI
      */
@@ -858,8 +870,8 @@ public class DashboardService {
             log.debug("🔍 Procesando respuesta de Gemini: {}", respuestaGemini != null ? respuestaGemini.substring(0, Math.min(100, respuestaGemini.length())) + "..." : "null");
             
             if (respuestaGemini != null && !respuestaGemini.trim().isEmpty()) {
-                // Extraer JSON de la respuesta de Gemini
-                String jsonLimpio = extraerJSONDeRespuesta(respuestaGemini);
+                // Extraer JSON del texto generado por Gemini
+                String jsonLimpio = extraerJSONDeRespuesta(textoGenerado(respuestaGemini));
                 
                 if (jsonLimpio != null && !jsonLimpio.isEmpty()) {
                     log.debug("🧹 JSON extraído: {}", jsonLimpio.substring(0, Math.min(200, jsonLimpio.length())) + "...");
@@ -883,7 +895,24 @@ public class DashboardService {
         }
         return new HashMap<>();
     }
-      /**
+    /**
+     * Texto del primer candidato si la respuesta es el sobre de la API (candidates/content/parts);
+     * cualquier otra respuesta se devuelve tal cual
+     */
+    private String textoGenerado(String respuesta) {
+        try {
+            com.fasterxml.jackson.databind.JsonNode texto = new com.fasterxml.jackson.databind.ObjectMapper().readTree(respuesta)
+                    .path("candidates").path(0).path("content").path("parts").path(0).path("text");
+            if (texto.isTextual()) {
+                return texto.asText();
+            }
+        } catch (Exception e) {
+            log.debug("La respuesta de Gemini no es un sobre JSON: {}", e.getMessage());
+        }
+        return respuesta;
+    }
+    
+    /**
      * 🧹 EXTRACTOR DE JSON LIMPIO DE RESPUESTAS DE GEMINI
      */
     private String extraerJSONDeRespuesta(String respuesta) {
@@ -923,17 +952,13 @@ public class DashboardService {
     /**
      * 🔄 FALLBACK INTELIGENTE SI GEMINI NO ESTÁ DISPONIBLE
      */
-    private Map<String, Object> generarAnalisisFallback(List<MensajeSunat> mensajes, String ruc) {
+    private Map<String, Object> generarAnalisisFallback(EstadisticasBuzon estadisticas, String ruc) {
         Map<String, Object> analisis = new HashMap<>();
         
         // Análisis básico basado en datos reales sin IA
-        Map<String, Long> clasificaciones = mensajes.stream()
-            .filter(m -> m.getClasificacion() != null)
-            .collect(Collectors.groupingBy(MensajeSunat::getClasificacion, Collectors.counting()));
-        
-        Map<String, Long> etiquetas = mensajes.stream()
-            .filter(m -> m.getVcCodigoEtiqueta() != null)
-            .collect(Collectors.groupingBy(MensajeSunat::getVcCodigoEtiqueta, Collectors.counting()));
+        Map<String, Long> clasificaciones = estadisticas.clasificaciones();
+        Map<String, Long> etiquetas = estadisticas.etiquetas();
+        int totalMensajes = (int) estadisticas.total();
         
         // Patrones básicos
         Map<String, Object> patrones = new HashMap<>();
@@ -956,7 +981,7 @@ public class DashboardService {
         
         // Predicciones básicas
         Map<String, Object> predicciones = new HashMap<>();
-        predicciones.put("proximaSemana", "Se esperan " + Math.max(2, mensajes.size() / 10) + " notificaciones nuevas");
+        predicciones.put("proximaSemana", "Se esperan " + Math.max(2, totalMensajes / 10) + " notificaciones nuevas");
         predicciones.put("alertaFiscalizacion", fiscalizaciones > 0 ? "Fiscalización en curso - seguimiento requerido" : "Sin indicios de fiscalización próxima");
         predicciones.put("tendenciaMultas", multas > 2 ? "Atención: múltiples multas activas" : "Situación estable en multas");
         
@@ -977,7 +1002,7 @@ public class DashboardService {
         
         analisis.put("recomendaciones", recomendaciones);
           // Score dinámico basado en datos reales
-        int score = calcularScoreBasico(muyImportantes, fiscalizaciones, multas, mensajes.size());
+        int score = calcularScoreBasico(muyImportantes, fiscalizaciones, multas, totalMensajes);
         analisis.put("scoreCompliance", score);
         
         // Nivel de riesgo dinámico
@@ -992,13 +1017,13 @@ public class DashboardService {
         analisis.put("nivelRiesgo", nivelRiesgo);
         
         // Agregar métricas adicionales para el análisis
-        analisis.put("totalMensajes", mensajes.size());
+        analisis.put("totalMensajes", totalMensajes);
         analisis.put("muyImportantes", muyImportantes);
         analisis.put("fiscalizaciones", fiscalizaciones);
         analisis.put("multas", multas);
         
         log.info("📊 Análisis fallback generado - Score: {}, Riesgo: {}, Datos: {} mensajes", 
-                score, nivelRiesgo, mensajes.size());
+                score, nivelRiesgo, totalMensajes);
         
         return analisis;
     }
@@ -1061,17 +1086,20 @@ public class DashboardService {
      * Este método filtra solo las alertas más importantes basadas en etiquetas reales
      */
     public List<Map<String, Object>> obtenerAlertasCriticas(String ruc) {
+        return obtenerAlertasCriticas(new ConteosResumenDiario(ruc), ruc);
+    }
+
+    private List<Map<String, Object>> obtenerAlertasCriticas(ConteosBuzon conteos, String ruc) {
         log.info("🔥 Obteniendo alertas CRÍTICAS REALES para RUC: {}", ruc);
         
         List<Map<String, Object>> alertasCriticas = new ArrayList<>();
         
         try {
-            List<MensajeSunat> mensajes = mensajeSunatServicio.obtenerTodosMensajes(ruc);
+            long totalMensajes = conteos.estadisticas().total();
+            Map<String, Long> etiquetas = conteos.estadisticas().etiquetas();
             
             // 🔥 ALERTA CRÍTICA: Multas y valores pendientes (etiqueta 10)
-            long multasPendientes = mensajes.stream()
-                .filter(m -> "10".equals(m.getVcCodigoEtiqueta()))
-                .count();
+            long multasPendientes = etiquetas.getOrDefault("10", 0L);
             
             if (multasPendientes > 0) {
                 Map<String, Object> alerta = new HashMap<>();
@@ -1092,9 +1120,7 @@ public class DashboardService {
             }
             
             // 🔥 ALERTA CRÍTICA: Resoluciones de cobranza (etiqueta 11)
-            long cobranzasActivas = mensajes.stream()
-                .filter(m -> "11".equals(m.getVcCodigoEtiqueta()))
-                .count();
+            long cobranzasActivas = etiquetas.getOrDefault("11", 0L);
             
             if (cobranzasActivas > 0) {
                 Map<String, Object> alerta = new HashMap<>();
@@ -1115,9 +1141,7 @@ public class DashboardService {
             }
             
             // 🔥 ALERTA IMPORTANTE: Correos sin etiquetar (etiqueta 00)
-            long correosSinEtiquetar = mensajes.stream()
-                .filter(m -> "00".equals(m.getVcCodigoEtiqueta()))
-                .count();
+            long correosSinEtiquetar = etiquetas.getOrDefault("00", 0L);
             
             if (correosSinEtiquetar > 50) { // Solo alertar si hay muchos sin revisar
                 Map<String, Object> alerta = new HashMap<>();
@@ -1138,8 +1162,8 @@ public class DashboardService {
             }
             
             // 🔥 ALERTA PREVENTIVA: Eficiencia del sistema
-            double porcentajeEtiquetado = mensajes.isEmpty() ? 0 : 
-                ((double) (mensajes.size() - correosSinEtiquetar) / mensajes.size()) * 100;
+            double porcentajeEtiquetado = totalMensajes == 0 ? 0 : 
+                ((double) (totalMensajes - correosSinEtiquetar) / totalMensajes) * 100;
             
             if (porcentajeEtiquetado < 50) {
                 Map<String, Object> alerta = new HashMap<>();
@@ -1176,56 +1200,20 @@ public class DashboardService {
     
     /**
      * Obtiene correos críticos recientes - BASADO EN ETIQUETAS REALES
+     * El filtro, el orden por prioridad y el límite se resuelven en la consulta: solo se leen los K correos devueltos
      */
     public List<Map<String, Object>> obtenerCorreosCriticos(String ruc, Integer dias, Integer limite) {
         log.info("🚨 Obteniendo correos críticos REALES para RUC: {} - Período: {} días, Límite: {}", ruc, dias, limite);
         
         try {
-            List<MensajeSunat> mensajes = mensajeSunatServicio.obtenerTodosMensajes(ruc);
+            if (limite == null || limite <= 0) {
+                return new ArrayList<>();
+            }
             LocalDateTime fechaLimite = LocalDateTime.now().minusDays(dias);
             
-            // Filtrar correos críticos por ETIQUETAS REALES (no por clasificación IA)
-            List<Map<String, Object>> correosCriticos = mensajes.stream()
-                .filter(m -> {
-                    // Filtrar correos críticos por etiqueta
-                    boolean esCritico = "10".equals(m.getVcCodigoEtiqueta()) ||  // VALORES (multas)
-                                       "11".equals(m.getVcCodigoEtiqueta()) ||  // COBRANZAS
-                                       "14".equals(m.getVcCodigoEtiqueta()) ||  // FISCALIZACIONES
-                                       m.getNuLeido() == 0 ||                   // No leídos
-                                       m.getNuCantidadArchivos() > 0;           // Con archivos
-                    
-                    // Filtrar por fecha si está disponible
-                    boolean esReciente = true; // Por defecto incluir todos si no hay fecha
-                    if (m.getVcFechaEnvio() != null) {
-                        try {
-                            LocalDateTime fechaMensaje = parsearFechaMensaje(m.getVcFechaEnvio());
-                            esReciente = fechaMensaje.isAfter(fechaLimite);
-                        } catch (Exception e) {
-                            esReciente = true; // Si hay error parseando, incluir de todas formas
-                        }
-                    }
-                    
-                    return esCritico && esReciente;
-                })
-                .sorted((a, b) -> {
-                    // Ordenar por prioridad de etiqueta y fecha
-                    int prioridadA = getPrioridadPorEtiqueta(a.getVcCodigoEtiqueta());
-                    int prioridadB = getPrioridadPorEtiqueta(b.getVcCodigoEtiqueta());
-                    
-                    if (prioridadA != prioridadB) {
-                        return prioridadB - prioridadA; // Mayor prioridad primero
-                    }
-                    
-                    // Si misma prioridad, ordenar por fecha (más reciente primero)
-                    try {
-                        LocalDateTime fechaA = parsearFechaMensaje(a.getVcFechaEnvio());
-                        LocalDateTime fechaB = parsearFechaMensaje(b.getVcFechaEnvio());
-                        return fechaB.compareTo(fechaA);
-                    } catch (Exception e) {
-                        return 0;
-                    }
-                })
-                .limit(limite)
+            // Críticos por ETIQUETAS REALES (no por clasificación IA), no leídos o con archivos; sin fecha se incluyen
+            List<Map<String, Object>> correosCriticos = mensajeSunatRepositorio
+                .encontrarCorreosCriticos(rucFiltro(ruc), fechaLimite, limite).stream()
                 .map(this::convertirCorreoAMapaActualizado)
                 .collect(Collectors.toList());
             
@@ -1238,34 +1226,25 @@ public class DashboardService {
         }
     }
     
-    private int getPrioridadPorEtiqueta(String codigoEtiqueta) {
-        switch (codigoEtiqueta) {
-            case "10": return 5; // VALORES (multas) - máxima prioridad
-            case "11": return 4; // COBRANZAS - alta prioridad
-            case "14": return 3; // FISCALIZACIONES - media-alta prioridad
-            case "12": return 2; // NOTIFICACIONES - media prioridad
-            default: return 1;   // Otros - baja prioridad
-        }
-    }
-    
-    private Map<String, Object> convertirCorreoAMapaActualizado(MensajeSunat correo) {
+    private Map<String, Object> convertirCorreoAMapaActualizado(CorreoCritico correo) {
+        int cantidadArchivos = correo.getArchivos() == null ? 0 : correo.getArchivos();
         Map<String, Object> mapa = new HashMap<>();
-        mapa.put("codigoMensaje", correo.getNuCodigoMensaje());
-        mapa.put("asunto", correo.getVcAsunto());
-        mapa.put("fechaEnvio", correo.getVcFechaEnvio());
+        mapa.put("codigoMensaje", correo.getCodigo());
+        mapa.put("asunto", correo.getAsunto());
+        mapa.put("fechaEnvio", correo.getFecha());
         
         // Determinar prioridad basada en etiqueta REAL
-        String prioridad = determinarPrioridadPorEtiqueta(correo.getVcCodigoEtiqueta());
+        String prioridad = determinarPrioridadPorEtiqueta(correo.getEtiqueta());
         mapa.put("prioridad", prioridad);
         
-        mapa.put("tipoMensaje", correo.getNuTipoMensaje());
-        mapa.put("resumen", generarResumenPorEtiqueta(correo.getVcAsunto(), correo.getVcCodigoEtiqueta()));
-        mapa.put("leido", correo.getNuLeido() == 1);
-        mapa.put("tieneArchivos", correo.getNuCantidadArchivos() > 0);
-        mapa.put("cantidadArchivos", correo.getNuCantidadArchivos());
-        mapa.put("accionRecomendada", generarAccionPorEtiqueta(correo.getVcCodigoEtiqueta()));
-        mapa.put("codigoEtiqueta", correo.getVcCodigoEtiqueta());
-        mapa.put("nombreEtiqueta", obtenerNombreEtiqueta(correo.getVcCodigoEtiqueta()));
+        mapa.put("tipoMensaje", correo.getTipo());
+        mapa.put("resumen", generarResumenPorEtiqueta(correo.getAsunto(), correo.getEtiqueta()));
+        mapa.put("leido", Integer.valueOf(1).equals(correo.getLeido()));
+        mapa.put("tieneArchivos", cantidadArchivos > 0);
+        mapa.put("cantidadArchivos", cantidadArchivos);
+        mapa.put("accionRecomendada", generarAccionPorEtiqueta(correo.getEtiqueta()));
+        mapa.put("codigoEtiqueta", correo.getEtiqueta());
+        mapa.put("nombreEtiqueta", obtenerNombreEtiqueta(correo.getEtiqueta()));
         
         return mapa;
     }
@@ -1390,19 +1369,18 @@ public class DashboardService {
      * Obtiene distribución por clasificaciones
      */
     public Map<String, Object> obtenerDistribucionClasificacion(String ruc, Integer dias) {
+        return obtenerDistribucionClasificacion(new ConteosResumenDiario(ruc), ruc, dias);
+    }
+
+    private Map<String, Object> obtenerDistribucionClasificacion(ConteosBuzon conteos, String ruc, Integer dias) {
         log.info("🎯 Obteniendo distribución por clasificaciones para RUC: {} - Período: {} días", ruc, dias);
         
         Map<String, Object> distribucion = new HashMap<>();
         
         try {
-            List<MensajeSunat> mensajes = mensajeSunatServicio.obtenerTodosMensajes(ruc);
-            
-            // Contar mensajes por clasificación
-            Map<String, Long> conteoClasificaciones = mensajes.stream()
-                .collect(Collectors.groupingBy(
-                    m -> m.getClasificacion() != null ? m.getClasificacion() : "SIN CLASIFICAR",
-                    Collectors.counting()
-                ));
+            // Contar mensajes por clasificación (los nulos cuentan como SIN CLASIFICAR)
+            Map<String, Long> conteoClasificaciones = conteos.porClasificacionConSinClasificar();
+            long totalMensajes = conteoClasificaciones.values().stream().mapToLong(Long::longValue).sum();
             
             // Convertir a formato para gráficos
             List<Map<String, Object>> datosGrafico = new ArrayList<>();
@@ -1412,7 +1390,7 @@ public class DashboardService {
                 item.put("codigo", entry.getKey());
                 item.put("nombre", entry.getKey());
                 item.put("cantidad", entry.getValue());
-                item.put("porcentaje", Math.round((entry.getValue() * 100.0) / mensajes.size()));
+                item.put("porcentaje", Math.round((entry.getValue() * 100.0) / totalMensajes));
                 item.put("color", obtenerColorPorClasificacion(entry.getKey()));
                 
                 datosGrafico.add(item);
@@ -1426,7 +1404,7 @@ public class DashboardService {
             });
             
             distribucion.put("datos", datosGrafico);
-            distribucion.put("totalMensajes", mensajes.size());
+            distribucion.put("totalMensajes", (int) totalMensajes);
             
             log.info("✅ Distribución por clasificaciones obtenida exitosamente");
             return distribucion;
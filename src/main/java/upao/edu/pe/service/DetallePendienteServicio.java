@@ -0,0 +1,281 @@
+package upao.edu.pe.service;
+
+import ch.qos.logback.classic.Logger;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import upao.edu.pe.config.EjecucionConfig;
+import upao.edu.pe.dto.response.SunatApiResponse;
+import upao.edu.pe.model.DetallePendiente;
+import upao.edu.pe.repository.DetallePendienteRepositorio;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Cola de trabajo para descargar en segundo plano el detalle de las notificaciones.
+ * La sincronización del listado solo encola los códigos nuevos; cada detalle se descarga con el
+ * cliente no bloqueante de SUNAT (con un límite de peticiones en vuelo por RUC) y se guarda y
+ * clasifica en el ejecutor de sincronización (hilos virtuales u hilos de plataforma según
+ * EjecucionConfig), con reintentos y backoff.
+ *
+ * Un detalle se reclama con un UPDATE condicional (PENDIENTE -> EN_PROCESO), así que entre réplicas
+ * solo un nodo lo obtiene. Un detalle reclamado queda EN_PROCESO; si el nodo que lo reclamó cae, cualquier nodo lo devuelve
+ * a la cola cuando pasa sunat.detalle.arriendo-segundos sin terminarlo.
+ *
+ * La cookie de SUNAT no se persiste: se guarda en memoria la última recibida por RUC,
+ * por lo que tras un reinicio los pendientes esperan a la siguiente sincronización.
+ */
+@Service
+public class DetallePendienteServicio {
+
+    private static final Logger log = (Logger) LoggerFactory.getLogger(DetallePendienteServicio.class);
+
+    // Candidatos leídos por reclamo: si otro nodo se adelanta con uno, se intenta con el siguiente
+    private static final int CANDIDATOS_POR_RECLAMO = 5;
+
+    private final DetallePendienteRepositorio detallePendienteRepositorio;
+    private final SunatNotificacionService sunatNotificacionService;
+
+    @Value("${sunat.detalle.concurrencia-por-cookie:2}")
+    private int concurrenciaPorCookie = 2;
+
+    @Value("${sunat.detalle.max-intentos:5}")
+    private int maxIntentos = 5;
+
+    @Value("${sunat.detalle.backoff-base-ms:2000}")
+    private long backoffBaseMs = 2000;
+
+    @Value("${sunat.detalle.backoff-max-ms:300000}")
+    private long backoffMaxMs = 300000;
+
+    // Tiempo máximo que un detalle puede seguir EN_PROCESO antes de considerarlo abandonado
+    @Value("${sunat.detalle.arriendo-segundos:600}")
+    private long arriendoSegundos = 600;
+
+    private final Map<String, String> cookiePorRuc = new ConcurrentHashMap<>();
+    private final Map<String, Semaphore> permisosPorRuc = new ConcurrentHashMap<>();
+    private final Executor ejecutorSincronizacion;
+    private Scheduler programador;
+
+    public DetallePendienteServicio(DetallePendienteRepositorio detallePendienteRepositorio,
+                                    SunatNotificacionService sunatNotificacionService,
+                                    @Qualifier(EjecucionConfig.EJECUTOR_SINCRONIZACION) Executor ejecutorSincronizacion) {
+        this.detallePendienteRepositorio = detallePendienteRepositorio;
+        this.sunatNotificacionService = sunatNotificacionService;
+        this.ejecutorSincronizacion = ejecutorSincronizacion;
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        programador = Schedulers.fromExecutor(ejecutorSincronizacion);
+    }
+
+    @PreDestroy
+    public void detener() {
+        if (programador != null) {
+            programador.dispose();
+        }
+    }
+
+    /**
+     * Los detalles que quedaron EN_PROCESO por una caída vuelven a estar pendientes una vez vencido
+     * su arriendo; los que otros nodos vivos están descargando no se tocan
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${sunat.detalle.intervalo-recuperacion-ms:60000}",
+            initialDelayString = "${sunat.detalle.intervalo-recuperacion-ms:60000}")
+    public void recuperarEnProceso() {
+        int liberados = detallePendienteRepositorio.liberarEnProcesoVencidos(LocalDateTime.now().minusSeconds(arriendoSegundos));
+        if (liberados > 0) {
+            log.info("🔄 {} detalles en proceso con el arriendo vencido vuelven a la cola", liberados);
+        }
+    }
+
+    /**
+     * Encola los códigos que aún no están en la cola y despacha trabajadores para el RUC
+     *
+     * @return cantidad de códigos encolados
+     */
+    public int encolar(String ruc, String cookieSunat, Collection<Long> codigos) {
+        if (ruc == null || codigos == null || codigos.isEmpty()) {
+            return 0;
+        }
+        if (cookieSunat != null) {
+            cookiePorRuc.put(ruc, cookieSunat);
+        }
+
+        Set<Long> encolados = detallePendienteRepositorio.encontrarCodigosEncolados(codigos);
+        List<DetallePendiente> nuevos = codigos.stream()
+                .filter(codigo -> codigo != null && !encolados.contains(codigo))
+                .distinct()
+                .map(codigo -> DetallePendiente.builder()
+                        .nuCodigoMensaje(codigo)
+                        .vcNumeroRuc(ruc)
+                        .build())
+                .toList();
+
+        if (!nuevos.isEmpty()) {
+            detallePendienteRepositorio.saveAll(nuevos);
+            log.info("📥 {} detalles encolados para RUC {}", nuevos.size(), ruc);
+        }
+        despachar(ruc);
+        return nuevos.size();
+    }
+
+    /**
+     * Revisa periódicamente la cola para retomar reintentos cuyo backoff ya venció
+     */
+    @Scheduled(fixedDelayString = "${sunat.detalle.intervalo-ms:5000}")
+    public void procesarPendientes() {
+        cookiePorRuc.keySet().forEach(this::despachar);
+    }
+
+    /**
+     * Lanza descargas para el RUC hasta agotar sus permisos de concurrencia.
+     * La petición HTTP es no bloqueante; solo el guardado y la clasificación ocupan un hilo del pool.
+     */
+    private void despachar(String ruc) {
+        if (programador == null || !cookiePorRuc.containsKey(ruc)) {
+            return;
+        }
+        Semaphore permisos = permisosPorRuc.computeIfAbsent(ruc, k -> new Semaphore(Math.max(1, concurrenciaPorCookie)));
+        while (permisos.tryAcquire()) {
+            DetallePendiente pendiente;
+            try {
+                pendiente = reclamarSiguiente(ruc);
+            } catch (Exception e) {
+                permisos.release();
+                log.error("Error al leer la cola de detalles del RUC {}: {}", ruc, e.getMessage());
+                return;
+            }
+            if (pendiente == null) {
+                permisos.release();
+                return;
+            }
+            descargar(pendiente, cookiePorRuc.get(ruc))
+                    .doFinally(senal -> {
+                        permisos.release();
+                        despachar(ruc);
+                    })
+                    .subscribe();
+        }
+    }
+
+    /**
+     * Descarga y guarda un detalle. Nunca termina con error: el resultado queda registrado en la cola.
+     */
+    Mono<Void> descargar(DetallePendiente pendiente, String cookieSunat) {
+        String codigo = pendiente.getNuCodigoMensaje().toString();
+        return Mono.defer(() -> sunatNotificacionService.existeDetalle(codigo)
+                        ? Mono.<SunatApiResponse>empty()
+                        : sunatNotificacionService.consumirApiSunatReactivo(codigo, cookieSunat)
+                                .switchIfEmpty(Mono.error(new IllegalStateException("Respuesta vacía de API SUNAT"))))
+                .publishOn(programador)
+                .doOnNext(respuesta -> sunatNotificacionService.guardarNotificacion(codigo, respuesta))
+                .then(Mono.fromRunnable(() -> completar(pendiente)))
+                .onErrorResume(e -> Mono.fromRunnable(() -> registrarFallo(pendiente, e)))
+                .then();
+    }
+
+    /**
+     * Toma el siguiente detalle listo y lo marca EN_PROCESO. El UPDATE condicional garantiza que
+     * ningún otro despacho, de este nodo o de otra réplica, reclame el mismo registro.
+     */
+    DetallePendiente reclamarSiguiente(String ruc) {
+        LocalDateTime ahora = LocalDateTime.now();
+        List<DetallePendiente> listos = detallePendienteRepositorio.encontrarListosParaProcesar(
+                ruc, ahora, PageRequest.of(0, CANDIDATOS_POR_RECLAMO));
+        for (DetallePendiente pendiente : listos) {
+            if (detallePendienteRepositorio.reclamar(pendiente.getNuCodigoMensaje(), ahora) == 1) {
+                pendiente.setVcEstado(DetallePendiente.EN_PROCESO);
+                pendiente.setDtActualizacion(ahora);
+                return pendiente;
+            }
+        }
+        return null;
+    }
+
+    void completar(DetallePendiente pendiente) {
+        pendiente.setVcEstado(DetallePendiente.COMPLETADO);
+        pendiente.setVcUltimoError(null);
+        detallePendienteRepositorio.save(pendiente);
+    }
+
+    void registrarFallo(DetallePendiente pendiente, Throwable error) {
+        int intentos = pendiente.getNuIntentos() == null ? 1 : pendiente.getNuIntentos() + 1;
+        pendiente.setNuIntentos(intentos);
+        pendiente.setVcUltimoError(truncar(error.getMessage(), 500));
+        if (intentos >= maxIntentos) {
+            pendiente.setVcEstado(DetallePendiente.FALLIDO);
+            log.error("❌ Detalle {} descartado tras {} intentos: {}", pendiente.getNuCodigoMensaje(), intentos, error.getMessage());
+        } else {
+            long espera = calcularEspera(intentos);
+            pendiente.setVcEstado(DetallePendiente.PENDIENTE);
+            pendiente.setDtProximoIntento(LocalDateTime.now().plusNanos(espera * 1_000_000L));
+            log.warn("⚠️ Detalle {} falló (intento {}), reintento en {} ms: {}",
+                    pendiente.getNuCodigoMensaje(), intentos, espera, error.getMessage());
+        }
+        detallePendienteRepositorio.save(pendiente);
+    }
+
+    /**
+     * Backoff exponencial: base * 2^(intentos-1), con tope
+     */
+    long calcularEspera(int intentos) {
+        long espera = backoffBaseMs << Math.min(Math.max(intentos - 1, 0), 20);
+        return Math.min(espera, backoffMaxMs);
+    }
+
+    /**
+     * Progreso de la descarga de detalles para un RUC (o de todos si es nulo)
+     */
+    public Map<String, Object> obtenerProgreso(String ruc) {
+        String filtro = (ruc == null || ruc.isBlank()) ? null : ruc;
+        Map<String, Long> porEstado = new HashMap<>();
+        for (Object[] fila : detallePendienteRepositorio.contarPorEstado(filtro)) {
+            porEstado.put((String) fila[0], ((Number) fila[1]).longValue());
+        }
+
+        long pendientes = porEstado.getOrDefault(DetallePendiente.PENDIENTE, 0L);
+        long enProceso = porEstado.getOrDefault(DetallePendiente.EN_PROCESO, 0L);
+        long completados = porEstado.getOrDefault(DetallePendiente.COMPLETADO, 0L);
+        long fallidos = porEstado.getOrDefault(DetallePendiente.FALLIDO, 0L);
+        long total = pendientes + enProceso + completados + fallidos;
+
+        Map<String, Object> progreso = new HashMap<>();
+        progreso.put("ruc", filtro);
+        progreso.put("pendientes", pendientes);
+        progreso.put("enProceso", enProceso);
+        progreso.put("completados", completados);
+        progreso.put("fallidos", fallidos);
+        progreso.put("total", total);
+        progreso.put("porcentaje", total == 0 ? 100.0 : Math.round((completados + fallidos) * 1000.0 / total) / 10.0);
+        progreso.put("cookieDisponible", filtro == null ? !cookiePorRuc.isEmpty() : cookiePorRuc.containsKey(filtro));
+        return progreso;
+    }
+
+    private static String truncar(String texto, int maximo) {
+        if (texto == null || texto.length() <= maximo) {
+            return texto;
+        }
+        return texto.substring(0, maximo);
+    }
+}
@@ -4,6 +4,7 @@ import ch.qos.logback.classic.Logger;
 import jakarta.transaction.Transactional;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import upao.edu.pe.model.Etiqueta;
@@ -25,6 +26,12 @@ public class EtiquetaServicio {
     @Autowired
     private MensajeSunatRepositorio mensajeSunatRepositorio;
 
+    @Autowired
+    private ResumenDiarioServicio resumenDiarioServicio;
+
+    @Autowired
+    private ApplicationEventPublisher eventos;
+
     /**
      * Crea una nueva etiqueta
      * @param vcNombre Nombre de la etiqueta
@@ -74,6 +81,8 @@ public class EtiquetaServicio {
 
         // Reasignar todos los mensajes con esta etiqueta a "00"
         int mensajesActualizados = mensajeSunatRepositorio.actualizarMensajesANoEtiquetados(etiqueta.getVcCodigo());
+        resumenDiarioServicio.reasignarEtiqueta(etiqueta.getVcCodigo(), "00");
+        eventos.publishEvent(BuzonModificadoEvento.todos());
 
         // Eliminar la etiqueta
         etiquetaRepositorio.delete(etiqueta);
@@ -4,91 +4,168 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import upao.edu.pe.model.MensajeSunat;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 @Slf4j
 public class GeminiAIService {
 
-    @Value("${gemini.api.key}")
-    private String geminiApiKey;
-
     @Value("${gemini.api.url}")
     private String geminiApiUrl;
 
     @Value("${gemini.enabled:true}")
     private boolean geminiEnabled;
 
-    @Value("${gemini.rate.limit.per.minute:12}")
-    private int rateLimitPerMinute;
-
     @Value("${gemini.circuit.breaker.failure.threshold:5}")
     private int circuitBreakerFailureThreshold;
 
     @Value("${gemini.circuit.breaker.reset.timeout:300}")
     private int circuitBreakerResetTimeoutSeconds;
 
-    private final RestTemplate restTemplate;
+    @Value("${gemini.batch.max-mensajes:25}")
+    private int batchMaxMensajes = 25;
+
+    @Value("${gemini.batch.max-tokens-entrada:6000}")
+    private int batchMaxTokensEntrada = 6000;
+
+    private static final int CARACTERES_POR_TOKEN = LimitadorGemini.CARACTERES_POR_TOKEN;
+
+    // Espera máxima por cupo de las llamadas públicas (dashboard); la clasificación no espera
+    @Value("${gemini.rate.limit.espera-maxima-ms:10000}")
+    private long esperaMaximaCupoMs = 10000;
+
+    private static final String RAZON_POR_DEFECTO = "Clasificación automática por defecto";
+
+    private final GeminiCliente geminiCliente;
     private final ObjectMapper objectMapper;
     
     // Rate limiting y circuit breaker
-    private final ConcurrentLinkedQueue<LocalDateTime> requestHistory = new ConcurrentLinkedQueue<>();
+    private final LimitadorGemini limitador;
     private final AtomicInteger consecutiveFailures = new AtomicInteger(0);
     private volatile LocalDateTime circuitBreakerOpenTime = null;
-    private final AtomicInteger currentMinuteRequests = new AtomicInteger(0);
-    private volatile LocalDateTime lastResetTime = LocalDateTime.now();    public GeminiAIService() {
-        this.restTemplate = new RestTemplate();
+
+    // Caché de clasificaciones por asunto normalizado
+    private final ClasificacionCacheServicio clasificacionCache;
+    // Primer nivel: reglas locales por palabras clave
+    private final MotorReglasClasificacion motorReglas;
+    // Correos que no se pudieron clasificar por falta de cuota
+    private final ColaClasificacionServicio colaClasificacion;
+
+    @Value("${gemini.prompt.version:1}")
+    private String promptVersion = "1";
+
+    private volatile String versionPromptEfectiva;
+
+    public GeminiAIService(ClasificacionCacheServicio clasificacionCache, MotorReglasClasificacion motorReglas,
+                           LimitadorGemini limitador, ColaClasificacionServicio colaClasificacion,
+                           GeminiCliente geminiCliente) {
+        this.geminiCliente = geminiCliente;
         this.objectMapper = new ObjectMapper();
+        this.clasificacionCache = clasificacionCache;
+        this.motorReglas = motorReglas;
+        this.limitador = limitador;
+        this.colaClasificacion = colaClasificacion;
+    }
+
+    /**
+     * Versión con la que se guardan las clasificaciones en caché: la configurada más una huella
+     * del modelo y de los prompts, de modo que cualquier cambio en ellos invalida la caché
+     */
+    public String obtenerVersionPrompt() {
+        String version = versionPromptEfectiva;
+        if (version == null) {
+            MensajeSunat plantilla = new MensajeSunat();
+            plantilla.setVcAsunto("");
+            String huella = ClasificacionCacheServicio.huella(
+                    geminiApiUrl + buildImprovedPrompt(plantilla) + buildBatchPrompt(List.of()));
+            version = promptVersion + "-" + huella.substring(0, 12);
+            versionPromptEfectiva = version;
+        }
+        return version;
+    }
+
+    @Scheduled(fixedDelayString = "${gemini.cache.intervalo-limpieza-ms:3600000}",
+            initialDelayString = "${gemini.cache.intervalo-limpieza-ms:3600000}")
+    public void limpiarCacheDeVersionesAnteriores() {
+        try {
+            clasificacionCache.eliminarOtrasVersionesAntiguas(obtenerVersionPrompt());
+        } catch (Exception e) {
+            log.warn("No se pudo limpiar la caché de clasificaciones: {}", e.getMessage());
+        }
     }
 
     /**
      * Analiza un correo usando Gemini AI para determinar su clasificación y etiqueta
      */
     public EmailAnalysisResult analyzeEmail(MensajeSunat mensaje) {
+        return analizar(mensaje, List.of(mensaje));
+    }
+
+    /**
+     * Analiza un correo; si hay que posponerlo se encola junto con los correos de su mismo asunto
+     *
+     * @param grupo el correo y sus repetidos, que recibirán la misma clasificación
+     */
+    private EmailAnalysisResult analizar(MensajeSunat mensaje, List<MensajeSunat> grupo) {
+        EmailAnalysisResult porReglas = clasificarPorReglas(mensaje);
+        if (porReglas != null) {
+            return porReglas;
+        }
+
+        EmailAnalysisResult enCache = clasificacionCache.buscar(mensaje.getVcAsunto(), obtenerVersionPrompt());
+        if (enCache != null) {
+            log.debug("💾 Clasificación obtenida de caché: {}", enCache.getClasificacion());
+            return enCache;
+        }
+
         if (!geminiEnabled) {
             log.warn("Gemini AI está deshabilitado. Usando clasificación por defecto.");
             return getDefaultClassification();
         }
 
+        // Sin cuota el correo queda con la clasificación por defecto y se encola para clasificarlo después
         // Verificar circuit breaker
         if (isCircuitBreakerOpen()) {
-            log.warn("🔴 Circuit breaker abierto. Gemini AI temporalmente deshabilitado. Usando clasificación por defecto.");
-            return getDefaultClassification();
+            log.warn("🔴 Circuit breaker abierto. Gemini AI temporalmente deshabilitado. Correo en cola.");
+            return posponer(grupo, false);
         }
 
         // Verificar si debe procesar este correo (priorización)
         if (!shouldProcessEmail(mensaje)) {
-            log.info("⏭️ Correo omitido por priorización para conservar cuota de Gemini");
-            return getDefaultClassification();
+            log.info("⏭️ Correo pospuesto por priorización para conservar cuota de Gemini");
+            return posponer(grupo, false);
         }
 
         // Verificar rate limit
-        if (!canMakeRequest()) {
-            log.warn("⏳ Rate limit alcanzado. Usando clasificación por defecto para conservar cuota.");
-            return getDefaultClassification();
+        String prompt = buildImprovedPrompt(mensaje);
+        if (!limitador.tryAcquire(LimitadorGemini.estimarTokens(prompt))) {
+            log.warn("⏳ Rate limit alcanzado. Correo en cola hasta que haya cuota.");
+            return posponer(grupo, false);
         }
 
         try {
-            String prompt = buildImprovedPrompt(mensaje);
-            String geminiResponse = callGeminiAPIWithRetry(prompt);
+            String geminiResponse = callGeminiAPI(prompt);
             EmailAnalysisResult result = parseGeminiResponse(geminiResponse);            
             // Marcar como éxito
             onSuccessfulRequest();
+            if (!esClasificacionPorDefecto(result)) {
+                clasificacionCache.guardar(mensaje.getVcAsunto(), obtenerVersionPrompt(), result);
+            }
             
             // ✅ CONFIAMOS EN GEMINI: No sobreescribimos su clasificación inteligente
             log.info("🧠 Gemini clasificó inteligentemente: {}", result.getClasificacion());
@@ -99,10 +176,216 @@ public class GeminiAIService {
             // Manejar errores específicos
             onFailedRequest(e);
             log.error("Error al analizar correo con Gemini AI: {}", e.getMessage());
-            return getDefaultClassification();
+            return posponer(grupo, !esCuotaAgotada(e));
         }
     }
 
+    /**
+     * Encola los mensajes para clasificarlos cuando haya cuota y devuelve la clasificación provisional
+     */
+    private EmailAnalysisResult posponer(List<MensajeSunat> mensajes, boolean porError) {
+        try {
+            colaClasificacion.encolar(mensajes, porError);
+        } catch (Exception e) {
+            log.error("No se pudo encolar {} correos para clasificar después: {}", mensajes.size(), e.getMessage());
+        }
+        return getDefaultClassification();
+    }
+
+    private static boolean esCuotaAgotada(Throwable e) {
+        return e instanceof WebClientResponseException httpError && httpError.getStatusCode().value() == 429;
+    }
+
+    /**
+     * Clasifica varios correos empaquetando sus asuntos en un solo prompt por lote.
+     * Los lotes se arman respetando gemini.batch.max-mensajes y un presupuesto aproximado de
+     * tokens de entrada; cada lote consume una sola petición de la cuota por minuto y los lotes se
+     * envían en paralelo hasta gemini.http.max-en-vuelo peticiones simultáneas.
+     * Solo las entradas que Gemini no devuelve o que no se pueden parsear se reintentan con
+     * analyzeEmail de forma individual.
+     *
+     * @return resultados indexados por código de mensaje
+     */
+    public Map<Long, EmailAnalysisResult> analyzeEmailsBatch(List<MensajeSunat> mensajes) {
+        Map<Long, EmailAnalysisResult> resultados = new HashMap<>();
+        if (mensajes == null || mensajes.isEmpty()) {
+            return resultados;
+        }
+
+        String versionPrompt = obtenerVersionPrompt();
+        List<MensajeSunat> pendientes = new ArrayList<>();
+        // Sin cuota: clasificación por defecto y a la cola, separando los que fallaron por error
+        List<MensajeSunat> pospuestos = new ArrayList<>();
+        List<MensajeSunat> conError = new ArrayList<>();
+        // Asuntos equivalentes dentro de la misma tanda se envían una sola vez
+        Map<String, List<MensajeSunat>> repetidosPorAsunto = new HashMap<>();
+        for (MensajeSunat mensaje : mensajes) {
+            if (mensaje.getNuCodigoMensaje() == null) {
+                continue;
+            }
+            EmailAnalysisResult porReglas = clasificarPorReglas(mensaje);
+            if (porReglas != null) {
+                resultados.put(mensaje.getNuCodigoMensaje(), porReglas);
+                continue;
+            }
+            EmailAnalysisResult enCache = clasificacionCache.buscar(mensaje.getVcAsunto(), versionPrompt);
+            if (enCache != null) {
+                resultados.put(mensaje.getNuCodigoMensaje(), enCache);
+                continue;
+            }
+            if (!geminiEnabled) {
+                resultados.put(mensaje.getNuCodigoMensaje(), getDefaultClassification());
+                continue;
+            }
+            if (isCircuitBreakerOpen() || !shouldProcessEmail(mensaje)) {
+                pospuestos.add(mensaje);
+                continue;
+            }
+            String asuntoNormalizado = ClasificacionCacheServicio.normalizarAsunto(mensaje.getVcAsunto());
+            List<MensajeSunat> grupo = repetidosPorAsunto.computeIfAbsent(asuntoNormalizado, k -> new ArrayList<>());
+            if (grupo.isEmpty() || asuntoNormalizado.isEmpty()) {
+                pendientes.add(mensaje);
+            }
+            grupo.add(mensaje);
+        }
+
+        List<List<MensajeSunat>> lotes = armarLotes(pendientes);
+        log.info("📦 Clasificando {} correos en {} lote(s) con Gemini", pendientes.size(), lotes.size());
+
+        // El cupo y el circuit breaker se revisan al despachar cada lote, así que un 429 frena los siguientes
+        List<RespuestaLote> respuestas = Flux.fromIterable(lotes)
+                .flatMap(this::enviarLote, geminiCliente.getMaxEnVuelo())
+                .collectList()
+                .block();
+
+        List<MensajeSunat> paraIndividual = new ArrayList<>();
+        for (RespuestaLote respuesta : respuestas) {
+            List<MensajeSunat> lote = respuesta.lote();
+            if (respuesta.error() != null) {
+                (respuesta.error() instanceof CupoNoDisponible || esCuotaAgotada(respuesta.error())
+                        ? pospuestos : conError).addAll(lote);
+                continue;
+            }
+            try {
+                Map<Long, EmailAnalysisResult> parseados = parseGeminiBatchResponse(respuesta.cuerpo());
+                for (MensajeSunat mensaje : lote) {
+                    EmailAnalysisResult resultado = parseados.get(mensaje.getNuCodigoMensaje());
+                    if (resultado != null) {
+                        clasificacionCache.guardar(mensaje.getVcAsunto(), versionPrompt, resultado);
+                        resultados.put(mensaje.getNuCodigoMensaje(), resultado);
+                    } else {
+                        paraIndividual.add(mensaje);
+                    }
+                }
+            } catch (Exception e) {
+                log.error("Error al interpretar la respuesta de Gemini para un lote de {} correos: {}", lote.size(), e.getMessage());
+                conError.addAll(lote);
+            }
+        }
+        // Los repetidos de un correo pospuesto también van a la cola, no solo el que se envió a Gemini
+        for (List<MensajeSunat> grupo : List.of(pospuestos, conError)) {
+            if (!grupo.isEmpty()) {
+                List<MensajeSunat> conRepetidos = new ArrayList<>();
+                grupo.forEach(mensaje -> conRepetidos.addAll(grupoDe(mensaje, repetidosPorAsunto)));
+                EmailAnalysisResult provisional = posponer(conRepetidos, grupo == conError);
+                grupo.forEach(mensaje -> resultados.put(mensaje.getNuCodigoMensaje(), provisional));
+            }
+        }
+
+        if (!paraIndividual.isEmpty()) {
+            log.warn("🔁 {} correos sin respuesta válida en el lote, se clasifican individualmente", paraIndividual.size());
+            for (MensajeSunat mensaje : paraIndividual) {
+                resultados.put(mensaje.getNuCodigoMensaje(), analizar(mensaje, grupoDe(mensaje, repetidosPorAsunto)));
+            }
+        }
+
+        // Los repetidos reciben la clasificación del primer mensaje de su grupo
+        for (Map.Entry<String, List<MensajeSunat>> grupo : repetidosPorAsunto.entrySet()) {
+            if (grupo.getKey().isEmpty()) {
+                continue;
+            }
+            EmailAnalysisResult resultado = resultados.get(grupo.getValue().get(0).getNuCodigoMensaje());
+            for (MensajeSunat repetido : grupo.getValue().subList(1, grupo.getValue().size())) {
+                resultados.put(repetido.getNuCodigoMensaje(), resultado);
+            }
+        }
+        return resultados;
+    }
+
+    /**
+     * El correo enviado a Gemini más los de su mismo asunto en la tanda
+     */
+    private static List<MensajeSunat> grupoDe(MensajeSunat mensaje, Map<String, List<MensajeSunat>> repetidosPorAsunto) {
+        String asuntoNormalizado = ClasificacionCacheServicio.normalizarAsunto(mensaje.getVcAsunto());
+        List<MensajeSunat> grupo = asuntoNormalizado.isEmpty() ? null : repetidosPorAsunto.get(asuntoNormalizado);
+        return grupo == null ? List.of(mensaje) : grupo;
+    }
+
+    /**
+     * Reserva cupo para el lote y lo envía a Gemini; los errores quedan en la respuesta del lote
+     */
+    private Mono<RespuestaLote> enviarLote(List<MensajeSunat> lote) {
+        String prompt = buildBatchPrompt(lote);
+        // flatMap pide el siguiente lote desde el hilo que completó el anterior (un event loop de Netty);
+        // la reserva puede bloquear con la cuota compartida (candado y JDBC), así que va en boundedElastic
+        return Mono.fromCallable(() -> !isCircuitBreakerOpen() && limitador.tryAcquire(LimitadorGemini.estimarTokens(prompt)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(reservado -> {
+                    if (!reservado) {
+                        log.warn("⏳ Rate limit o circuit breaker activo. {} correos en cola hasta que haya cuota", lote.size());
+                        return Mono.just(new RespuestaLote(lote, null, new CupoNoDisponible()));
+                    }
+                    return consultarGemini(prompt)
+                            .doOnNext(cuerpo -> onSuccessfulRequest())
+                            .map(cuerpo -> new RespuestaLote(lote, cuerpo, null))
+                            .onErrorResume(e -> {
+                                onFailedRequest(e);
+                                log.error("Error al clasificar lote de {} correos con Gemini AI: {}", lote.size(), e.getMessage());
+                                return Mono.just(new RespuestaLote(lote, null, e));
+                            });
+                });
+    }
+
+    private record RespuestaLote(List<MensajeSunat> lote, String cuerpo, Throwable error) {
+    }
+
+    // Marca los lotes que no se enviaron por falta de cupo o por el circuit breaker
+    private static final class CupoNoDisponible extends RuntimeException {
+        CupoNoDisponible() {
+            super("Sin cupo de Gemini", null, false, false);
+        }
+    }
+
+    /**
+     * Divide los mensajes en lotes por cantidad máxima y por presupuesto estimado de tokens
+     */
+    List<List<MensajeSunat>> armarLotes(List<MensajeSunat> mensajes) {
+        List<List<MensajeSunat>> lotes = new ArrayList<>();
+        if (mensajes.isEmpty()) {
+            return lotes;
+        }
+        int tokensBase = buildBatchPrompt(List.of()).length() / CARACTERES_POR_TOKEN;
+        int maxPorLote = Math.max(1, batchMaxMensajes);
+
+        List<MensajeSunat> actual = new ArrayList<>();
+        int tokensActual = tokensBase;
+        for (MensajeSunat mensaje : mensajes) {
+            StringBuilder entrada = new StringBuilder();
+            appendEntradaLote(entrada, mensaje);
+            int tokensEntrada = entrada.length() / CARACTERES_POR_TOKEN + 1;
+            boolean excedeTokens = tokensActual + tokensEntrada > batchMaxTokensEntrada;
+            if (!actual.isEmpty() && (actual.size() >= maxPorLote || excedeTokens)) {
+                lotes.add(actual);
+                actual = new ArrayList<>();
+                tokensActual = tokensBase;
+            }
+            actual.add(mensaje);
+            tokensActual += tokensEntrada;
+        }
+        lotes.add(actual);
+        return lotes;
+    }
+
     /**
      * Verifica si el circuit breaker está abierto
      */
@@ -134,11 +417,8 @@ public class GeminiAIService {
         }
         
         // Si el rate limit está al 80%, solo procesar correos prioritarios
-        LocalDateTime now = LocalDateTime.now();
-        if (ChronoUnit.MINUTES.between(lastResetTime, now) == 0) {
-            if (currentMinuteRequests.get() >= (rateLimitPerMinute * 0.8)) {
-                return isPriorityEmail(mensaje);
-            }
+        if (limitador.peticionesEnUso() >= limitador.getMaxPeticionesPorMinuto() * 0.8) {
+            return isPriorityEmail(mensaje);
         }
         
         return true;
@@ -148,71 +428,53 @@ public class GeminiAIService {
      * Determina si un correo es prioritario
      */
     private boolean isPriorityEmail(MensajeSunat mensaje) {
-        if (mensaje.getVcAsunto() == null) {
-            return false;
+        if (mensaje.getNuUrgente() != null && mensaje.getNuUrgente() == 1) {
+            return true;
         }
-        
-        String asunto = mensaje.getVcAsunto().toLowerCase();
-        
-        // Correos de alta prioridad
-        return asunto.contains("resolución") ||
-               asunto.contains("cobranza") ||
-               asunto.contains("embargo") ||
-               asunto.contains("multa") ||
-               asunto.contains("fiscalización") ||
-               asunto.contains("urgente") ||
-               (mensaje.getNuUrgente() != null && mensaje.getNuUrgente() == 1);
+        return motorReglas.evaluar(mensaje.getVcAsunto()).prioritaria();
     }
 
     /**
-     * Verifica si se puede hacer una nueva request (rate limiting)
+     * Clasificación por reglas locales cuando su confianza supera el umbral configurado
+     *
+     * @return el resultado o null si hay que consultar a Gemini
      */
-    private boolean canMakeRequest() {
-        LocalDateTime now = LocalDateTime.now();
-        
-        // Resetear contador si ha pasado un minuto
-        if (ChronoUnit.MINUTES.between(lastResetTime, now) >= 1) {
-            currentMinuteRequests.set(0);
-            lastResetTime = now;
+    private EmailAnalysisResult clasificarPorReglas(MensajeSunat mensaje) {
+        MotorReglasClasificacion.ResultadoReglas reglas = motorReglas.evaluar(mensaje.getVcAsunto());
+        if (!motorReglas.esConcluyente(reglas)) {
+            return null;
         }
-        
-        // Verificar si se puede hacer la request
-        if (currentMinuteRequests.get() >= rateLimitPerMinute) {
-            return false;
-        }
-        
-        // Limpiar historial viejo (más de 1 minuto)
-        requestHistory.removeIf(timestamp -> 
-            ChronoUnit.MINUTES.between(timestamp, now) > 1);
-        
-        return requestHistory.size() < rateLimitPerMinute;
+        log.debug("📏 Clasificado por reglas locales: {} ({}) - {}",
+                reglas.clasificacion(), reglas.etiquetaCodigo(), reglas.palabrasClave());
+        return EmailAnalysisResult.builder()
+                .clasificacion(reglas.clasificacion())
+                .etiquetaCodigo(reglas.etiquetaCodigo())
+                .etiquetaNombre(reglas.etiquetaNombre())
+                .razon("Reglas locales por palabras clave: " + String.join(", ", reglas.palabrasClave()))
+                .confianza(reglas.confianza())
+                .build();
     }
 
     /**
      * Registra una request exitosa
      */
     private void onSuccessfulRequest() {
-        requestHistory.offer(LocalDateTime.now());
-        currentMinuteRequests.incrementAndGet();
         consecutiveFailures.set(0);
-        log.debug("✅ Request exitosa a Gemini. Total en minuto actual: {}", currentMinuteRequests.get());
+        log.debug("✅ Request exitosa a Gemini. En uso en el último minuto: {}", limitador.peticionesEnUso());
     }
 
     /**
      * Maneja una request fallida
      */
-    private void onFailedRequest(Exception e) {
+    private void onFailedRequest(Throwable e) {
         int failures = consecutiveFailures.incrementAndGet();
         
-        // Si es error 429 (quota exceeded), abrir circuit breaker inmediatamente
-        if (e instanceof HttpClientErrorException) {
-            HttpClientErrorException httpError = (HttpClientErrorException) e;
-            if (httpError.getStatusCode().value() == 429) {
-                log.error("🔴 Error 429 - Cuota de Gemini agotada. Abriendo circuit breaker por {} segundos", 
-                         circuitBreakerResetTimeoutSeconds);
-                circuitBreakerOpenTime = LocalDateTime.now();
-                return;
-            }
+        // Si es error 429 (quota exceeded) tras los reintentos, abrir circuit breaker inmediatamente
+        if (esCuotaAgotada(e)) {
+            log.error("🔴 Error 429 - Cuota de Gemini agotada. Abriendo circuit breaker por {} segundos", 
+                     circuitBreakerResetTimeoutSeconds);
+            circuitBreakerOpenTime = LocalDateTime.now();
+            return;
         }
         
         // Abrir circuit breaker si hay muchos fallos consecutivos
@@ -285,9 +547,27 @@ public class GeminiAIService {
         
         prompt.append("📧 ASUNTO A CLASIFICAR: \"").append(mensaje.getVcAsunto()).append("\"\n\n");
         
+        appendCriteriosClasificacion(prompt);
+        prompt.append("📤 RESPONDE EXACTAMENTE EN ESTE FORMATO JSON:\n");
+        prompt.append("{\n");
+        prompt.append("  \"clasificacion\": \"INFORMATIVO\",\n");
+        prompt.append("  \"etiqueta_codigo\": \"10\",\n");
+        prompt.append("  \"etiqueta_nombre\": \"VALORES\",\n");
+        prompt.append("  \"razon\": \"Formulario tributario rutinario para procesamiento\"\n");
+        prompt.append("}\n\n");
+        appendReglasClasificacion(prompt);
+        prompt.append("⚡ ANALIZA AHORA EL ASUNTO E IDENTIFICA LAS PALABRAS CLAVE PRINCIPALES.");
+        
+        return prompt.toString();
+    }
+
+    /**
+     * Criterios y ejemplos de clasificación compartidos por el prompt individual y el de lote
+     */
+    private void appendCriteriosClasificacion(StringBuilder prompt) {
         prompt.append("⚠️ IMPORTANTE: IGNORA CUALQUIER ETIQUETA O CLASIFICACIÓN PREVIA\n");
         prompt.append("📝 CLASIFICA ÚNICAMENTE BASÁNDOTE EN EL CONTENIDO DEL ASUNTO\n\n");
-          prompt.append("🎯 CLASIFICACIONES DISPONIBLES (4 OPCIONES OBLIGATORIAS):\n\n");
+        prompt.append("🎯 CLASIFICACIONES DISPONIBLES (4 OPCIONES OBLIGATORIAS):\n\n");
         
         prompt.append("🔴 MUY IMPORTANTE:\n");
         prompt.append("   - Orden de Pago, Resolución Coactiva, Embargo, Cobranza\n");
@@ -313,7 +593,7 @@ public class GeminiAIService {
         prompt.append("   - Avisos simples: 'Aviso', 'Recordatorio', 'Información general'\n");
         prompt.append("   - Casos muy generales sin contenido específico\n");
         prompt.append("   - Etiquetas típicas: 00 (NO ETIQUETADOS), 16 (AVISOS)\n\n");
-          prompt.append("📋 EJEMPLOS CORRECTOS:\n");
+        prompt.append("📋 EJEMPLOS CORRECTOS:\n");
         prompt.append("'URGENTE - Orden de Pago No: 123456' → MUY IMPORTANTE (11)\n");
         prompt.append("'Formulario 0621 - PDT IGV-RENTA MENSUAL' → INFORMATIVO (10)\n");
         prompt.append("'Formulario 0601 con inconsistencias críticas' → IMPORTANTE (13)\n");
@@ -322,14 +602,10 @@ public class GeminiAIService {
         prompt.append("'Notificación SUNAT - Código: 123' → RECURRENTE (16)\n");
         prompt.append("'Resolución administrativa pendiente' → IMPORTANTE (13)\n");
         prompt.append("'Pago de tributo - Declaración mensual' → INFORMATIVO (10)\n\n");
-          prompt.append("📤 RESPONDE EXACTAMENTE EN ESTE FORMATO JSON:\n");
-        prompt.append("{\n");
-        prompt.append("  \"clasificacion\": \"INFORMATIVO\",\n");
-        prompt.append("  \"etiqueta_codigo\": \"10\",\n");
-        prompt.append("  \"etiqueta_nombre\": \"VALORES\",\n");
-        prompt.append("  \"razon\": \"Formulario tributario rutinario para procesamiento\"\n");
-        prompt.append("}\n\n");
-          prompt.append("⚡ REGLAS IMPORTANTES:\n");
+    }
+
+    private void appendReglasClasificacion(StringBuilder prompt) {
+        prompt.append("⚡ REGLAS IMPORTANTES:\n");
         prompt.append("- Solo usa: MUY IMPORTANTE, IMPORTANTE, INFORMATIVO o RECURRENTE\n");
         prompt.append("- Formularios rutinarios = INFORMATIVO\n");
         prompt.append("- Constancias exitosas = INFORMATIVO\n");
@@ -337,87 +613,101 @@ public class GeminiAIService {
         prompt.append("- Problemas críticos = IMPORTANTE\n");
         prompt.append("- Cobranzas/Fiscalizaciones = MUY IMPORTANTE\n");
         prompt.append("- Avisos generales = RECURRENTE\n\n");
-        
-        prompt.append("⚡ ANALIZA AHORA EL ASUNTO E IDENTIFICA LAS PALABRAS CLAVE PRINCIPALES.");
-        
-        return prompt.toString();
     }
 
     /**
-     * Llama a la API de Gemini AI con retry y backoff
+     * Construye un único prompt para varios asuntos: las instrucciones se envían una sola vez
+     * y se pide un arreglo JSON con el id de cada mensaje
      */
-    private String callGeminiAPIWithRetry(String prompt) throws Exception {
-        int maxRetries = 3;
-        int baseDelay = 1000; // 1 segundo
-        
-        for (int attempt = 1; attempt <= maxRetries; attempt++) {
-            try {
-                return callGeminiAPI(prompt);
-            } catch (HttpClientErrorException e) {
-                if (e.getStatusCode().value() == 429) {
-                    // Error 429: Quota exceeded
-                    if (attempt == maxRetries) {
-                        throw e; // Re-lanzar en el último intento
-                    }
-                    
-                    // Calcular delay exponencial
-                    int delay = baseDelay * (int) Math.pow(2, attempt - 1);
-                    log.warn("⚠️ Error 429 en intento {}/{}. Esperando {} ms antes del retry...", 
-                            attempt, maxRetries, delay);
-                    
-                    try {
-                        Thread.sleep(delay);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw new RuntimeException("Interrumpido durante retry", ie);
-                    }
-                } else {
-                    // Otros errores HTTP, no reintentar
-                    throw e;
-                }
-            }
+    private String buildBatchPrompt(List<MensajeSunat> lote) {
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("🔍 CLASIFICADOR TRIBUTARIO SUNAT - ANÁLISIS PURO POR CONTENIDO (LOTE)\n\n");
+        appendCriteriosClasificacion(prompt);
+
+        prompt.append("📧 ASUNTOS A CLASIFICAR (id: asunto):\n");
+        for (MensajeSunat mensaje : lote) {
+            appendEntradaLote(prompt, mensaje);
         }
-        
-        throw new RuntimeException("Máximo número de reintentos alcanzado");
-    }    /**
-     * Llama a la API de Gemini AI - MÉTODO PÚBLICO PARA DASHBOARD
+        prompt.append("\n");
+
+        prompt.append("📤 RESPONDE ÚNICAMENTE CON UN ARREGLO JSON, UN OBJETO POR CADA id:\n");
+        prompt.append("[\n");
+        prompt.append("  {\"id\": 123, \"clasificacion\": \"INFORMATIVO\", \"etiqueta_codigo\": \"10\", ");
+        prompt.append("\"etiqueta_nombre\": \"VALORES\", \"razon\": \"Formulario tributario rutinario\"}\n");
+        prompt.append("]\n");
+        prompt.append("Incluye TODOS los id recibidos, sin repetirlos ni agregar otros.\n\n");
+        appendReglasClasificacion(prompt);
+
+        prompt.append("⚡ ANALIZA AHORA CADA ASUNTO E IDENTIFICA LAS PALABRAS CLAVE PRINCIPALES.");
+        return prompt.toString();
+    }
+
+    private void appendEntradaLote(StringBuilder prompt, MensajeSunat mensaje) {
+        prompt.append("- ").append(mensaje.getNuCodigoMensaje()).append(": \"")
+                .append(mensaje.getVcAsunto() == null ? "" : mensaje.getVcAsunto().replace('"', '\''))
+                .append("\"");
+        if (mensaje.getNuUrgente() != null && mensaje.getNuUrgente() == 1) {
+            prompt.append(" [URGENTE]");
+        }
+        prompt.append("\n");
+    }
+
+    /**
+     * Consulta a Gemini sin bloquear, con los plazos y reintentos de GeminiCliente.
+     * No reserva cupo: quien llama ya lo reservó en el limitador
+     */
+    public Mono<String> consultarGemini(String prompt) {
+        return geminiCliente.generar(prompt, null);
+    }
+
+    /**
+     * Llama a la API de Gemini AI y espera la respuesta, sin reservar cupo: quien llama ya lo reservó en el limitador
      */
     public String callGeminiAPI(String prompt) throws Exception {
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("Content-Type", "application/json");
+        return consultarGemini(prompt).block();
+    }
 
-        Map<String, Object> requestBody = new HashMap<>();
-        Map<String, Object> contents = new HashMap<>();
-        Map<String, Object> parts = new HashMap<>();
-        parts.put("text", prompt);
-        contents.put("parts", List.of(parts));
-        requestBody.put("contents", List.of(contents));
+    /**
+     * Llama a la API de Gemini AI pidiendo que la respuesta sea un único objeto JSON (responseMimeType).
+     * Espera cupo en el limitador hasta gemini.rate.limit.espera-maxima-ms.
+     *
+     * @throws IllegalStateException si no hubo cupo dentro de la espera máxima
+     */
+    public String callGeminiAPIJson(String prompt) throws Exception {
+        if (!limitador.acquire(LimitadorGemini.estimarTokens(prompt), Duration.ofMillis(esperaMaximaCupoMs))) {
+            throw new IllegalStateException("Límite de peticiones por minuto de Gemini alcanzado");
+        }
+        return geminiCliente.generar(prompt, Map.of("responseMimeType", "application/json")).block();
+    }
 
-        HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
-        
-        String url = geminiApiUrl + "?key=" + geminiApiKey;
-        ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.POST, request, String.class);
-        
-        return response.getBody();
+    /**
+     * Aciertos, fallos y tamaño de la caché de clasificaciones
+     */
+    public Map<String, Object> obtenerEstadisticasCache() {
+        Map<String, Object> estadisticas = new HashMap<>(clasificacionCache.obtenerEstadisticas());
+        estadisticas.put("versionPrompt", obtenerVersionPrompt());
+        return estadisticas;
+    }
+
+    /**
+     * Estado de la cuota de Gemini compartida entre nodos
+     */
+    public Map<String, Object> obtenerEstadoCuotaCompartida() {
+        return limitador.estadoCuotaCompartida();
     }
 
     /**
      * Obtiene el estado actual del rate limiter y circuit breaker
      */
     public RateLimiterStatus getRateLimiterStatus() {
-        LocalDateTime now = LocalDateTime.now();
-        
-        // Calcular requests en el último minuto
-        long recentRequests = requestHistory.stream()
-                .filter(timestamp -> ChronoUnit.MINUTES.between(timestamp, now) < 1)
-                .count();
-        
         boolean circuitOpen = isCircuitBreakerOpen();
         
         return RateLimiterStatus.builder()
                 .enabled(geminiEnabled)
-                .requestsInLastMinute((int) recentRequests)
-                .maxRequestsPerMinute(rateLimitPerMinute)
+                .requestsInLastMinute(limitador.peticionesEnUso())
+                .maxRequestsPerMinute(limitador.getMaxPeticionesPorMinuto())
+                .tokensInLastMinute(limitador.tokensEnUso())
+                .maxTokensPerMinute(limitador.getMaxTokensPorMinuto())
                 .circuitBreakerOpen(circuitOpen)
                 .consecutiveFailures(consecutiveFailures.get())
                 .circuitBreakerOpenTime(circuitBreakerOpenTime)
@@ -462,6 +752,53 @@ public class GeminiAIService {
         return getDefaultClassification();
     }
 
+    /**
+     * Parsea la respuesta de un lote. Las entradas sin id válido o con campos faltantes se
+     * descartan para que el llamador las reintente individualmente.
+     */
+    Map<Long, EmailAnalysisResult> parseGeminiBatchResponse(String response) {
+        Map<Long, EmailAnalysisResult> resultados = new HashMap<>();
+        try {
+            JsonNode text = objectMapper.readTree(response)
+                    .path("candidates").path(0).path("content").path("parts").path(0).path("text");
+            if (!text.isTextual()) {
+                return resultados;
+            }
+            String contenido = text.asText();
+            int inicio = contenido.indexOf('[');
+            int fin = contenido.lastIndexOf(']');
+            if (inicio < 0 || fin <= inicio) {
+                log.error("No se encontró un arreglo JSON en la respuesta del lote");
+                return resultados;
+            }
+            JsonNode arreglo = objectMapper.readTree(contenido.substring(inicio, fin + 1));
+            for (JsonNode item : arreglo) {
+                JsonNode id = item.get("id");
+                JsonNode clasificacion = item.get("clasificacion");
+                JsonNode etiquetaCodigo = item.get("etiqueta_codigo");
+                if (id == null || !id.canConvertToLong() && !id.isTextual()
+                        || clasificacion == null || etiquetaCodigo == null) {
+                    continue;
+                }
+                try {
+                    long codigo = id.isTextual() ? Long.parseLong(id.asText().trim()) : id.asLong();
+                    resultados.put(codigo, EmailAnalysisResult.builder()
+                            .clasificacion(clasificacion.asText())
+                            .etiquetaCodigo(etiquetaCodigo.asText())
+                            .etiquetaNombre(item.path("etiqueta_nombre").asText(""))
+                            .razon(item.path("razon").asText(""))
+                            .confianza(0.8)
+                            .build());
+                } catch (NumberFormatException e) {
+                    log.debug("Id inválido en respuesta de lote: {}", id);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error al parsear respuesta de lote de Gemini: {}", e.getMessage());
+        }
+        return resultados;
+    }
+
     /**
      * Extrae JSON de un texto que puede contener texto adicional
      */
@@ -482,9 +819,14 @@ public class GeminiAIService {
                 .clasificacion("RECURRENTE")
                 .etiquetaCodigo("00")
                 .etiquetaNombre("NO ETIQUETADOS")
-                .razon("Clasificación automática por defecto")
+                .razon(RAZON_POR_DEFECTO)
                 .confianza(0.5)
                 .build();
+    }
+
+    // La clasificación por defecto no proviene del modelo y no debe guardarse en caché
+    private boolean esClasificacionPorDefecto(EmailAnalysisResult result) {
+        return RAZON_POR_DEFECTO.equals(result.getRazon());
     }    /**
      * MÉTODO DESHABILITADO - Permitimos que Gemini clasifique libremente
      * Ya no validamos ni corregimos las decisiones de la IA
@@ -615,6 +957,8 @@ public class GeminiAIService {
         private boolean enabled;
         private int requestsInLastMinute;
         private int maxRequestsPerMinute;
+        private long tokensInLastMinute;
+        private long maxTokensPerMinute;
         private boolean circuitBreakerOpen;
         private int consecutiveFailures;
         private LocalDateTime circuitBreakerOpenTime;
@@ -627,11 +971,14 @@ public class GeminiAIService {
         public RateLimiterStatus() {}
 
         public RateLimiterStatus(boolean enabled, int requestsInLastMinute, int maxRequestsPerMinute, 
+                               long tokensInLastMinute, long maxTokensPerMinute,
                                boolean circuitBreakerOpen, int consecutiveFailures, 
                                LocalDateTime circuitBreakerOpenTime) {
             this.enabled = enabled;
             this.requestsInLastMinute = requestsInLastMinute;
             this.maxRequestsPerMinute = maxRequestsPerMinute;
+            this.tokensInLastMinute = tokensInLastMinute;
+            this.maxTokensPerMinute = maxTokensPerMinute;
             this.circuitBreakerOpen = circuitBreakerOpen;
             this.consecutiveFailures = consecutiveFailures;
             this.circuitBreakerOpenTime = circuitBreakerOpenTime;
@@ -647,6 +994,12 @@ public class GeminiAIService {
         public int getMaxRequestsPerMinute() { return maxRequestsPerMinute; }
         public void setMaxRequestsPerMinute(int maxRequestsPerMinute) { this.maxRequestsPerMinute = maxRequestsPerMinute; }
         
+        public long getTokensInLastMinute() { return tokensInLastMinute; }
+        public void setTokensInLastMinute(long tokensInLastMinute) { this.tokensInLastMinute = tokensInLastMinute; }
+        
+        public long getMaxTokensPerMinute() { return maxTokensPerMinute; }
+        public void setMaxTokensPerMinute(long maxTokensPerMinute) { this.maxTokensPerMinute = maxTokensPerMinute; }
+        
         public boolean isCircuitBreakerOpen() { return circuitBreakerOpen; }
         public void setCircuitBreakerOpen(boolean circuitBreakerOpen) { this.circuitBreakerOpen = circuitBreakerOpen; }
         
@@ -661,6 +1014,8 @@ public class GeminiAIService {
             private boolean enabled;
             private int requestsInLastMinute;
             private int maxRequestsPerMinute;
+            private long tokensInLastMinute;
+            private long maxTokensPerMinute;
             private boolean circuitBreakerOpen;
             private int consecutiveFailures;
             private LocalDateTime circuitBreakerOpenTime;
@@ -680,6 +1035,16 @@ public class GeminiAIService {
                 return this;
             }
 
+            public RateLimiterStatusBuilder tokensInLastMinute(long tokensInLastMinute) {
+                this.tokensInLastMinute = tokensInLastMinute;
+                return this;
+            }
+
+            public RateLimiterStatusBuilder maxTokensPerMinute(long maxTokensPerMinute) {
+                this.maxTokensPerMinute = maxTokensPerMinute;
+                return this;
+            }
+
             public RateLimiterStatusBuilder circuitBreakerOpen(boolean circuitBreakerOpen) {
                 this.circuitBreakerOpen = circuitBreakerOpen;
                 return this;
@@ -697,7 +1062,7 @@ public class GeminiAIService {
 
             public RateLimiterStatus build() {
                 return new RateLimiterStatus(enabled, requestsInLastMinute, maxRequestsPerMinute, 
-                                           circuitBreakerOpen, consecutiveFailures, circuitBreakerOpenTime);
+                                           tokensInLastMinute, maxTokensPerMinute, circuitBreakerOpen, consecutiveFailures, circuitBreakerOpenTime);
             }
         }
     }
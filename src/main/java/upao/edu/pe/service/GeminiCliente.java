@@ -0,0 +1,224 @@
+package upao.edu.pe.service;
+
+import ch.qos.logback.classic.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Acceso no bloqueante a generateContent de Gemini, compartido por la clasificación, el dashboard y el
+ * asistente virtual. Cada intento tiene un plazo (gemini.http.plazo-peticion-ms) y la llamada completa,
+ * reintentos incluidos, otro (gemini.http.plazo-total-ms). Se reintentan los 429, los 5xx, los plazos
+ * vencidos y los errores de conexión con backoff exponencial con jitter completo, sin esperar nunca
+ * menos de lo que pide Gemini en Retry-After o en el retryDelay del cuerpo del error.
+ * generarEnFlujo usa streamGenerateContent y solo reintenta mientras no haya llegado el primer fragmento.
+ * No reserva cupo: quien llama ya lo reservó en LimitadorGemini. La API key viaja en la cabecera
+ * x-goog-api-key que agrega GeminiWebClientConfig, nunca en la URL (aparecería en los mensajes de error).
+ */
+@Service
+public class GeminiCliente {
+
+    private static final Logger log = (Logger) LoggerFactory.getLogger(GeminiCliente.class);
+
+    // RetryInfo de la API de Google: "retryDelay": "37s"
+    private static final Pattern RETRY_DELAY = Pattern.compile("\"retryDelay\"\\s*:\\s*\"(\\d+(?:\\.\\d+)?)s\"");
+
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> EVENTOS = new ParameterizedTypeReference<>() {
+    };
+
+    private final WebClient geminiWebClient;
+
+    @Value("${gemini.api.url}")
+    private String apiUrl;
+
+    @Value("${gemini.http.max-en-vuelo:16}")
+    private int maxEnVuelo = 16;
+
+    @Value("${gemini.http.plazo-peticion-ms:30000}")
+    private long plazoPeticionMs = 30000;
+
+    @Value("${gemini.http.plazo-total-ms:90000}")
+    private long plazoTotalMs = 90000;
+
+    @Value("${gemini.http.max-reintentos:2}")
+    private int maxReintentos = 2;
+
+    @Value("${gemini.http.backoff-base-ms:1000}")
+    private long backoffBaseMs = 1000;
+
+    @Value("${gemini.http.backoff-max-ms:30000}")
+    private long backoffMaxMs = 30000;
+
+    public GeminiCliente(@Qualifier("geminiWebClient") WebClient geminiWebClient) {
+        this.geminiWebClient = geminiWebClient;
+    }
+
+    /**
+     * Genera contenido y devuelve el cuerpo de la respuesta sin interpretar
+     */
+    public Mono<String> generar(String prompt, Map<String, Object> generationConfig) {
+        return generar(prompt, generationConfig, String.class);
+    }
+
+    /**
+     * Genera contenido y convierte el cuerpo de la respuesta al tipo indicado
+     */
+    public <T> Mono<T> generar(String prompt, Map<String, Object> generationConfig, Class<T> tipo) {
+        Mono<T> intento = geminiWebClient.post()
+                .uri(apiUrl)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(cuerpo(prompt, generationConfig))
+                .retrieve()
+                .bodyToMono(tipo)
+                .timeout(Duration.ofMillis(plazoPeticionMs));
+
+        return intento
+                .retryWhen(reintentos(() -> true))
+                .timeout(Duration.ofMillis(plazoTotalMs));
+    }
+
+    /**
+     * Genera contenido con streamGenerateContent y emite el JSON de cada fragmento a medida que llega.
+     * gemini.http.plazo-peticion-ms limita la espera del primer fragmento y la pausa entre fragmentos;
+     * no hay plazo total, la duración depende del largo de la respuesta.
+     */
+    public Flux<String> generarEnFlujo(String prompt, Map<String, Object> generationConfig) {
+        return Flux.defer(() -> {
+            // Reintentar después de emitir fragmentos los duplicaría en quien consume el flujo
+            AtomicBoolean iniciado = new AtomicBoolean();
+            return geminiWebClient.post()
+                    .uri(urlStreaming() + "?alt=sse")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .accept(MediaType.TEXT_EVENT_STREAM)
+                    .bodyValue(cuerpo(prompt, generationConfig))
+                    .retrieve()
+                    .bodyToFlux(EVENTOS)
+                    .mapNotNull(ServerSentEvent::data)
+                    .timeout(Duration.ofMillis(plazoPeticionMs))
+                    .doOnNext(fragmento -> iniciado.set(true))
+                    .retryWhen(reintentos(() -> !iniciado.get()));
+        });
+    }
+
+    String urlStreaming() {
+        return apiUrl.replace(":generateContent", ":streamGenerateContent");
+    }
+
+    private static Map<String, Object> cuerpo(String prompt, Map<String, Object> generationConfig) {
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("contents", List.of(Map.of("parts", List.of(Map.of("text", prompt)))));
+        if (generationConfig != null) {
+            requestBody.put("generationConfig", generationConfig);
+        }
+        return requestBody;
+    }
+
+    /**
+     * Reintentos con backoff para los errores transitorios, mientras la condición lo permita
+     */
+    private Retry reintentos(BooleanSupplier permitido) {
+        return Retry.from(senales -> senales.concatMap(senal -> {
+            Throwable error = senal.failure();
+            long reintento = senal.totalRetries() + 1;
+            if (!permitido.getAsBoolean() || !esReintentable(error) || reintento > maxReintentos) {
+                return Mono.error(error);
+            }
+            Duration espera = calcularEspera(reintento, error, ThreadLocalRandom.current().nextDouble());
+            if (espera.toMillis() >= plazoTotalMs) {
+                // Gemini pide esperar más de lo que admite el plazo: se devuelve su error tal cual
+                return Mono.error(error);
+            }
+            log.warn("⚠️ {} en Gemini, reintento {}/{} en {} ms",
+                    describir(error), reintento, maxReintentos, espera.toMillis());
+            return Mono.delay(espera);
+        }));
+    }
+
+    /**
+     * Máximo de peticiones simultáneas (tamaño del pool de conexiones)
+     */
+    public int getMaxEnVuelo() {
+        return Math.max(1, maxEnVuelo);
+    }
+
+    static boolean esReintentable(Throwable error) {
+        if (error instanceof WebClientResponseException respuesta) {
+            int estado = respuesta.getStatusCode().value();
+            return estado == 429 || respuesta.getStatusCode().is5xxServerError();
+        }
+        return error instanceof TimeoutException || error instanceof WebClientRequestException;
+    }
+
+    /**
+     * Espera antes del reintento indicado (1, 2, ...): jitter completo sobre el backoff exponencial,
+     * nunca menor que lo pedido por Gemini
+     *
+     * @param azar valor en [0, 1) que elige la espera dentro del backoff
+     */
+    Duration calcularEspera(long reintento, Throwable error, double azar) {
+        long exponencial = backoffBaseMs << Math.min(reintento - 1, 20);
+        long jitter = (long) (Math.min(backoffMaxMs, exponencial) * azar);
+        Duration pedida = esperaPedida(error);
+        return pedida != null && pedida.toMillis() > jitter ? pedida : Duration.ofMillis(jitter);
+    }
+
+    /**
+     * Espera que pide Gemini en un 429 o 503: cabecera Retry-After (segundos o fecha HTTP)
+     * o retryDelay en el cuerpo del error
+     */
+    static Duration esperaPedida(Throwable error) {
+        if (!(error instanceof WebClientResponseException respuesta)) {
+            return null;
+        }
+        String retryAfter = respuesta.getHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+        if (retryAfter != null && !retryAfter.isBlank()) {
+            try {
+                return Duration.ofSeconds(Math.max(0, Long.parseLong(retryAfter.trim())));
+            } catch (NumberFormatException e) {
+                try {
+                    ZonedDateTime fecha = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                    Duration hastaFecha = Duration.between(ZonedDateTime.now(fecha.getZone()), fecha);
+                    return hastaFecha.isNegative() ? Duration.ZERO : hastaFecha;
+                } catch (Exception ignorado) {
+                    log.debug("Retry-After de Gemini no reconocido: {}", retryAfter);
+                }
+            }
+        }
+        Matcher retryDelay = RETRY_DELAY.matcher(respuesta.getResponseBodyAsString());
+        if (retryDelay.find()) {
+            return Duration.ofMillis((long) (Double.parseDouble(retryDelay.group(1)) * 1000));
+        }
+        return null;
+    }
+
+    private static String describir(Throwable error) {
+        if (error instanceof WebClientResponseException respuesta) {
+            return "Error " + respuesta.getStatusCode().value();
+        }
+        return error instanceof TimeoutException ? "Plazo vencido" : "Error de conexión";
+    }
+}
@@ -0,0 +1,141 @@
+package upao.edu.pe.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import upao.edu.pe.model.MensajeSunat;
+import upao.edu.pe.util.CacheLruTtl;
+
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Caché en memoria del heatmap de actividad (7 días x 24 horas) por RUC y cantidad de semanas.
+ * Cada entrada es un int[168] (índice = (día ISO - 1) * 24 + hora) que cubre desde el lunes de
+ * hace (semanas - 1) semanas; se calcula una vez con la consulta agrupada, se incrementa al
+ * confirmarse el guardado de mensajes nuevos y caduca al empezar una nueva semana, cuando la ventana se desplaza.
+ *
+ * La entrada se registra antes de cargarla y la carga se hace con su candado tomado: un incremento
+ * que llega durante la carga espera a que termine, y uno que llega antes la omite porque la consulta,
+ * que corre después, ya ve el mensaje confirmado. Las entradas están acotadas por cantidad (LRU) y por TTL.
+ */
+@Component
+public class HeatmapActividadPorRuc {
+
+    public static final int HORAS_DIA = 24;
+    public static final int CELDAS = 7 * HORAS_DIA;
+
+    private final CacheLruTtl<Clave, Mapa> mapas;
+
+    Clock reloj = Clock.systemDefaultZone();
+
+    public HeatmapActividadPorRuc(@Value("${dashboard.heatmap.max-entradas:500}") int maxEntradas,
+                                  @Value("${dashboard.heatmap.ttl-horas:24}") long ttlHoras) {
+        this.mapas = new CacheLruTtl<>(maxEntradas, ttlHoras * 3_600_000L);
+    }
+
+    /**
+     * Conteos del heatmap; si no hay entrada vigente se calculan con el cargador
+     * @param ruc RUC o null para todos los RUC
+     * @param cargador Recibe el inicio de la ventana y devuelve los 168 conteos
+     * @return Copia de los conteos
+     */
+    public int[] obtener(String ruc, int semanas, Function<LocalDateTime, int[]> cargador) {
+        LocalDate lunesActual = lunesDe(LocalDate.now(reloj));
+        Mapa mapa = mapas.obtenerOCrear(new Clave(ruc, semanas, lunesActual),
+                clave -> new Mapa(ruc, lunesActual, lunesActual.minusWeeks(semanas - 1L).atStartOfDay()));
+        mapa.candado.lock();
+        try {
+            if (mapa.celdas == null) {
+                int[] celdas = cargador.apply(mapa.desde);
+                if (celdas.length != CELDAS) {
+                    throw new IllegalArgumentException("El heatmap requiere " + CELDAS + " celdas");
+                }
+                mapa.celdas = celdas.clone();
+            }
+            return mapa.celdas.clone();
+        } finally {
+            mapa.candado.unlock();
+        }
+    }
+
+    /**
+     * Suma los mensajes de MensajeSunatServicio.guardarNuevos una vez confirmada su transacción
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void alGuardarMensajes(MensajesGuardadosEvento evento) {
+        registrar(evento.mensajes());
+    }
+
+    /**
+     * Suma los mensajes recién guardados a las entradas vigentes de su RUC y a las de todos los RUC
+     */
+    public void registrar(Collection<MensajeSunat> mensajes) {
+        if (mensajes == null || mensajes.isEmpty()) {
+            return;
+        }
+        LocalDate lunesActual = lunesDe(LocalDate.now(reloj));
+        for (Mapa mapa : mapas.valoresVigentes()) {
+            if (!mapa.lunes.equals(lunesActual)) {
+                continue;
+            }
+            mapa.candado.lock();
+            try {
+                if (mapa.celdas == null) {
+                    // Aún no se cargó: la consulta verá estos mensajes
+                    continue;
+                }
+                for (MensajeSunat mensaje : mensajes) {
+                    LocalDateTime publicacion = mensaje.getDtFechaPublica();
+                    if (publicacion != null && !publicacion.isBefore(mapa.desde)
+                            && (mapa.ruc == null || mapa.ruc.equals(mensaje.getVcNumeroRuc()))) {
+                        mapa.celdas[celda(publicacion)]++;
+                    }
+                }
+            } finally {
+                mapa.candado.unlock();
+            }
+        }
+    }
+
+    /**
+     * Celda del heatmap: día ISO (lunes = 1) y hora
+     */
+    public static int celda(int diaIso, int hora) {
+        return (diaIso - 1) * HORAS_DIA + hora;
+    }
+
+    static int celda(LocalDateTime fecha) {
+        return celda(fecha.getDayOfWeek().getValue(), fecha.getHour());
+    }
+
+    private static LocalDate lunesDe(LocalDate dia) {
+        return dia.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+    }
+
+    // El lunes es parte de la clave: al cambiar de semana se crea otra entrada y la vieja sale por LRU/TTL
+    private record Clave(String ruc, int semanas, LocalDate lunes) {
+    }
+
+    private static final class Mapa {
+
+        private final String ruc;
+        private final LocalDate lunes;
+        private final LocalDateTime desde;
+        // ReentrantLock en lugar de synchronized: la carga hace E/S y no debe fijar hilos virtuales
+        private final ReentrantLock candado = new ReentrantLock();
+        private int[] celdas; // null hasta que termina la carga
+
+        private Mapa(String ruc, LocalDate lunes, LocalDateTime desde) {
+            this.ruc = ruc;
+            this.lunes = lunes;
+            this.desde = desde;
+        }
+    }
+}
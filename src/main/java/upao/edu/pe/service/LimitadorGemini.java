@@ -0,0 +1,178 @@
+package upao.edu.pe.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Límite de peticiones y de tokens por minuto compartido por todos los que llaman a Gemini
+ * (clasificación, dashboard y asistente virtual).
+ * Es un token bucket doble sobre System.nanoTime(): el cupo de peticiones y el de tokens se reponen
+ * de forma continua a razón de su límite por minuto, y una reserva descuenta ambos a la vez con un
+ * compareAndSet sobre un estado inmutable, sin candados ni historial que recorrer.
+ * Con la cuota compartida habilitada, cada reserva local también debe caber en la cuota del clúster.
+ */
+@Component
+public class LimitadorGemini {
+
+    // Aproximación usada para estimar tokens sin tokenizador (~4 caracteres por token)
+    public static final int CARACTERES_POR_TOKEN = 4;
+
+    private static final double NANOS_POR_MINUTO = TimeUnit.MINUTES.toNanos(1);
+
+    private final int maxPeticionesPorMinuto;
+    private final long maxTokensPorMinuto;
+    private final double peticionesPorNano;
+    private final double tokensPorNano;
+    private final LongSupplier reloj;
+    private final AtomicReference<Cupo> cupo;
+    private final CuotaGeminiCompartida cuotaCompartida;
+
+    @Autowired
+    public LimitadorGemini(@Value("${gemini.rate.limit.per.minute:12}") int maxPeticionesPorMinuto,
+                           @Value("${gemini.rate.limit.tokens.per.minute:1000000}") long maxTokensPorMinuto,
+                           CuotaGeminiCompartida cuotaCompartida) {
+        this(maxPeticionesPorMinuto, maxTokensPorMinuto, System::nanoTime, cuotaCompartida);
+    }
+
+    LimitadorGemini(int maxPeticionesPorMinuto, long maxTokensPorMinuto) {
+        this(maxPeticionesPorMinuto, maxTokensPorMinuto, System::nanoTime, null);
+    }
+
+    LimitadorGemini(int maxPeticionesPorMinuto, long maxTokensPorMinuto, LongSupplier reloj) {
+        this(maxPeticionesPorMinuto, maxTokensPorMinuto, reloj, null);
+    }
+
+    LimitadorGemini(int maxPeticionesPorMinuto, long maxTokensPorMinuto, LongSupplier reloj,
+                    CuotaGeminiCompartida cuotaCompartida) {
+        this.maxPeticionesPorMinuto = Math.max(1, maxPeticionesPorMinuto);
+        this.maxTokensPorMinuto = Math.max(1, maxTokensPorMinuto);
+        this.peticionesPorNano = this.maxPeticionesPorMinuto / NANOS_POR_MINUTO;
+        this.tokensPorNano = this.maxTokensPorMinuto / NANOS_POR_MINUTO;
+        this.reloj = reloj;
+        this.cuotaCompartida = cuotaCompartida;
+        this.cupo = new AtomicReference<>(new Cupo(this.maxPeticionesPorMinuto, this.maxTokensPorMinuto, reloj.getAsLong()));
+    }
+
+    /**
+     * Reserva una petición y los tokens indicados si hay cupo, sin esperar
+     */
+    public boolean tryAcquire(int tokens) {
+        return reservar(tokens) == 0;
+    }
+
+    /**
+     * Reserva una petición y los tokens indicados esperando como máximo el tiempo dado
+     * @return false si no hubo cupo dentro del plazo o si el hilo fue interrumpido
+     */
+    public boolean acquire(int tokens, Duration espera) {
+        long limite = reloj.getAsLong() + espera.toNanos();
+        while (true) {
+            long faltante = reservar(tokens);
+            if (faltante == 0) {
+                return true;
+            }
+            long restante = limite - reloj.getAsLong();
+            if (restante <= 0 || faltante > restante) {
+                return false;
+            }
+            LockSupport.parkNanos(this, faltante);
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Intenta descontar el costo del cupo actual
+     * @return 0 si se reservó, o los nanosegundos que faltan para que haya cupo suficiente
+     */
+    private long reservar(int tokens) {
+        // Un prompt mayor que el límite por minuto nunca cabría: se cobra como máximo el cupo completo
+        double costo = Math.min(Math.max(0, tokens), maxTokensPorMinuto);
+        while (true) {
+            Cupo actual = cupo.get();
+            Cupo repuesto = reponer(actual, reloj.getAsLong());
+            if (repuesto.peticiones() < 1 || repuesto.tokens() < costo) {
+                double faltaPeticiones = Math.max(0, 1 - repuesto.peticiones()) / peticionesPorNano;
+                double faltaTokens = Math.max(0, costo - repuesto.tokens()) / tokensPorNano;
+                return Math.max(1, (long) Math.ceil(Math.max(faltaPeticiones, faltaTokens)));
+            }
+            Cupo reservado = new Cupo(repuesto.peticiones() - 1, repuesto.tokens() - costo, repuesto.instante());
+            if (cupo.compareAndSet(actual, reservado)) {
+                return reservarEnCluster(costo);
+            }
+        }
+    }
+
+    /**
+     * Descuenta la reserva de la cuota del clúster; si no cabe, devuelve lo reservado localmente
+     */
+    private long reservarEnCluster(double costo) {
+        if (cuotaCompartida == null || !cuotaCompartida.isHabilitada()) {
+            return 0;
+        }
+        long espera = cuotaCompartida.consumir((long) Math.ceil(costo));
+        if (espera > 0) {
+            cupo.updateAndGet(actual -> new Cupo(Math.min(maxPeticionesPorMinuto, actual.peticiones() + 1),
+                    Math.min(maxTokensPorMinuto, actual.tokens() + costo), actual.instante()));
+        }
+        return espera;
+    }
+
+    private Cupo reponer(Cupo cupo, long ahora) {
+        long transcurrido = ahora - cupo.instante();
+        if (transcurrido <= 0) {
+            return cupo;
+        }
+        return new Cupo(Math.min(maxPeticionesPorMinuto, cupo.peticiones() + transcurrido * peticionesPorNano),
+                Math.min(maxTokensPorMinuto, cupo.tokens() + transcurrido * tokensPorNano),
+                ahora);
+    }
+
+    /**
+     * Peticiones del último minuto que aún no se han repuesto
+     */
+    public int peticionesEnUso() {
+        return (int) Math.ceil(maxPeticionesPorMinuto - reponer(cupo.get(), reloj.getAsLong()).peticiones());
+    }
+
+    /**
+     * Tokens del último minuto que aún no se han repuesto
+     */
+    public long tokensEnUso() {
+        return (long) Math.ceil(maxTokensPorMinuto - reponer(cupo.get(), reloj.getAsLong()).tokens());
+    }
+
+    /**
+     * Estado de la cuota compartida entre nodos
+     */
+    public Map<String, Object> estadoCuotaCompartida() {
+        return cuotaCompartida == null ? Map.of("habilitada", false) : cuotaCompartida.obtenerEstado();
+    }
+
+    public int getMaxPeticionesPorMinuto() {
+        return maxPeticionesPorMinuto;
+    }
+
+    public long getMaxTokensPorMinuto() {
+        return maxTokensPorMinuto;
+    }
+
+    /**
+     * Tokens aproximados de un prompt
+     */
+    public static int estimarTokens(String texto) {
+        return texto == null ? 0 : texto.length() / CARACTERES_POR_TOKEN + 1;
+    }
+
+    private record Cupo(double peticiones, double tokens, long instante) {
+    }
+}
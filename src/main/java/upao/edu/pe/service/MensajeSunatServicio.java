@@ -4,6 +4,7 @@ import ch.qos.logback.classic.Logger;
 import jakarta.transaction.Transactional;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -11,11 +12,15 @@ import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import upao.edu.pe.model.MensajeSunat;
 import upao.edu.pe.repository.MensajeSunatRepositorio;
+import upao.edu.pe.service.ResumenDiarioServicio.Aporte;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
 
 @Service
 @Transactional
@@ -32,7 +37,22 @@ public class MensajeSunatServicio {
     @Autowired
     private NotificationService notificationService;
 
+    @Autowired
+    private ResumenDiarioServicio resumenDiarioServicio;
+
+    @Autowired
+    private ApplicationEventPublisher eventos;
+
     private static final Map<String, String> ETIQUETAS = new HashMap<>();
+    private static final int MAX_CANTIDAD_CURSOR = 100;
+
+    /**
+     * Página de un listado por cursor
+     * @param siguienteCursor Cursor para pedir la página siguiente, null si no hay más mensajes
+     * @param totalAproximado Total según el resumen diario, null si no se pidió
+     */
+    public record PaginaMensajes(List<MensajeSunat> mensajes, String siguienteCursor, Long totalAproximado) {
+    }
 
     static {
         ETIQUETAS.put("00", "NO ETIQUETADOS");
@@ -87,6 +107,48 @@ public class MensajeSunatServicio {
         return mensajeSunatRepositorio.encontrarVcCodigoEtiqueta(codigoEtiqueta, pageable);
     }
 
+    /**
+     * Obtiene mensajes con etiqueta "00" por cursor (scroll infinito)
+     * @see #obtenerMensajesPorEtiquetaConCursor(String, String, int, boolean)
+     */
+    public PaginaMensajes obtenerMensajesConCursor(String cursor, int cantidad, boolean incluirTotal) {
+        return obtenerMensajesPorEtiquetaConCursor("00", cursor, cantidad, incluirTotal);
+    }
+
+    /**
+     * Obtiene mensajes de una etiqueta por cursor: cada página continúa desde el último mensaje
+     * entregado en lugar de saltar filas con OFFSET, así el costo no crece con la profundidad
+     * @param codigoEtiqueta Código de la etiqueta a filtrar
+     * @param cursor Cursor devuelto por la página anterior, null o vacío para la primera
+     * @param cantidad Cantidad de registros por página (1 a 100)
+     * @param incluirTotal Si se agrega el total aproximado de la etiqueta
+     * @throws IllegalArgumentException si el cursor no es válido
+     */
+    public PaginaMensajes obtenerMensajesPorEtiquetaConCursor(String codigoEtiqueta, String cursor, int cantidad, boolean incluirTotal) {
+        int tamanio = Math.max(1, Math.min(cantidad, MAX_CANTIDAD_CURSOR));
+        CursorMensajes desde = cursor == null || cursor.isBlank() ? null : CursorMensajes.decodificar(cursor);
+
+        // Se pide un mensaje de más para saber si hay página siguiente
+        List<MensajeSunat> mensajes = new ArrayList<>(tamanio + 1);
+        if (desde == null) {
+            mensajes.addAll(mensajeSunatRepositorio.encontrarPrimerosPorEtiqueta(codigoEtiqueta, PageRequest.of(0, tamanio + 1)));
+        } else if (desde.fecha() != null) {
+            mensajes.addAll(mensajeSunatRepositorio.encontrarPorEtiquetaDespuesDe(
+                    codigoEtiqueta, desde.fecha(), desde.codigo(), PageRequest.of(0, tamanio + 1)));
+        }
+        if (mensajes.size() <= tamanio) {
+            long codigoSinFecha = desde != null && desde.fecha() == null ? desde.codigo() : Long.MAX_VALUE;
+            mensajes.addAll(mensajeSunatRepositorio.encontrarSinFechaPorEtiquetaDespuesDe(
+                    codigoEtiqueta, codigoSinFecha, PageRequest.of(0, tamanio + 1 - mensajes.size())));
+        }
+
+        boolean hayMas = mensajes.size() > tamanio;
+        List<MensajeSunat> pagina = hayMas ? mensajes.subList(0, tamanio) : mensajes;
+        String siguienteCursor = hayMas ? CursorMensajes.despuesDe(pagina.get(tamanio - 1)).codificar() : null;
+        Long totalAproximado = incluirTotal ? resumenDiarioServicio.contarPorEtiqueta(codigoEtiqueta) : null;
+        return new PaginaMensajes(new ArrayList<>(pagina), siguienteCursor, totalAproximado);
+    }
+
     /**
      * Obtiene el nombre descriptivo de una etiqueta
      * @param codigoEtiqueta Código de la etiqueta
@@ -117,7 +179,9 @@ public class MensajeSunatServicio {
                 .orElseThrow(() -> new RuntimeException("Mensaje no encontrado"));
 
         mensaje.setNuDestacado(destacado);
-        return mensajeSunatRepositorio.save(mensaje);
+        MensajeSunat guardado = mensajeSunatRepositorio.save(mensaje);
+        publicarCambios(List.of(guardado));
+        return guardado;
     }
 
     /**
@@ -130,8 +194,12 @@ public class MensajeSunatServicio {
         MensajeSunat mensaje = mensajeSunatRepositorio.findById(nuCodigoMensaje)
                 .orElseThrow(() -> new RuntimeException("Mensaje no encontrado"));
 
+        Aporte antes = Aporte.de(mensaje);
         mensaje.setNuUrgente(urgente);
-        return mensajeSunatRepositorio.save(mensaje);
+        MensajeSunat guardado = mensajeSunatRepositorio.save(mensaje);
+        resumenDiarioServicio.registrar(antes, guardado);
+        publicarCambios(List.of(guardado));
+        return guardado;
     }
 
     /**
@@ -145,7 +213,9 @@ public class MensajeSunatServicio {
                 .orElseThrow(() -> new RuntimeException("Mensaje no encontrado"));
 
         mensaje.setNuEstado(estado);
-        return mensajeSunatRepositorio.save(mensaje);
+        MensajeSunat guardado = mensajeSunatRepositorio.save(mensaje);
+        publicarCambios(List.of(guardado));
+        return guardado;
     }
 
     /**
@@ -158,8 +228,12 @@ public class MensajeSunatServicio {
         MensajeSunat mensaje = mensajeSunatRepositorio.findById(nuCodigoMensaje)
                 .orElseThrow(() -> new RuntimeException("Mensaje no encontrado"));
 
+        Aporte antes = Aporte.de(mensaje);
         mensaje.setVcCodigoEtiqueta(codigoEtiqueta);
-        return mensajeSunatRepositorio.save(mensaje);
+        MensajeSunat guardado = mensajeSunatRepositorio.save(mensaje);
+        resumenDiarioServicio.registrar(antes, guardado);
+        publicarCambios(List.of(guardado));
+        return guardado;
     }
 
     /**
@@ -172,8 +246,12 @@ public class MensajeSunatServicio {
         MensajeSunat mensaje = mensajeSunatRepositorio.findById(nuCodigoMensaje)
                 .orElseThrow(() -> new RuntimeException("Mensaje no encontrado"));
 
+        Aporte antes = Aporte.de(mensaje);
         mensaje.setNuLeido(leido);
-        return mensajeSunatRepositorio.save(mensaje);
+        MensajeSunat guardado = mensajeSunatRepositorio.save(mensaje);
+        resumenDiarioServicio.registrar(antes, guardado);
+        publicarCambios(List.of(guardado));
+        return guardado;
     }
 
     /**
@@ -187,7 +265,23 @@ public class MensajeSunatServicio {
                 .orElseThrow(() -> new RuntimeException("Mensaje no encontrado"));
 
         mensaje.setNuArchivado(archivado);
-        return mensajeSunatRepositorio.save(mensaje);
+        MensajeSunat guardado = mensajeSunatRepositorio.save(mensaje);
+        publicarCambios(List.of(guardado));
+        return guardado;
+    }
+
+    /**
+     * Guarda mensajes recién descargados y los suma al resumen diario (en la misma transacción);
+     * el heatmap los suma al confirmarse la transacción (MensajesGuardadosEvento)
+     * @param nuevos Mensajes que aún no existen en base de datos
+     * @return Mensajes guardados
+     */
+    public List<MensajeSunat> guardarNuevos(List<MensajeSunat> nuevos) {
+        List<MensajeSunat> guardados = mensajeSunatRepositorio.saveAll(nuevos);
+        resumenDiarioServicio.registrarNuevos(guardados);
+        eventos.publishEvent(new MensajesGuardadosEvento(guardados));
+        publicarCambios(guardados);
+        return guardados;
     }
 
     /**
@@ -214,10 +308,21 @@ public class MensajeSunatServicio {
         List<NotificationService.EmailAnalysisInfo> correosProcesados = new ArrayList<>();
         List<MensajeSunat> correosActualizados = new ArrayList<>();
 
+        // Un prompt por lote de asuntos en lugar de una petición por correo
+        Map<Long, GeminiAIService.EmailAnalysisResult> analisisPorCodigo =
+                geminiAIService.analyzeEmailsBatch(nuevosCorreos);
+        Map<Long, Aporte> aportesPrevios = aportesGuardados(nuevosCorreos);
+
         for (MensajeSunat correo : nuevosCorreos) {
+            Aporte antes = correo.getNuCodigoMensaje() != null ? aportesPrevios.get(correo.getNuCodigoMensaje()) : null;
             try {
-                // Analizar correo con Gemini AI
-                GeminiAIService.EmailAnalysisResult analysis = geminiAIService.analyzeEmail(correo);
+                // Los correos sin código no entran al lote y se analizan individualmente
+                GeminiAIService.EmailAnalysisResult analysis = correo.getNuCodigoMensaje() != null
+                        ? analisisPorCodigo.get(correo.getNuCodigoMensaje())
+                        : null;
+                if (analysis == null) {
+                    analysis = geminiAIService.analyzeEmail(correo);
+                }
                 
                 // Actualizar correo con la clasificación
                 correo.setVcCodigoEtiqueta(analysis.getEtiquetaCodigo());
@@ -227,6 +332,7 @@ public class MensajeSunatServicio {
                 
                 // Guardar correo actualizado
                 MensajeSunat correoGuardado = mensajeSunatRepositorio.save(correo);
+                resumenDiarioServicio.registrar(antes, correoGuardado);
                 correosActualizados.add(correoGuardado);
                 
                 // Crear info para notificación
@@ -245,6 +351,7 @@ public class MensajeSunatServicio {
                 // Asignar clasificación por defecto en caso de error
                 correo.setVcCodigoEtiqueta("00");
                 MensajeSunat correoGuardado = mensajeSunatRepositorio.save(correo);
+                resumenDiarioServicio.registrar(antes, correoGuardado);
                 correosActualizados.add(correoGuardado);
             }
         }
@@ -254,6 +361,7 @@ public class MensajeSunatServicio {
             notificationService.notifyNewEmails(correosProcesados);
         }
 
+        publicarCambios(correosActualizados);
         return correosActualizados;
     }
 
@@ -263,6 +371,9 @@ public class MensajeSunatServicio {
      * @return Correo procesado
      */
     public MensajeSunat procesarCorreoIndividualConIA(MensajeSunat correo) {
+        Aporte antes = correo.getNuCodigoMensaje() != null
+                ? aportesGuardados(List.of(correo)).get(correo.getNuCodigoMensaje())
+                : null;
         try {
             // Analizar correo con Gemini AI
             GeminiAIService.EmailAnalysisResult analysis = geminiAIService.analyzeEmail(correo);
@@ -275,6 +386,8 @@ public class MensajeSunatServicio {
             
             // Guardar correo actualizado
             MensajeSunat correoGuardado = mensajeSunatRepositorio.save(correo);
+            resumenDiarioServicio.registrar(antes, correoGuardado);
+            publicarCambios(List.of(correoGuardado));
             
             // Crear info para notificación
             NotificationService.EmailAnalysisInfo emailInfo = 
@@ -295,8 +408,33 @@ public class MensajeSunatServicio {
             
             // Asignar clasificación por defecto
             correo.setVcCodigoEtiqueta("00");
-            return mensajeSunatRepositorio.save(correo);
+            MensajeSunat correoGuardado = mensajeSunatRepositorio.save(correo);
+            resumenDiarioServicio.registrar(antes, correoGuardado);
+            publicarCambios(List.of(correoGuardado));
+            return correoGuardado;
+        }
+    }
+
+    /**
+     * Avisa qué buzones cambiaron; la caché del dashboard de esos RUC se descarta al confirmar la transacción
+     */
+    private void publicarCambios(Collection<MensajeSunat> mensajes) {
+        mensajes.stream()
+                .map(MensajeSunat::getVcNumeroRuc)
+                .distinct()
+                .forEach(ruc -> eventos.publishEvent(new BuzonModificadoEvento(ruc)));
+    }
+
+    /**
+     * Aporte al resumen diario de los correos que ya están en base de datos, antes de modificarlos
+     */
+    private Map<Long, Aporte> aportesGuardados(List<MensajeSunat> correos) {
+        List<Long> codigos = correos.stream().map(MensajeSunat::getNuCodigoMensaje).filter(Objects::nonNull).toList();
+        if (codigos.isEmpty()) {
+            return Map.of();
         }
+        return mensajeSunatRepositorio.findAllById(codigos).stream()
+                .collect(Collectors.toMap(MensajeSunat::getNuCodigoMensaje, Aporte::de));
     }
 
     /**
@@ -0,0 +1,13 @@
+package upao.edu.pe.service;
+
+import upao.edu.pe.model.MensajeSunat;
+
+import java.util.List;
+
+/**
+ * Se publica al guardar mensajes recién descargados de SUNAT.
+ * Lo escucha HeatmapActividadPorRuc después del commit, para no contar mensajes de una transacción revertida.
+ * @param mensajes Mensajes guardados
+ */
+public record MensajesGuardadosEvento(List<MensajeSunat> mensajes) {
+}
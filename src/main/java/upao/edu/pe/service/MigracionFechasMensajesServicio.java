@@ -0,0 +1,102 @@
+package upao.edu.pe.service;
+
+import ch.qos.logback.classic.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import upao.edu.pe.mapper.MensajeSunatMapper;
+import upao.edu.pe.model.MensajeSunat;
+import upao.edu.pe.repository.MensajeSunatRepositorio;
+
+import java.util.List;
+
+/**
+ * Completa DT_FECHA_ENVIO y DT_FECHA_PUBLICA de los mensajes guardados antes de que existieran,
+ * con el mismo parseo que usa MensajeSunatMapper al ingresar mensajes nuevos.
+ * Recorre la tabla por código en lotes, cada uno en su propia transacción, y es idempotente:
+ * los mensajes cuya fecha no se puede interpretar quedan en null y no se vuelven a visitar en la misma pasada.
+ */
+@Service
+public class MigracionFechasMensajesServicio {
+
+    private static final Logger log = (Logger) LoggerFactory.getLogger(MigracionFechasMensajesServicio.class);
+
+    @Autowired
+    private MensajeSunatRepositorio mensajeSunatRepositorio;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ApplicationEventPublisher eventos;
+
+    @Value("${mensajes.fechas-tipadas.migrar-al-iniciar:true}")
+    private boolean migrarAlIniciar = true;
+
+    @Value("${mensajes.fechas-tipadas.tamanio-lote:500}")
+    private int tamanioLote = 500;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrarAlIniciar() {
+        if (migrarAlIniciar) {
+            completarFechas();
+        }
+    }
+
+    /**
+     * Completa las fechas tipadas pendientes
+     * @return Cantidad de mensajes actualizados
+     */
+    public int completarFechas() {
+        long inicio = System.currentTimeMillis();
+        long ultimoCodigo = Long.MIN_VALUE;
+        int actualizados = 0;
+        while (true) {
+            long despuesDe = ultimoCodigo;
+            Lote lote = transactionTemplate.execute(estado -> completarLote(despuesDe));
+            if (lote == null || lote.leidos() == 0) {
+                break;
+            }
+            actualizados += lote.actualizados();
+            ultimoCodigo = lote.ultimoCodigo();
+            if (lote.leidos() < tamanioLote) {
+                break;
+            }
+        }
+        if (actualizados > 0) {
+            eventos.publishEvent(BuzonModificadoEvento.todos());
+            log.info("🗓️ Fechas tipadas completadas en {} mensajes en {} ms", actualizados, System.currentTimeMillis() - inicio);
+        }
+        return actualizados;
+    }
+
+    private Lote completarLote(long despuesDe) {
+        List<MensajeSunat> mensajes = mensajeSunatRepositorio.encontrarSinFechasTipadas(despuesDe, PageRequest.of(0, tamanioLote));
+        int actualizados = 0;
+        for (MensajeSunat mensaje : mensajes) {
+            boolean cambio = false;
+            if (mensaje.getDtFechaPublica() == null) {
+                mensaje.setDtFechaPublica(MensajeSunatMapper.parsearFechaSunat(mensaje.getVcFechaPublica()));
+                cambio = mensaje.getDtFechaPublica() != null;
+            }
+            if (mensaje.getDtFechaEnvio() == null) {
+                mensaje.setDtFechaEnvio(MensajeSunatMapper.parsearFechaSunat(mensaje.getVcFechaEnvio()));
+                cambio |= mensaje.getDtFechaEnvio() != null;
+            }
+            if (cambio) {
+                actualizados++;
+            }
+        }
+        long ultimoCodigo = mensajes.isEmpty() ? despuesDe : mensajes.get(mensajes.size() - 1).getNuCodigoMensaje();
+        return new Lote(mensajes.size(), actualizados, ultimoCodigo);
+    }
+
+    private record Lote(int leidos, int actualizados, long ultimoCodigo) {
+    }
+}
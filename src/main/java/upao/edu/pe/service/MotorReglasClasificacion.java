@@ -0,0 +1,208 @@
+package upao.edu.pe.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import upao.edu.pe.util.AutomataPalabrasClave;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Clasificador local por palabras clave, primer nivel antes de Gemini.
+ * Todas las reglas se compilan en un autómata Aho-Corasick y el asunto se recorre una sola vez
+ * (en minúsculas y sin tildes) para obtener clasificación, etiqueta, prioridad y confianza.
+ * Solo cuando la confianza queda por debajo de clasificador.reglas.umbral-confianza se consulta al modelo.
+ */
+@Component
+public class MotorReglasClasificacion {
+
+    public static final String MUY_IMPORTANTE = "MUY IMPORTANTE";
+    public static final String IMPORTANTE = "IMPORTANTE";
+    public static final String INFORMATIVO = "INFORMATIVO";
+    public static final String RECURRENTE = "RECURRENTE";
+
+    // Orden de precedencia cuando coinciden palabras de varias clasificaciones
+    private static final List<String> NIVELES = List.of(MUY_IMPORTANTE, IMPORTANTE, INFORMATIVO, RECURRENTE);
+    // Una coincidencia con al menos esta confianza cuenta como evidencia firme de su nivel
+    private static final double CONFIANZA_FIRME = 0.7;
+    private static final double PENALIZACION_CONFLICTO = 0.1;
+
+    private static final Map<String, String> NOMBRES_ETIQUETA = Map.of(
+            "00", "NO ETIQUETADOS",
+            "10", "VALORES",
+            "11", "RESOLUCIONES DE COBRANZAS",
+            "13", "RESOLUCIONES NO CONTENCIOSAS",
+            "14", "RESOLUCIONES DE FISCALIZACION",
+            "15", "RESOLUCIONES ANTERIORES",
+            "16", "AVISOS");
+
+    private static final List<Regla> REGLAS = List.of(
+            // Cobranza y fiscalización
+            new Regla("orden de pago", MUY_IMPORTANTE, "11", 0.95, true),
+            new Regla("resolucion coactiva", MUY_IMPORTANTE, "11", 0.95, true),
+            new Regla("ejecucion coactiva", MUY_IMPORTANTE, "11", 0.95, true),
+            new Regla("embargo", MUY_IMPORTANTE, "11", 0.95, true),
+            new Regla("cobranza", MUY_IMPORTANTE, "11", 0.9, true),
+            new Regla("retencion", MUY_IMPORTANTE, "11", 0.85, false),
+            new Regla("deuda", MUY_IMPORTANTE, "11", 0.85, false),
+            new Regla("intimacion", MUY_IMPORTANTE, "11", 0.85, false),
+            new Regla("multa", MUY_IMPORTANTE, "11", 0.9, true),
+            new Regla("sancion", MUY_IMPORTANTE, "11", 0.85, false),
+            new Regla("fiscalizacion", MUY_IMPORTANTE, "14", 0.95, true),
+            new Regla("auditoria", MUY_IMPORTANTE, "14", 0.9, false),
+            new Regla("inspeccion", MUY_IMPORTANTE, "14", 0.85, false),
+            new Regla("requerimiento", MUY_IMPORTANTE, "14", 0.85, false),
+            new Regla("urgente", MUY_IMPORTANTE, "11", 0.75, true),
+            new Regla("plazo critico", MUY_IMPORTANTE, "11", 0.8, false),
+            new Regla("vencimiento", MUY_IMPORTANTE, "11", 0.7, false),
+            // Resoluciones administrativas e inconsistencias
+            new Regla("resolucion", IMPORTANTE, "13", 0.6, true),
+            new Regla("resolucion administrativa", IMPORTANTE, "13", 0.9, true),
+            new Regla("no contencios", IMPORTANTE, "13", 0.9, false),
+            new Regla("reclamacion", IMPORTANTE, "13", 0.85, false),
+            new Regla("inconsistencia", IMPORTANTE, "13", 0.85, false),
+            new Regla("observacion", IMPORTANTE, "13", 0.75, false),
+            new Regla("procedimiento", IMPORTANTE, "13", 0.7, false),
+            // Trámites rutinarios
+            new Regla("formulario", INFORMATIVO, "10", 0.85, false),
+            new Regla("pdt", INFORMATIVO, "10", 0.85, false),
+            new Regla("planilla electronica", INFORMATIVO, "10", 0.9, false),
+            new Regla("constancia", INFORMATIVO, "10", 0.9, false),
+            new Regla("exitosa", INFORMATIVO, "10", 0.8, false),
+            new Regla("factura electronica", INFORMATIVO, "10", 0.9, false),
+            new Regla("comprobante", INFORMATIVO, "10", 0.8, false),
+            new Regla("emision", INFORMATIVO, "10", 0.7, false),
+            new Regla("pago de tributo", INFORMATIVO, "10", 0.9, false),
+            new Regla("declaracion", INFORMATIVO, "10", 0.8, false),
+            new Regla("declarar", INFORMATIVO, "10", 0.75, false),
+            new Regla("certificado", INFORMATIVO, "10", 0.75, false),
+            new Regla("autorizacion", INFORMATIVO, "10", 0.7, false),
+            new Regla("validacion", INFORMATIVO, "10", 0.7, false),
+            new Regla("verificacion", INFORMATIVO, "10", 0.7, false),
+            new Regla("renta", INFORMATIVO, "10", 0.6, false),
+            new Regla("igv", INFORMATIVO, "10", 0.6, false),
+            new Regla("essalud", INFORMATIVO, "10", 0.6, false),
+            new Regla("afp", INFORMATIVO, "10", 0.6, false),
+            // Avisos generales
+            new Regla("aviso", RECURRENTE, "16", 0.85, false),
+            new Regla("recordatorio", RECURRENTE, "16", 0.85, false),
+            new Regla("comunicado", RECURRENTE, "16", 0.8, false),
+            new Regla("informacion general", RECURRENTE, "16", 0.85, false),
+            new Regla("notificacion sunat", RECURRENTE, "16", 0.6, false),
+            new Regla("actualizacion", RECURRENTE, "16", 0.6, false),
+            new Regla("cambio", RECURRENTE, "16", 0.5, false),
+            new Regla("sistema", RECURRENTE, "16", 0.5, false),
+            new Regla("plataforma", RECURRENTE, "16", 0.5, false));
+
+    // Descripción que se agrega al asunto armado desde el detalle, por orden de precedencia
+    private static final List<String[]> TIPOS_MENSAJE = List.of(
+            new String[]{"multa", "Multa Tributaria"},
+            new String[]{"cobranza", "Resolución de Cobranza"},
+            new String[]{"fiscalizacion", "Fiscalización"},
+            new String[]{"valores", "Valores"},
+            new String[]{"registros", "Registros Electrónicos"});
+
+    static {
+        if (REGLAS.size() > Long.SIZE) {
+            throw new IllegalStateException("El motor de reglas admite como máximo 64 palabras clave");
+        }
+    }
+
+    private static final AutomataPalabrasClave AUTOMATA_REGLAS =
+            AutomataPalabrasClave.compilar(REGLAS.stream().map(Regla::palabra).toList());
+    private static final AutomataPalabrasClave AUTOMATA_TIPOS =
+            AutomataPalabrasClave.compilar(TIPOS_MENSAJE.stream().map(tipo -> tipo[0]).toList());
+
+    @Value("${clasificador.reglas.habilitado:true}")
+    private boolean habilitado = true;
+
+    @Value("${clasificador.reglas.umbral-confianza:0.85}")
+    private double umbralConfianza = 0.85;
+
+    /**
+     * Evalúa todas las reglas sobre el asunto en una sola pasada
+     */
+    public ResultadoReglas evaluar(String asunto) {
+        if (asunto == null || asunto.isEmpty()) {
+            return ResultadoReglas.sinCoincidencias();
+        }
+        // Hay como máximo 64 reglas: las coincidencias caben en una máscara de bits
+        long coincidencias = AUTOMATA_REGLAS.buscarMascara(asunto);
+        if (coincidencias == 0L) {
+            return ResultadoReglas.sinCoincidencias();
+        }
+
+        // Mejor regla por nivel (índice en NIVELES)
+        Regla[] mejorPorNivel = new Regla[NIVELES.size()];
+        List<String> palabras = new ArrayList<>(Long.bitCount(coincidencias));
+        boolean prioritaria = false;
+        for (long resto = coincidencias; resto != 0L; resto &= resto - 1) {
+            Regla regla = REGLAS.get(Long.numberOfTrailingZeros(resto));
+            int nivel = regla.nivel();
+            if (mejorPorNivel[nivel] == null || regla.confianza() > mejorPorNivel[nivel].confianza()) {
+                mejorPorNivel[nivel] = regla;
+            }
+            palabras.add(regla.palabra());
+            prioritaria |= regla.prioritaria();
+        }
+
+        Regla ganadora = null;
+        int nivelesFirmes = 0;
+        for (Regla regla : mejorPorNivel) {
+            if (regla != null && regla.confianza() >= CONFIANZA_FIRME) {
+                nivelesFirmes++;
+                if (ganadora == null) {
+                    ganadora = regla;
+                }
+            }
+        }
+        if (ganadora == null) {
+            for (Regla regla : mejorPorNivel) {
+                if (regla != null && (ganadora == null || regla.confianza() > ganadora.confianza())) {
+                    ganadora = regla;
+                }
+            }
+        }
+        double confianza = nivelesFirmes > 1 ? ganadora.confianza() - PENALIZACION_CONFLICTO : ganadora.confianza();
+        return new ResultadoReglas(ganadora.clasificacion(), ganadora.etiqueta(),
+                NOMBRES_ETIQUETA.get(ganadora.etiqueta()), confianza, prioritaria, palabras);
+    }
+
+    /**
+     * Indica si el resultado es suficientemente confiable para no consultar a Gemini
+     */
+    public boolean esConcluyente(ResultadoReglas resultado) {
+        return habilitado && resultado.confianza() >= umbralConfianza;
+    }
+
+    /**
+     * Tipo de mensaje detectado en el texto del detalle, o null si no hay coincidencias
+     */
+    public String describirTipoMensaje(String texto) {
+        if (texto == null || texto.isEmpty()) {
+            return null;
+        }
+        int[] primero = {Integer.MAX_VALUE};
+        AUTOMATA_TIPOS.buscar(texto, indice -> primero[0] = Math.min(primero[0], indice));
+        return primero[0] == Integer.MAX_VALUE ? null : TIPOS_MENSAJE.get(primero[0])[1];
+    }
+
+    private record Regla(String palabra, String clasificacion, String etiqueta, double confianza, boolean prioritaria) {
+
+        int nivel() {
+            return NIVELES.indexOf(clasificacion);
+        }
+    }
+
+    /**
+     * Resultado de evaluar las reglas sobre un asunto
+     */
+    public record ResultadoReglas(String clasificacion, String etiquetaCodigo, String etiquetaNombre,
+                                  double confianza, boolean prioritaria, List<String> palabrasClave) {
+
+        static ResultadoReglas sinCoincidencias() {
+            return new ResultadoReglas(RECURRENTE, "00", NOMBRES_ETIQUETA.get("00"), 0.0, false, List.of());
+        }
+    }
+}
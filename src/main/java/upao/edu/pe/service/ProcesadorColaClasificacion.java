@@ -0,0 +1,115 @@
+package upao.edu.pe.service;
+
+import ch.qos.logback.classic.Logger;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import upao.edu.pe.model.MensajeSunat;
+import upao.edu.pe.repository.MensajeSunatRepositorio;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Vacía la cola de clasificación mientras Gemini tenga cuota libre. Los mensajes se clasifican por
+ * lotes con MensajeSunatServicio; los que vuelven a quedarse sin cuota en el camino los devuelve a la
+ * cola GeminiAIService y conservan su antigüedad.
+ */
+@Service
+public class ProcesadorColaClasificacion {
+
+    private static final Logger log = (Logger) LoggerFactory.getLogger(ProcesadorColaClasificacion.class);
+
+    private final ColaClasificacionServicio colaClasificacion;
+    private final MensajeSunatRepositorio mensajeSunatRepositorio;
+    private final MensajeSunatServicio mensajeSunatServicio;
+    private final GeminiAIService geminiAIService;
+
+    @Value("${gemini.cola.tamanio-lote:25}")
+    private int tamanioLote = 25;
+
+    // Por encima de esta fracción de la cuota por minuto la cola espera; coincide con el umbral de priorización
+    @Value("${gemini.cola.uso-maximo-cuota:0.8}")
+    private double usoMaximoCuota = 0.8;
+
+    @Value("${gemini.cola.retencion-completados-horas:24}")
+    private long retencionCompletadosHoras = 24;
+
+    private final AtomicBoolean enCurso = new AtomicBoolean();
+    private volatile boolean detenido;
+
+    public ProcesadorColaClasificacion(ColaClasificacionServicio colaClasificacion,
+                                       MensajeSunatRepositorio mensajeSunatRepositorio,
+                                       MensajeSunatServicio mensajeSunatServicio,
+                                       GeminiAIService geminiAIService) {
+        this.colaClasificacion = colaClasificacion;
+        this.mensajeSunatRepositorio = mensajeSunatRepositorio;
+        this.mensajeSunatServicio = mensajeSunatServicio;
+        this.geminiAIService = geminiAIService;
+    }
+
+    @PreDestroy
+    public void detener() {
+        detenido = true;
+    }
+
+    /**
+     * Procesa lotes hasta vaciar la cola o hasta que la cuota vuelva a estar ocupada
+     */
+    @Scheduled(fixedDelayString = "${gemini.cola.intervalo-ms:10000}")
+    public void procesar() {
+        if (!enCurso.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int procesados = 0;
+            while (!detenido && hayCuota()) {
+                int lote = procesarLote();
+                if (lote == 0) {
+                    break;
+                }
+                procesados += lote;
+            }
+            if (procesados > 0) {
+                log.info("📤 {} mensajes de la cola clasificados con Gemini", procesados);
+            }
+            colaClasificacion.purgarCompletados(Duration.ofHours(retencionCompletadosHoras));
+        } catch (Exception e) {
+            log.error("Error al procesar la cola de clasificación: {}", e.getMessage());
+        } finally {
+            enCurso.set(false);
+        }
+    }
+
+    /**
+     * @return cantidad de mensajes reclamados (0 si la cola está vacía)
+     */
+    int procesarLote() {
+        List<Long> codigos = colaClasificacion.reclamar(tamanioLote);
+        if (codigos.isEmpty()) {
+            return 0;
+        }
+        try {
+            List<MensajeSunat> mensajes = mensajeSunatRepositorio.findAllById(codigos);
+            if (!mensajes.isEmpty()) {
+                mensajeSunatServicio.procesarNuevosCorreosConIA(mensajes);
+            }
+            // Los mensajes borrados desde que se encolaron también salen de la cola
+            colaClasificacion.completar(codigos);
+        } catch (Exception e) {
+            log.error("Error al clasificar {} mensajes de la cola: {}", codigos.size(), e.getMessage());
+            colaClasificacion.liberar(codigos);
+            throw e;
+        }
+        return codigos.size();
+    }
+
+    private boolean hayCuota() {
+        GeminiAIService.RateLimiterStatus estado = geminiAIService.getRateLimiterStatus();
+        return estado.isEnabled() && !estado.isCircuitBreakerOpen()
+                && estado.getRequestsInLastMinute() < estado.getMaxRequestsPerMinute() * usoMaximoCuota;
+    }
+}
@@ -0,0 +1,289 @@
+package upao.edu.pe.service;
+
+import ch.qos.logback.classic.Logger;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import upao.edu.pe.config.EjecucionConfig;
+import upao.edu.pe.model.MensajeSunat;
+import upao.edu.pe.model.TrabajoReclasificacion;
+import upao.edu.pe.repository.MensajeSunatRepositorio;
+import upao.edu.pe.repository.TrabajoReclasificacionRepositorio;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Reclasificación con IA de los mensajes guardados, en segundo plano y por lotes.
+ * Los candidatos se recorren por código desde el punto de control del trabajo; cada lote se
+ * clasifica y se confirma con MensajeSunatServicio y luego se guarda el último código procesado,
+ * de modo que tras un reinicio el trabajo continúa desde el último lote confirmado (en el peor
+ * caso se repite un lote, lo que solo vuelve a asignar la misma clasificación).
+ * Antes de cada lote se espera si la cuota de Gemini está por encima del uso permitido al trabajo.
+ * Con varias réplicas, cada trabajo lo ejecuta solo el nodo que lo reclamó en base de datos
+ * (VC_NODO); el dueño renueva DT_LATIDO mientras avanza o espera cuota y lo libera al detenerse.
+ * Si un nodo cae sin liberarlo, otro lo reclama cuando el latido supera latido-vencido-segundos.
+ */
+@Service
+public class ReclasificacionServicio {
+
+    private static final Logger log = (Logger) LoggerFactory.getLogger(ReclasificacionServicio.class);
+
+    static final List<String> CLASIFICACIONES_REPROCESABLES =
+            List.of("SIN CLASIFICACION", "MUY IMPORTANTE", "IMPORTANTE", "RECURRENTE");
+
+    private final TrabajoReclasificacionRepositorio trabajoRepositorio;
+    private final MensajeSunatRepositorio mensajeSunatRepositorio;
+    private final MensajeSunatServicio mensajeSunatServicio;
+    private final GeminiAIService geminiAIService;
+    private final Executor ejecutorSincronizacion;
+
+    @Value("${gemini.reclasificacion.tamanio-lote:100}")
+    private int tamanioLote = 100;
+
+    // Fracción de las peticiones por minuto de Gemini que puede ocupar el trabajo; el resto queda para el tráfico en vivo
+    @Value("${gemini.reclasificacion.uso-maximo-cuota:0.5}")
+    private double usoMaximoCuota = 0.5;
+
+    @Value("${gemini.reclasificacion.espera-cuota-ms:5000}")
+    private long esperaCuotaMs = 5000;
+
+    // Debe superar lo que tarda un lote: el latido se renueva entre lotes
+    @Value("${gemini.reclasificacion.latido-vencido-segundos:300}")
+    private long latidoVencidoSegundos = 300;
+
+    private final String nodo = CuotaGeminiCompartida.generarIdentificadorNodo();
+
+    private final ReentrantLock candadoInicio = new ReentrantLock();
+    private final Set<Long> enEjecucion = ConcurrentHashMap.newKeySet();
+    private volatile boolean detenido;
+
+    public ReclasificacionServicio(TrabajoReclasificacionRepositorio trabajoRepositorio,
+                                   MensajeSunatRepositorio mensajeSunatRepositorio,
+                                   MensajeSunatServicio mensajeSunatServicio,
+                                   GeminiAIService geminiAIService,
+                                   @Qualifier(EjecucionConfig.EJECUTOR_SINCRONIZACION) Executor ejecutorSincronizacion) {
+        this.trabajoRepositorio = trabajoRepositorio;
+        this.mensajeSunatRepositorio = mensajeSunatRepositorio;
+        this.mensajeSunatServicio = mensajeSunatServicio;
+        this.geminiAIService = geminiAIService;
+        this.ejecutorSincronizacion = ejecutorSincronizacion;
+    }
+
+    /**
+     * Los trabajos que quedaron EN_PROCESO por un reinicio continúan desde su punto de control
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reanudarAlIniciar() {
+        reanudarPendientes();
+    }
+
+    /**
+     * Reclama y continúa los trabajos EN_PROCESO sin dueño o cuyo dueño dejó de latir
+     */
+    @Scheduled(fixedDelayString = "${gemini.reclasificacion.intervalo-reanudacion-ms:60000}",
+            initialDelayString = "${gemini.reclasificacion.intervalo-reanudacion-ms:60000}")
+    public void reanudarPendientes() {
+        for (TrabajoReclasificacion trabajo : trabajoRepositorio.findByVcEstadoOrderByNuIdTrabajoAsc(TrabajoReclasificacion.EN_PROCESO)) {
+            if (enEjecucion.contains(trabajo.getNuIdTrabajo()) || !reclamar(trabajo.getNuIdTrabajo())) {
+                continue;
+            }
+            log.info("🔄 Reanudando reclasificación {} desde el código {} ({} de {} procesados)",
+                    trabajo.getNuIdTrabajo(), trabajo.getNuUltimoCodigo(), trabajo.getNuProcesados(), trabajo.getNuTotal());
+            despachar(trabajo.getNuIdTrabajo());
+        }
+    }
+
+    @PreDestroy
+    public void detener() {
+        detenido = true;
+    }
+
+    /**
+     * Inicia un trabajo de reclasificación, o devuelve el que ya está en curso (aquí o en otro nodo)
+     */
+    public TrabajoReclasificacion iniciar() {
+        candadoInicio.lock();
+        try {
+            List<TrabajoReclasificacion> activos = trabajoRepositorio.findByVcEstadoOrderByNuIdTrabajoAsc(TrabajoReclasificacion.EN_PROCESO);
+            if (!activos.isEmpty()) {
+                TrabajoReclasificacion activo = activos.get(0);
+                if (reclamar(activo.getNuIdTrabajo())) {
+                    despachar(activo.getNuIdTrabajo());
+                }
+                return activo;
+            }
+            TrabajoReclasificacion trabajo = trabajoRepositorio.save(TrabajoReclasificacion.builder()
+                    .nuTotal(mensajeSunatRepositorio.contarParaReclasificar(CLASIFICACIONES_REPROCESABLES))
+                    .vcNodo(nodo)
+                    .dtLatido(LocalDateTime.now())
+                    .build());
+            log.info("🏷️ Reclasificación {} creada con {} candidatos", trabajo.getNuIdTrabajo(), trabajo.getNuTotal());
+            despachar(trabajo.getNuIdTrabajo());
+            return trabajo;
+        } finally {
+            candadoInicio.unlock();
+        }
+    }
+
+    private boolean reclamar(Long idTrabajo) {
+        LocalDateTime ahora = LocalDateTime.now();
+        return trabajoRepositorio.reclamar(idTrabajo, nodo, ahora, ahora.minusSeconds(latidoVencidoSegundos)) > 0;
+    }
+
+    private void despachar(Long idTrabajo) {
+        if (!enEjecucion.add(idTrabajo)) {
+            return;
+        }
+        ejecutorSincronizacion.execute(() -> {
+            try {
+                ejecutar(idTrabajo);
+            } finally {
+                enEjecucion.remove(idTrabajo);
+            }
+        });
+    }
+
+    /**
+     * Procesa lotes hasta agotar los candidatos. Si se detiene la aplicación el trabajo queda EN_PROCESO
+     * y sin dueño; si otro nodo lo reclamó (latido vencido) este deja de procesarlo.
+     */
+    void ejecutar(Long idTrabajo) {
+        TrabajoReclasificacion trabajo = trabajoRepositorio.findById(idTrabajo).orElse(null);
+        if (trabajo == null) {
+            return;
+        }
+        try {
+            while (TrabajoReclasificacion.EN_PROCESO.equals(trabajo.getVcEstado())) {
+                if (!renovarLatido(idTrabajo)) {
+                    log.warn("⚠️ Reclasificación {} reclamada por otro nodo, se deja de procesar aquí", idTrabajo);
+                    return;
+                }
+                if (detenido || !esperarCuota(idTrabajo)) {
+                    log.info("⏸️ Reclasificación {} detenida en el código {}", idTrabajo, trabajo.getNuUltimoCodigo());
+                    trabajoRepositorio.liberar(idTrabajo, nodo);
+                    return;
+                }
+                trabajo = procesarLote(trabajo);
+            }
+        } catch (Exception e) {
+            log.error("❌ Reclasificación {} fallida en el código {}: {}", idTrabajo, trabajo.getNuUltimoCodigo(), e.getMessage());
+            trabajo.setVcEstado(TrabajoReclasificacion.FALLIDO);
+            trabajo.setVcUltimoError(truncar(e.getMessage(), 500));
+            trabajo.setDtFin(LocalDateTime.now());
+            trabajoRepositorio.save(trabajo);
+        }
+    }
+
+    private TrabajoReclasificacion procesarLote(TrabajoReclasificacion trabajo) {
+        long inicio = System.currentTimeMillis();
+        long despuesDe = trabajo.getNuUltimoCodigo() == null ? Long.MIN_VALUE : trabajo.getNuUltimoCodigo();
+        List<MensajeSunat> lote = mensajeSunatRepositorio.encontrarParaReclasificar(
+                despuesDe, CLASIFICACIONES_REPROCESABLES, PageRequest.of(0, tamanioLote));
+
+        if (!lote.isEmpty()) {
+            mensajeSunatServicio.procesarNuevosCorreosConIA(lote);
+            trabajo.setNuUltimoCodigo(lote.get(lote.size() - 1).getNuCodigoMensaje());
+            trabajo.setNuProcesados(trabajo.getNuProcesados() + lote.size());
+            trabajo.setNuLotes(trabajo.getNuLotes() + 1);
+            trabajo.setNuTiempoMs(trabajo.getNuTiempoMs() + System.currentTimeMillis() - inicio);
+        }
+        trabajo.setDtLatido(LocalDateTime.now());
+        if (lote.size() < tamanioLote) {
+            trabajo.setVcEstado(TrabajoReclasificacion.COMPLETADO);
+            trabajo.setDtFin(LocalDateTime.now());
+            log.info("✅ Reclasificación {} completada: {} mensajes en {} lotes",
+                    trabajo.getNuIdTrabajo(), trabajo.getNuProcesados(), trabajo.getNuLotes());
+        }
+        return trabajoRepositorio.save(trabajo);
+    }
+
+    /**
+     * Espera mientras el circuit breaker esté abierto o las peticiones del último minuto superen
+     * la fracción permitida, renovando el latido. Con Gemini deshabilitado la clasificación es local y no se espera.
+     * @return false si el hilo fue interrumpido, la aplicación se está deteniendo u otro nodo reclamó el trabajo
+     */
+    private boolean esperarCuota(Long idTrabajo) {
+        while (!detenido) {
+            GeminiAIService.RateLimiterStatus estado = geminiAIService.getRateLimiterStatus();
+            boolean saturada = estado.isCircuitBreakerOpen()
+                    || estado.getRequestsInLastMinute() >= estado.getMaxRequestsPerMinute() * usoMaximoCuota;
+            if (!estado.isEnabled() || !saturada) {
+                return true;
+            }
+            log.debug("⏳ Cuota de Gemini ocupada ({}/{} por minuto), reclasificación en espera",
+                    estado.getRequestsInLastMinute(), estado.getMaxRequestsPerMinute());
+            if (!esperar(esperaCuotaMs) || !renovarLatido(idTrabajo)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private boolean renovarLatido(Long idTrabajo) {
+        return trabajoRepositorio.renovarLatido(idTrabajo, nodo, LocalDateTime.now()) > 0;
+    }
+
+    boolean esperar(long milisegundos) {
+        try {
+            Thread.sleep(milisegundos);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Estado de un trabajo, o del último creado si el id es nulo
+     */
+    public Optional<Map<String, Object>> obtenerEstado(Long idTrabajo) {
+        Optional<TrabajoReclasificacion> trabajo = idTrabajo == null
+                ? trabajoRepositorio.findFirstByOrderByNuIdTrabajoDesc()
+                : trabajoRepositorio.findById(idTrabajo);
+        return trabajo.map(this::describir);
+    }
+
+    private Map<String, Object> describir(TrabajoReclasificacion trabajo) {
+        long total = trabajo.getNuTotal() == null ? 0 : trabajo.getNuTotal();
+        long procesados = trabajo.getNuProcesados();
+        long tiempoMs = trabajo.getNuTiempoMs();
+
+        Map<String, Object> estado = new LinkedHashMap<>();
+        estado.put("idTrabajo", trabajo.getNuIdTrabajo());
+        estado.put("estado", trabajo.getVcEstado());
+        estado.put("total", total);
+        estado.put("procesados", procesados);
+        estado.put("porcentaje", total == 0 ? 100.0 : Math.min(100.0, Math.round(procesados * 1000.0 / total) / 10.0));
+        estado.put("lotes", trabajo.getNuLotes());
+        estado.put("ultimoCodigo", trabajo.getNuUltimoCodigo());
+        estado.put("mensajesPorSegundo", tiempoMs == 0 ? 0.0 : Math.round(procesados * 10_000.0 / tiempoMs) / 10.0);
+        estado.put("enEjecucion", enEjecucion.contains(trabajo.getNuIdTrabajo()));
+        estado.put("nodo", trabajo.getVcNodo());
+        estado.put("inicio", trabajo.getDtInicio());
+        estado.put("actualizacion", trabajo.getDtActualizacion());
+        estado.put("fin", trabajo.getDtFin());
+        estado.put("ultimoError", trabajo.getVcUltimoError());
+        return estado;
+    }
+
+    private static String truncar(String texto, int maximo) {
+        if (texto == null || texto.length() <= maximo) {
+            return texto;
+        }
+        return texto.substring(0, maximo);
+    }
+}
@@ -0,0 +1,260 @@
+package upao.edu.pe.service;
+
+import ch.qos.logback.classic.Logger;
+import jakarta.transaction.Transactional;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import upao.edu.pe.model.MensajeSunat;
+import upao.edu.pe.model.ResumenDiarioMensajes;
+import upao.edu.pe.repository.MensajeSunatRepositorio;
+import upao.edu.pe.repository.MensajeSunatRepositorio.AsuntoMensaje;
+import upao.edu.pe.repository.ResumenDiarioMensajesRepositorio;
+import upao.edu.pe.repository.ResumenDiarioMensajesRepositorio.ConteoMensajes;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Mantiene T_RESUMEN_DIARIO_MENSAJES. Cada cambio de un mensaje se registra como la resta de su
+ * aporte anterior y la suma del nuevo, dentro de la transacción de quien guarda el mensaje.
+ * reconstruir() recalcula toda la tabla desde T_MENSAJE_SUNAT (carga inicial o corrección de desfases).
+ */
+@Service
+@Transactional
+public class ResumenDiarioServicio {
+
+    private static final Logger log = (Logger) LoggerFactory.getLogger(ResumenDiarioServicio.class);
+
+    private static final DateTimeFormatter FORMATO_DIA_SUNAT = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+    @Autowired
+    private ResumenDiarioMensajesRepositorio resumenDiarioRepositorio;
+
+    @Autowired
+    private MensajeSunatRepositorio mensajeSunatRepositorio;
+
+    @Autowired
+    private ApplicationEventPublisher eventos;
+
+    @Value("${dashboard.resumen-diario.reconstruir-al-iniciar:true}")
+    private boolean reconstruirAlIniciar = true;
+
+    /**
+     * Aporte de un mensaje al resumen: la clave de su fila y los contadores que suma en ella
+     */
+    public record Aporte(String ruc, LocalDate dia, String etiqueta, String clasificacion,
+                         boolean noLeido, boolean urgente, boolean conArchivos) {
+
+        public static Aporte de(MensajeSunat mensaje) {
+            return new Aporte(
+                    Objects.requireNonNullElse(mensaje.getVcNumeroRuc(), ""),
+                    diaDeEnvio(mensaje.getVcFechaEnvio()),
+                    Objects.requireNonNullElse(mensaje.getVcCodigoEtiqueta(), ""),
+                    Objects.requireNonNullElse(mensaje.getClasificacion(), ""),
+                    Integer.valueOf(0).equals(mensaje.getNuLeido()),
+                    Integer.valueOf(1).equals(mensaje.getNuUrgente()),
+                    mensaje.getNuCantidadArchivos() != null && mensaje.getNuCantidadArchivos() > 0);
+        }
+
+        public static Aporte de(AsuntoMensaje mensaje) {
+            return new Aporte(
+                    Objects.requireNonNullElse(mensaje.getRuc(), ""),
+                    diaDeEnvio(mensaje.getFechaEnvio()),
+                    Objects.requireNonNullElse(mensaje.getEtiqueta(), ""),
+                    Objects.requireNonNullElse(mensaje.getClasificacion(), ""),
+                    Integer.valueOf(0).equals(mensaje.getLeido()),
+                    Integer.valueOf(1).equals(mensaje.getUrgente()),
+                    mensaje.getCantidadArchivos() != null && mensaje.getCantidadArchivos() > 0);
+        }
+
+        Aporte conEtiqueta(String otraEtiqueta) {
+            return new Aporte(ruc, dia, otraEtiqueta, clasificacion, noLeido, urgente, conArchivos);
+        }
+
+        Aporte fila() {
+            return new Aporte(ruc, dia, etiqueta, clasificacion, false, false, false);
+        }
+
+        boolean mismaFila(Aporte otro) {
+            return ruc.equals(otro.ruc) && dia.equals(otro.dia)
+                    && etiqueta.equals(otro.etiqueta) && clasificacion.equals(otro.clasificacion);
+        }
+    }
+
+    /**
+     * Registra el cambio de un mensaje
+     * @param antes Aporte del mensaje antes de modificarlo, o null si es nuevo
+     * @param despues Mensaje ya guardado
+     */
+    public void registrar(Aporte antes, MensajeSunat despues) {
+        Aporte nuevo = Aporte.de(despues);
+        if (nuevo.equals(antes)) {
+            return;
+        }
+        if (antes != null && antes.mismaFila(nuevo)) {
+            aplicar(nuevo, 0, indicador(nuevo.noLeido()) - indicador(antes.noLeido()),
+                    indicador(nuevo.urgente()) - indicador(antes.urgente()),
+                    indicador(nuevo.conArchivos()) - indicador(antes.conArchivos()));
+            return;
+        }
+        if (antes != null) {
+            aplicar(antes, -1, -indicador(antes.noLeido()), -indicador(antes.urgente()), -indicador(antes.conArchivos()));
+        }
+        aplicar(nuevo, 1, indicador(nuevo.noLeido()), indicador(nuevo.urgente()), indicador(nuevo.conArchivos()));
+    }
+
+    /**
+     * Registra mensajes recién insertados
+     */
+    public void registrarNuevos(Collection<MensajeSunat> mensajes) {
+        for (MensajeSunat mensaje : mensajes) {
+            registrar(null, mensaje);
+        }
+    }
+
+    /**
+     * Registra el cambio de etiqueta de varios mensajes hecho con un UPDATE masivo. Los aportes se
+     * agrupan por fila, así que cada fila del resumen recibe una sola sentencia.
+     * @param antes Aportes de los mensajes antes del cambio
+     * @param etiquetaNueva Etiqueta que quedó en todos ellos
+     */
+    public void cambiarEtiqueta(Collection<Aporte> antes, String etiquetaNueva) {
+        Map<Aporte, long[]> deltas = new LinkedHashMap<>();
+        Set<String> rucs = new LinkedHashSet<>();
+        for (Aporte aporte : antes) {
+            Aporte despues = aporte.conEtiqueta(etiquetaNueva);
+            if (aporte.mismaFila(despues)) {
+                continue;
+            }
+            sumarDelta(deltas, aporte, -1);
+            sumarDelta(deltas, despues, 1);
+            rucs.add(aporte.ruc());
+        }
+        deltas.forEach((fila, delta) -> aplicar(fila, delta[0], delta[1], delta[2], delta[3]));
+        rucs.forEach(ruc -> eventos.publishEvent(new BuzonModificadoEvento(ruc)));
+    }
+
+    /**
+     * Mueve los conteos de una etiqueta eliminada a otra, igual que el UPDATE masivo sobre los mensajes
+     */
+    public void reasignarEtiqueta(String codigoAnterior, String codigoNuevo) {
+        List<ResumenDiarioMensajes> filas = resumenDiarioRepositorio.findByVcCodigoEtiqueta(codigoAnterior);
+        for (ResumenDiarioMensajes fila : filas) {
+            Aporte destino = new Aporte(fila.getVcNumeroRuc(), fila.getDtDia(), codigoNuevo, fila.getVcClasificacion(),
+                    false, false, false);
+            aplicar(destino, fila.getNuCantidad(), fila.getNuNoLeidos(), fila.getNuUrgentes(), fila.getNuConArchivos());
+        }
+        resumenDiarioRepositorio.deleteAllInBatch(filas);
+    }
+
+    /**
+     * Total de mensajes de una etiqueta según el resumen, sin contar T_MENSAJE_SUNAT
+     * (aproximado: puede desfasarse hasta el próximo reconstruir())
+     */
+    public long contarPorEtiqueta(String codigoEtiqueta) {
+        return resumenDiarioRepositorio.sumarCantidadPorEtiqueta(codigoEtiqueta);
+    }
+
+    /**
+     * Vacía el resumen y lo recalcula agrupando todos los mensajes
+     * @return Cantidad de filas generadas
+     */
+    public int reconstruir() {
+        long inicio = System.currentTimeMillis();
+        resumenDiarioRepositorio.deleteAllInBatch();
+
+        // Los dos formatos de fecha de un mismo día caen en la misma fila
+        Map<Aporte, ResumenDiarioMensajes> filas = new LinkedHashMap<>();
+        for (ConteoMensajes conteo : resumenDiarioRepositorio.agruparMensajes()) {
+            Aporte clave = new Aporte(
+                    Objects.requireNonNullElse(conteo.getRuc(), ""),
+                    diaDeEnvio(conteo.getDia()),
+                    Objects.requireNonNullElse(conteo.getEtiqueta(), ""),
+                    Objects.requireNonNullElse(conteo.getClasificacion(), ""),
+                    false, false, false);
+            ResumenDiarioMensajes fila = filas.computeIfAbsent(clave, c -> ResumenDiarioMensajes.builder()
+                    .vcNumeroRuc(c.ruc())
+                    .dtDia(c.dia())
+                    .vcCodigoEtiqueta(c.etiqueta())
+                    .vcClasificacion(c.clasificacion())
+                    .build());
+            fila.setNuCantidad(fila.getNuCantidad() + conteo.getCantidad());
+            fila.setNuNoLeidos(fila.getNuNoLeidos() + conteo.getNoLeidos());
+            fila.setNuUrgentes(fila.getNuUrgentes() + conteo.getUrgentes());
+            fila.setNuConArchivos(fila.getNuConArchivos() + conteo.getConArchivos());
+        }
+        resumenDiarioRepositorio.saveAll(filas.values());
+        eventos.publishEvent(BuzonModificadoEvento.todos());
+
+        log.info("📊 Resumen diario reconstruido: {} filas en {} ms", filas.size(), System.currentTimeMillis() - inicio);
+        return filas.size();
+    }
+
+    /**
+     * Primera ejecución con mensajes ya cargados: se llena el resumen antes de que lo lea el dashboard
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconstruirSiEstaVacio() {
+        if (reconstruirAlIniciar && resumenDiarioRepositorio.count() == 0 && mensajeSunatRepositorio.count() > 0) {
+            reconstruir();
+        }
+    }
+
+    /**
+     * Día de envío a partir del prefijo "dd/MM/yyyy" o "yyyy-MM-dd" de VC_FECHA_ENVIO
+     */
+    static LocalDate diaDeEnvio(String fechaEnvio) {
+        if (fechaEnvio == null || fechaEnvio.length() < 10) {
+            return ResumenDiarioMensajes.DIA_SIN_FECHA;
+        }
+        String dia = fechaEnvio.substring(0, 10);
+        try {
+            return dia.contains("/") ? LocalDate.parse(dia, FORMATO_DIA_SUNAT) : LocalDate.parse(dia, DateTimeFormatter.ISO_LOCAL_DATE);
+        } catch (DateTimeParseException e) {
+            return ResumenDiarioMensajes.DIA_SIN_FECHA;
+        }
+    }
+
+    private void aplicar(Aporte clave, long cantidad, long noLeidos, long urgentes, long conArchivos) {
+        if (cantidad == 0 && noLeidos == 0 && urgentes == 0 && conArchivos == 0) {
+            return;
+        }
+        if (cantidad > 0) {
+            // Puede ser la primera fila de la clave: se crea o se suma en una sola sentencia
+            resumenDiarioRepositorio.acumular(clave.ruc(), clave.dia(), clave.etiqueta(), clave.clasificacion(),
+                    cantidad, noLeidos, urgentes, conArchivos);
+            return;
+        }
+        int actualizadas = resumenDiarioRepositorio.incrementar(clave.ruc(), clave.dia(), clave.etiqueta(),
+                clave.clasificacion(), cantidad, noLeidos, urgentes, conArchivos);
+        if (actualizadas == 0) {
+            // El mensaje se guardó antes de existir el resumen; reconstruir() lo corrige
+            log.warn("⚠️ Resumen diario sin fila para {} {} {} {}", clave.ruc(), clave.dia(), clave.etiqueta(), clave.clasificacion());
+        }
+    }
+
+    private static void sumarDelta(Map<Aporte, long[]> deltas, Aporte aporte, int signo) {
+        long[] delta = deltas.computeIfAbsent(aporte.fila(), fila -> new long[4]);
+        delta[0] += signo;
+        delta[1] += signo * indicador(aporte.noLeido());
+        delta[2] += signo * indicador(aporte.urgente());
+        delta[3] += signo * indicador(aporte.conArchivos());
+    }
+
+    private static int indicador(boolean valor) {
+        return valor ? 1 : 0;
+    }
+}
@@ -0,0 +1,49 @@
+package upao.edu.pe.service;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import upao.edu.pe.dto.response.RespuestaSunatDTO;
+import upao.edu.pe.dto.response.SunatApiResponse;
+
+/**
+ * Acceso no bloqueante a los servicios del visor de notificaciones de SUNAT
+ */
+@Service
+public class SunatCliente {
+
+    private final WebClient sunatWebClient;
+
+    public SunatCliente(@Qualifier("sunatWebClient") WebClient sunatWebClient) {
+        this.sunatWebClient = sunatWebClient;
+    }
+
+    /**
+     * Obtiene una página del listado de notificaciones
+     */
+    public Mono<RespuestaSunatDTO> listarPagina(String cookieSunat, int pagina) {
+        return sunatWebClient.get()
+                .uri(uri -> uri.path("/listNotiMenPag").queryParam("page", pagina).build())
+                .header(HttpHeaders.COOKIE, cookieSunat)
+                .retrieve()
+                .bodyToMono(RespuestaSunatDTO.class);
+    }
+
+    /**
+     * Obtiene el detalle de una notificación
+     */
+    public Mono<SunatApiResponse> obtenerDetalle(String codigoMensaje, String cookieSunat) {
+        return sunatWebClient.get()
+                .uri(uri -> uri.path("/obtenerDetalleNotiMen")
+                        .queryParam("codigoMensaje", codigoMensaje)
+                        .queryParam("tipoMsj", 2)
+                        .build())
+                .header(HttpHeaders.COOKIE, cookieSunat)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .retrieve()
+                .bodyToMono(SunatApiResponse.class);
+    }
+}
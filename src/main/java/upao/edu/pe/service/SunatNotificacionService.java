@@ -6,10 +6,10 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
 import upao.edu.pe.dto.AttachmentDto;
 import upao.edu.pe.dto.AttachmentResponseDto;
 import upao.edu.pe.dto.MensajeDetalleDto;
@@ -32,8 +32,9 @@ public class SunatNotificacionService {
     private final DetalleNotificacionRepository detalleNotificacionRepository;
     private final AttachmentDetalleRepository attachmentDetalleRepository;
     private final MensajeSunatServicio mensajeSunatServicio;
-    private final RestTemplate restTemplate;
+    private final SunatCliente sunatCliente;
     private final ObjectMapper objectMapper;
+    private final MotorReglasClasificacion motorReglasClasificacion;
 
     @Value("${sunat.api.url}")
     private String sunatBaseUrl;
@@ -44,13 +45,15 @@ public class SunatNotificacionService {
     public SunatNotificacionService(DetalleNotificacionRepository detalleNotificacionRepository, 
                                    AttachmentDetalleRepository attachmentDetalleRepository, 
                                    MensajeSunatServicio mensajeSunatServicio,
-                                   RestTemplate restTemplate, 
-                                   ObjectMapper objectMapper) {
+                                   SunatCliente sunatCliente,
+                                   ObjectMapper objectMapper,
+                                   MotorReglasClasificacion motorReglasClasificacion) {
         this.detalleNotificacionRepository = detalleNotificacionRepository;
         this.attachmentDetalleRepository = attachmentDetalleRepository;
         this.mensajeSunatServicio = mensajeSunatServicio;
-        this.restTemplate = restTemplate;
+        this.sunatCliente = sunatCliente;
         this.objectMapper = objectMapper;
+        this.motorReglasClasificacion = motorReglasClasificacion;
     }
 
     /**
@@ -58,26 +61,18 @@ public class SunatNotificacionService {
      */
     public SunatApiResponse consumirApiSunat(String codigoMensaje, String sunatCookie) {
         try {
-            String url = sunatBaseUrl + "/obtenerDetalleNotiMen" +
-                    "?codigoMensaje=" + codigoMensaje + "&tipoMsj=2";
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("Cookie", sunatCookie);
-            headers.setContentType(MediaType.APPLICATION_JSON);
-
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-
             log.info("Consultando API SUNAT para código de mensaje: {}", codigoMensaje);
 
-            ResponseEntity<SunatApiResponse> response = restTemplate.exchange(
-                    url, HttpMethod.GET, entity, SunatApiResponse.class);
+            SunatApiResponse respuesta = consumirApiSunatReactivo(codigoMensaje, sunatCookie)
+                    .onErrorMap(WebClientResponseException.class, e -> new RuntimeException(
+                            "Error al consultar API de SUNAT (status " + e.getStatusCode().value() + ")"))
+                    .block();
 
-            if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
+            if (respuesta != null) {
                 log.info("Respuesta exitosa de API SUNAT para código: {}", codigoMensaje);
-                log.info("Respuesta: {}", response.getBody());
-                return response.getBody();
+                return respuesta;
             } else {
-                log.error("Error en respuesta de API SUNAT. Status: {}", response.getStatusCode());
+                log.error("Respuesta vacía de API SUNAT para código: {}", codigoMensaje);
                 throw new RuntimeException("Error al consultar API de SUNAT");
             }
 
@@ -87,6 +82,13 @@ public class SunatNotificacionService {
         }
     }
 
+    /**
+     * Versión no bloqueante de la consulta de detalle, usada por la cola de descarga en segundo plano
+     */
+    public Mono<SunatApiResponse> consumirApiSunatReactivo(String codigoMensaje, String sunatCookie) {
+        return sunatCliente.obtenerDetalle(codigoMensaje, sunatCookie);
+    }
+
     /**
      * Procesa y guarda los detalles del mensaje en la base de datos
      */
@@ -103,6 +105,27 @@ public class SunatNotificacionService {
             // Consumir API de SUNAT
             SunatApiResponse apiResponse = consumirApiSunat(codigoMensaje, cookie);
 
+            return guardarNotificacion(codigoMensaje, apiResponse);
+
+        } catch (Exception e) {
+            log.error("Error al procesar notificación {}: {}", codigoMensaje, e.getMessage());
+            throw new RuntimeException("Error al procesar notificación: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Indica si el detalle del mensaje ya fue descargado
+     */
+    public boolean existeDetalle(String codigoMensaje) {
+        return detalleNotificacionRepository.existsByCodMensaje(codigoMensaje);
+    }
+
+    /**
+     * Guarda el detalle ya descargado de SUNAT (con sus adjuntos) y lo clasifica con IA
+     */
+    @Transactional
+    public DetalleNotificacion guardarNotificacion(String codigoMensaje, SunatApiResponse apiResponse) {
+        try {
             // Parsear el JSON del mensaje solo si es JSON válido
             MensajeDetalleDto mensajeDetalle = null;
             if (apiResponse.getMsjMensaje() != null && !apiResponse.getMsjMensaje().isEmpty()) {
@@ -187,8 +210,12 @@ public class SunatNotificacionService {
             try {
                 log.info("🤖 Iniciando procesamiento con Gemini AI para correo: {}", codigoMensaje);
                 
-                // Crear MensajeSunat desde DetalleNotificacion para Gemini AI
-                MensajeSunat mensajeSunat = crearMensajeSunatDesdeDetalle(detalleNotificacion, apiResponse);
+                // Reusar el mensaje guardado por la sincronización de la lista (conserva asunto,
+                // fechas, adjuntos y leído); solo se crea desde el detalle si aún no existe
+                MensajeSunat mensajeSunat = mensajeSunatServicio.obtenerMensajePorId(Long.parseLong(codigoMensaje));
+                if (mensajeSunat == null) {
+                    mensajeSunat = crearMensajeSunatDesdeDetalle(detalleNotificacion, apiResponse);
+                }
                 
                 // Procesar con Gemini AI
                 MensajeSunat mensajeProcesado = mensajeSunatServicio.procesarCorreoIndividualConIA(mensajeSunat);
@@ -348,16 +375,9 @@ public class SunatNotificacionService {
             String mensajeTexto = detalle.getMsjMensaje();
             
             // Buscar patrones comunes en los mensajes
-            if (mensajeTexto.contains("multa")) {
-                asuntoBuilder.append(" - Multa Tributaria");
-            } else if (mensajeTexto.contains("cobranza")) {
-                asuntoBuilder.append(" - Resolución de Cobranza");
-            } else if (mensajeTexto.contains("fiscalización")) {
-                asuntoBuilder.append(" - Fiscalización");
-            } else if (mensajeTexto.contains("valores")) {
-                asuntoBuilder.append(" - Valores");
-            } else if (mensajeTexto.contains("registros")) {
-                asuntoBuilder.append(" - Registros Electrónicos");
+            String tipoMensaje = motorReglasClasificacion.describirTipoMensaje(mensajeTexto);
+            if (tipoMensaje != null) {
+                asuntoBuilder.append(" - ").append(tipoMensaje);
             }
         }
         
@@ -5,24 +5,34 @@ import ch.qos.logback.classic.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import upao.edu.pe.dto.MensajeSunatDTO;
 import upao.edu.pe.dto.response.RespuestaSunatDTO;
+import upao.edu.pe.dto.response.ResultadoSincronizacionDTO;
 import upao.edu.pe.mapper.MensajeSunatMapper;
 import upao.edu.pe.model.MensajeSunat;
+import upao.edu.pe.model.SincronizacionRuc;
 import upao.edu.pe.repository.MensajeSunatRepositorio;
+import upao.edu.pe.repository.SincronizacionRucRepositorio;
 
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 
 @Service
@@ -30,135 +40,257 @@ public class SunatServicio {
 
     private static final Logger logger = (Logger) LoggerFactory.getLogger(SunatServicio.class);
 
+    private static final DateTimeFormatter FORMATO_FECHA_PUBLICA = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+
     private final MensajeSunatRepositorio mensajeSunatRepositorio;
     private final MensajeSunatMapper mensajeSunatMapper;
-    private final RestTemplate restTemplate;
+    private final SunatCliente sunatCliente;
+    private final CodigosVistosPorRuc codigosVistos;
+    private final SincronizacionRucRepositorio sincronizacionRucRepositorio;
+    private final DetallePendienteServicio detallePendienteServicio;
+    private final MensajeSunatServicio mensajeSunatServicio;
 
-    @Autowired
-    private SunatNotificacionService sunatDetalleService;
 
-    @Autowired
-    private MensajeSunatServicio mensajeSunatServicio;
 
+    @Value("${sunat.api.cookies}")
+    private String cookies;
 
+    @Value("${sunat.sync.max-paginas:30}")
+    private int maxPaginas = 30;
 
-    @Value("${sunat.api.url}")
-    private String apiUrl;
+    // Páginas en vuelo por usuario SOL, sumando todas sus sincronizaciones simultáneas
+    @Value("${sunat.sync.concurrencia-por-cookie:4}")
+    private int concurrenciaPorCookie = 4;
 
-    @Value("${sunat.api.cookies}")
-    private String cookies;
+    @Value("${sunat.sync.capacidad-cola:8}")
+    private int capacidadCola = 8;
 
     private final Pattern rucUsuarioPattern = Pattern.compile("(\\d{11})([A-Z]+)=\\d*");
 
+    private final Map<String, Semaphore> permisosPorUsuario = new ConcurrentHashMap<>();
+
 
 
     // Constructor explícito para la inyección de dependencias
     @Autowired
     public SunatServicio(MensajeSunatRepositorio mensajeSunatRepositorio,
                          MensajeSunatMapper mensajeSunatMapper,
-                         RestTemplate restTemplate) {
+                         SunatCliente sunatCliente,
+                         CodigosVistosPorRuc codigosVistos,
+                         SincronizacionRucRepositorio sincronizacionRucRepositorio,
+                         DetallePendienteServicio detallePendienteServicio,
+                         MensajeSunatServicio mensajeSunatServicio) {
         this.mensajeSunatRepositorio = mensajeSunatRepositorio;
         this.mensajeSunatMapper = mensajeSunatMapper;
-        this.restTemplate = restTemplate;
+        this.sunatCliente = sunatCliente;
+        this.codigosVistos = codigosVistos;
+        this.sincronizacionRucRepositorio = sincronizacionRucRepositorio;
+        this.detallePendienteServicio = detallePendienteServicio;
+        this.mensajeSunatServicio = mensajeSunatServicio;
     }
 
-    public void SP_CONSULTAR_Y_GUARDAR_MENSAJES(String cookieSunat) {
+    public ResultadoSincronizacionDTO SP_CONSULTAR_Y_GUARDAR_MENSAJES(String cookieSunat) {
         UsuarioExtraido usuario = extraerUsuario(cookieSunat);
         if (usuario != null) {
             logger.info("RUC: " + usuario.getRuc() + ", Usuario: " + usuario.getUsuario());
         } else {
             logger.info("No se pudo extraer el RUC ni el usuario.");
             // Si no hay usuario, no se debe llamar a la API ni continuar el proceso
-            return;
+            return null;
+        }
+
+        logger.info("Iniciando consulta de mensajes SUNAT: {}", LocalDateTime.now());
+        long inicio = System.currentTimeMillis();
+
+        SincronizacionRuc marca = sincronizacionRucRepositorio.findById(usuario.getRuc())
+                .orElseGet(() -> SincronizacionRuc.builder().vcNumeroRuc(usuario.getRuc()).build());
+        EstadoSincronizacion estado = new EstadoSincronizacion(marca);
+
+        int concurrencia = Math.max(1, concurrenciaPorCookie);
+        int capacidad = Math.max(1, capacidadCola);
+        AtomicBoolean detener = new AtomicBoolean(false);
+        // Los permisos se comparten entre sincronizaciones simultáneas del mismo usuario SOL
+        Semaphore permisos = permisosPorUsuario.computeIfAbsent(
+                usuario.getRuc() + usuario.getUsuario(), k -> new Semaphore(concurrencia));
+
+        // Etapa de red: hasta 'concurrencia' páginas en vuelo por usuario SOL, entregadas en orden de página.
+        // Etapa de guardado: este hilo consume las páginas desde un buffer acotado a 'capacidad'.
+        Flux<PaginaSunat> paginas = Flux.range(1, Math.max(1, maxPaginas))
+                .takeWhile(pagina -> !detener.get())
+                .flatMapSequential(pagina -> descargarPagina(pagina, cookieSunat, permisos), concurrencia);
+
+        // Al cerrar el stream se cancelan las descargas que sigan en vuelo
+        try (Stream<PaginaSunat> flujo = paginas.toStream(capacidad)) {
+            Iterator<PaginaSunat> iterador = flujo.iterator();
+            while (iterador.hasNext()) {
+                if (!procesarPagina(iterador.next(), usuario.getRuc(), cookieSunat, estado)) {
+                    detener.set(true);
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            estado.interrumpida = true;
+            logger.error("Sincronización interrumpida para RUC {}: {}", usuario.getRuc(), e.getMessage(), e);
+        }
+
+        ResultadoSincronizacionDTO resultado = registrarSincronizacion(marca, estado, System.currentTimeMillis() - inicio);
+        logger.info("Sincronización finalizada para RUC {}: {} páginas, {} nuevos, {} omitidos en {} ms",
+                usuario.getRuc(), resultado.getPaginasConsultadas(), resultado.getMensajesNuevos(),
+                resultado.getMensajesOmitidos(), resultado.getTiempoMs());
+        return resultado;
+    }
+
+    /**
+     * Actualiza la marca de agua del RUC y el resumen de la última sincronización.
+     * La marca solo avanza si no hubo páginas fallidas: de lo contrario quedaría un hueco
+     * de mensajes por debajo de la marca que las siguientes sincronizaciones no volverían a pedir.
+     */
+    private ResultadoSincronizacionDTO registrarSincronizacion(SincronizacionRuc marca, EstadoSincronizacion estado, long tiempoMs) {
+        if (estado.paginasFallidas == 0 && !estado.interrumpida) {
+            if (estado.maxCodigo != null
+                    && (marca.getNuUltimoCodigoMensaje() == null || estado.maxCodigo > marca.getNuUltimoCodigoMensaje())) {
+                marca.setNuUltimoCodigoMensaje(estado.maxCodigo);
+            }
+            if (estado.maxFechaPublica != null
+                    && (estado.fechaMarca == null || estado.maxFechaPublica.isAfter(estado.fechaMarca))) {
+                marca.setVcUltimaFechaPublica(estado.maxFechaPublica.format(FORMATO_FECHA_PUBLICA));
+            }
         }
+        marca.setDtUltimaSincronizacion(LocalDateTime.now());
+        marca.setNuPaginasConsultadas(estado.paginasConsultadas);
+        marca.setNuMensajesNuevos(estado.mensajesNuevos);
+        marca.setNuMensajesOmitidos(estado.mensajesOmitidos);
+        marca.setNuTiempoMs(tiempoMs);
 
-        for (int i = 1; i <= 30; i++) {
-            logger.info("Iniciando consulta de mensajes SUNAT: {}", LocalDateTime.now());
+        try {
+            sincronizacionRucRepositorio.save(marca);
+        } catch (Exception e) {
+            logger.error("No se pudo guardar la marca de sincronización del RUC {}: {}", marca.getVcNumeroRuc(), e.getMessage());
+        }
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("Cookie", cookieSunat);  // Usamos la cookie recibida
+        return ResultadoSincronizacionDTO.builder()
+                .ruc(marca.getVcNumeroRuc())
+                .paginasConsultadas(estado.paginasConsultadas)
+                .paginasFallidas(estado.paginasFallidas)
+                .mensajesNuevos(estado.mensajesNuevos)
+                .mensajesOmitidos(estado.mensajesOmitidos)
+                .marcaAlcanzada(estado.marcaAlcanzada)
+                .ultimoCodigoMensaje(marca.getNuUltimoCodigoMensaje())
+                .ultimaFechaPublica(marca.getVcUltimaFechaPublica())
+                .tiempoMs(tiempoMs)
+                .build();
+    }
 
-            HttpEntity<String> entity = new HttpEntity<>(headers);
+    /**
+     * Descarga una página del listado de SUNAT con un permiso del usuario SOL, que se devuelve al
+     * terminar o cancelarse la descarga. La espera del permiso bloquea, por eso corre en boundedElastic.
+     * Los errores se convierten en una página fallida para que un fallo puntual no corte el resto de la sincronización.
+     */
+    private Mono<PaginaSunat> descargarPagina(int pagina, String cookieSunat, Semaphore permisos) {
+        return Mono.using(() -> {
+                            permisos.acquire();
+                            return permisos;
+                        },
+                        permiso -> sunatCliente.listarPagina(cookieSunat, pagina),
+                        Semaphore::release)
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(respuesta -> PaginaSunat.descargada(pagina, respuesta))
+                .defaultIfEmpty(PaginaSunat.descargada(pagina, null))
+                .onErrorResume(e -> {
+                    logger.error("Error al consumir la API de SUNAT (página {}): {}", pagina, e.getMessage());
+                    return Mono.just(PaginaSunat.fallida(pagina));
+                });
+    }
 
-            try {
-                ResponseEntity<RespuestaSunatDTO> response = restTemplate.exchange(
-                        apiUrl + "/listNotiMenPag?page=" + i,
-                        HttpMethod.GET,
-                        entity,
-                        RespuestaSunatDTO.class
-                );
+    /**
+     * Etapa de filtrado y guardado de una página ya descargada.
+     *
+     * @return false si la página indica que no hay más mensajes por descargar
+     */
+    private boolean procesarPagina(PaginaSunat pagina, String rucUsuario, String cookieSunat, EstadoSincronizacion estado) {
+        estado.paginasConsultadas++;
+        if (pagina.fallida) {
+            estado.paginasFallidas++;
+            return true;
+        }
 
-                if (response.getBody() != null && response.getBody().getRows() != null) {
-                    assert usuario != null;
-                    List<MensajeSunat> nuevosRegistros = F_PROCESAR_Y_FILTRAR_MENSAJES(response.getBody().getRows(), usuario.getRuc(), cookieSunat);
-                    if (!nuevosRegistros.isEmpty()) {
-                        mensajeSunatRepositorio.saveAll(nuevosRegistros);
-                        logger.info("Se han guardado {} nuevos mensajes", nuevosRegistros.size());
-                    } else {
-                        logger.info("No se encontraron nuevos mensajes para guardar");
-                    }
-                } else {
-                    logger.warn("La respuesta de la API no contiene datos");
-                }
+        RespuestaSunatDTO respuesta = pagina.respuesta;
+        if (respuesta == null || respuesta.getRows() == null || respuesta.getRows().isEmpty()) {
+            logger.warn("La página {} no contiene datos, se detiene la consulta", pagina.numero);
+            return false;
+        }
 
-            } catch (Exception e) {
-                logger.error("Error al consumir la API de SUNAT: {}", e.getMessage(), e);
-            }
+        List<MensajeSunatDTO> filas = respuesta.getRows();
+        boolean marcaAlcanzada = estado.registrarFilas(filas);
+
+        List<MensajeSunat> nuevosRegistros = F_PROCESAR_Y_FILTRAR_MENSAJES(filas, rucUsuario);
+        estado.mensajesOmitidos += filas.size() - nuevosRegistros.size();
+        if (nuevosRegistros.isEmpty()) {
+            logger.info("La página {} solo contiene mensajes conocidos, se detiene la consulta", pagina.numero);
+            return false;
+        }
+
+        mensajeSunatServicio.guardarNuevos(nuevosRegistros);
+        List<Long> codigosNuevos = nuevosRegistros.stream().map(MensajeSunat::getNuCodigoMensaje).toList();
+        codigosVistos.registrar(rucUsuario, codigosNuevos);
+        estado.mensajesNuevos += nuevosRegistros.size();
+        logger.info("Se han guardado {} nuevos mensajes (página {})", nuevosRegistros.size(), pagina.numero);
+
+        // El detalle y la clasificación se completan en segundo plano
+        detallePendienteServicio.encolar(rucUsuario, cookieSunat, codigosNuevos);
+
+        if (marcaAlcanzada) {
+            estado.marcaAlcanzada = true;
+            logger.info("La página {} alcanza mensajes ya ingeridos, se detiene la consulta", pagina.numero);
+            return false;
+        }
+        return true;
+    }
+
+    private static LocalDateTime parsearFechaPublica(String fecha) {
+        if (fecha == null || fecha.isBlank()) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(fecha.trim(), FORMATO_FECHA_PUBLICA);
+        } catch (DateTimeParseException e) {
+            return null;
         }
     }
 
 
-    private List<MensajeSunat> F_PROCESAR_Y_FILTRAR_MENSAJES(List<MensajeSunatDTO> mensajesDTO, String rucUsuario, String cookieSunat) {
+    private List<MensajeSunat> F_PROCESAR_Y_FILTRAR_MENSAJES(List<MensajeSunatDTO> mensajesDTO, String rucUsuario) {
         List<MensajeSunat> nuevosMensajes = new ArrayList<>();
+        if (mensajesDTO.isEmpty()) {
+            return nuevosMensajes;
+        }
+
+        List<Long> codigos = mensajesDTO.stream()
+                .map(MensajeSunatDTO::getNuCodigoMensaje)
+                .filter(Objects::nonNull)
+                .toList();
+
+        // Primero el filtro en memoria; solo los códigos no vistos van a base de datos, en una única consulta
+        Set<Long> vistos = codigosVistos.filtrarConocidos(rucUsuario, codigos);
+        List<Long> porConsultar = codigos.stream().filter(c -> !vistos.contains(c)).toList();
+        Set<Long> existentes = porConsultar.isEmpty()
+                ? Set.of()
+                : mensajeSunatRepositorio.encontrarCodigosExistentes(porConsultar);
+        codigosVistos.registrar(rucUsuario, existentes);
 
         for (MensajeSunatDTO dto : mensajesDTO) {
             dto.setVcNumeroRuc(rucUsuario);
+            Long codigo = dto.getNuCodigoMensaje();
 
-            // Verificar si el mensaje ya existe en la base de datos
-            if (!mensajeSunatRepositorio.existsByNuCodigoMensaje(dto.getNuCodigoMensaje())) {
+            if (codigo != null && !vistos.contains(codigo) && !existentes.contains(codigo)) {
                 MensajeSunat mensajeSunat = mensajeSunatMapper.mapearAEntidad(dto);
                 nuevosMensajes.add(mensajeSunat);
             }
-            sunatDetalleService.procesarYGuardarNotificacion(dto.getNuCodigoMensaje().toString(),cookieSunat);
         }
 
         return nuevosMensajes;
     }
 
-    /**
-     * Actualiza las clasificaciones de los mensajes existentes usando IA
-     */
-    public void actualizarClasificacionesExistentes() {
-        logger.info("Iniciando actualización de clasificaciones existentes con IA");
-        
-        // Obtener todos los mensajes sin clasificación o con clasificación anterior
-        List<MensajeSunat> mensajes = mensajeSunatRepositorio.findAll();
-        
-        // Filtrar mensajes que necesitan reclasificación
-        List<MensajeSunat> mensajesParaClasificar = mensajes.stream()
-            .filter(m -> m.getClasificacion() == null || 
-                        m.getClasificacion().equals("SIN CLASIFICACION") ||
-                        m.getClasificacion().equals("MUY IMPORTANTE") ||
-                        m.getClasificacion().equals("IMPORTANTE") ||
-                        m.getClasificacion().equals("RECURRENTE"))
-            .collect(java.util.stream.Collectors.toList());
-        
-        if (mensajesParaClasificar.isEmpty()) {
-            logger.info("No se encontraron mensajes que requieran reclasificación con IA");
-            return;
-        }
-        
-        logger.info("Procesando {} mensajes para reclasificación con IA", mensajesParaClasificar.size());
-        
-        // Procesar con IA a través del MensajeSunatServicio
-        try {
-            mensajeSunatServicio.procesarNuevosCorreosConIA(mensajesParaClasificar);
-            logger.info("✅ Reclasificación completada con IA para {} mensajes", mensajesParaClasificar.size());
-        } catch (Exception e) {
-            logger.error("❌ Error durante la reclasificación con IA: {}", e.getMessage());
-        }
-    }
-
     public UsuarioExtraido extraerUsuario(String cookies) {
         Matcher matcher = rucUsuarioPattern.matcher(cookies);
         if (matcher.find()) {
@@ -169,6 +301,74 @@ public class SunatServicio {
         return null;
     }
 
+    /**
+     * Contadores y marca de agua de una sincronización en curso (solo los modifica el hilo consumidor)
+     */
+    private static class EstadoSincronizacion {
+        private final Long codigoMarca;
+        private final LocalDateTime fechaMarca;
+        private int paginasConsultadas;
+        private int paginasFallidas;
+        private int mensajesNuevos;
+        private int mensajesOmitidos;
+        private boolean marcaAlcanzada;
+        private boolean interrumpida;
+        private Long maxCodigo;
+        private LocalDateTime maxFechaPublica;
+
+        private EstadoSincronizacion(SincronizacionRuc marca) {
+            this.codigoMarca = marca.getNuUltimoCodigoMensaje();
+            this.fechaMarca = parsearFechaPublica(marca.getVcUltimaFechaPublica());
+        }
+
+        /**
+         * Actualiza los máximos vistos y devuelve true si alguna fila ya estaba cubierta por la marca
+         */
+        private boolean registrarFilas(List<MensajeSunatDTO> filas) {
+            boolean alcanzada = false;
+            for (MensajeSunatDTO fila : filas) {
+                Long codigo = fila.getNuCodigoMensaje();
+                LocalDateTime fecha = parsearFechaPublica(fila.getVcFechaPublica());
+                if (codigo != null) {
+                    maxCodigo = maxCodigo == null ? codigo : Math.max(maxCodigo, codigo);
+                    if (codigoMarca != null && codigo <= codigoMarca) {
+                        alcanzada = true;
+                    }
+                }
+                if (fecha != null) {
+                    maxFechaPublica = maxFechaPublica == null || fecha.isAfter(maxFechaPublica) ? fecha : maxFechaPublica;
+                    if (fechaMarca != null && fecha.isBefore(fechaMarca)) {
+                        alcanzada = true;
+                    }
+                }
+            }
+            return alcanzada;
+        }
+    }
+
+    /**
+     * Resultado de la descarga de una página del listado de SUNAT
+     */
+    private static class PaginaSunat {
+        private final int numero;
+        private final RespuestaSunatDTO respuesta;
+        private final boolean fallida;
+
+        private PaginaSunat(int numero, RespuestaSunatDTO respuesta, boolean fallida) {
+            this.numero = numero;
+            this.respuesta = respuesta;
+            this.fallida = fallida;
+        }
+
+        static PaginaSunat descargada(int numero, RespuestaSunatDTO respuesta) {
+            return new PaginaSunat(numero, respuesta, false);
+        }
+
+        static PaginaSunat fallida(int numero) {
+            return new PaginaSunat(numero, null, true);
+        }
+    }
+
     public static class UsuarioExtraido {
         private String ruc;
         private String usuario;
@@ -0,0 +1,192 @@
+package upao.edu.pe.util;
+
+import java.text.Normalizer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Autómata Aho-Corasick para buscar muchas palabras clave en una sola pasada sobre el texto.
+ * Los patrones y el texto se comparan en minúsculas y sin tildes; el plegado se hace carácter
+ * a carácter durante el recorrido, sin crear cadenas intermedias.
+ *
+ * Las transiciones se precalculan en una tabla densa (estado x símbolo), por lo que cada
+ * carácter del texto cuesta un acceso a arreglo.
+ */
+public final class AutomataPalabrasClave {
+
+    private static final char[] PLEGADO_LATIN1 = new char[256];
+
+    static {
+        for (int c = 0; c < PLEGADO_LATIN1.length; c++) {
+            String base = Normalizer.normalize(String.valueOf((char) c), Normalizer.Form.NFD)
+                    .replaceAll("\\p{M}+", "")
+                    .toLowerCase();
+            PLEGADO_LATIN1[c] = base.length() == 1 ? base.charAt(0) : Character.toLowerCase((char) c);
+        }
+    }
+
+    private final int[] simboloPorCaracter;
+    // Atajo para Latin-1: plegado y símbolo en un solo acceso
+    private final int[] simboloLatin1 = new int[PLEGADO_LATIN1.length];
+    private final int cantidadSimbolos;
+    private final int[] transiciones;
+    private final int[][] salidas;
+    // Con hasta 64 patrones, las salidas de cada estado también se guardan como máscara de bits
+    private final long[] mascaraSalidas;
+
+    private AutomataPalabrasClave(int[] simboloPorCaracter, int cantidadSimbolos, int[] transiciones, int[][] salidas) {
+        this.simboloPorCaracter = simboloPorCaracter;
+        this.cantidadSimbolos = cantidadSimbolos;
+        this.transiciones = transiciones;
+        this.salidas = salidas;
+        for (int c = 0; c < simboloLatin1.length; c++) {
+            simboloLatin1[c] = simboloPorCaracter[PLEGADO_LATIN1[c]];
+        }
+        boolean cabeEnMascara = true;
+        long[] mascaras = new long[salidas.length];
+        for (int e = 0; e < salidas.length && cabeEnMascara; e++) {
+            for (int patron : salidas[e]) {
+                if (patron >= Long.SIZE) {
+                    cabeEnMascara = false;
+                    break;
+                }
+                mascaras[e] |= 1L << patron;
+            }
+        }
+        this.mascaraSalidas = cabeEnMascara ? mascaras : null;
+    }
+
+    /**
+     * Minúscula sin tilde para caracteres Latin-1; el resto solo se pasa a minúscula
+     */
+    public static char plegar(char c) {
+        return c < PLEGADO_LATIN1.length ? PLEGADO_LATIN1[c] : Character.toLowerCase(c);
+    }
+
+    public static String plegar(String texto) {
+        char[] plegado = new char[texto.length()];
+        for (int i = 0; i < plegado.length; i++) {
+            plegado[i] = plegar(texto.charAt(i));
+        }
+        return new String(plegado);
+    }
+
+    /**
+     * Compila los patrones; el índice de cada patrón en la lista es el que se reporta al buscar
+     */
+    public static AutomataPalabrasClave compilar(List<String> patrones) {
+        List<String> plegados = new ArrayList<>(patrones.size());
+        int[] simboloPorCaracter = new int[Character.MAX_VALUE + 1];
+        int cantidadSimbolos = 1; // 0 = carácter que no aparece en ningún patrón
+        for (String patron : patrones) {
+            if (patron == null || patron.isEmpty()) {
+                throw new IllegalArgumentException("Las palabras clave no pueden estar vacías");
+            }
+            String plegado = plegar(patron);
+            plegados.add(plegado);
+            for (int i = 0; i < plegado.length(); i++) {
+                if (simboloPorCaracter[plegado.charAt(i)] == 0) {
+                    simboloPorCaracter[plegado.charAt(i)] = cantidadSimbolos++;
+                }
+            }
+        }
+
+        // Trie
+        List<int[]> hijos = new ArrayList<>();
+        List<List<Integer>> salidasPorEstado = new ArrayList<>();
+        hijos.add(nuevoNodo(cantidadSimbolos));
+        salidasPorEstado.add(new ArrayList<>());
+        for (int p = 0; p < plegados.size(); p++) {
+            int estado = 0;
+            for (char c : plegados.get(p).toCharArray()) {
+                int simbolo = simboloPorCaracter[c];
+                if (hijos.get(estado)[simbolo] < 0) {
+                    hijos.get(estado)[simbolo] = hijos.size();
+                    hijos.add(nuevoNodo(cantidadSimbolos));
+                    salidasPorEstado.add(new ArrayList<>());
+                }
+                estado = hijos.get(estado)[simbolo];
+            }
+            salidasPorEstado.get(estado).add(p);
+        }
+
+        // Enlaces de fallo por BFS y tabla de transiciones completa
+        int estados = hijos.size();
+        int[] transiciones = new int[estados * cantidadSimbolos];
+        int[] fallo = new int[estados];
+        ArrayDeque<Integer> cola = new ArrayDeque<>();
+        for (int s = 0; s < cantidadSimbolos; s++) {
+            int hijo = hijos.get(0)[s];
+            if (hijo > 0) {
+                transiciones[s] = hijo;
+                fallo[hijo] = 0;
+                cola.add(hijo);
+            } else {
+                transiciones[s] = 0;
+            }
+        }
+        while (!cola.isEmpty()) {
+            int estado = cola.poll();
+            salidasPorEstado.get(estado).addAll(salidasPorEstado.get(fallo[estado]));
+            for (int s = 0; s < cantidadSimbolos; s++) {
+                int hijo = hijos.get(estado)[s];
+                if (hijo > 0) {
+                    fallo[hijo] = transiciones[fallo[estado] * cantidadSimbolos + s];
+                    transiciones[estado * cantidadSimbolos + s] = hijo;
+                    cola.add(hijo);
+                } else {
+                    transiciones[estado * cantidadSimbolos + s] = transiciones[fallo[estado] * cantidadSimbolos + s];
+                }
+            }
+        }
+
+        int[][] salidas = new int[estados][];
+        for (int e = 0; e < estados; e++) {
+            salidas[e] = salidasPorEstado.get(e).stream().mapToInt(Integer::intValue).toArray();
+        }
+        return new AutomataPalabrasClave(simboloPorCaracter, cantidadSimbolos, transiciones, salidas);
+    }
+
+    /**
+     * Recorre el texto una vez y notifica el índice de cada patrón encontrado (con repeticiones)
+     */
+    public void buscar(CharSequence texto, IntConsumer alEncontrar) {
+        int estado = 0;
+        for (int i = 0; i < texto.length(); i++) {
+            estado = transiciones[estado * cantidadSimbolos + simbolo(texto.charAt(i))];
+            for (int patron : salidas[estado]) {
+                alEncontrar.accept(patron);
+            }
+        }
+    }
+
+    /**
+     * Recorre el texto una vez y devuelve los patrones encontrados como máscara (bit i = patrón i).
+     * Solo disponible cuando el autómata tiene como máximo 64 patrones.
+     */
+    public long buscarMascara(CharSequence texto) {
+        if (mascaraSalidas == null) {
+            throw new IllegalStateException("buscarMascara requiere como máximo 64 patrones");
+        }
+        long encontrados = 0L;
+        int estado = 0;
+        for (int i = 0; i < texto.length(); i++) {
+            estado = transiciones[estado * cantidadSimbolos + simbolo(texto.charAt(i))];
+            encontrados |= mascaraSalidas[estado];
+        }
+        return encontrados;
+    }
+
+    private int simbolo(char c) {
+        return c < simboloLatin1.length ? simboloLatin1[c] : simboloPorCaracter[Character.toLowerCase(c)];
+    }
+
+    private static int[] nuevoNodo(int cantidadSimbolos) {
+        int[] nodo = new int[cantidadSimbolos];
+        Arrays.fill(nodo, -1);
+        return nodo;
+    }
+}
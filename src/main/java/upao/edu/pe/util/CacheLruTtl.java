@@ -0,0 +1,155 @@
+package upao.edu.pe.util;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Caché en memoria acotada por cantidad (LRU) y por antigüedad (TTL).
+ * Las operaciones son O(1) sobre un LinkedHashMap en orden de acceso, protegido por un candado
+ * que nunca se mantiene durante operaciones de E/S.
+ */
+public class CacheLruTtl<K, V> {
+
+    private final int maxEntradas;
+    private final long ttlMs;
+    private final Clock reloj;
+    private final ReentrantLock candado = new ReentrantLock();
+    private final LinkedHashMap<K, Entrada<V>> entradas;
+
+    public CacheLruTtl(int maxEntradas, long ttlMs) {
+        this(maxEntradas, ttlMs, Clock.systemUTC());
+    }
+
+    public CacheLruTtl(int maxEntradas, long ttlMs, Clock reloj) {
+        this.maxEntradas = Math.max(1, maxEntradas);
+        this.ttlMs = ttlMs;
+        this.reloj = reloj;
+        this.entradas = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entrada<V>> eldest) {
+                return size() > CacheLruTtl.this.maxEntradas;
+            }
+        };
+    }
+
+    /**
+     * Devuelve el valor vigente o null si no existe o ya expiró
+     */
+    public V obtener(K clave) {
+        candado.lock();
+        try {
+            Entrada<V> entrada = entradas.get(clave);
+            if (entrada == null) {
+                return null;
+            }
+            if (ttlMs > 0 && reloj.millis() - entrada.creadoMs > ttlMs) {
+                entradas.remove(clave);
+                return null;
+            }
+            return entrada.valor;
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    /**
+     * Devuelve el valor vigente o guarda el que construye el creador; este se ejecuta con el candado
+     * tomado, así que debe ser barato y sin E/S
+     */
+    public V obtenerOCrear(K clave, Function<? super K, ? extends V> creador) {
+        candado.lock();
+        try {
+            Entrada<V> entrada = entradas.get(clave);
+            if (entrada != null && (ttlMs <= 0 || reloj.millis() - entrada.creadoMs <= ttlMs)) {
+                return entrada.valor;
+            }
+            V valor = creador.apply(clave);
+            entradas.put(clave, new Entrada<>(valor, reloj.millis()));
+            return valor;
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    /**
+     * Copia de los valores no expirados (no cambia el orden de uso)
+     */
+    public List<V> valoresVigentes() {
+        candado.lock();
+        try {
+            long ahora = reloj.millis();
+            List<V> valores = new ArrayList<>(entradas.size());
+            for (Entrada<V> entrada : entradas.values()) {
+                if (ttlMs <= 0 || ahora - entrada.creadoMs <= ttlMs) {
+                    valores.add(entrada.valor);
+                }
+            }
+            return valores;
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    public void guardar(K clave, V valor) {
+        candado.lock();
+        try {
+            entradas.put(clave, new Entrada<>(valor, reloj.millis()));
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    public void eliminar(K clave) {
+        candado.lock();
+        try {
+            entradas.remove(clave);
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    public void eliminarSi(Predicate<V> condicion) {
+        candado.lock();
+        try {
+            entradas.values().removeIf(entrada -> condicion.test(entrada.valor));
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    public void eliminarClavesSi(Predicate<K> condicion) {
+        candado.lock();
+        try {
+            entradas.keySet().removeIf(condicion);
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    public void limpiar() {
+        candado.lock();
+        try {
+            entradas.clear();
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    public int tamanio() {
+        candado.lock();
+        try {
+            return entradas.size();
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    private record Entrada<V>(V valor, long creadoMs) {
+    }
+}
@@ -25,4 +25,141 @@ CREATE TABLE IF NOT EXISTS T_MENSAJE_SUNAT (
     );
 
 -- Índice para optimizar la búsqueda por código de mensaje
-CREATE INDEX IF NOT EXISTS idx_codigo_mensaje ON T_MENSAJE_SUNAT(NU_CODIGO_MENSAJE);
\ No newline at end of file
+CREATE INDEX IF NOT EXISTS idx_codigo_mensaje ON T_MENSAJE_SUNAT(NU_CODIGO_MENSAJE);
+-- Marca de agua de sincronización por RUC
+CREATE TABLE IF NOT EXISTS T_SINCRONIZACION_RUC (
+    VC_NUMERO_RUC VARCHAR(20) PRIMARY KEY,
+    NU_ULTIMO_CODIGO_MENSAJE BIGINT,
+    VC_ULTIMA_FECHA_PUBLICA VARCHAR(30),
+    DT_ULTIMA_SINCRONIZACION TIMESTAMP,
+    NU_PAGINAS_CONSULTADAS INTEGER,
+    NU_MENSAJES_NUEVOS INTEGER,
+    NU_MENSAJES_OMITIDOS INTEGER,
+    NU_TIEMPO_MS BIGINT
+    );
+
+-- Cola de detalles de notificación pendientes de descarga
+CREATE TABLE IF NOT EXISTS T_DETALLE_PENDIENTE (
+    NU_CODIGO_MENSAJE BIGINT PRIMARY KEY,
+    VC_NUMERO_RUC VARCHAR(20),
+    VC_ESTADO VARCHAR(20),
+    NU_INTENTOS INTEGER,
+    DT_PROXIMO_INTENTO TIMESTAMP,
+    VC_ULTIMO_ERROR VARCHAR(500),
+    DT_CREACION TIMESTAMP,
+    DT_ACTUALIZACION TIMESTAMP
+    );
+CREATE INDEX IF NOT EXISTS idx_detalle_pendiente_estado ON T_DETALLE_PENDIENTE(VC_ESTADO, DT_PROXIMO_INTENTO);
+CREATE INDEX IF NOT EXISTS idx_detalle_pendiente_ruc ON T_DETALLE_PENDIENTE(VC_NUMERO_RUC);
+
+-- Caché de clasificaciones de Gemini por huella del asunto normalizado y versión del prompt
+CREATE TABLE IF NOT EXISTS T_CLASIFICACION_CACHE (
+    VC_HUELLA VARCHAR(64) NOT NULL,
+    VC_VERSION_PROMPT VARCHAR(40) NOT NULL,
+    VC_ASUNTO_NORMALIZADO VARCHAR(500),
+    VC_CLASIFICACION VARCHAR(30),
+    VC_ETIQUETA_CODIGO VARCHAR(5),
+    VC_ETIQUETA_NOMBRE VARCHAR(100),
+    VC_RAZON VARCHAR(1000),
+    NU_CONFIANZA DOUBLE PRECISION,
+    DT_ACTUALIZACION TIMESTAMP,
+    PRIMARY KEY (VC_HUELLA, VC_VERSION_PROMPT)
+    );
+-- Tablas creadas con la clave solo por huella (la caché es descartable); solo se migra una vez
+DO $$
+BEGIN
+    IF NOT EXISTS (
+        SELECT 1
+        FROM pg_index i
+        JOIN pg_attribute a ON a.attrelid = i.indrelid AND a.attnum = ANY (i.indkey)
+        WHERE i.indrelid = 't_clasificacion_cache'::regclass
+          AND i.indisprimary
+          AND a.attname = 'vc_version_prompt'
+    ) THEN
+        DELETE FROM T_CLASIFICACION_CACHE WHERE VC_VERSION_PROMPT IS NULL;
+        ALTER TABLE T_CLASIFICACION_CACHE DROP CONSTRAINT IF EXISTS t_clasificacion_cache_pkey;
+        ALTER TABLE T_CLASIFICACION_CACHE ADD PRIMARY KEY (VC_HUELLA, VC_VERSION_PROMPT);
+    END IF;
+END $$;
+CREATE INDEX IF NOT EXISTS idx_clasificacion_cache_version ON T_CLASIFICACION_CACHE(VC_VERSION_PROMPT);
+
+-- Resumen diario de mensajes por RUC, día de envío, etiqueta y clasificación (lo lee el dashboard)
+CREATE TABLE IF NOT EXISTS T_RESUMEN_DIARIO_MENSAJES (
+    NU_ID_RESUMEN BIGSERIAL PRIMARY KEY,
+    VC_NUMERO_RUC VARCHAR(20) NOT NULL,
+    DT_DIA DATE NOT NULL,
+    VC_CODIGO_ETIQUETA VARCHAR(20) NOT NULL,
+    VC_CLASIFICACION VARCHAR(30) NOT NULL,
+    NU_CANTIDAD BIGINT,
+    NU_NO_LEIDOS BIGINT,
+    NU_URGENTES BIGINT,
+    NU_CON_ARCHIVOS BIGINT,
+    CONSTRAINT uk_resumen_diario_clave UNIQUE (VC_NUMERO_RUC, DT_DIA, VC_CODIGO_ETIQUETA, VC_CLASIFICACION)
+    );
+CREATE INDEX IF NOT EXISTS idx_resumen_diario_dia ON T_RESUMEN_DIARIO_MENSAJES(DT_DIA);
+
+-- Fechas tipadas de envío y publicación (las columnas VC_ se conservan tal como llegan de SUNAT)
+ALTER TABLE T_MENSAJE_SUNAT ADD COLUMN IF NOT EXISTS DT_FECHA_ENVIO TIMESTAMP;
+ALTER TABLE T_MENSAJE_SUNAT ADD COLUMN IF NOT EXISTS DT_FECHA_PUBLICA TIMESTAMP;
+-- Relleno de los mensajes existentes con el formato de SUNAT; el resto lo completa la aplicación al arrancar
+UPDATE T_MENSAJE_SUNAT
+SET DT_FECHA_PUBLICA = TO_TIMESTAMP(VC_FECHA_PUBLICA, 'DD/MM/YYYY HH24:MI:SS')
+WHERE DT_FECHA_PUBLICA IS NULL
+  AND VC_FECHA_PUBLICA ~ '^\d{2}/\d{2}/\d{4} \d{2}:\d{2}:\d{2}$';
+UPDATE T_MENSAJE_SUNAT
+SET DT_FECHA_ENVIO = TO_TIMESTAMP(VC_FECHA_ENVIO, 'DD/MM/YYYY HH24:MI:SS')
+WHERE DT_FECHA_ENVIO IS NULL
+  AND VC_FECHA_ENVIO ~ '^\d{2}/\d{2}/\d{4} \d{2}:\d{2}:\d{2}$';
+CREATE INDEX IF NOT EXISTS idx_mensaje_ruc_fecha_publica ON T_MENSAJE_SUNAT(VC_NUMERO_RUC, DT_FECHA_PUBLICA DESC);
+CREATE INDEX IF NOT EXISTS idx_mensaje_etiqueta_fecha_publica ON T_MENSAJE_SUNAT(VC_CODIGO_ETIQUETA, DT_FECHA_PUBLICA DESC);
+-- Correos críticos del dashboard: la ventana de días se recorre por RUC y fecha de envío
+CREATE INDEX IF NOT EXISTS idx_mensaje_ruc_fecha_envio ON T_MENSAJE_SUNAT(VC_NUMERO_RUC, DT_FECHA_ENVIO DESC);
+
+-- Trabajos de reclasificación con IA; NU_ULTIMO_CODIGO es el punto de control para reanudar
+CREATE TABLE IF NOT EXISTS T_TRABAJO_RECLASIFICACION (
+    NU_ID_TRABAJO BIGSERIAL PRIMARY KEY,
+    VC_ESTADO VARCHAR(20),
+    NU_ULTIMO_CODIGO BIGINT,
+    NU_TOTAL BIGINT,
+    NU_PROCESADOS BIGINT,
+    NU_LOTES INTEGER,
+    NU_TIEMPO_MS BIGINT,
+    VC_ULTIMO_ERROR VARCHAR(500),
+    DT_INICIO TIMESTAMP,
+    DT_ACTUALIZACION TIMESTAMP,
+    DT_FIN TIMESTAMP,
+    VC_NODO VARCHAR(100),
+    DT_LATIDO TIMESTAMP
+    );
+-- Nodo que ejecuta el trabajo y su último latido; otro nodo solo lo toma si el latido venció
+ALTER TABLE T_TRABAJO_RECLASIFICACION ADD COLUMN IF NOT EXISTS VC_NODO VARCHAR(100);
+ALTER TABLE T_TRABAJO_RECLASIFICACION ADD COLUMN IF NOT EXISTS DT_LATIDO TIMESTAMP;
+CREATE INDEX IF NOT EXISTS idx_trabajo_reclasificacion_estado ON T_TRABAJO_RECLASIFICACION(VC_ESTADO);
+
+-- Cuota de Gemini compartida entre réplicas: lo arrendado por todos los nodos en cada minuto (epoch)
+CREATE TABLE IF NOT EXISTS T_CUOTA_GEMINI (
+    NU_VENTANA BIGINT PRIMARY KEY,
+    NU_PETICIONES BIGINT NOT NULL DEFAULT 0,
+    NU_TOKENS BIGINT NOT NULL DEFAULT 0
+    );
+-- Nodos que arriendan cuota; los vivos son los que arrendaron en el último minuto
+CREATE TABLE IF NOT EXISTS T_NODO_GEMINI (
+    VC_NODO VARCHAR(100) PRIMARY KEY,
+    DT_ULTIMO_LATIDO TIMESTAMP
+    );
+CREATE INDEX IF NOT EXISTS idx_nodo_gemini_latido ON T_NODO_GEMINI(DT_ULTIMO_LATIDO);
+
+-- Cola de clasificación con Gemini: un registro por mensaje, atendido por DT_ORDEN (ingreso adelantado según prioridad)
+CREATE TABLE IF NOT EXISTS T_COLA_CLASIFICACION (
+    NU_CODIGO_MENSAJE BIGINT PRIMARY KEY,
+    VC_NUMERO_RUC VARCHAR(20),
+    NU_PRIORIDAD INTEGER,
+    VC_ESTADO VARCHAR(20),
+    NU_INTENTOS INTEGER,
+    DT_ORDEN TIMESTAMP,
+    DT_COMPLETADO TIMESTAMP,
+    DT_CREACION TIMESTAMP,
+    DT_ACTUALIZACION TIMESTAMP
+    );
+CREATE INDEX IF NOT EXISTS idx_cola_clasificacion_estado_orden ON T_COLA_CLASIFICACION(VC_ESTADO, DT_ORDEN);
+CREATE INDEX IF NOT EXISTS idx_cola_clasificacion_completado ON T_COLA_CLASIFICACION(DT_COMPLETADO);
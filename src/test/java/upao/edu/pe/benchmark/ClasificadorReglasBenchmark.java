@@ -0,0 +1,91 @@
+package upao.edu.pe.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import upao.edu.pe.service.MotorReglasClasificacion;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asuntos por segundo: motor Aho-Corasick frente a la cadena de toLowerCase().contains(...)
+ * que usaba SunatControlador.clasificarPorPalabrasClave. Se ejecuta desde
+ * ClasificadorReglasBenchmarkTest con: mvn test -Pbenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0)
+public class ClasificadorReglasBenchmark {
+
+    private static final String[] ASUNTOS = {
+            "Formulario 0621 - PDT IGV-RENTA MENSUAL",
+            "URGENTE - Orden de Pago No: 123456",
+            "Notificación SUNAT - Código: 987654321",
+            "Resolución Coactiva Levantamiento de Embargo",
+            "Constancia de presentación exitosa - Declaración mensual",
+            "Formulario 0601 con inconsistencias críticas",
+            "Aviso: mantenimiento programado de la plataforma SOL",
+            "Resolución de Intendencia N° 0230240123456 - Fiscalización parcial",
+            "Comprobante de pago electrónico emitido",
+            "Trámite de devolución en línea"
+    };
+
+    private final MotorReglasClasificacion motorReglas = new MotorReglasClasificacion();
+
+    @Benchmark
+    public void motorAhoCorasick(Blackhole blackhole) {
+        for (String asunto : ASUNTOS) {
+            blackhole.consume(motorReglas.evaluar(asunto));
+        }
+    }
+
+    @Benchmark
+    public void cadenaContains(Blackhole blackhole) {
+        for (String asunto : ASUNTOS) {
+            blackhole.consume(clasificarConContains(asunto));
+            blackhole.consume(esPrioritarioConContains(asunto));
+        }
+    }
+
+    // Implementación anterior, copiada como línea base
+    private static String clasificarConContains(String asunto) {
+        String asuntoLower = asunto.toLowerCase();
+        if (asuntoLower.contains("orden de pago") || asuntoLower.contains("pago de") || asuntoLower.contains("vencimiento")
+                || asuntoLower.contains("vence") || asuntoLower.contains("deuda") || asuntoLower.contains("cobranza")
+                || asuntoLower.contains("intimación") || asuntoLower.contains("embargo") || asuntoLower.contains("multa")
+                || asuntoLower.contains("sanción") || asuntoLower.contains("requerimiento") || asuntoLower.contains("urgente")) {
+            return "MUY_IMPORTANTE";
+        }
+        if (asuntoLower.contains("declaración") || asuntoLower.contains("declarar") || asuntoLower.contains("autorización")
+                || asuntoLower.contains("certificado") || asuntoLower.contains("comprobante") || asuntoLower.contains("validación")
+                || asuntoLower.contains("verificación") || asuntoLower.contains("constancia") || asuntoLower.contains("resolución")
+                || asuntoLower.contains("notificación") || asuntoLower.contains("renta") || asuntoLower.contains("igv")
+                || asuntoLower.contains("essalud") || asuntoLower.contains("afp")) {
+            return "IMPORTANTE";
+        }
+        if (asuntoLower.contains("formulario") || asuntoLower.contains("cambio") || asuntoLower.contains("modificación")
+                || asuntoLower.contains("actualización") || asuntoLower.contains("nuevo") || asuntoLower.contains("nueva")
+                || asuntoLower.contains("información") || asuntoLower.contains("comunicado") || asuntoLower.contains("aviso")
+                || asuntoLower.contains("procedimiento") || asuntoLower.contains("sistema") || asuntoLower.contains("plataforma")
+                || asuntoLower.contains("servicio")) {
+            return "INFORMATIVO";
+        }
+        return "RECURRENTE";
+    }
+
+    private static boolean esPrioritarioConContains(String asunto) {
+        String asuntoLower = asunto.toLowerCase();
+        return asuntoLower.contains("resolución") || asuntoLower.contains("cobranza") || asuntoLower.contains("embargo")
+                || asuntoLower.contains("multa") || asuntoLower.contains("fiscalización") || asuntoLower.contains("urgente");
+    }
+}
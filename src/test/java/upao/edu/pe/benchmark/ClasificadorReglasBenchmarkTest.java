@@ -0,0 +1,30 @@
+package upao.edu.pe.benchmark;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Lanza ClasificadorReglasBenchmark con JMH. Solo se ejecuta con: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+class ClasificadorReglasBenchmarkTest {
+
+    @Test
+    void compararMotorConCadenaContains() throws Exception {
+        Options opciones = new OptionsBuilder()
+                .include(ClasificadorReglasBenchmark.class.getSimpleName())
+                .build();
+
+        Collection<RunResult> resultados = new Runner(opciones).run();
+
+        assertThat(resultados).hasSize(2);
+    }
+}
@@ -0,0 +1,135 @@
+package upao.edu.pe.benchmark;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+import upao.edu.pe.dto.response.RespuestaSunatDTO;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Compara el rendimiento de llamadas bloqueantes a un stub local de SUNAT con hilos de
+ * plataforma y con hilos virtuales. Solo se ejecuta con: mvn test -Pbenchmark
+ * (la parte de hilos virtuales requiere Java 21+).
+ */
+@Tag("benchmark")
+class HilosSincronizacionBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(HilosSincronizacionBenchmarkTest.class);
+
+    private static final int LATENCIA_MS = 50;
+    private static final int PETICIONES = 2000;
+    private static final int CALENTAMIENTO = 200;
+    private static final int HILOS_PLATAFORMA = 16;
+
+    private static final String PAGINA_JSON = "{\"estadoRespuesta\":\"OK\",\"page\":1,\"total\":1,\"records\":1,"
+            + "\"rows\":[{\"codMensaje\":1,\"desAsunto\":\"Notificación\",\"fecPublica\":\"01/01/2025 10:00:00\"}]}";
+
+    private static HttpServer stubSunat;
+    private static ExecutorService hilosStub;
+    private static String urlStub;
+    private static RestTemplate restTemplate;
+
+    @BeforeAll
+    static void levantarStub() throws IOException {
+        stubSunat = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        hilosStub = Executors.newCachedThreadPool();
+        stubSunat.setExecutor(hilosStub);
+        stubSunat.createContext("/listNotiMenPag", intercambio -> {
+            try {
+                Thread.sleep(LATENCIA_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] cuerpo = PAGINA_JSON.getBytes(StandardCharsets.UTF_8);
+            intercambio.getResponseHeaders().add("Content-Type", "application/json");
+            intercambio.sendResponseHeaders(200, cuerpo.length);
+            try (OutputStream salida = intercambio.getResponseBody()) {
+                salida.write(cuerpo);
+            }
+        });
+        stubSunat.start();
+        urlStub = "http://127.0.0.1:" + stubSunat.getAddress().getPort() + "/listNotiMenPag?page=1";
+        restTemplate = new RestTemplate(new SimpleClientHttpRequestFactory());
+    }
+
+    @AfterAll
+    static void detenerStub() {
+        stubSunat.stop(0);
+        hilosStub.shutdownNow();
+    }
+
+    @Test
+    void hilosDePlataforma() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(HILOS_PLATAFORMA);
+        try {
+            medir("plataforma(" + HILOS_PLATAFORMA + ")", pool);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void hilosVirtuales() throws Exception {
+        assumeTrue(Runtime.version().feature() >= 21, "Los hilos virtuales requieren Java 21+");
+        SimpleAsyncTaskExecutor virtuales = new SimpleAsyncTaskExecutor("bench-virtual-");
+        virtuales.setVirtualThreads(true);
+        medir("virtuales", virtuales);
+    }
+
+    private void medir(String modo, Executor ejecutor) throws Exception {
+        ejecutar(ejecutor, CALENTAMIENTO);
+
+        long inicio = System.nanoTime();
+        int exitosas = ejecutar(ejecutor, PETICIONES);
+        double segundos = (System.nanoTime() - inicio) / 1_000_000_000.0;
+
+        log.info("⏱️ {} {} peticiones en {} s -> {} peticiones/s",
+                modo, PETICIONES, String.format("%.2f", segundos), String.format("%.0f", PETICIONES / segundos));
+        assertThat(exitosas).isEqualTo(PETICIONES);
+    }
+
+    private int ejecutar(Executor ejecutor, int peticiones) throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.COOKIE, "cookie-benchmark");
+        HttpEntity<Void> entidad = new HttpEntity<>(headers);
+        AtomicInteger exitosas = new AtomicInteger();
+
+        List<CompletableFuture<Void>> tareas = new ArrayList<>(peticiones);
+        for (int i = 0; i < peticiones; i++) {
+            tareas.add(CompletableFuture.runAsync(() -> {
+                RespuestaSunatDTO respuesta = restTemplate.exchange(
+                        urlStub, HttpMethod.GET, entidad, RespuestaSunatDTO.class).getBody();
+                if (respuesta != null && respuesta.getRows() != null) {
+                    exitosas.incrementAndGet();
+                }
+            }, ejecutor));
+        }
+        CompletableFuture.allOf(tareas.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.MINUTES);
+        return exitosas.get();
+    }
+}
@@ -4,11 +4,15 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import upao.edu.pe.dto.response.RespuestaControlador;
+import upao.edu.pe.service.BuzonModificadoEvento;
+import upao.edu.pe.service.DashboardCacheServicio;
 import upao.edu.pe.service.DashboardService;
+import upao.edu.pe.service.ResumenDiarioServicio;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -24,6 +28,12 @@ class DashboardControllerTest {
     @Mock
     private DashboardService dashboardService;
 
+    @Mock
+    private ResumenDiarioServicio resumenDiarioServicio;
+
+    @Spy
+    private DashboardCacheServicio dashboardCache = new DashboardCacheServicio(100, 15);
+
     @InjectMocks
     private DashboardController dashboardController;
 
@@ -96,4 +106,58 @@ class DashboardControllerTest {
         
         verify(dashboardService, times(1)).obtenerAlertasCriticas(ruc);
     }
+
+    @Test
+    void obtenerSnapshot_DeberiaRetornarTodosLosWidgets_CuandoSeEjecutaExitosamente() {
+        // Arrange
+        String ruc = "20123456789";
+        Map<String, Object> snapshot = new HashMap<>();
+        snapshot.put("generadoEn", "2026-10-17T10:00:00");
+        snapshot.put("metricasPrincipales", new HashMap<>());
+
+        when(dashboardService.obtenerSnapshot(ruc, 30, 7, 5)).thenReturn(snapshot);
+
+        // Act
+        ResponseEntity<RespuestaControlador<Map<String, Object>>> resultado =
+            dashboardController.obtenerSnapshot(ruc, 30, 7, 5);
+
+        // Assert
+        assertThat(resultado.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(resultado.getBody()).isNotNull();
+        assertThat(resultado.getBody().getDatos()).isEqualTo(snapshot);
+        assertThat(resultado.getBody().getVcMensaje()).isEqualTo("Snapshot obtenido exitosamente");
+    }
+
+    @Test
+    void reconstruirResumenDiario_DeberiaRetornarFilasGeneradas() {
+        // Arrange
+        when(resumenDiarioServicio.reconstruir()).thenReturn(42);
+
+        // Act
+        ResponseEntity<RespuestaControlador<Map<String, Object>>> resultado =
+            dashboardController.reconstruirResumenDiario();
+
+        // Assert
+        assertThat(resultado.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(resultado.getBody()).isNotNull();
+        assertThat(resultado.getBody().getDatos()).containsEntry("filas", 42);
+    }
+
+    @Test
+    void obtenerSnapshot_DeberiaUsarLaCache_HastaQueCambieElBuzon() {
+        // Arrange
+        String ruc = "20123456789";
+        when(dashboardService.obtenerSnapshot(ruc, 30, 7, 5)).thenReturn(new HashMap<>(Map.of("generadoEn", "x")));
+
+        // Act
+        dashboardController.obtenerSnapshot(ruc, 30, 7, 5);
+        dashboardController.obtenerSnapshot(ruc, 30, 7, 5);
+        dashboardCache.alModificarBuzon(new BuzonModificadoEvento(ruc));
+        dashboardController.obtenerSnapshot(ruc, 30, 7, 5);
+
+        // Assert
+        verify(dashboardService, times(2)).obtenerSnapshot(ruc, 30, 7, 5);
+        Map<String, Object> estadisticas = dashboardController.obtenerEstadisticasCache().getBody().getDatos();
+        assertThat(estadisticas).containsEntry("aciertos", 1L).containsEntry("fallos", 2L).containsEntry("invalidaciones", 1L);
+    }
 }
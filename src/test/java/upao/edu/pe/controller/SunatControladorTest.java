@@ -8,13 +8,18 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import upao.edu.pe.dto.response.RespuestaControlador;
+import upao.edu.pe.dto.response.ResultadoSincronizacionDTO;
 import upao.edu.pe.model.MensajeSunat;
+import upao.edu.pe.model.TrabajoReclasificacion;
 import upao.edu.pe.service.MensajeSunatServicio;
+import upao.edu.pe.service.ColaClasificacionServicio;
+import upao.edu.pe.service.ReclasificacionServicio;
 import upao.edu.pe.service.SunatNotificacionService;
 import upao.edu.pe.service.SunatServicio;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
@@ -27,15 +32,22 @@ class SunatControladorTest {
     private MensajeSunatServicio mensajeSunatServicio;
     @Mock
     private SunatNotificacionService sunatNotificacionService;
+    @Mock
+    private ReclasificacionServicio reclasificacionServicio;
+    @Mock
+    private ColaClasificacionServicio colaClasificacionServicio;
     @InjectMocks
     private SunatControlador controlador;
 
     @Test
     void testSincronizarMensajes_devuelveOk() {
-        ResponseEntity<RespuestaControlador<String>> response = controlador.sincronizarMensajes("cookie");
+        ResultadoSincronizacionDTO resultado = ResultadoSincronizacionDTO.builder().mensajesNuevos(3).build();
+        when(sunatServicio.SP_CONSULTAR_Y_GUARDAR_MENSAJES("cookie")).thenReturn(resultado);
+        ResponseEntity<RespuestaControlador<ResultadoSincronizacionDTO>> response = controlador.sincronizarMensajes("cookie");
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
         assertThat(response.getBody()).isNotNull();
         assertThat(response.getBody().getVcMensaje()).contains("Sincronización iniciada");
+        assertThat(response.getBody().getDatos()).isSameAs(resultado);
         verify(sunatServicio).SP_CONSULTAR_Y_GUARDAR_MENSAJES("cookie");
     }
 
@@ -285,6 +297,30 @@ class SunatControladorTest {
         assertThat(datos.get("descripcionEtiqueta")).isEqualTo("Etiqueta 10");
     }
 
+    @Test
+    void testObtenerMensajesPorEtiquetaConCursor_devuelveSiguienteCursor() {
+        MensajeSunat mensaje = MensajeSunat.builder().nuCodigoMensaje(11L).build();
+        when(mensajeSunatServicio.obtenerMensajesPorEtiquetaConCursor("10", null, 10, true))
+                .thenReturn(new MensajeSunatServicio.PaginaMensajes(List.of(mensaje), "c2lndWllbnRl", 25L));
+        when(mensajeSunatServicio.obtenerDescripcionEtiqueta("10")).thenReturn("Etiqueta 10");
+        ResponseEntity<RespuestaControlador<Map<String, Object>>> response = controlador.obtenerMensajesPorEtiquetaConCursor("10", null, 10, true);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Map<String, Object> datos = response.getBody().getDatos();
+        assertThat(datos).containsEntry("siguienteCursor", "c2lndWllbnRl")
+                .containsEntry("hayMas", true)
+                .containsEntry("totalAproximado", 25L)
+                .containsEntry("descripcionEtiqueta", "Etiqueta 10");
+        assertThat(((List<?>) datos.get("mensajes")).size()).isEqualTo(1);
+    }
+
+    @Test
+    void testObtenerMensajesConCursor_cursorInvalidoDevuelve400() {
+        when(mensajeSunatServicio.obtenerMensajesConCursor("x", 10, false)).thenThrow(new IllegalArgumentException("Cursor inválido"));
+        ResponseEntity<RespuestaControlador<Map<String, Object>>> response = controlador.obtenerMensajesConCursor("x", 10, false);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(response.getBody().getVcMensaje()).isEqualTo("Cursor inválido");
+    }
+
     @Test
     void testObtenerMensajes_parametroNulo() {
         try {
@@ -353,4 +389,34 @@ class SunatControladorTest {
             assertThat(e.getMessage()).isEqualTo("Error");
         }
     }
+
+    @Test
+    void testActualizarClasificaciones_iniciaElTrabajoEnSegundoPlano() {
+        when(reclasificacionServicio.iniciar()).thenReturn(TrabajoReclasificacion.builder().nuIdTrabajo(4L).build());
+        when(reclasificacionServicio.obtenerEstado(4L)).thenReturn(Optional.of(Map.of("idTrabajo", 4L, "procesados", 0L)));
+
+        ResponseEntity<RespuestaControlador<Map<String, Object>>> response = controlador.actualizarClasificaciones();
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+        assertThat(response.getBody().getDatos()).containsEntry("idTrabajo", 4L);
+    }
+
+    @Test
+    void testObtenerEstadoReclasificacion_trabajoInexistenteDevuelve404() {
+        when(reclasificacionServicio.obtenerEstado(99L)).thenReturn(Optional.empty());
+
+        ResponseEntity<RespuestaControlador<Map<String, Object>>> response = controlador.obtenerEstadoReclasificacion(99L);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    void testObtenerEstadoColaClasificacion_devuelveProfundidadYRitmo() {
+        when(colaClasificacionServicio.obtenerEstado()).thenReturn(Map.of("pendientes", 12L, "ritmoPorMinuto", 3.0));
+
+        ResponseEntity<RespuestaControlador<Map<String, Object>>> response = controlador.obtenerEstadoColaClasificacion();
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody().getDatos()).containsEntry("pendientes", 12L);
+    }
 }
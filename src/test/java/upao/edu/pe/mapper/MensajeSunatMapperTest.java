@@ -3,6 +3,9 @@ package upao.edu.pe.mapper;
 import org.junit.jupiter.api.Test;
 import upao.edu.pe.dto.MensajeSunatDTO;
 import upao.edu.pe.model.MensajeSunat;
+
+import java.time.LocalDateTime;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 class MensajeSunatMapperTest {
@@ -45,4 +48,26 @@ class MensajeSunatMapperTest {
         String fecha = "fecha-invalida";
         assertThat(mapper.parsearFechaVigencia(fecha)).isNull();
     }
+
+    @Test
+    void testMapearAEntidad_completaFechasTipadas() {
+        MensajeSunatDTO dto = new MensajeSunatDTO();
+        dto.setVcFechaEnvio("17/06/2025 15:30:45");
+        dto.setVcFechaPublica("17/06/2025 15:31:00");
+
+        MensajeSunat entidad = new MensajeSunatMapper().mapearAEntidad(dto);
+
+        assertThat(entidad.getDtFechaEnvio()).isEqualTo(LocalDateTime.of(2025, 6, 17, 15, 30, 45));
+        assertThat(entidad.getDtFechaPublica()).isEqualTo(LocalDateTime.of(2025, 6, 17, 15, 31, 0));
+    }
+
+    @Test
+    void testParsearFechaSunat_formatosConocidos() {
+        assertThat(MensajeSunatMapper.parsearFechaSunat("17/06/2025 15:30")).isEqualTo(LocalDateTime.of(2025, 6, 17, 15, 30));
+        assertThat(MensajeSunatMapper.parsearFechaSunat("2025-06-17T15:30:45")).isEqualTo(LocalDateTime.of(2025, 6, 17, 15, 30, 45));
+        assertThat(MensajeSunatMapper.parsearFechaSunat("2025-06-17")).isEqualTo(LocalDateTime.of(2025, 6, 17, 0, 0));
+        assertThat(MensajeSunatMapper.parsearFechaSunat("17/06/2025")).isEqualTo(LocalDateTime.of(2025, 6, 17, 0, 0));
+        assertThat(MensajeSunatMapper.parsearFechaSunat(" ")).isNull();
+        assertThat(MensajeSunatMapper.parsearFechaSunat("fecha-invalida")).isNull();
+    }
 }
@@ -0,0 +1,64 @@
+package upao.edu.pe.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
+import upao.edu.pe.dto.AsistenteConsultaDTO;
+import upao.edu.pe.dto.response.AsistenteRespuestaDTO;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AsistenteVirtualServiceTest {
+
+    private GeminiCliente geminiCliente;
+    private AsistenteVirtualService asistenteService;
+
+    @BeforeEach
+    void setUp() {
+        geminiCliente = mock(GeminiCliente.class);
+        asistenteService = new AsistenteVirtualService(geminiCliente, new LimitadorGemini(100, 1_000_000));
+    }
+
+    @Test
+    void testProcesarConsultaEnFlujo_emiteFragmentosYLuegoLaRespuestaCompleta() {
+        when(geminiCliente.generarEnFlujo(anyString(), any())).thenReturn(Flux.just(
+                fragmento("El IGV "), fragmento("es 18%."), "{\"usageMetadata\": {\"totalTokenCount\": 12}}"));
+
+        List<ServerSentEvent<Object>> eventos = asistenteService.procesarConsultaEnFlujo(consulta()).collectList().block();
+
+        assertThat(eventos).extracting(ServerSentEvent::event).containsExactly("fragmento", "fragmento", "fin");
+        assertThat(eventos.get(0).data()).isEqualTo(Map.of("texto", "El IGV "));
+        AsistenteRespuestaDTO fin = (AsistenteRespuestaDTO) eventos.get(2).data();
+        assertThat(fin.getRespuesta()).isEqualTo("El IGV es 18%.");
+        assertThat(fin.getCategoria()).isEqualTo("IGV");
+        assertThat(fin.getTiempoPrimerToken()).isNotNull().isLessThanOrEqualTo(fin.getTiempoRespuesta());
+    }
+
+    @Test
+    void testProcesarConsultaEnFlujo_errorDeGeminiTerminaConEventoDeError() {
+        when(geminiCliente.generarEnFlujo(anyString(), any())).thenReturn(Flux.concat(
+                Flux.just(fragmento("Parcial")), Flux.error(new IllegalStateException("conexión cerrada"))));
+
+        List<ServerSentEvent<Object>> eventos = asistenteService.procesarConsultaEnFlujo(consulta()).collectList().block();
+
+        assertThat(eventos).extracting(ServerSentEvent::event).containsExactly("fragmento", "error");
+    }
+
+    private AsistenteConsultaDTO consulta() {
+        AsistenteConsultaDTO consulta = new AsistenteConsultaDTO();
+        consulta.setConsulta("¿Cuál es la tasa del IGV?");
+        return consulta;
+    }
+
+    private String fragmento(String texto) {
+        return "{\"candidates\": [{\"content\": {\"parts\": [{\"text\": \"" + texto + "\"}], \"role\": \"model\"}}]}";
+    }
+}
@@ -0,0 +1,90 @@
+package upao.edu.pe.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import upao.edu.pe.model.ClasificacionCache;
+import upao.edu.pe.repository.ClasificacionCacheRepositorio;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ClasificacionCacheServicioTest {
+
+    private ClasificacionCacheRepositorio repositorio;
+    private ClasificacionCacheServicio clasificacionCache;
+
+    @BeforeEach
+    void setUp() {
+        repositorio = mock(ClasificacionCacheRepositorio.class);
+        clasificacionCache = new ClasificacionCacheServicio(repositorio, 100, 60);
+    }
+
+    @Test
+    void testNormalizarAsunto_enmascaraCodigosYQuitaTildes() {
+        assertThat(ClasificacionCacheServicio.normalizarAsunto("Notificación SUNAT - Código: 123456"))
+                .isEqualTo("notificacion sunat - codigo: #");
+        assertThat(ClasificacionCacheServicio.normalizarAsunto("Formulario 0621 - PDT  IGV-RENTA MENSUAL"))
+                .isEqualTo(ClasificacionCacheServicio.normalizarAsunto("FORMULARIO 0601 - PDT IGV-RENTA MENSUAL"));
+        assertThat(ClasificacionCacheServicio.normalizarAsunto("Factura E001-123 emitida"))
+                .isEqualTo("factura # emitida");
+    }
+
+    @Test
+    void testBuscar_despuesDeGuardarAciertaEnMemoria() {
+        clasificacionCache.guardar("Orden de Pago N° 123", "v1", resultado("11"));
+
+        GeminiAIService.EmailAnalysisResult encontrado = clasificacionCache.buscar("ORDEN DE PAGO N° 999", "v1");
+
+        assertThat(encontrado.getEtiquetaCodigo()).isEqualTo("11");
+        assertThat(clasificacionCache.obtenerEstadisticas()).containsEntry("aciertosMemoria", 1L);
+        verify(repositorio).save(any(ClasificacionCache.class));
+        verify(repositorio, never()).findByVcHuellaAndVcVersionPrompt(anyString(), anyString());
+    }
+
+    @Test
+    void testBuscar_usaBaseDeDatosYRespetaVersion() {
+        ClasificacionCache guardada = ClasificacionCache.builder()
+                .vcClasificacion("INFORMATIVO").vcEtiquetaCodigo("10").vcVersionPrompt("v1")
+                .dtActualizacion(LocalDateTime.now()).build();
+        when(repositorio.findByVcHuellaAndVcVersionPrompt(anyString(), eq("v1"))).thenReturn(Optional.of(guardada));
+        when(repositorio.findByVcHuellaAndVcVersionPrompt(anyString(), eq("v2"))).thenReturn(Optional.empty());
+
+        assertThat(clasificacionCache.buscar("Constancia de presentación", "v1").getEtiquetaCodigo()).isEqualTo("10");
+        assertThat(clasificacionCache.buscar("Constancia de presentación", "v2")).isNull();
+        assertThat(clasificacionCache.obtenerEstadisticas())
+                .containsEntry("aciertosBaseDatos", 1L)
+                .containsEntry("fallos", 1L);
+    }
+
+    @Test
+    void testGuardar_cadaVersionDelPromptTieneSuPropiaEntrada() {
+        clasificacionCache.guardar("Orden de Pago N° 123", "v1", resultado("11"));
+        clasificacionCache.guardar("Orden de Pago N° 123", "v2", resultado("14"));
+
+        verify(repositorio).save(argThat(entrada -> "v1".equals(entrada.getVcVersionPrompt())));
+        verify(repositorio).save(argThat(entrada -> "v2".equals(entrada.getVcVersionPrompt())));
+        assertThat(clasificacionCache.buscar("Orden de Pago N° 456", "v1").getEtiquetaCodigo()).isEqualTo("11");
+        assertThat(clasificacionCache.buscar("Orden de Pago N° 456", "v2").getEtiquetaCodigo()).isEqualTo("14");
+    }
+
+    @Test
+    void testEliminarOtrasVersionesAntiguas_soloBorraLasQueSuperanLaRetencion() {
+        LocalDateTime antes = LocalDateTime.now();
+
+        clasificacionCache.eliminarOtrasVersionesAntiguas("v2");
+
+        verify(repositorio).eliminarOtrasVersionesAntesDe(eq("v2"), argThat(limite ->
+                !limite.isBefore(antes.minusDays(7)) && !limite.isAfter(LocalDateTime.now().minusDays(7))));
+    }
+
+    private GeminiAIService.EmailAnalysisResult resultado(String etiqueta) {
+        return GeminiAIService.EmailAnalysisResult.builder()
+                .clasificacion("MUY IMPORTANTE").etiquetaCodigo(etiqueta).razon("test").confianza(0.8).build();
+    }
+}
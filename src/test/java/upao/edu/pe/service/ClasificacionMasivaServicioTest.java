@@ -0,0 +1,142 @@
+package upao.edu.pe.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import upao.edu.pe.repository.MensajeSunatRepositorio;
+import upao.edu.pe.repository.MensajeSunatRepositorio.AsuntoMensaje;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ClasificacionMasivaServicioTest {
+
+    @Mock
+    private MensajeSunatRepositorio mensajeSunatRepositorio;
+    @Mock
+    private ResumenDiarioServicio resumenDiarioServicio;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+    @Spy
+    private SyncTaskExecutor ejecutorSincronizacion = new SyncTaskExecutor();
+
+    @InjectMocks
+    private ClasificacionMasivaServicio servicio;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(servicio, "tamanioLote", 2);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testClasificar_actualizaPorEtiquetaSoloLosQueCambianYAjustaElResumen() {
+        when(transactionTemplate.execute(any())).thenAnswer(inv -> ((TransactionCallback<Object>) inv.getArgument(0)).doInTransaction(null));
+        when(mensajeSunatRepositorio.encontrarAsuntosDespuesDe(eq(Long.MIN_VALUE), any(Pageable.class)))
+                .thenReturn(List.of(asunto(1L, "Orden de pago N° 123", "00"), asunto(2L, "Orden de pago N° 456", "10")));
+        when(mensajeSunatRepositorio.encontrarAsuntosDespuesDe(eq(2L), any(Pageable.class)))
+                .thenReturn(List.of(asunto(5L, " ", "00")));
+        when(mensajeSunatRepositorio.actualizarEtiquetaEnLote("10", List.of(1L))).thenReturn(1);
+
+        Map<String, Object> resultado = servicio.clasificar();
+
+        verify(mensajeSunatRepositorio, times(1)).actualizarEtiquetaEnLote(anyString(), anyCollection());
+        verify(mensajeSunatRepositorio, never()).findById(any());
+        verify(resumenDiarioServicio).cambiarEtiqueta(argThat(aportes -> aportes.size() == 1
+                && aportes.iterator().next().etiqueta().equals("00")), eq("10"));
+        verify(resumenDiarioServicio, never()).reconstruir();
+        assertThat(resultado)
+                .containsEntry("estado", "COMPLETADO")
+                .containsEntry("total_procesados", 3)
+                .containsEntry("exitosos", 2)
+                .containsEntry("errores", 1)
+                .containsEntry("etiquetas_actualizadas", 1);
+        assertThat((Map<String, Integer>) resultado.get("contadores_por_clasificacion"))
+                .containsEntry("MUY_IMPORTANTE", 2)
+                .containsEntry(ClasificacionMasivaServicio.NO_CLASIFICADOS, 1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testClasificar_sinCambiosNoTocaElResumen() {
+        when(transactionTemplate.execute(any())).thenAnswer(inv -> ((TransactionCallback<Object>) inv.getArgument(0)).doInTransaction(null));
+        when(mensajeSunatRepositorio.encontrarAsuntosDespuesDe(eq(Long.MIN_VALUE), any(Pageable.class)))
+                .thenReturn(List.of(asunto(1L, "Orden de pago N° 123", "10")));
+
+        servicio.clasificar();
+
+        verifyNoInteractions(resumenDiarioServicio);
+    }
+
+    @Test
+    void testIniciarEnSegundoPlano_dejaElResultadoEnElEstado() {
+        when(mensajeSunatRepositorio.encontrarAsuntosDespuesDe(eq(Long.MIN_VALUE), any(Pageable.class))).thenReturn(List.of());
+
+        assertThat(servicio.iniciarEnSegundoPlano()).isTrue();
+
+        assertThat(servicio.obtenerEstado()).containsEntry("estado", "COMPLETADO").containsEntry("total_procesados", 0);
+    }
+
+    @Test
+    void testClasificar_rechazaUnaSegundaEjecucionSimultanea() {
+        ReflectionTestUtils.setField(servicio, "enCurso", new AtomicBoolean(true));
+
+        assertThatThrownBy(() -> servicio.clasificar()).isInstanceOf(IllegalStateException.class);
+        assertThat(servicio.iniciarEnSegundoPlano()).isFalse();
+    }
+
+    @Test
+    void testClasificarPorPalabrasClave_conservaElMapeoDelEndpointOriginal() {
+        Map<String, String> esperado = Map.ofEntries(
+                Map.entry("Orden de pago N° 0230012345", "MUY_IMPORTANTE"),
+                Map.entry("Pago de tributo pendiente", "MUY_IMPORTANTE"),
+                Map.entry("Su fraccionamiento vence mañana", "MUY_IMPORTANTE"),
+                Map.entry("Resolución de multa", "MUY_IMPORTANTE"),
+                Map.entry("Declaración jurada anual", "IMPORTANTE"),
+                Map.entry("Debe declarar el PDT 621", "IMPORTANTE"),
+                Map.entry("Certificado de retenciones", "IMPORTANTE"),
+                Map.entry("Comprobante de pago electrónico", "IMPORTANTE"),
+                Map.entry("Constancia de presentación", "IMPORTANTE"),
+                Map.entry("Notificación de valores", "IMPORTANTE"),
+                Map.entry("Nuevo formato de libros", "INFORMATIVO"),
+                Map.entry("Nueva versión del PLE", "INFORMATIVO"),
+                Map.entry("Servicio en mantenimiento", "INFORMATIVO"),
+                Map.entry("Buenos días", "RECURRENTE"));
+
+        esperado.forEach((asunto, clasificacion) ->
+                assertThat(ClasificacionMasivaServicio.clasificarPorPalabrasClave(asunto)).as(asunto).isEqualTo(clasificacion));
+    }
+
+    private static AsuntoMensaje asunto(Long codigo, String asunto, String etiqueta) {
+        return new AsuntoMensaje() {
+            public Long getCodigo() { return codigo; }
+            public String getAsunto() { return asunto; }
+            public String getEtiqueta() { return etiqueta; }
+            public String getRuc() { return "20123456789"; }
+            public String getFechaEnvio() { return "03/06/2025 10:15:00"; }
+            public String getClasificacion() { return null; }
+            public Integer getLeido() { return 0; }
+            public Integer getUrgente() { return 0; }
+            public Integer getCantidadArchivos() { return 0; }
+        };
+    }
+}
@@ -0,0 +1,33 @@
+package upao.edu.pe.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CodigosVistosPorRucTest {
+
+    private final CodigosVistosPorRuc codigosVistos = new CodigosVistosPorRuc();
+
+    @Test
+    void testFiltrarConocidos_separaPorRuc() {
+        codigosVistos.registrar("20000000001", List.of(10L, 20L));
+
+        assertThat(codigosVistos.filtrarConocidos("20000000001", List.of(10L, 30L))).containsExactly(10L);
+        assertThat(codigosVistos.filtrarConocidos("20000000002", List.of(10L, 20L))).isEmpty();
+    }
+
+    @Test
+    void testConjuntoLong_creceYConservaValores() {
+        CodigosVistosPorRuc.ConjuntoLong conjunto = new CodigosVistosPorRuc.ConjuntoLong();
+        LongStream.rangeClosed(0, 5000).forEach(conjunto::agregar);
+
+        assertThat(conjunto.tamanio()).isEqualTo(5001);
+        assertThat(conjunto.contiene(0L)).isTrue();
+        assertThat(conjunto.contiene(4999L)).isTrue();
+        assertThat(conjunto.contiene(5001L)).isFalse();
+        assertThat(conjunto.agregar(42L)).isFalse();
+    }
+}
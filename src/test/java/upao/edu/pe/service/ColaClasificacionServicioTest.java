@@ -0,0 +1,103 @@
+package upao.edu.pe.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import upao.edu.pe.model.ColaClasificacion;
+import upao.edu.pe.model.MensajeSunat;
+import upao.edu.pe.repository.ColaClasificacionRepositorio;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ColaClasificacionServicioTest {
+
+    @Mock
+    private ColaClasificacionRepositorio colaRepositorio;
+    @Spy
+    private MotorReglasClasificacion motorReglas = new MotorReglasClasificacion();
+
+    @InjectMocks
+    private ColaClasificacionServicio servicio;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testEncolar_deduplicaYAdelantaElOrdenSegunLaPrioridad() {
+        when(colaRepositorio.findAllById(anyCollection())).thenReturn(List.of());
+        MensajeSunat embargo = mensaje(1L, "Resolución de Ejecución Coactiva - Embargo");
+        MensajeSunat aviso = mensaje(2L, "Boletín informativo");
+
+        int pendientes = servicio.encolar(List.of(embargo, aviso, embargo), false);
+
+        ArgumentCaptor<List<ColaClasificacion>> guardados = ArgumentCaptor.forClass(List.class);
+        verify(colaRepositorio).saveAll(guardados.capture());
+        assertThat(pendientes).isEqualTo(2);
+        assertThat(guardados.getValue()).hasSize(2);
+        ColaClasificacion alta = guardados.getValue().get(0);
+        ColaClasificacion baja = guardados.getValue().get(1);
+        assertThat(alta.getNuPrioridad()).isEqualTo(ColaClasificacion.PRIORIDAD_ALTA);
+        assertThat(baja.getNuPrioridad()).isEqualTo(ColaClasificacion.PRIORIDAD_BAJA);
+        // Cada nivel de prioridad adelanta el orden un periodo de envejecimiento (30 minutos)
+        assertThat(alta.getDtOrden()).isEqualTo(baja.getDtOrden().minusMinutes(60));
+    }
+
+    @Test
+    void testEncolar_unMensajeQueSigueEnLaColaConservaSuAntiguedad() {
+        LocalDateTime orden = LocalDateTime.now().minusHours(3);
+        ColaClasificacion enProceso = ColaClasificacion.builder()
+                .nuCodigoMensaje(1L).vcEstado(ColaClasificacion.EN_PROCESO).dtOrden(orden).nuIntentos(4).build();
+        when(colaRepositorio.findAllById(anyCollection())).thenReturn(List.of(enProceso));
+
+        assertThat(servicio.encolar(List.of(mensaje(1L, "Aviso")), false)).isEqualTo(1);
+        assertThat(enProceso.getVcEstado()).isEqualTo(ColaClasificacion.PENDIENTE);
+        assertThat(enProceso.getDtOrden()).isEqualTo(orden);
+
+        // Con error cuenta como intento: al llegar al máximo sale de la cola
+        assertThat(servicio.encolar(List.of(mensaje(1L, "Aviso")), true)).isZero();
+        assertThat(enProceso.getVcEstado()).isEqualTo(ColaClasificacion.FALLIDO);
+    }
+
+    @Test
+    void testRecuperarEnProceso_soloLiberaLosDeArriendoVencido() {
+        LocalDateTime antes = LocalDateTime.now();
+
+        servicio.recuperarEnProceso();
+
+        verify(colaRepositorio).liberarEnProcesoVencidos(argThat(vencido ->
+                !vencido.isBefore(antes.minusSeconds(600)) && !vencido.isAfter(LocalDateTime.now().minusSeconds(600))));
+    }
+
+    @Test
+    void testObtenerEstado_calculaRitmoYTiempoEstimado() {
+        when(colaRepositorio.contarPorEstado()).thenReturn(List.<Object[]>of(
+                new Object[]{ColaClasificacion.PENDIENTE, 50L}, new Object[]{ColaClasificacion.COMPLETADO, 30L}));
+        when(colaRepositorio.contarPendientesPorPrioridad()).thenReturn(List.<Object[]>of(
+                new Object[]{ColaClasificacion.PRIORIDAD_ALTA, 5L}, new Object[]{ColaClasificacion.PRIORIDAD_BAJA, 45L}));
+        when(colaRepositorio.contarCompletadosDesde(any())).thenReturn(25L);
+        when(colaRepositorio.findFirstByVcEstadoOrderByDtCreacionAsc(ColaClasificacion.PENDIENTE)).thenReturn(Optional.empty());
+
+        Map<String, Object> estado = servicio.obtenerEstado();
+
+        assertThat(estado)
+                .containsEntry("pendientes", 50L)
+                .containsEntry("ritmoPorMinuto", 2.5)
+                .containsEntry("minutosEstimados", 20.0)
+                .containsEntry("pendientesPorPrioridad", Map.of("ALTA", 5L, "MEDIA", 0L, "BAJA", 45L));
+    }
+
+    private static MensajeSunat mensaje(Long codigo, String asunto) {
+        return MensajeSunat.builder().nuCodigoMensaje(codigo).vcNumeroRuc("20123456789").vcAsunto(asunto).build();
+    }
+}
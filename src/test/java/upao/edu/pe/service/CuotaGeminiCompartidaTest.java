@@ -0,0 +1,88 @@
+package upao.edu.pe.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+import upao.edu.pe.repository.CuotaGeminiRepositorio;
+import upao.edu.pe.repository.NodoGeminiRepositorio;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class CuotaGeminiCompartidaTest {
+
+    // 30 segundos dentro de la ventana 1000
+    private static final Clock RELOJ = Clock.fixed(Instant.ofEpochMilli(1000 * 60_000L + 30_000L), ZoneOffset.UTC);
+
+    private CuotaGeminiRepositorio cuotaRepositorio;
+    private NodoGeminiRepositorio nodoRepositorio;
+    private CuotaGeminiCompartida cuota;
+
+    @BeforeEach
+    void setUp() {
+        cuotaRepositorio = mock(CuotaGeminiRepositorio.class);
+        nodoRepositorio = mock(NodoGeminiRepositorio.class);
+        cuota = new CuotaGeminiCompartida(cuotaRepositorio, nodoRepositorio, RELOJ);
+        ReflectionTestUtils.setField(cuota, "habilitada", true);
+        ReflectionTestUtils.setField(cuota, "maxPeticionesPorMinuto", 100);
+        ReflectionTestUtils.setField(cuota, "maxTokensPorMinuto", 100_000L);
+        ReflectionTestUtils.setField(cuota, "arriendosPorMinuto", 10);
+        ReflectionTestUtils.setField(cuota, "nodo", "nodo-a");
+    }
+
+    @Test
+    void testConsumir_arriendaLaParteDelNodoYConsumeEnMemoria() {
+        when(nodoRepositorio.contarVivosDesde(any())).thenReturn(2L);
+        when(cuotaRepositorio.arrendar(eq(1000L), anyLong(), anyLong(), eq(100L), eq(100_000L))).thenReturn(1);
+
+        for (int i = 0; i < 6; i++) {
+            assertThat(cuota.consumir(100)).isZero();
+        }
+
+        // 100 peticiones / 2 nodos / 10 arriendos = 5 por lote: la sexta pide otro lote
+        verify(cuotaRepositorio, times(2)).arrendar(1000L, 5L, 5_000L, 100L, 100_000L);
+        verify(cuotaRepositorio, times(1)).crearVentana(1000L);
+        verify(nodoRepositorio, times(2)).registrarLatido(eq("nodo-a"), any());
+        assertThat(cuota.obtenerEstado()).containsEntry("nodosVivos", 2L).containsEntry("peticionesArrendadas", 4L);
+    }
+
+    @Test
+    void testConsumir_conLaCuotaDelClusterAgotadaEsperaALaSiguienteVentana() {
+        when(nodoRepositorio.contarVivosDesde(any())).thenReturn(1L);
+        when(cuotaRepositorio.arrendar(anyLong(), anyLong(), anyLong(), anyLong(), anyLong())).thenReturn(0);
+
+        assertThat(cuota.consumir(100)).isEqualTo(TimeUnit.SECONDS.toNanos(30));
+
+        verify(cuotaRepositorio).arrendar(1000L, 10L, 10_000L, 100L, 100_000L);
+        verify(cuotaRepositorio).arrendar(1000L, 1L, 100L, 100L, 100_000L);
+    }
+
+    @Test
+    void testConsumir_sinBaseDeDatosSigueConElLimiteLocal() {
+        when(nodoRepositorio.registrarLatido(anyString(), any())).thenThrow(new DataAccessResourceFailureException("sin conexión"));
+
+        assertThat(cuota.consumir(100)).isZero();
+    }
+
+    @Test
+    void testLimitador_devuelveLaReservaLocalSiNoCabeEnElCluster() {
+        CuotaGeminiCompartida compartida = mock(CuotaGeminiCompartida.class);
+        when(compartida.isHabilitada()).thenReturn(true);
+        when(compartida.consumir(10)).thenReturn(TimeUnit.SECONDS.toNanos(5));
+        LimitadorGemini limitador = new LimitadorGemini(60, 1_000, () -> 0L, compartida);
+
+        assertThat(limitador.tryAcquire(10)).isFalse();
+        assertThat(limitador.peticionesEnUso()).isZero();
+        assertThat(limitador.tokensEnUso()).isZero();
+    }
+}
@@ -0,0 +1,27 @@
+package upao.edu.pe.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CursorMensajesTest {
+
+    @Test
+    void testCodificar_idaYVuelta() {
+        CursorMensajes conFecha = new CursorMensajes(LocalDateTime.of(2025, 6, 3, 10, 15, 30), 123456789L);
+        CursorMensajes sinFecha = new CursorMensajes(null, 42L);
+
+        assertThat(CursorMensajes.decodificar(conFecha.codificar())).isEqualTo(conFecha);
+        assertThat(CursorMensajes.decodificar(sinFecha.codificar())).isEqualTo(sinFecha);
+        assertThat(conFecha.codificar()).doesNotContain("=", "+", "/");
+    }
+
+    @Test
+    void testDecodificar_textoAjenoEsInvalido() {
+        assertThatThrownBy(() -> CursorMensajes.decodificar("%%%")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> CursorMensajes.decodificar("YWJj")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
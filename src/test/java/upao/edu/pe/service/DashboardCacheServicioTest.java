@@ -0,0 +1,58 @@
+package upao.edu.pe.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DashboardCacheServicioTest {
+
+    private static final String RUC = "20000000001";
+    private static final String OTRO_RUC = "20000000002";
+
+    private final DashboardCacheServicio cache = new DashboardCacheServicio(100, 15);
+    private final AtomicInteger calculos = new AtomicInteger();
+
+    @Test
+    void testObtener_distingueRucWidgetYParametros() {
+        cache.obtener(RUC, "tendencias", this::calcular, 30);
+        cache.obtener(RUC, "tendencias", this::calcular, 30);
+        cache.obtener(RUC, "tendencias", this::calcular, 7);
+        cache.obtener(OTRO_RUC, "tendencias", this::calcular, 30);
+        cache.obtener(RUC, "ranking", this::calcular, 30);
+
+        assertThat(calculos).hasValue(4);
+        assertThat(cache.estadisticas()).containsEntry("aciertos", 1L).containsEntry("entradas", 4);
+    }
+
+    @Test
+    void testAlModificarBuzon_descartaSoloElRucYLasEntradasDeTodos() {
+        cache.obtener(RUC, "tendencias", this::calcular, 30);
+        cache.obtener(OTRO_RUC, "tendencias", this::calcular, 30);
+        cache.obtener("", "tendencias", this::calcular, 30);
+
+        cache.alModificarBuzon(new BuzonModificadoEvento(RUC));
+
+        cache.obtener(OTRO_RUC, "tendencias", this::calcular, 30);
+        assertThat(calculos).hasValue(3);
+        cache.obtener(RUC, "tendencias", this::calcular, 30);
+        cache.obtener(null, "tendencias", this::calcular, 30);
+        assertThat(calculos).hasValue(5);
+    }
+
+    @Test
+    void testObtener_noGuardaUnCalculoQueSeCruzoConUnaInvalidacion() {
+        cache.obtener(RUC, "metricas", () -> {
+            cache.alModificarBuzon(BuzonModificadoEvento.todos());
+            return calcular();
+        });
+        cache.obtener(RUC, "metricas", this::calcular);
+
+        assertThat(calculos).hasValue(2);
+    }
+
+    private Integer calcular() {
+        return calculos.incrementAndGet();
+    }
+}
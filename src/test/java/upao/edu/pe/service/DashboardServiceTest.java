@@ -0,0 +1,300 @@
+package upao.edu.pe.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import upao.edu.pe.repository.MensajeSunatRepositorio;
+import upao.edu.pe.repository.MensajeSunatRepositorio.ConteoPorDiaHora;
+import upao.edu.pe.repository.MensajeSunatRepositorio.CorreoCritico;
+import upao.edu.pe.repository.ResumenDiarioMensajesRepositorio;
+import upao.edu.pe.repository.ResumenDiarioMensajesRepositorio.ConteoDiario;
+import upao.edu.pe.repository.ResumenDiarioMensajesRepositorio.ConteoResumen;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DashboardServiceTest {
+
+    private static final String RUC = "20123456789";
+
+    @Mock
+    private MensajeSunatRepositorio mensajeSunatRepositorio;
+
+    @Mock
+    private ResumenDiarioMensajesRepositorio resumenDiarioRepositorio;
+
+    @Mock
+    private MensajeSunatServicio mensajeSunatServicio;
+
+    @Mock
+    private GeminiAIService geminiAIService;
+
+    @Spy
+    private HeatmapActividadPorRuc heatmapActividad = new HeatmapActividadPorRuc(500, 24);
+
+    @Spy
+    private AnalisisPredictivoCache analisisPredictivoCache = new AnalisisPredictivoCache(10, 24);
+
+    @InjectMocks
+    private DashboardService dashboardService;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testObtenerMetricasPrincipales_leeElResumenDiarioSinCargarMensajes() {
+        LocalDate hoy = LocalDate.now();
+        when(resumenDiarioRepositorio.sumarPorClasificacionYEtiqueta(RUC)).thenReturn(List.of(
+                resumen("MUY IMPORTANTE", "14", 5, 2, 1),
+                resumen("IMPORTANTE", "10", 8, 3, 2),
+                resumen("RECURRENTE", "00", 17, 0, 0),
+                resumen("", "00", 10, 2, 0)));
+        when(resumenDiarioRepositorio.contarPorDiaYClasificacion(RUC, hoy.minusDays(13), hoy))
+                .thenReturn(List.of(diario(hoy, "MUY IMPORTANTE", 2), diario(hoy, "", 1)));
+
+        Map<String, Object> metricas = dashboardService.obtenerMetricasPrincipales(RUC, 30);
+
+        Map<String, Object> resumenGeneral = (Map<String, Object>) metricas.get("resumenGeneral");
+        assertThat(resumenGeneral)
+                .containsEntry("totalCorreos", 40)
+                .containsEntry("correosNuevos", 3)
+                .containsEntry("muyImportantes", 5L)
+                .containsEntry("fiscalizaciones", 5L)
+                .containsEntry("noLeidos", 7L)
+                .containsEntry("conArchivos", 3L)
+                .containsEntry("tendenciaSemanal", "subiendo");
+        Map<String, Object> estadoSistema = (Map<String, Object>) metricas.get("estadoSistema");
+        assertThat(estadoSistema).containsEntry("rendimientoClasificacion", 75.0);
+        verify(mensajeSunatServicio, never()).obtenerTodosMensajes(anyString());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testObtenerTendencias_cuentaPorDiaYClasificacion() {
+        LocalDate hoy = LocalDate.now();
+        LocalDate ayer = hoy.minusDays(1);
+        when(resumenDiarioRepositorio.contarPorDiaYClasificacion(RUC, hoy.minusDays(7), ayer))
+                .thenReturn(List.of(diario(ayer, "IMPORTANTE", 5), diario(ayer, "", 9)));
+
+        Map<String, Object> tendencias = dashboardService.obtenerTendencias(RUC, 7);
+
+        Map<String, Map<String, Long>> datos = (Map<String, Map<String, Long>>) tendencias.get("datos");
+        assertThat(datos).hasSize(7);
+        assertThat(datos.get(ayer.toString()))
+                .containsEntry("IMPORTANTE", 5L)
+                .containsEntry("MUY IMPORTANTE", 0L)
+                .doesNotContainKey("SIN CLASIFICAR");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testObtenerDistribucionClasificacion_rucVacioAgregaTodoYAgrupaSinClasificar() {
+        when(resumenDiarioRepositorio.sumarPorClasificacionYEtiqueta(isNull()))
+                .thenReturn(List.of(resumen("IMPORTANTE", "13", 3, 0, 0), resumen("", "00", 1, 0, 0)));
+
+        Map<String, Object> distribucion = dashboardService.obtenerDistribucionClasificacion(" ", 30);
+
+        List<Map<String, Object>> datos = (List<Map<String, Object>>) distribucion.get("datos");
+        assertThat(datos).extracting(item -> item.get("nombre")).containsExactly("IMPORTANTE", "SIN CLASIFICAR");
+        assertThat(datos.get(0)).containsEntry("porcentaje", 75L);
+        assertThat(distribucion).containsEntry("totalMensajes", 4);
+    }
+
+    @Test
+    void testObtenerAlertasCriticas_calculaPorcentajeEtiquetadoConTotales() {
+        when(resumenDiarioRepositorio.sumarPorClasificacionYEtiqueta(RUC))
+                .thenReturn(List.of(resumen("RECURRENTE", "00", 60, 0, 0), resumen("MUY IMPORTANTE", "11", 40, 0, 0)));
+
+        List<Map<String, Object>> alertas = dashboardService.obtenerAlertasCriticas(RUC);
+
+        assertThat(alertas).extracting(alerta -> alerta.get("id"))
+                .containsExactly("COBRANZAS_ACTIVAS", "CORREOS_SIN_REVISAR", "BAJA_CLASIFICACION");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testObtenerComparativoPeriodos_comparaDiasRealesDelResumen() {
+        LocalDate hoy = LocalDate.now();
+        when(resumenDiarioRepositorio.sumarPorClasificacionYEtiquetaEntre(RUC, hoy.minusDays(6), hoy))
+                .thenReturn(List.of(resumen("MUY IMPORTANTE", "14", 4, 0, 0)));
+        when(resumenDiarioRepositorio.sumarPorClasificacionYEtiquetaEntre(RUC, hoy.minusDays(13), hoy.minusDays(7)))
+                .thenReturn(List.of(resumen("MUY IMPORTANTE", "14", 2, 0, 0), resumen("INFORMATIVO", "10", 6, 0, 0)));
+
+        Map<String, Object> comparativo = dashboardService.obtenerComparativoPeriodos(RUC, 7, 7);
+
+        assertThat((Map<String, Object>) comparativo.get("periodoActual"))
+                .containsEntry("totalCorreos", 4)
+                .containsEntry("fiscalizaciones", 4L);
+        assertThat((Map<String, Object>) comparativo.get("periodoAnterior"))
+                .containsEntry("totalCorreos", 8)
+                .containsEntry("muyImportantes", 2L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testObtenerSnapshot_comparteLasConsultasDelResumenEntreWidgets() {
+        LocalDate hoy = LocalDate.now();
+        when(resumenDiarioRepositorio.sumarPorClasificacionYEtiqueta(RUC)).thenReturn(List.of(
+                resumen("MUY IMPORTANTE", "11", 5, 2, 1),
+                resumen("", "00", 5, 5, 0)));
+        when(resumenDiarioRepositorio.contarPorDiaYClasificacion(eq(RUC), any(), any()))
+                .thenReturn(List.of(diario(hoy, "MUY IMPORTANTE", 2)));
+        when(resumenDiarioRepositorio.sumarPorClasificacionYEtiquetaEntre(eq(RUC), any(), any()))
+                .thenReturn(List.of(resumen("MUY IMPORTANTE", "11", 2, 2, 1)));
+
+        Map<String, Object> snapshot = dashboardService.obtenerSnapshot(RUC, 30, 7, 5);
+
+        assertThat(snapshot).containsKeys("generadoEn", "metricasPrincipales", "tendencias", "distribucionEtiquetas",
+                "distribucionClasificacion", "alertasActivas", "alertasCriticas", "rankingNotificaciones",
+                "comparativoPeriodos", "correosCriticos");
+        Map<String, Object> resumenGeneral = (Map<String, Object>)
+                ((Map<String, Object>) snapshot.get("metricasPrincipales")).get("resumenGeneral");
+        assertThat(resumenGeneral)
+                .containsEntry("totalCorreos", 10)
+                .containsEntry("correosNuevos", 2)
+                .containsEntry("muyImportantes", 5L)
+                .containsEntry("cobranzas", 5L)
+                .containsEntry("noLeidos", 7L)
+                .containsEntry("conArchivos", 1L);
+        List<Map<String, Object>> ranking = (List<Map<String, Object>>) snapshot.get("rankingNotificaciones");
+        assertThat(ranking).extracting(item -> item.get("porcentaje")).containsExactlyInAnyOrder(50L, 50L);
+        // Totales una vez, días del rango más amplio una vez, y los dos períodos del comparativo
+        verify(resumenDiarioRepositorio, times(1)).sumarPorClasificacionYEtiqueta(any());
+        verify(resumenDiarioRepositorio, atMost(2)).contarPorDiaYClasificacion(any(), any(), any());
+        verify(resumenDiarioRepositorio, times(2)).sumarPorClasificacionYEtiquetaEntre(any(), any(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testObtenerHeatmapActividad_ubicaConteosPorDiaYHoraYConsultaUnaVezPorSemana() {
+        when(mensajeSunatRepositorio.contarPublicacionesPorDiaYHora(eq(RUC), any()))
+                .thenReturn(List.of(diaHora(1, 9, 3), diaHora(7, 23, 1)));
+
+        dashboardService.obtenerHeatmapActividad(RUC, 100);
+        Map<String, Object> heatmap = dashboardService.obtenerHeatmapActividad(RUC, 100);
+
+        List<List<Integer>> datos = (List<List<Integer>>) heatmap.get("datos");
+        assertThat(datos).hasSize(7).allSatisfy(horas -> assertThat(horas).hasSize(24));
+        assertThat(datos.get(0).get(9)).isEqualTo(3);
+        assertThat(datos.get(6).get(23)).isEqualTo(1);
+        assertThat(datos.get(2).get(12)).isZero();
+        assertThat(heatmap).containsEntry("periodo", "52 semanas");
+        verify(mensajeSunatRepositorio, times(1)).contarPublicacionesPorDiaYHora(eq(RUC), any());
+    }
+
+    @Test
+    void testObtenerCorreosCriticos_pideLosKPrimerosALaConsultaSinCargarElBuzon() {
+        when(mensajeSunatRepositorio.encontrarCorreosCriticos(isNull(), any(), eq(2)))
+                .thenReturn(List.of(critico(7L, "10", 0, 2), critico(3L, "14", 1, 0)));
+
+        List<Map<String, Object>> correos = dashboardService.obtenerCorreosCriticos(" ", 7, 2);
+
+        assertThat(correos).extracting(correo -> correo.get("codigoMensaje")).containsExactly(7L, 3L);
+        assertThat(correos.get(0))
+                .containsEntry("prioridad", "MUY_IMPORTANTE")
+                .containsEntry("leido", false)
+                .containsEntry("tieneArchivos", true)
+                .containsEntry("cantidadArchivos", 2);
+        assertThat(correos.get(1)).containsEntry("leido", true).containsEntry("tieneArchivos", false);
+        verify(mensajeSunatServicio, never()).obtenerTodosMensajes(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testObtenerAnalisisPredictivo_unaLlamadaYReutilizaMientrasNoCambienLosDatos() throws Exception {
+        when(resumenDiarioRepositorio.sumarPorClasificacionYEtiqueta(RUC))
+                .thenReturn(List.of(resumen("MUY IMPORTANTE", "14", 2, 1, 0)))
+                .thenReturn(List.of(resumen("MUY IMPORTANTE", "14", 2, 1, 0)))
+                .thenReturn(List.of(resumen("MUY IMPORTANTE", "14", 3, 1, 0)));
+        when(mensajeSunatRepositorio.encontrarAsuntosRecientesPorClasificacion(RUC, "MUY IMPORTANTE", 5))
+                .thenReturn(List.of("Inicio de fiscalización"));
+        when(geminiAIService.callGeminiAPIJson(anyString())).thenReturn(sobre("""
+                {"patrones": {"tendenciaGeneral": "Fiscalización activa"},
+                 "predicciones": {"proximaSemana": "2 notificaciones"},
+                 "recomendaciones": ["Preparar documentación"],
+                 "scoreCompliance": 70, "nivelRiesgo": "ALTO"}
+                """));
+
+        Map<String, Object> analisis = dashboardService.obtenerAnalisisPredictivo(RUC);
+        dashboardService.obtenerAnalisisPredictivo(RUC);
+
+        assertThat((Map<String, Object>) analisis.get("patrones")).containsEntry("tendenciaGeneral", "Fiscalización activa");
+        assertThat((List<String>) analisis.get("recomendaciones")).containsExactly("Preparar documentación");
+        assertThat(analisis).containsEntry("scoreCompliance", 70).containsEntry("nivelRiesgo", "ALTO");
+        verify(geminiAIService, times(1)).callGeminiAPIJson(anyString());
+        verify(geminiAIService, never()).callGeminiAPI(anyString());
+
+        dashboardService.obtenerAnalisisPredictivo(RUC);
+
+        verify(geminiAIService, times(2)).callGeminiAPIJson(anyString());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testObtenerAnalisisPredictivo_devuelveLasSeccionesQueLlegaron() throws Exception {
+        when(resumenDiarioRepositorio.sumarPorClasificacionYEtiqueta(RUC)).thenReturn(List.of(resumen("IMPORTANTE", "10", 4, 0, 0)));
+        when(geminiAIService.callGeminiAPIJson(anyString())).thenReturn(sobre("""
+                {"patrones": {"nivelRiesgoActual": "MEDIO"}, "predicciones": "sin datos"}
+                """));
+
+        Map<String, Object> analisis = dashboardService.obtenerAnalisisPredictivo(RUC);
+
+        assertThat(analisis).containsOnlyKeys("patrones");
+        assertThat((Map<String, Object>) analisis.get("patrones")).containsEntry("nivelRiesgoActual", "MEDIO");
+    }
+
+    private static ConteoResumen resumen(String clasificacion, String etiqueta, long cantidad, long noLeidos, long conArchivos) {
+        return new ConteoResumen() {
+            public String getClasificacion() { return clasificacion; }
+            public String getEtiqueta() { return etiqueta; }
+            public long getCantidad() { return cantidad; }
+            public long getNoLeidos() { return noLeidos; }
+            public long getUrgentes() { return 0; }
+            public long getConArchivos() { return conArchivos; }
+        };
+    }
+
+    private static ConteoDiario diario(LocalDate dia, String clasificacion, long cantidad) {
+        return new ConteoDiario() {
+            public LocalDate getDia() { return dia; }
+            public String getClasificacion() { return clasificacion; }
+            public long getCantidad() { return cantidad; }
+        };
+    }
+
+    private static CorreoCritico critico(Long codigo, String etiqueta, int leido, int archivos) {
+        return new CorreoCritico() {
+            public Long getCodigo() { return codigo; }
+            public String getAsunto() { return "Asunto " + codigo; }
+            public String getFecha() { return "03/06/2025 10:15:00"; }
+            public Integer getTipo() { return 1; }
+            public Integer getLeido() { return leido; }
+            public Integer getArchivos() { return archivos; }
+            public String getEtiqueta() { return etiqueta; }
+        };
+    }
+
+    private static ConteoPorDiaHora diaHora(int dia, int hora, long cantidad) {
+        return new ConteoPorDiaHora() {
+            public int getDia() { return dia; }
+            public int getHora() { return hora; }
+            public long getCantidad() { return cantidad; }
+        };
+    }
+
+    private static String sobre(String texto) throws Exception {
+        return new ObjectMapper().writeValueAsString(
+                Map.of("candidates", List.of(Map.of("content", Map.of("parts", List.of(Map.of("text", texto)))))));
+    }
+}
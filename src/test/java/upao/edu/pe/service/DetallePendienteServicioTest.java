@@ -0,0 +1,162 @@
+package upao.edu.pe.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.domain.Pageable;
+import reactor.core.publisher.Mono;
+import upao.edu.pe.dto.response.SunatApiResponse;
+import upao.edu.pe.model.DetallePendiente;
+import upao.edu.pe.repository.DetallePendienteRepositorio;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DetallePendienteServicioTest {
+
+    @Mock
+    private DetallePendienteRepositorio detallePendienteRepositorio;
+    @Mock
+    private SunatNotificacionService sunatNotificacionService;
+    @Spy
+    private SyncTaskExecutor ejecutorSincronizacion = new SyncTaskExecutor();
+
+    @InjectMocks
+    private DetallePendienteServicio detallePendienteServicio;
+
+    @Test
+    void testEncolar_omiteCodigosYaEncolados() {
+        when(detallePendienteRepositorio.encontrarCodigosEncolados(List.of(1L, 2L))).thenReturn(Set.of(2L));
+
+        int encolados = detallePendienteServicio.encolar("20000000001", "cookie", List.of(1L, 2L));
+
+        assertThat(encolados).isEqualTo(1);
+        verify(detallePendienteRepositorio).saveAll(argThat(lista ->
+                ((List<DetallePendiente>) lista).size() == 1
+                        && ((List<DetallePendiente>) lista).get(0).getNuCodigoMensaje() == 1L));
+    }
+
+    @Test
+    void testDescargar_exitoGuardaYMarcaCompletado() {
+        DetallePendiente pendiente = DetallePendiente.builder().nuCodigoMensaje(10L).vcEstado(DetallePendiente.EN_PROCESO).build();
+        SunatApiResponse respuesta = new SunatApiResponse();
+        when(sunatNotificacionService.existeDetalle("10")).thenReturn(false);
+        when(sunatNotificacionService.consumirApiSunatReactivo("10", "cookie")).thenReturn(Mono.just(respuesta));
+        detallePendienteServicio.iniciar();
+
+        detallePendienteServicio.descargar(pendiente, "cookie").block();
+
+        verify(sunatNotificacionService).guardarNotificacion("10", respuesta);
+        assertThat(pendiente.getVcEstado()).isEqualTo(DetallePendiente.COMPLETADO);
+        verify(detallePendienteRepositorio).save(pendiente);
+        detallePendienteServicio.detener();
+    }
+
+    @Test
+    void testDescargar_detalleExistenteNoConsultaSunat() {
+        DetallePendiente pendiente = DetallePendiente.builder().nuCodigoMensaje(10L).vcEstado(DetallePendiente.EN_PROCESO).build();
+        when(sunatNotificacionService.existeDetalle("10")).thenReturn(true);
+        detallePendienteServicio.iniciar();
+
+        detallePendienteServicio.descargar(pendiente, "cookie").block();
+
+        verify(sunatNotificacionService, never()).consumirApiSunatReactivo(anyString(), anyString());
+        assertThat(pendiente.getVcEstado()).isEqualTo(DetallePendiente.COMPLETADO);
+        detallePendienteServicio.detener();
+    }
+
+    @Test
+    void testDescargar_errorReprogramaConBackoff() {
+        DetallePendiente pendiente = DetallePendiente.builder().nuCodigoMensaje(10L).nuIntentos(1).build();
+        when(sunatNotificacionService.existeDetalle("10")).thenReturn(false);
+        when(sunatNotificacionService.consumirApiSunatReactivo("10", "cookie"))
+                .thenReturn(Mono.error(new RuntimeException("timeout")));
+        detallePendienteServicio.iniciar();
+
+        detallePendienteServicio.descargar(pendiente, "cookie").block();
+
+        assertThat(pendiente.getVcEstado()).isEqualTo(DetallePendiente.PENDIENTE);
+        assertThat(pendiente.getNuIntentos()).isEqualTo(2);
+        assertThat(pendiente.getDtProximoIntento()).isAfter(LocalDateTime.now().plusSeconds(3));
+        assertThat(pendiente.getVcUltimoError()).isEqualTo("timeout");
+        detallePendienteServicio.detener();
+    }
+
+    @Test
+    void testRegistrarFallo_agotaIntentosMarcaFallido() {
+        DetallePendiente pendiente = DetallePendiente.builder().nuCodigoMensaje(10L).nuIntentos(4).build();
+
+        detallePendienteServicio.registrarFallo(pendiente, new RuntimeException("error"));
+
+        assertThat(pendiente.getVcEstado()).isEqualTo(DetallePendiente.FALLIDO);
+    }
+
+    @Test
+    void testRecuperarEnProceso_soloLiberaLosDeArriendoVencido() {
+        LocalDateTime antes = LocalDateTime.now();
+
+        detallePendienteServicio.recuperarEnProceso();
+
+        verify(detallePendienteRepositorio).liberarEnProcesoVencidos(argThat(vencido ->
+                !vencido.isBefore(antes.minusSeconds(600)) && !vencido.isAfter(LocalDateTime.now().minusSeconds(600))));
+    }
+
+    @Test
+    void testReclamarSiguiente_saltaLosQueOtroNodoYaReclamo() {
+        DetallePendiente tomado = DetallePendiente.builder().nuCodigoMensaje(10L).build();
+        DetallePendiente libre = DetallePendiente.builder().nuCodigoMensaje(11L).build();
+        when(detallePendienteRepositorio.encontrarListosParaProcesar(eq("20000000001"), any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(tomado, libre));
+        when(detallePendienteRepositorio.reclamar(eq(10L), any(LocalDateTime.class))).thenReturn(0);
+        when(detallePendienteRepositorio.reclamar(eq(11L), any(LocalDateTime.class))).thenReturn(1);
+
+        DetallePendiente reclamado = detallePendienteServicio.reclamarSiguiente("20000000001");
+
+        assertThat(reclamado).isSameAs(libre);
+        assertThat(reclamado.getVcEstado()).isEqualTo(DetallePendiente.EN_PROCESO);
+        assertThat(tomado.getVcEstado()).isEqualTo(DetallePendiente.PENDIENTE);
+        verify(detallePendienteRepositorio, never()).save(any());
+    }
+
+    @Test
+    void testReclamarSiguiente_sinCandidatosLibresDevuelveNulo() {
+        when(detallePendienteRepositorio.encontrarListosParaProcesar(eq("20000000001"), any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(DetallePendiente.builder().nuCodigoMensaje(10L).build()));
+        when(detallePendienteRepositorio.reclamar(eq(10L), any(LocalDateTime.class))).thenReturn(0);
+
+        assertThat(detallePendienteServicio.reclamarSiguiente("20000000001")).isNull();
+    }
+
+    @Test
+    void testCalcularEspera_creceExponencialmenteConTope() {
+        assertThat(detallePendienteServicio.calcularEspera(1)).isEqualTo(2000);
+        assertThat(detallePendienteServicio.calcularEspera(3)).isEqualTo(8000);
+        assertThat(detallePendienteServicio.calcularEspera(30)).isEqualTo(300000);
+    }
+
+    @Test
+    void testObtenerProgreso_calculaPorcentaje() {
+        when(detallePendienteRepositorio.contarPorEstado("20000000001")).thenReturn(List.of(
+                new Object[]{DetallePendiente.PENDIENTE, 1L},
+                new Object[]{DetallePendiente.COMPLETADO, 3L}));
+
+        Map<String, Object> progreso = detallePendienteServicio.obtenerProgreso("20000000001");
+
+        assertThat(progreso.get("total")).isEqualTo(4L);
+        assertThat(progreso.get("porcentaje")).isEqualTo(75.0);
+        assertThat(progreso.get("cookieDisponible")).isEqualTo(false);
+    }
+}
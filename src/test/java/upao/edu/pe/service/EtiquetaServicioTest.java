@@ -5,6 +5,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import upao.edu.pe.model.Etiqueta;
 import upao.edu.pe.repository.EtiquetaRepositorio;
 import upao.edu.pe.repository.MensajeSunatRepositorio;
@@ -23,6 +24,10 @@ class EtiquetaServicioTest {
     private EtiquetaRepositorio etiquetaRepositorio;
     @Mock
     private MensajeSunatRepositorio mensajeSunatRepositorio;
+    @Mock
+    private ResumenDiarioServicio resumenDiarioServicio;
+    @Mock
+    private ApplicationEventPublisher eventos;
 
     @InjectMocks
     private EtiquetaServicio servicio;
@@ -60,6 +65,8 @@ class EtiquetaServicioTest {
         when(mensajeSunatRepositorio.actualizarMensajesANoEtiquetados("3")).thenReturn(5);
         int actualizados = servicio.eliminarEtiqueta(3L);
         assertThat(actualizados).isEqualTo(5);
+        verify(resumenDiarioServicio).reasignarEtiqueta("3", "00");
+        verify(eventos).publishEvent(BuzonModificadoEvento.todos());
         verify(etiquetaRepositorio).delete(etiqueta);
     }
 
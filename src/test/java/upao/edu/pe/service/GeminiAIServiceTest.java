@@ -0,0 +1,213 @@
+package upao.edu.pe.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import upao.edu.pe.model.MensajeSunat;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class GeminiAIServiceTest {
+
+    private GeminiAIService geminiAIService;
+    private ClasificacionCacheServicio clasificacionCache;
+    private ColaClasificacionServicio colaClasificacion;
+
+    @BeforeEach
+    void setUp() {
+        clasificacionCache = mock(ClasificacionCacheServicio.class);
+        colaClasificacion = mock(ColaClasificacionServicio.class);
+        GeminiCliente geminiCliente = mock(GeminiCliente.class);
+        when(geminiCliente.getMaxEnVuelo()).thenReturn(4);
+        geminiAIService = spy(new GeminiAIService(clasificacionCache, new MotorReglasClasificacion(),
+                new LimitadorGemini(100, 1_000_000), colaClasificacion, geminiCliente));
+        ReflectionTestUtils.setField(geminiAIService, "geminiEnabled", true);
+        ReflectionTestUtils.setField(geminiAIService, "circuitBreakerFailureThreshold", 5);
+        ReflectionTestUtils.setField(geminiAIService, "circuitBreakerResetTimeoutSeconds", 60);
+    }
+
+    @Test
+    void testArmarLotes_respetaMaximoDeMensajes() {
+        ReflectionTestUtils.setField(geminiAIService, "batchMaxMensajes", 10);
+        List<MensajeSunat> mensajes = LongStream.rangeClosed(1, 25).mapToObj(this::mensaje).toList();
+
+        List<List<MensajeSunat>> lotes = geminiAIService.armarLotes(mensajes);
+
+        assertThat(lotes).extracting(List::size).containsExactly(10, 10, 5);
+    }
+
+    @Test
+    void testArmarLotes_respetaPresupuestoDeTokens() {
+        ReflectionTestUtils.setField(geminiAIService, "batchMaxTokensEntrada", 0);
+        List<MensajeSunat> mensajes = LongStream.rangeClosed(1, 3).mapToObj(this::mensaje).toList();
+
+        // Aunque el presupuesto no alcance, cada lote lleva al menos un mensaje
+        assertThat(geminiAIService.armarLotes(mensajes)).hasSize(3);
+    }
+
+    @Test
+    void testAnalyzeEmailsBatch_unaPeticionYFallbackSoloParaFaltantes() throws Exception {
+        String respuestaLote = respuestaGemini("[{\"id\": 1, \"clasificacion\": \"MUY IMPORTANTE\", "
+                + "\"etiqueta_codigo\": \"11\", \"etiqueta_nombre\": \"RESOLUCIONES DE COBRANZAS\", \"razon\": \"Cobranza\"},"
+                + "{\"id\": 2, \"clasificacion\": \"INFORMATIVO\"}]");
+        String respuestaIndividual = respuestaGemini("{\"clasificacion\": \"RECURRENTE\", \"etiqueta_codigo\": \"16\", "
+                + "\"etiqueta_nombre\": \"AVISOS\", \"razon\": \"Aviso\"}");
+        doReturn(Mono.just(respuestaLote)).when(geminiAIService).consultarGemini(argThat(p -> p.contains("(LOTE)")));
+        doReturn(Mono.just(respuestaIndividual)).when(geminiAIService).consultarGemini(argThat(p -> !p.contains("(LOTE)")));
+
+        Map<Long, GeminiAIService.EmailAnalysisResult> resultados =
+                geminiAIService.analyzeEmailsBatch(List.of(mensaje(1), mensaje(2)));
+
+        assertThat(resultados.get(1L).getEtiquetaCodigo()).isEqualTo("11");
+        assertThat(resultados.get(2L).getEtiquetaCodigo()).isEqualTo("16");
+        verify(geminiAIService, times(2)).consultarGemini(anyString());
+    }
+
+    @Test
+    void testAnalyzeEmail_aciertoEnCacheNoLlamaAGemini() throws Exception {
+        GeminiAIService.EmailAnalysisResult enCache = GeminiAIService.EmailAnalysisResult.builder()
+                .clasificacion("INFORMATIVO").etiquetaCodigo("10").etiquetaNombre("VALORES").razon("cache").build();
+        when(clasificacionCache.buscar(eq("Asunto b"), anyString())).thenReturn(enCache);
+
+        GeminiAIService.EmailAnalysisResult resultado = geminiAIService.analyzeEmail(mensaje(1));
+
+        assertThat(resultado.getEtiquetaCodigo()).isEqualTo("10");
+        verify(geminiAIService, never()).consultarGemini(anyString());
+    }
+
+    @Test
+    void testAnalyzeEmailsBatch_asuntosEquivalentesSeEnvianUnaVez() throws Exception {
+        MensajeSunat primero = mensaje(1);
+        primero.setVcAsunto("Trámite 0621 en línea");
+        MensajeSunat segundo = mensaje(2);
+        segundo.setVcAsunto("Trámite 0601 en línea");
+        doReturn(Mono.just(respuestaGemini("[{\"id\": 1, \"clasificacion\": \"INFORMATIVO\", \"etiqueta_codigo\": \"10\"}]")))
+                .when(geminiAIService).consultarGemini(argThat(p -> p.contains("- 1:") && !p.contains("- 2:")));
+
+        Map<Long, GeminiAIService.EmailAnalysisResult> resultados =
+                geminiAIService.analyzeEmailsBatch(List.of(primero, segundo));
+
+        assertThat(resultados.get(2L).getEtiquetaCodigo()).isEqualTo("10");
+        verify(geminiAIService, times(1)).consultarGemini(anyString());
+        verify(clasificacionCache).guardar(eq("Trámite 0621 en línea"), anyString(), any());
+    }
+
+    @Test
+    void testAnalyzeEmail_reglasConcluyentesNoConsultanCacheNiGemini() throws Exception {
+        MensajeSunat mensaje = mensaje(1);
+        mensaje.setVcAsunto("Resolución Coactiva - Levantamiento de Embargo");
+
+        GeminiAIService.EmailAnalysisResult resultado = geminiAIService.analyzeEmail(mensaje);
+
+        assertThat(resultado.getClasificacion()).isEqualTo("MUY IMPORTANTE");
+        assertThat(resultado.getEtiquetaCodigo()).isEqualTo("11");
+        verifyNoInteractions(clasificacionCache);
+        verify(geminiAIService, never()).consultarGemini(anyString());
+    }
+
+    @Test
+    void testAnalyzeEmail_sinCuotaEncolaElCorreoEnLugarDeDescartarlo() throws Exception {
+        LimitadorGemini agotado = new LimitadorGemini(1, 1_000_000);
+        agotado.tryAcquire(1);
+        ReflectionTestUtils.setField(geminiAIService, "limitador", agotado);
+        MensajeSunat mensaje = mensaje(1);
+
+        GeminiAIService.EmailAnalysisResult resultado = geminiAIService.analyzeEmail(mensaje);
+
+        assertThat(resultado.getEtiquetaCodigo()).isEqualTo("00");
+        verify(colaClasificacion).encolar(List.of(mensaje), false);
+        verify(geminiAIService, never()).consultarGemini(anyString());
+    }
+
+    @Test
+    void testAnalyzeEmailsBatch_cuotaAgotadaEncolaTambienLosRepetidos() {
+        MensajeSunat primero = mensaje(1);
+        primero.setVcAsunto("Trámite 0621 en línea");
+        MensajeSunat segundo = mensaje(2);
+        segundo.setVcAsunto("Trámite 0601 en línea");
+        doReturn(Mono.error(WebClientResponseException.create(429, "Too Many Requests", null, null, null)))
+                .when(geminiAIService).consultarGemini(anyString());
+
+        Map<Long, GeminiAIService.EmailAnalysisResult> resultados =
+                geminiAIService.analyzeEmailsBatch(List.of(primero, segundo));
+
+        assertThat(resultados.get(2L).getEtiquetaCodigo()).isEqualTo("00");
+        verify(geminiAIService, times(1)).consultarGemini(anyString());
+        verify(colaClasificacion).encolar(List.of(primero, segundo), false);
+    }
+
+    @Test
+    void testAnalyzeEmailsBatch_reservaElCupoFueraDelHiloQueCompletaLaPeticion() {
+        List<String> hilosReserva = new CopyOnWriteArrayList<>();
+        ReflectionTestUtils.setField(geminiAIService, "limitador", new LimitadorGemini(100, 1_000_000) {
+            @Override
+            public boolean tryAcquire(int tokens) {
+                hilosReserva.add(Thread.currentThread().getName());
+                return super.tryAcquire(tokens);
+            }
+        });
+        ReflectionTestUtils.setField(geminiAIService, "batchMaxMensajes", 1);
+        doReturn(Mono.just(respuestaGemini("[{\"id\": 1, \"clasificacion\": \"INFORMATIVO\", \"etiqueta_codigo\": \"10\"},"
+                + "{\"id\": 2, \"clasificacion\": \"INFORMATIVO\", \"etiqueta_codigo\": \"10\"}]")))
+                .when(geminiAIService).consultarGemini(anyString());
+
+        geminiAIService.analyzeEmailsBatch(List.of(mensaje(1), mensaje(2)));
+
+        assertThat(hilosReserva).hasSize(2).allMatch(hilo -> hilo.startsWith("boundedElastic"));
+    }
+
+    @Test
+    void testAnalyzeEmailsBatch_loteConErrorSeEncolaComoIntento() throws Exception {
+        doReturn(Mono.error(new IllegalStateException("respuesta inválida"))).when(geminiAIService).consultarGemini(anyString());
+        List<MensajeSunat> mensajes = List.of(mensaje(1), mensaje(2));
+
+        Map<Long, GeminiAIService.EmailAnalysisResult> resultados = geminiAIService.analyzeEmailsBatch(mensajes);
+
+        assertThat(resultados).containsOnlyKeys(1L, 2L);
+        assertThat(resultados.get(1L).getEtiquetaCodigo()).isEqualTo("00");
+        verify(colaClasificacion).encolar(mensajes, true);
+    }
+
+    @Test
+    void testObtenerVersionPrompt_incluyeVersionConfigurada() {
+        ReflectionTestUtils.setField(geminiAIService, "promptVersion", "7");
+
+        assertThat(geminiAIService.obtenerVersionPrompt()).startsWith("7-");
+    }
+
+    @Test
+    void testParseGeminiBatchResponse_ignoraEntradasInvalidas() {
+        String respuesta = respuestaGemini("Aquí está: [{\"id\": \"7\", \"clasificacion\": \"IMPORTANTE\", "
+                + "\"etiqueta_codigo\": \"13\"}, {\"id\": \"x\", \"clasificacion\": \"IMPORTANTE\", \"etiqueta_codigo\": \"13\"}]");
+
+        Map<Long, GeminiAIService.EmailAnalysisResult> resultados = geminiAIService.parseGeminiBatchResponse(respuesta);
+
+        assertThat(resultados).containsOnlyKeys(7L);
+        assertThat(resultados.get(7L).getClasificacion()).isEqualTo("IMPORTANTE");
+    }
+
+    private MensajeSunat mensaje(long codigo) {
+        MensajeSunat mensaje = new MensajeSunat();
+        mensaje.setNuCodigoMensaje(codigo);
+        // Asuntos distintos incluso tras enmascarar los dígitos
+        mensaje.setVcAsunto("Asunto " + (char) ('a' + codigo % 26));
+        return mensaje;
+    }
+
+    private String respuestaGemini(String texto) {
+        String escapado = texto.replace("\\", "\\\\").replace("\"", "\\\"");
+        return "{\"candidates\": [{\"content\": {\"parts\": [{\"text\": \"" + escapado + "\"}]}}]}";
+    }
+}
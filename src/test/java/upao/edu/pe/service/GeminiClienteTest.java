@@ -0,0 +1,151 @@
+package upao.edu.pe.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.netty.resources.ConnectionProvider;
+import upao.edu.pe.config.GeminiWebClientConfig;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GeminiClienteTest {
+
+    @Test
+    void testCalcularEspera_jitterDentroDelBackoffExponencialAcotado() {
+        GeminiCliente cliente = cliente(WebClient.create());
+        ReflectionTestUtils.setField(cliente, "backoffBaseMs", 1000L);
+        ReflectionTestUtils.setField(cliente, "backoffMaxMs", 5000L);
+        TimeoutException plazo = new TimeoutException();
+
+        assertThat(cliente.calcularEspera(1, plazo, 0.5)).isEqualTo(Duration.ofMillis(500));
+        assertThat(cliente.calcularEspera(3, plazo, 0.5)).isEqualTo(Duration.ofMillis(2000));
+        assertThat(cliente.calcularEspera(10, plazo, 0.999)).isLessThan(Duration.ofMillis(5000));
+        assertThat(cliente.calcularEspera(2, plazo, 0.0)).isEqualTo(Duration.ZERO);
+    }
+
+    @Test
+    void testCalcularEspera_respetaRetryAfterYRetryDelay() {
+        GeminiCliente cliente = cliente(WebClient.create());
+        HttpHeaders cabeceras = new HttpHeaders();
+        cabeceras.set(HttpHeaders.RETRY_AFTER, "7");
+        WebClientResponseException conCabecera = error(429, cabeceras, "");
+        WebClientResponseException conCuerpo = error(429, new HttpHeaders(),
+                "{\"error\": {\"details\": [{\"retryDelay\": \"12s\"}]}}");
+
+        assertThat(cliente.calcularEspera(1, conCabecera, 0.5)).isEqualTo(Duration.ofSeconds(7));
+        assertThat(cliente.calcularEspera(1, conCuerpo, 0.5)).isEqualTo(Duration.ofSeconds(12));
+    }
+
+    @Test
+    void testEsReintentable_soloCuotaErroresDelServidorYPlazos() {
+        assertThat(GeminiCliente.esReintentable(error(429, new HttpHeaders(), ""))).isTrue();
+        assertThat(GeminiCliente.esReintentable(error(503, new HttpHeaders(), ""))).isTrue();
+        assertThat(GeminiCliente.esReintentable(new TimeoutException())).isTrue();
+        assertThat(GeminiCliente.esReintentable(error(400, new HttpHeaders(), ""))).isFalse();
+        assertThat(GeminiCliente.esReintentable(new IllegalStateException())).isFalse();
+    }
+
+    @Test
+    void testGenerar_reintentaEl429HastaObtenerRespuesta() {
+        Deque<HttpStatus> estados = new ArrayDeque<>(List.of(HttpStatus.TOO_MANY_REQUESTS, HttpStatus.OK));
+        AtomicInteger peticiones = new AtomicInteger();
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(peticion -> {
+                    peticiones.incrementAndGet();
+                    return Mono.just(ClientResponse.create(estados.poll())
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .header(HttpHeaders.RETRY_AFTER, "0")
+                            .body("{\"candidates\": []}")
+                            .build());
+                })
+                .build();
+        GeminiCliente cliente = cliente(webClient);
+        ReflectionTestUtils.setField(cliente, "backoffBaseMs", 1L);
+
+        assertThat(cliente.generar("prompt", null).block()).contains("candidates");
+        assertThat(peticiones).hasValue(2);
+    }
+
+    @Test
+    void testGenerar_noReintentaErroresDelCliente() {
+        AtomicInteger peticiones = new AtomicInteger();
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(peticion -> {
+                    peticiones.incrementAndGet();
+                    return Mono.just(ClientResponse.create(HttpStatus.BAD_REQUEST).body("{}").build());
+                })
+                .build();
+        GeminiCliente cliente = cliente(webClient);
+
+        assertThatThrownBy(() -> cliente.generar("prompt", null).block())
+                .isInstanceOf(WebClientResponseException.BadRequest.class);
+        assertThat(peticiones).hasValue(1);
+    }
+
+    @Test
+    void testGenerarEnFlujo_emiteCadaEventoDelStreaming() {
+        AtomicInteger peticiones = new AtomicInteger();
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(peticion -> {
+                    peticiones.incrementAndGet();
+                    assertThat(peticion.url().toString()).endsWith(":streamGenerateContent?alt=sse");
+                    return Mono.just(ClientResponse.create(HttpStatus.OK)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_EVENT_STREAM_VALUE)
+                            .body("data: {\"n\": 1}\n\ndata: {\"n\": 2}\n\n")
+                            .build());
+                })
+                .build();
+        GeminiCliente cliente = cliente(webClient);
+
+        assertThat(cliente.generarEnFlujo("prompt", null).collectList().block())
+                .containsExactly("{\"n\": 1}", "{\"n\": 2}");
+        assertThat(peticiones).hasValue(1);
+    }
+
+    @Test
+    void testGenerar_laApiKeyVaEnCabeceraYNoApareceEnLosErrores() {
+        GeminiWebClientConfig config = new GeminiWebClientConfig();
+        ReflectionTestUtils.setField(config, "apiKey", "clave-secreta");
+        ReflectionTestUtils.setField(config, "maxRespuestaBytes", 1024);
+        AtomicReference<ClientRequest> enviada = new AtomicReference<>();
+        WebClient webClient = config.geminiWebClient(ConnectionProvider.newConnection()).mutate()
+                .exchangeFunction(peticion -> {
+                    enviada.set(peticion);
+                    return Mono.just(ClientResponse.create(HttpStatus.BAD_REQUEST).body("{}").build());
+                })
+                .build();
+
+        assertThatThrownBy(() -> cliente(webClient).generar("prompt", null).block())
+                .hasMessageNotContaining("clave-secreta");
+        assertThat(enviada.get().headers().getFirst("x-goog-api-key")).isEqualTo("clave-secreta");
+        assertThat(enviada.get().url().toString()).doesNotContain("key=");
+    }
+
+    private GeminiCliente cliente(WebClient webClient) {
+        GeminiCliente cliente = new GeminiCliente(webClient);
+        ReflectionTestUtils.setField(cliente, "apiUrl", "http://gemini.local/models/gemini:generateContent");
+        return cliente;
+    }
+
+    private WebClientResponseException error(int estado, HttpHeaders cabeceras, String cuerpo) {
+        return WebClientResponseException.create(estado, "error", cabeceras,
+                cuerpo.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,122 @@
+package upao.edu.pe.service;
+
+import org.junit.jupiter.api.Test;
+import upao.edu.pe.model.MensajeSunat;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HeatmapActividadPorRucTest {
+
+    private static final String RUC = "20000000001";
+    private static final ZoneId ZONA = ZoneId.of("America/Lima");
+
+    private final HeatmapActividadPorRuc heatmap = new HeatmapActividadPorRuc(500, 24);
+    private final List<LocalDateTime> cargas = new ArrayList<>();
+
+    @Test
+    void testObtener_cargaUnaVezPorSemanaDesdeElLunesDeLaVentana() {
+        fijarReloj(LocalDateTime.of(2025, 6, 4, 12, 0)); // miércoles
+
+        heatmap.obtener(RUC, 2, this::cargar);
+        heatmap.obtener(RUC, 2, this::cargar);
+
+        assertThat(cargas).containsExactly(LocalDateTime.of(2025, 5, 26, 0, 0));
+    }
+
+    @Test
+    void testObtener_caducaAlEmpezarLaSemanaSiguiente() {
+        fijarReloj(LocalDateTime.of(2025, 6, 8, 23, 0)); // domingo
+        heatmap.obtener(RUC, 1, this::cargar);
+
+        fijarReloj(LocalDateTime.of(2025, 6, 9, 0, 30)); // lunes
+        heatmap.obtener(RUC, 1, this::cargar);
+
+        assertThat(cargas).containsExactly(LocalDateTime.of(2025, 6, 2, 0, 0), LocalDateTime.of(2025, 6, 9, 0, 0));
+    }
+
+    @Test
+    void testRegistrar_sumaAlRucYATodosSoloDentroDeLaVentana() {
+        fijarReloj(LocalDateTime.of(2025, 6, 4, 12, 0));
+        heatmap.obtener(RUC, 1, this::cargar);
+        heatmap.obtener("20000000002", 1, this::cargar);
+        heatmap.obtener(null, 1, this::cargar);
+
+        heatmap.registrar(List.of(
+                mensaje(RUC, LocalDateTime.of(2025, 6, 3, 10, 15)),
+                mensaje(RUC, LocalDateTime.of(2025, 5, 30, 10, 15)),
+                mensaje(RUC, null)));
+
+        int celda = HeatmapActividadPorRuc.celda(2, 10);
+        assertThat(heatmap.obtener(RUC, 1, this::cargar)[celda]).isEqualTo(1);
+        assertThat(heatmap.obtener(null, 1, this::cargar)[celda]).isEqualTo(1);
+        assertThat(heatmap.obtener("20000000002", 1, this::cargar)[celda]).isZero();
+        assertThat(heatmap.obtener(RUC, 1, this::cargar)[HeatmapActividadPorRuc.celda(5, 10)]).isZero();
+        assertThat(cargas).hasSize(3);
+    }
+
+    @Test
+    void testRegistrar_duranteLaCargaEsperaASuFinYNoSePierde() throws Exception {
+        fijarReloj(LocalDateTime.of(2025, 6, 4, 12, 0));
+        CountDownLatch cargando = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        Thread lector = new Thread(() -> heatmap.obtener(RUC, 1, desde -> {
+            cargando.countDown();
+            try {
+                liberar.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new int[HeatmapActividadPorRuc.CELDAS];
+        }));
+        lector.start();
+        assertThat(cargando.await(5, TimeUnit.SECONDS)).isTrue();
+
+        Thread escritor = new Thread(() -> heatmap.registrar(List.of(mensaje(RUC, LocalDateTime.of(2025, 6, 3, 10, 15)))));
+        escritor.start();
+        escritor.join(200);
+        assertThat(escritor.isAlive()).isTrue();
+
+        liberar.countDown();
+        lector.join(5_000);
+        escritor.join(5_000);
+
+        assertThat(heatmap.obtener(RUC, 1, this::cargar)[HeatmapActividadPorRuc.celda(2, 10)]).isEqualTo(1);
+        assertThat(cargas).isEmpty();
+    }
+
+    @Test
+    void testObtener_acotaLaCantidadDeEntradas() {
+        HeatmapActividadPorRuc acotado = new HeatmapActividadPorRuc(2, 24);
+        acotado.obtener("20000000001", 1, this::cargar);
+        acotado.obtener("20000000002", 1, this::cargar);
+        acotado.obtener("20000000003", 1, this::cargar);
+
+        acotado.obtener("20000000001", 1, this::cargar);
+
+        assertThat(cargas).hasSize(4);
+    }
+
+    private int[] cargar(LocalDateTime desde) {
+        cargas.add(desde);
+        return new int[HeatmapActividadPorRuc.CELDAS];
+    }
+
+    private void fijarReloj(LocalDateTime ahora) {
+        heatmap.reloj = Clock.fixed(ahora.atZone(ZONA).toInstant(), ZONA);
+    }
+
+    private static MensajeSunat mensaje(String ruc, LocalDateTime fechaPublica) {
+        return MensajeSunat.builder()
+                .vcNumeroRuc(ruc)
+                .dtFechaPublica(fechaPublica)
+                .build();
+    }
+}
@@ -0,0 +1,57 @@
+package upao.edu.pe.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import upao.edu.pe.model.MensajeSunat;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = WebEnvironment.NONE)
+@ActiveProfiles("test")
+class HeatmapActividadPorRucTransaccionTest {
+
+    private static final String RUC = "20999999992";
+
+    @Autowired
+    private HeatmapActividadPorRuc heatmap;
+
+    @Autowired
+    private ApplicationEventPublisher eventos;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void testAlGuardarMensajes_soloSumaLosDeTransaccionesConfirmadas() {
+        heatmap.obtener(RUC, 1, desde -> new int[HeatmapActividadPorRuc.CELDAS]);
+        TransactionTemplate transaccion = new TransactionTemplate(transactionManager);
+        MensajesGuardadosEvento evento = new MensajesGuardadosEvento(List.of(MensajeSunat.builder()
+                .vcNumeroRuc(RUC)
+                .dtFechaPublica(LocalDateTime.now())
+                .build()));
+
+        transaccion.executeWithoutResult(estado -> {
+            eventos.publishEvent(evento);
+            assertThat(total()).isZero();
+            estado.setRollbackOnly();
+        });
+        assertThat(total()).isZero();
+
+        transaccion.executeWithoutResult(estado -> eventos.publishEvent(evento));
+        assertThat(total()).isEqualTo(1);
+    }
+
+    private int total() {
+        return Arrays.stream(heatmap.obtener(RUC, 1, desde -> new int[HeatmapActividadPorRuc.CELDAS])).sum();
+    }
+}
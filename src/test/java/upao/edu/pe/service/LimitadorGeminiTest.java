@@ -0,0 +1,86 @@
+package upao.edu.pe.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LimitadorGeminiTest {
+
+    private final AtomicLong ahora = new AtomicLong();
+
+    @Test
+    void testTryAcquire_reponeLasPeticionesDeFormaContinua() {
+        LimitadorGemini limitador = new LimitadorGemini(60, 1_000_000, ahora::get);
+        for (int i = 0; i < 60; i++) {
+            assertThat(limitador.tryAcquire(10)).isTrue();
+        }
+
+        assertThat(limitador.tryAcquire(10)).isFalse();
+        assertThat(limitador.peticionesEnUso()).isEqualTo(60);
+
+        ahora.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertThat(limitador.tryAcquire(10)).isTrue();
+        assertThat(limitador.tryAcquire(10)).isFalse();
+    }
+
+    @Test
+    void testTryAcquire_rechazaCuandoSeAgotanLosTokens() {
+        LimitadorGemini limitador = new LimitadorGemini(100, 1_000, ahora::get);
+
+        assertThat(limitador.tryAcquire(800)).isTrue();
+        assertThat(limitador.tryAcquire(300)).isFalse();
+        assertThat(limitador.tryAcquire(200)).isTrue();
+        assertThat(limitador.tokensEnUso()).isEqualTo(1_000);
+        assertThat(limitador.peticionesEnUso()).isEqualTo(2);
+    }
+
+    @Test
+    void testTryAcquire_concurrenteNoAdmiteMasQueElCupo() throws Exception {
+        LimitadorGemini limitador = new LimitadorGemini(100, 1_000_000, ahora::get);
+        ExecutorService hilos = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Integer>> tareas = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                tareas.add(() -> {
+                    int admitidas = 0;
+                    for (int j = 0; j < 50; j++) {
+                        if (limitador.tryAcquire(1)) {
+                            admitidas++;
+                        }
+                    }
+                    return admitidas;
+                });
+            }
+            int total = 0;
+            for (Future<Integer> resultado : hilos.invokeAll(tareas)) {
+                total += resultado.get();
+            }
+            assertThat(total).isEqualTo(100);
+        } finally {
+            hilos.shutdownNow();
+        }
+    }
+
+    @Test
+    void testAcquire_esperaHastaQueHayaCupoOVenceElPlazo() {
+        LimitadorGemini rapido = new LimitadorGemini(60_000, 1_000_000);
+        while (rapido.tryAcquire(1)) {
+            // agotar el cupo
+        }
+        assertThat(rapido.acquire(1, Duration.ofSeconds(1))).isTrue();
+
+        LimitadorGemini lento = new LimitadorGemini(1, 1_000_000);
+        assertThat(lento.tryAcquire(1)).isTrue();
+        assertThat(lento.acquire(1, Duration.ofMillis(20))).isFalse();
+    }
+}
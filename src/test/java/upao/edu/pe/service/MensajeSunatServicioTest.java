@@ -8,16 +8,21 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import upao.edu.pe.model.MensajeSunat;
 import upao.edu.pe.repository.MensajeSunatRepositorio;
 
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -26,6 +31,12 @@ class MensajeSunatServicioTest {
     @Mock
     private MensajeSunatRepositorio mensajeSunatRepositorio;
 
+    @Mock
+    private ResumenDiarioServicio resumenDiarioServicio;
+
+    @Mock
+    private ApplicationEventPublisher eventos;
+
     @InjectMocks
     private MensajeSunatServicio servicio;
 
@@ -48,10 +59,14 @@ class MensajeSunatServicioTest {
             var field = MensajeSunatServicio.class.getDeclaredField("mensajeSunatRepositorio");
             field.setAccessible(true);
             field.set(servicio, repo);
+            var publicador = MensajeSunatServicio.class.getDeclaredField("eventos");
+            publicador.setAccessible(true);
+            publicador.set(servicio, eventos);
         } catch (Exception e) { throw new RuntimeException(e); }
         MensajeSunat actualizado = servicio.actualizarDestacado(1L, 1);
         assertThat(actualizado.getNuDestacado()).isEqualTo(1);
         verify(repo).save(mensaje);
+        verify(eventos).publishEvent(new BuzonModificadoEvento(null));
     }
 
     @Test
@@ -67,6 +82,12 @@ class MensajeSunatServicioTest {
             var field = MensajeSunatServicio.class.getDeclaredField("mensajeSunatRepositorio");
             field.setAccessible(true);
             field.set(servicio, repo);
+            var publicador = MensajeSunatServicio.class.getDeclaredField("eventos");
+            publicador.setAccessible(true);
+            publicador.set(servicio, eventos);
+            var resumen = MensajeSunatServicio.class.getDeclaredField("resumenDiarioServicio");
+            resumen.setAccessible(true);
+            resumen.set(servicio, resumenDiarioServicio);
         } catch (Exception e) { throw new RuntimeException(e); }
         MensajeSunat actualizado = servicio.actualizarUrgente(2L, 1);
         assertThat(actualizado.getNuUrgente()).isEqualTo(1);
@@ -86,6 +107,9 @@ class MensajeSunatServicioTest {
             var field = MensajeSunatServicio.class.getDeclaredField("mensajeSunatRepositorio");
             field.setAccessible(true);
             field.set(servicio, repo);
+            var publicador = MensajeSunatServicio.class.getDeclaredField("eventos");
+            publicador.setAccessible(true);
+            publicador.set(servicio, eventos);
         } catch (Exception e) { throw new RuntimeException(e); }
         MensajeSunat actualizado = servicio.actualizarEstado(3L, 1);
         assertThat(actualizado.getNuEstado()).isEqualTo(1);
@@ -105,6 +129,12 @@ class MensajeSunatServicioTest {
             var field = MensajeSunatServicio.class.getDeclaredField("mensajeSunatRepositorio");
             field.setAccessible(true);
             field.set(servicio, repo);
+            var publicador = MensajeSunatServicio.class.getDeclaredField("eventos");
+            publicador.setAccessible(true);
+            publicador.set(servicio, eventos);
+            var resumen = MensajeSunatServicio.class.getDeclaredField("resumenDiarioServicio");
+            resumen.setAccessible(true);
+            resumen.set(servicio, resumenDiarioServicio);
         } catch (Exception e) { throw new RuntimeException(e); }
         MensajeSunat actualizado = servicio.actualizarEtiqueta(4L, "10");
         assertThat(actualizado.getVcCodigoEtiqueta()).isEqualTo("10");
@@ -124,10 +154,18 @@ class MensajeSunatServicioTest {
             var field = MensajeSunatServicio.class.getDeclaredField("mensajeSunatRepositorio");
             field.setAccessible(true);
             field.set(servicio, repo);
+            var publicador = MensajeSunatServicio.class.getDeclaredField("eventos");
+            publicador.setAccessible(true);
+            publicador.set(servicio, eventos);
+            var resumen = MensajeSunatServicio.class.getDeclaredField("resumenDiarioServicio");
+            resumen.setAccessible(true);
+            resumen.set(servicio, resumenDiarioServicio);
         } catch (Exception e) { throw new RuntimeException(e); }
         MensajeSunat actualizado = servicio.actualizarLeido(5L, 1);
         assertThat(actualizado.getNuLeido()).isEqualTo(1);
         verify(repo).save(mensaje);
+        // Pasar a leído resta uno de los no leídos en el resumen diario
+        verify(resumenDiarioServicio).registrar(argThat(antes -> antes.noLeido()), eq(mensaje));
     }
 
     @Test
@@ -143,12 +181,27 @@ class MensajeSunatServicioTest {
             var field = MensajeSunatServicio.class.getDeclaredField("mensajeSunatRepositorio");
             field.setAccessible(true);
             field.set(servicio, repo);
+            var publicador = MensajeSunatServicio.class.getDeclaredField("eventos");
+            publicador.setAccessible(true);
+            publicador.set(servicio, eventos);
         } catch (Exception e) { throw new RuntimeException(e); }
         MensajeSunat actualizado = servicio.actualizarArchivado(6L, 1);
         assertThat(actualizado.getNuArchivado()).isEqualTo(1);
         verify(repo).save(mensaje);
     }
 
+    @Test
+    void testGuardarNuevos_sumaAlResumenYDejaElHeatmapParaDespuesDelCommit() {
+        MensajeSunat mensaje = MensajeSunat.builder().vcNumeroRuc("20000000001").build();
+        when(mensajeSunatRepositorio.saveAll(List.of(mensaje))).thenReturn(List.of(mensaje));
+
+        servicio.guardarNuevos(List.of(mensaje));
+
+        verify(resumenDiarioServicio).registrarNuevos(List.of(mensaje));
+        verify(eventos).publishEvent(new MensajesGuardadosEvento(List.of(mensaje)));
+        verify(eventos).publishEvent(new BuzonModificadoEvento("20000000001"));
+    }
+
     @Test
     void testActualizarDestacado_lanzaExcepcionSiNoExiste() {
         var repo = mensajeSunatRepositorio;
@@ -158,6 +211,9 @@ class MensajeSunatServicioTest {
             var field = MensajeSunatServicio.class.getDeclaredField("mensajeSunatRepositorio");
             field.setAccessible(true);
             field.set(servicio, repo);
+            var publicador = MensajeSunatServicio.class.getDeclaredField("eventos");
+            publicador.setAccessible(true);
+            publicador.set(servicio, eventos);
         } catch (Exception e) { throw new RuntimeException(e); }
         org.junit.jupiter.api.Assertions.assertThrows(RuntimeException.class, () -> servicio.actualizarDestacado(100L, 1));
     }
@@ -171,6 +227,9 @@ class MensajeSunatServicioTest {
             var field = MensajeSunatServicio.class.getDeclaredField("mensajeSunatRepositorio");
             field.setAccessible(true);
             field.set(servicio, repo);
+            var publicador = MensajeSunatServicio.class.getDeclaredField("eventos");
+            publicador.setAccessible(true);
+            publicador.set(servicio, eventos);
         } catch (Exception e) { throw new RuntimeException(e); }
         org.junit.jupiter.api.Assertions.assertThrows(RuntimeException.class, () -> servicio.actualizarUrgente(200L, 1));
     }
@@ -184,6 +243,9 @@ class MensajeSunatServicioTest {
             var field = MensajeSunatServicio.class.getDeclaredField("mensajeSunatRepositorio");
             field.setAccessible(true);
             field.set(servicio, repo);
+            var publicador = MensajeSunatServicio.class.getDeclaredField("eventos");
+            publicador.setAccessible(true);
+            publicador.set(servicio, eventos);
         } catch (Exception e) { throw new RuntimeException(e); }
         org.junit.jupiter.api.Assertions.assertThrows(RuntimeException.class, () -> servicio.actualizarEstado(201L, 1));
     }
@@ -197,6 +259,9 @@ class MensajeSunatServicioTest {
             var field = MensajeSunatServicio.class.getDeclaredField("mensajeSunatRepositorio");
             field.setAccessible(true);
             field.set(servicio, repo);
+            var publicador = MensajeSunatServicio.class.getDeclaredField("eventos");
+            publicador.setAccessible(true);
+            publicador.set(servicio, eventos);
         } catch (Exception e) { throw new RuntimeException(e); }
         org.junit.jupiter.api.Assertions.assertThrows(RuntimeException.class, () -> servicio.actualizarEtiqueta(202L, "10"));
     }
@@ -210,6 +275,9 @@ class MensajeSunatServicioTest {
             var field = MensajeSunatServicio.class.getDeclaredField("mensajeSunatRepositorio");
             field.setAccessible(true);
             field.set(servicio, repo);
+            var publicador = MensajeSunatServicio.class.getDeclaredField("eventos");
+            publicador.setAccessible(true);
+            publicador.set(servicio, eventos);
         } catch (Exception e) { throw new RuntimeException(e); }
         org.junit.jupiter.api.Assertions.assertThrows(RuntimeException.class, () -> servicio.actualizarLeido(203L, 1));
     }
@@ -223,6 +291,9 @@ class MensajeSunatServicioTest {
             var field = MensajeSunatServicio.class.getDeclaredField("mensajeSunatRepositorio");
             field.setAccessible(true);
             field.set(servicio, repo);
+            var publicador = MensajeSunatServicio.class.getDeclaredField("eventos");
+            publicador.setAccessible(true);
+            publicador.set(servicio, eventos);
         } catch (Exception e) { throw new RuntimeException(e); }
         org.junit.jupiter.api.Assertions.assertThrows(RuntimeException.class, () -> servicio.actualizarArchivado(204L, 1));
     }
@@ -278,6 +349,50 @@ class MensajeSunatServicioTest {
         verify(mensajeSunatRepositorio).encontrarVcCodigoEtiqueta(eq(etiqueta), any(Pageable.class));
     }
 
+    @Test
+    void testObtenerMensajesPorEtiquetaConCursor_primeraPaginaDevuelveCursorDelUltimo() {
+        LocalDateTime fecha = LocalDateTime.of(2025, 6, 3, 10, 0);
+        MensajeSunat primero = MensajeSunat.builder().nuCodigoMensaje(30L).dtFechaPublica(fecha).build();
+        MensajeSunat segundo = MensajeSunat.builder().nuCodigoMensaje(20L).dtFechaPublica(fecha).build();
+        MensajeSunat tercero = MensajeSunat.builder().nuCodigoMensaje(10L).dtFechaPublica(fecha.minusDays(1)).build();
+        when(mensajeSunatRepositorio.encontrarPrimerosPorEtiqueta(eq("10"), any(Pageable.class)))
+                .thenReturn(List.of(primero, segundo, tercero));
+
+        MensajeSunatServicio.PaginaMensajes pagina = servicio.obtenerMensajesPorEtiquetaConCursor("10", null, 2, false);
+
+        assertThat(pagina.mensajes()).containsExactly(primero, segundo);
+        assertThat(CursorMensajes.decodificar(pagina.siguienteCursor())).isEqualTo(new CursorMensajes(fecha, 20L));
+        assertThat(pagina.totalAproximado()).isNull();
+        verify(mensajeSunatRepositorio, never()).encontrarSinFechaPorEtiquetaDespuesDe(anyString(), anyLong(), any());
+        verifyNoInteractions(resumenDiarioServicio);
+    }
+
+    @Test
+    void testObtenerMensajesPorEtiquetaConCursor_completaConMensajesSinFechaAlFinal() {
+        LocalDateTime fecha = LocalDateTime.of(2025, 6, 3, 10, 0);
+        MensajeSunat conFecha = MensajeSunat.builder().nuCodigoMensaje(15L).dtFechaPublica(fecha.minusHours(1)).build();
+        MensajeSunat sinFecha = MensajeSunat.builder().nuCodigoMensaje(99L).build();
+        when(mensajeSunatRepositorio.encontrarPorEtiquetaDespuesDe(eq("00"), eq(fecha), eq(20L), any(Pageable.class)))
+                .thenReturn(List.of(conFecha));
+        when(mensajeSunatRepositorio.encontrarSinFechaPorEtiquetaDespuesDe(eq("00"), eq(Long.MAX_VALUE), any(Pageable.class)))
+                .thenReturn(List.of(sinFecha));
+        when(resumenDiarioServicio.contarPorEtiqueta("00")).thenReturn(42L);
+
+        MensajeSunatServicio.PaginaMensajes pagina = servicio.obtenerMensajesConCursor(
+                new CursorMensajes(fecha, 20L).codificar(), 5, true);
+
+        assertThat(pagina.mensajes()).containsExactly(conFecha, sinFecha);
+        assertThat(pagina.siguienteCursor()).isNull();
+        assertThat(pagina.totalAproximado()).isEqualTo(42L);
+    }
+
+    @Test
+    void testObtenerMensajesPorEtiquetaConCursor_cursorInvalido() {
+        assertThatThrownBy(() -> servicio.obtenerMensajesPorEtiquetaConCursor("10", "no-es-un-cursor", 10, false))
+                .isInstanceOf(IllegalArgumentException.class);
+        verifyNoInteractions(mensajeSunatRepositorio);
+    }
+
     @Test
     void testObtenerDescripcionEtiqueta_existenteYDesconocida() {
         assertThat(servicio.obtenerDescripcionEtiqueta("10")).isEqualTo("VALORES");
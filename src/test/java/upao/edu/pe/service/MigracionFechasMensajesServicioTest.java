@@ -0,0 +1,81 @@
+package upao.edu.pe.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import upao.edu.pe.model.MensajeSunat;
+import upao.edu.pe.repository.MensajeSunatRepositorio;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MigracionFechasMensajesServicioTest {
+
+    @Mock
+    private MensajeSunatRepositorio mensajeSunatRepositorio;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private ApplicationEventPublisher eventos;
+
+    @InjectMocks
+    private MigracionFechasMensajesServicio servicio;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        ReflectionTestUtils.setField(servicio, "tamanioLote", 2);
+        when(transactionTemplate.execute(any())).thenAnswer(inv -> ((TransactionCallback<Object>) inv.getArgument(0)).doInTransaction(null));
+    }
+
+    @Test
+    void testCompletarFechas_recorreLotesPorCodigoYParseaLasFechas() {
+        MensajeSunat primero = mensaje(1L, "03/06/2025 10:15:00", "03/06/2025 10:15:00");
+        MensajeSunat invalido = mensaje(2L, "sin fecha", null);
+        MensajeSunat ultimo = mensaje(5L, "2025-06-04", "04/06/2025 08:00:00");
+        when(mensajeSunatRepositorio.encontrarSinFechasTipadas(eq(Long.MIN_VALUE), any(Pageable.class))).thenReturn(List.of(primero, invalido));
+        when(mensajeSunatRepositorio.encontrarSinFechasTipadas(eq(2L), any(Pageable.class))).thenReturn(List.of(ultimo));
+
+        int actualizados = servicio.completarFechas();
+
+        assertThat(actualizados).isEqualTo(2);
+        assertThat(primero.getDtFechaPublica()).isEqualTo(LocalDateTime.of(2025, 6, 3, 10, 15));
+        assertThat(invalido.getDtFechaPublica()).isNull();
+        assertThat(ultimo.getDtFechaEnvio()).isEqualTo(LocalDateTime.of(2025, 6, 4, 0, 0));
+        verify(mensajeSunatRepositorio, times(2)).encontrarSinFechasTipadas(anyLong(), any(Pageable.class));
+        verify(eventos).publishEvent(BuzonModificadoEvento.todos());
+    }
+
+    @Test
+    void testCompletarFechas_sinPendientesTerminaEnUnaConsulta() {
+        when(mensajeSunatRepositorio.encontrarSinFechasTipadas(anyLong(), any(Pageable.class))).thenReturn(List.of());
+
+        assertThat(servicio.completarFechas()).isZero();
+        verify(mensajeSunatRepositorio, times(1)).encontrarSinFechasTipadas(anyLong(), any(Pageable.class));
+    }
+
+    private static MensajeSunat mensaje(Long codigo, String fechaEnvio, String fechaPublica) {
+        return MensajeSunat.builder()
+                .nuCodigoMensaje(codigo)
+                .vcFechaEnvio(fechaEnvio)
+                .vcFechaPublica(fechaPublica)
+                .build();
+    }
+}
@@ -0,0 +1,54 @@
+package upao.edu.pe.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MotorReglasClasificacionTest {
+
+    private final MotorReglasClasificacion motorReglas = new MotorReglasClasificacion();
+
+    @Test
+    void testEvaluar_cobranzaEsMuyImportanteYPrioritaria() {
+        MotorReglasClasificacion.ResultadoReglas resultado =
+                motorReglas.evaluar("URGENTE - Orden de Pago No: 123456");
+
+        assertThat(resultado.clasificacion()).isEqualTo(MotorReglasClasificacion.MUY_IMPORTANTE);
+        assertThat(resultado.etiquetaCodigo()).isEqualTo("11");
+        assertThat(resultado.prioritaria()).isTrue();
+        assertThat(motorReglas.esConcluyente(resultado)).isTrue();
+    }
+
+    @Test
+    void testEvaluar_formularioRutinarioEsInformativo() {
+        MotorReglasClasificacion.ResultadoReglas resultado =
+                motorReglas.evaluar("Formulario 0621 - PDT IGV-RENTA MENSUAL");
+
+        assertThat(resultado.clasificacion()).isEqualTo(MotorReglasClasificacion.INFORMATIVO);
+        assertThat(resultado.etiquetaCodigo()).isEqualTo("10");
+        assertThat(resultado.prioritaria()).isFalse();
+    }
+
+    @Test
+    void testEvaluar_conflictoEntreNivelesBajaLaConfianza() {
+        MotorReglasClasificacion.ResultadoReglas resultado =
+                motorReglas.evaluar("Formulario 0601 con inconsistencias críticas");
+
+        assertThat(resultado.clasificacion()).isEqualTo(MotorReglasClasificacion.IMPORTANTE);
+        assertThat(motorReglas.esConcluyente(resultado)).isFalse();
+    }
+
+    @Test
+    void testEvaluar_sinCoincidenciasRequiereGemini() {
+        MotorReglasClasificacion.ResultadoReglas resultado = motorReglas.evaluar("Trámite en línea");
+
+        assertThat(resultado.confianza()).isZero();
+        assertThat(motorReglas.esConcluyente(resultado)).isFalse();
+    }
+
+    @Test
+    void testDescribirTipoMensaje_respetaPrecedencia() {
+        assertThat(motorReglas.describirTipoMensaje("Se emitieron valores por cobranza")).isEqualTo("Resolución de Cobranza");
+        assertThat(motorReglas.describirTipoMensaje("Texto sin coincidencias")).isNull();
+    }
+}
@@ -0,0 +1,78 @@
+package upao.edu.pe.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import upao.edu.pe.model.MensajeSunat;
+import upao.edu.pe.repository.MensajeSunatRepositorio;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ProcesadorColaClasificacionTest {
+
+    @Mock
+    private ColaClasificacionServicio colaClasificacion;
+    @Mock
+    private MensajeSunatRepositorio mensajeSunatRepositorio;
+    @Mock
+    private MensajeSunatServicio mensajeSunatServicio;
+    @Mock
+    private GeminiAIService geminiAIService;
+
+    @InjectMocks
+    private ProcesadorColaClasificacion procesador;
+
+    @Test
+    void testProcesar_clasificaLotesMientrasHayCuotaYLosCompleta() {
+        when(geminiAIService.getRateLimiterStatus()).thenReturn(cuota(10));
+        when(colaClasificacion.reclamar(anyInt())).thenReturn(List.of(1L, 2L)).thenReturn(List.of());
+        List<MensajeSunat> mensajes = List.of(mensaje(1L), mensaje(2L));
+        when(mensajeSunatRepositorio.findAllById(List.of(1L, 2L))).thenReturn(mensajes);
+
+        procesador.procesar();
+
+        verify(mensajeSunatServicio).procesarNuevosCorreosConIA(mensajes);
+        verify(colaClasificacion).completar(List.of(1L, 2L));
+        verify(colaClasificacion, times(2)).reclamar(anyInt());
+    }
+
+    @Test
+    void testProcesar_conLaCuotaOcupadaNoReclamaNada() {
+        when(geminiAIService.getRateLimiterStatus()).thenReturn(cuota(450));
+
+        procesador.procesar();
+
+        verify(colaClasificacion, never()).reclamar(anyInt());
+    }
+
+    @Test
+    void testProcesar_siFallaElLoteLoDevuelveALaCola() {
+        when(geminiAIService.getRateLimiterStatus()).thenReturn(cuota(0));
+        when(colaClasificacion.reclamar(anyInt())).thenReturn(List.of(1L));
+        when(mensajeSunatRepositorio.findAllById(List.of(1L))).thenThrow(new IllegalStateException("sin conexión"));
+
+        procesador.procesar();
+
+        verify(colaClasificacion).liberar(List.of(1L));
+        verify(colaClasificacion, never()).completar(any());
+    }
+
+    private static GeminiAIService.RateLimiterStatus cuota(int peticionesUltimoMinuto) {
+        return GeminiAIService.RateLimiterStatus.builder()
+                .enabled(true)
+                .requestsInLastMinute(peticionesUltimoMinuto)
+                .maxRequestsPerMinute(500)
+                .build();
+    }
+
+    private static MensajeSunat mensaje(Long codigo) {
+        return MensajeSunat.builder().nuCodigoMensaje(codigo).vcNumeroRuc("20123456789").build();
+    }
+}
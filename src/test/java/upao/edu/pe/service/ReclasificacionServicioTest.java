@@ -0,0 +1,193 @@
+package upao.edu.pe.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import upao.edu.pe.model.MensajeSunat;
+import upao.edu.pe.model.TrabajoReclasificacion;
+import upao.edu.pe.repository.MensajeSunatRepositorio;
+import upao.edu.pe.repository.TrabajoReclasificacionRepositorio;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReclasificacionServicioTest {
+
+    private static final List<String> REPROCESABLES = ReclasificacionServicio.CLASIFICACIONES_REPROCESABLES;
+
+    @Mock
+    private TrabajoReclasificacionRepositorio trabajoRepositorio;
+    @Mock
+    private MensajeSunatRepositorio mensajeSunatRepositorio;
+    @Mock
+    private MensajeSunatServicio mensajeSunatServicio;
+    @Mock
+    private GeminiAIService geminiAIService;
+    @Spy
+    private SyncTaskExecutor ejecutorSincronizacion = new SyncTaskExecutor();
+
+    @InjectMocks
+    private ReclasificacionServicio servicio;
+
+    private final List<Long> puntosDeControl = new ArrayList<>();
+    private TrabajoReclasificacion creado;
+
+    @Test
+    void testIniciar_procesaPorLotesYGuardaElPuntoDeControlDeCadaLote() {
+        ReflectionTestUtils.setField(servicio, "tamanioLote", 2);
+        guardarTrabajos();
+        renovarLatidos();
+        when(geminiAIService.getRateLimiterStatus()).thenReturn(cuota(0));
+        when(mensajeSunatRepositorio.contarParaReclasificar(REPROCESABLES)).thenReturn(3L);
+        when(mensajeSunatRepositorio.encontrarParaReclasificar(Long.MIN_VALUE, REPROCESABLES, PageRequest.of(0, 2)))
+                .thenReturn(List.of(mensaje(4L), mensaje(9L)));
+        when(mensajeSunatRepositorio.encontrarParaReclasificar(9L, REPROCESABLES, PageRequest.of(0, 2)))
+                .thenReturn(List.of(mensaje(15L)));
+
+        TrabajoReclasificacion trabajo = servicio.iniciar();
+
+        verify(mensajeSunatServicio, times(2)).procesarNuevosCorreosConIA(any());
+        assertThat(puntosDeControl).containsExactly(null, 9L, 15L);
+        assertThat(trabajo.getVcEstado()).isEqualTo(TrabajoReclasificacion.COMPLETADO);
+        assertThat(trabajo.getNuProcesados()).isEqualTo(3L);
+        assertThat(trabajo.getNuLotes()).isEqualTo(2);
+    }
+
+    @Test
+    void testReanudarAlIniciar_continuaDesdeElUltimoCodigoConfirmado() {
+        TrabajoReclasificacion pendiente = TrabajoReclasificacion.builder()
+                .nuIdTrabajo(7L).nuUltimoCodigo(50L).nuTotal(10L).nuProcesados(6L).nuLotes(3).build();
+        when(trabajoRepositorio.findByVcEstadoOrderByNuIdTrabajoAsc(TrabajoReclasificacion.EN_PROCESO)).thenReturn(List.of(pendiente));
+        when(trabajoRepositorio.findById(7L)).thenReturn(Optional.of(pendiente));
+        when(trabajoRepositorio.reclamar(eq(7L), anyString(), any(), any())).thenReturn(1);
+        guardarTrabajos();
+        renovarLatidos();
+        when(geminiAIService.getRateLimiterStatus()).thenReturn(cuota(0));
+        when(mensajeSunatRepositorio.encontrarParaReclasificar(eq(50L), eq(REPROCESABLES), any()))
+                .thenReturn(List.of(mensaje(51L), mensaje(60L)));
+
+        servicio.reanudarAlIniciar();
+
+        verify(mensajeSunatRepositorio, never()).encontrarParaReclasificar(eq(Long.MIN_VALUE), any(), any());
+        assertThat(pendiente.getVcEstado()).isEqualTo(TrabajoReclasificacion.COMPLETADO);
+        assertThat(pendiente.getNuProcesados()).isEqualTo(8L);
+        assertThat(pendiente.getNuUltimoCodigo()).isEqualTo(60L);
+    }
+
+    @Test
+    void testReanudarPendientes_noEjecutaTrabajosReclamadosPorOtroNodo() {
+        TrabajoReclasificacion ajeno = TrabajoReclasificacion.builder()
+                .nuIdTrabajo(7L).vcNodo("otro-nodo").dtLatido(LocalDateTime.now()).build();
+        when(trabajoRepositorio.findByVcEstadoOrderByNuIdTrabajoAsc(TrabajoReclasificacion.EN_PROCESO)).thenReturn(List.of(ajeno));
+        when(trabajoRepositorio.reclamar(eq(7L), anyString(), any(), any())).thenReturn(0);
+
+        servicio.reanudarPendientes();
+
+        verify(trabajoRepositorio, never()).findById(anyLong());
+        verify(mensajeSunatServicio, never()).procesarNuevosCorreosConIA(any());
+    }
+
+    @Test
+    void testEjecutar_dejaDeProcesarSiOtroNodoReclamaElTrabajo() {
+        TrabajoReclasificacion trabajo = TrabajoReclasificacion.builder().nuIdTrabajo(7L).build();
+        when(trabajoRepositorio.findById(7L)).thenReturn(Optional.of(trabajo));
+        when(trabajoRepositorio.renovarLatido(eq(7L), anyString(), any())).thenReturn(0);
+
+        servicio.ejecutar(7L);
+
+        verify(mensajeSunatRepositorio, never()).encontrarParaReclasificar(anyLong(), any(), any());
+        verify(trabajoRepositorio, never()).save(any());
+    }
+
+    @Test
+    void testEjecutar_alDetenerseLiberaElTrabajoParaOtroNodo() {
+        TrabajoReclasificacion trabajo = TrabajoReclasificacion.builder().nuIdTrabajo(7L).build();
+        when(trabajoRepositorio.findById(7L)).thenReturn(Optional.of(trabajo));
+        renovarLatidos();
+        servicio.detener();
+
+        servicio.ejecutar(7L);
+
+        verify(trabajoRepositorio).liberar(eq(7L), anyString());
+        assertThat(trabajo.getVcEstado()).isEqualTo(TrabajoReclasificacion.EN_PROCESO);
+    }
+
+    @Test
+    void testIniciar_esperaMientrasLaCuotaDeGeminiEsteOcupada() {
+        ReflectionTestUtils.setField(servicio, "esperaCuotaMs", 1L);
+        guardarTrabajos();
+        renovarLatidos();
+        when(geminiAIService.getRateLimiterStatus()).thenReturn(cuota(400), cuota(250), cuota(10));
+        when(mensajeSunatRepositorio.encontrarParaReclasificar(anyLong(), any(), any())).thenReturn(List.of());
+
+        servicio.iniciar();
+
+        verify(geminiAIService, times(3)).getRateLimiterStatus();
+        verify(mensajeSunatRepositorio, times(1)).encontrarParaReclasificar(anyLong(), any(), any());
+    }
+
+    @Test
+    void testObtenerEstado_calculaPorcentajeYVelocidad() {
+        TrabajoReclasificacion trabajo = TrabajoReclasificacion.builder()
+                .nuIdTrabajo(3L).nuTotal(200L).nuProcesados(50L).nuLotes(1).nuTiempoMs(2000L).build();
+        when(trabajoRepositorio.findFirstByOrderByNuIdTrabajoDesc()).thenReturn(Optional.of(trabajo));
+
+        Map<String, Object> estado = servicio.obtenerEstado(null).orElseThrow();
+
+        assertThat(estado)
+                .containsEntry("idTrabajo", 3L)
+                .containsEntry("estado", TrabajoReclasificacion.EN_PROCESO)
+                .containsEntry("porcentaje", 25.0)
+                .containsEntry("mensajesPorSegundo", 25.0)
+                .containsEntry("enEjecucion", false);
+    }
+
+    /**
+     * Asigna id al crear, registra el punto de control de cada guardado y sirve el trabajo por id
+     */
+    private void guardarTrabajos() {
+        when(trabajoRepositorio.save(any())).thenAnswer(invocacion -> {
+            TrabajoReclasificacion trabajo = invocacion.getArgument(0);
+            if (trabajo.getNuIdTrabajo() == null) {
+                trabajo.setNuIdTrabajo(1L);
+                creado = trabajo;
+            }
+            puntosDeControl.add(trabajo.getNuUltimoCodigo());
+            return trabajo;
+        });
+        lenient().when(trabajoRepositorio.findById(1L)).thenAnswer(invocacion -> Optional.ofNullable(creado));
+    }
+
+    private void renovarLatidos() {
+        when(trabajoRepositorio.renovarLatido(anyLong(), anyString(), any())).thenReturn(1);
+    }
+
+    private static GeminiAIService.RateLimiterStatus cuota(int peticionesUltimoMinuto) {
+        return GeminiAIService.RateLimiterStatus.builder()
+                .enabled(true)
+                .requestsInLastMinute(peticionesUltimoMinuto)
+                .maxRequestsPerMinute(500)
+                .build();
+    }
+
+    private static MensajeSunat mensaje(Long codigo) {
+        return MensajeSunat.builder().nuCodigoMensaje(codigo).vcNumeroRuc("20123456789").build();
+    }
+}
@@ -0,0 +1,93 @@
+package upao.edu.pe.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import upao.edu.pe.model.MensajeSunat;
+import upao.edu.pe.model.ResumenDiarioMensajes;
+import upao.edu.pe.repository.ResumenDiarioMensajesRepositorio;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = WebEnvironment.NONE)
+@ActiveProfiles("test")
+class ResumenDiarioServicioConcurrenciaTest {
+
+    private static final String RUC = "20999999991";
+
+    @Autowired
+    private ResumenDiarioServicio servicio;
+
+    @Autowired
+    private ResumenDiarioMensajesRepositorio resumenDiarioRepositorio;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void limpiar() {
+        resumenDiarioRepositorio.deleteAllInBatch(resumenDiarioRepositorio.findAll().stream()
+                .filter(fila -> RUC.equals(fila.getVcNumeroRuc()))
+                .toList());
+    }
+
+    @Test
+    void testRegistrar_dosTransaccionesCreanLaMismaFilaNuevaALaVez() throws Exception {
+        TransactionTemplate transaccion = new TransactionTemplate(transactionManager);
+        CyclicBarrier juntos = new CyclicBarrier(2);
+        ExecutorService hilos = Executors.newFixedThreadPool(2);
+        try {
+            Callable<Void> registrar = () -> {
+                transaccion.executeWithoutResult(estado -> {
+                    try {
+                        juntos.await();
+                        servicio.registrar(null, mensaje());
+                        // La transacción sigue abierta mientras la otra intenta crear la misma fila
+                        Thread.sleep(200);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+                return null;
+            };
+            List<Future<Void>> resultados = hilos.invokeAll(List.of(registrar, registrar));
+            for (Future<Void> resultado : resultados) {
+                resultado.get();
+            }
+        } finally {
+            hilos.shutdownNow();
+        }
+
+        List<ResumenDiarioMensajes> filas = resumenDiarioRepositorio.findAll().stream()
+                .filter(fila -> RUC.equals(fila.getVcNumeroRuc()))
+                .toList();
+        assertThat(filas).hasSize(1);
+        assertThat(filas.get(0).getDtDia()).isEqualTo(LocalDate.of(2025, 6, 3));
+        assertThat(filas.get(0).getNuCantidad()).isEqualTo(2L);
+        assertThat(filas.get(0).getNuNoLeidos()).isEqualTo(2L);
+    }
+
+    private static MensajeSunat mensaje() {
+        return MensajeSunat.builder()
+                .vcNumeroRuc(RUC)
+                .vcFechaEnvio("03/06/2025 10:15:00")
+                .vcCodigoEtiqueta("10")
+                .clasificacion("INFORMATIVO")
+                .nuLeido(0)
+                .nuUrgente(0)
+                .build();
+    }
+}
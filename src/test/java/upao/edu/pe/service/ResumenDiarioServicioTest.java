@@ -0,0 +1,155 @@
+package upao.edu.pe.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import upao.edu.pe.model.MensajeSunat;
+import upao.edu.pe.model.ResumenDiarioMensajes;
+import upao.edu.pe.repository.MensajeSunatRepositorio;
+import upao.edu.pe.repository.ResumenDiarioMensajesRepositorio;
+import upao.edu.pe.repository.ResumenDiarioMensajesRepositorio.ConteoMensajes;
+import upao.edu.pe.service.ResumenDiarioServicio.Aporte;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ResumenDiarioServicioTest {
+
+    private static final String RUC = "20123456789";
+    private static final LocalDate DIA = LocalDate.of(2025, 6, 3);
+
+    @Mock
+    private ResumenDiarioMensajesRepositorio resumenDiarioRepositorio;
+
+    @Mock
+    private MensajeSunatRepositorio mensajeSunatRepositorio;
+
+    @Mock
+    private ApplicationEventPublisher eventos;
+
+    @InjectMocks
+    private ResumenDiarioServicio servicio;
+
+    @Test
+    void testRegistrar_mensajeNuevoCreaOSumaLaFilaEnUnaSolaSentencia() {
+        servicio.registrar(null, mensaje("03/06/2025 10:15:00", "11", null, 0, 1));
+
+        verify(resumenDiarioRepositorio).acumular(RUC, DIA, "11", "", 1, 1, 1, 0);
+        verify(resumenDiarioRepositorio, never()).incrementar(anyString(), any(), anyString(), anyString(), anyLong(), anyLong(), anyLong(), anyLong());
+        verify(resumenDiarioRepositorio, never()).save(any());
+    }
+
+    @Test
+    void testRegistrar_marcarLeidoSoloAjustaLosNoLeidosDeLaMismaFila() {
+        MensajeSunat mensaje = mensaje("2025-06-03", "11", "MUY IMPORTANTE", 0, 0);
+        Aporte antes = Aporte.de(mensaje);
+        mensaje.setNuLeido(1);
+        when(resumenDiarioRepositorio.incrementar(RUC, DIA, "11", "MUY IMPORTANTE", 0, -1, 0, 0)).thenReturn(1);
+
+        servicio.registrar(antes, mensaje);
+
+        verify(resumenDiarioRepositorio, times(1)).incrementar(anyString(), any(), anyString(), anyString(), anyLong(), anyLong(), anyLong(), anyLong());
+        verify(resumenDiarioRepositorio, never()).save(any());
+    }
+
+    @Test
+    void testRegistrar_reclasificarMueveElMensajeDeFila() {
+        MensajeSunat mensaje = mensaje("03/06/2025", "00", null, 1, 0);
+        Aporte antes = Aporte.de(mensaje);
+        mensaje.setVcCodigoEtiqueta("14");
+        mensaje.setClasificacion("MUY IMPORTANTE");
+        when(resumenDiarioRepositorio.incrementar(anyString(), any(), anyString(), anyString(), anyLong(), anyLong(), anyLong(), anyLong()))
+                .thenReturn(1);
+
+        servicio.registrar(antes, mensaje);
+
+        verify(resumenDiarioRepositorio).incrementar(RUC, DIA, "00", "", -1, 0, 0, 0);
+        verify(resumenDiarioRepositorio).acumular(RUC, DIA, "14", "MUY IMPORTANTE", 1, 0, 0, 0);
+    }
+
+    @Test
+    void testRegistrar_sinCambiosNoEscribe() {
+        MensajeSunat mensaje = mensaje("03/06/2025", "10", "INFORMATIVO", 1, 0);
+
+        servicio.registrar(Aporte.de(mensaje), mensaje);
+
+        verifyNoInteractions(resumenDiarioRepositorio);
+    }
+
+    @Test
+    void testCambiarEtiqueta_agrupaLosMensajesDeUnaMismaFila() {
+        Aporte noLeido = Aporte.de(mensaje("03/06/2025", "00", "", 0, 0));
+        Aporte leidoUrgente = Aporte.de(mensaje("2025-06-03", "00", "", 1, 1));
+        Aporte yaEnDestino = Aporte.de(mensaje("03/06/2025", "10", "", 0, 0));
+        when(resumenDiarioRepositorio.incrementar(RUC, DIA, "00", "", -2, -1, -1, 0)).thenReturn(1);
+
+        servicio.cambiarEtiqueta(List.of(noLeido, leidoUrgente, yaEnDestino), "10");
+
+        verify(resumenDiarioRepositorio).incrementar(RUC, DIA, "00", "", -2, -1, -1, 0);
+        verify(resumenDiarioRepositorio).acumular(RUC, DIA, "10", "", 2, 1, 1, 0);
+        verifyNoMoreInteractions(resumenDiarioRepositorio);
+        verify(eventos).publishEvent(new BuzonModificadoEvento(RUC));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testReconstruir_unificaFormatosDeFechaYGuardaSinFechaAparte() {
+        when(resumenDiarioRepositorio.agruparMensajes()).thenReturn(List.of(
+                conteo("03/06/2025", "IMPORTANTE", 2, 1),
+                conteo("2025-06-03", "IMPORTANTE", 3, 0),
+                conteo(null, null, 4, 4)));
+
+        int filas = servicio.reconstruir();
+
+        assertThat(filas).isEqualTo(2);
+        verify(resumenDiarioRepositorio).deleteAllInBatch();
+        verify(eventos).publishEvent(BuzonModificadoEvento.todos());
+        ArgumentCaptor<Iterable<ResumenDiarioMensajes>> guardadas = ArgumentCaptor.forClass(Iterable.class);
+        verify(resumenDiarioRepositorio).saveAll(guardadas.capture());
+        List<ResumenDiarioMensajes> lista = new ArrayList<>();
+        guardadas.getValue().forEach(lista::add);
+        assertThat(lista).extracting(ResumenDiarioMensajes::getDtDia, ResumenDiarioMensajes::getVcClasificacion,
+                        ResumenDiarioMensajes::getNuCantidad, ResumenDiarioMensajes::getNuNoLeidos)
+                .containsExactly(
+                        tuple(DIA, "IMPORTANTE", 5L, 1L),
+                        tuple(ResumenDiarioMensajes.DIA_SIN_FECHA, "", 4L, 4L));
+    }
+
+    private static MensajeSunat mensaje(String fechaEnvio, String etiqueta, String clasificacion, int leido, int urgente) {
+        return MensajeSunat.builder()
+                .nuCodigoMensaje(1L)
+                .vcNumeroRuc(RUC)
+                .vcFechaEnvio(fechaEnvio)
+                .vcCodigoEtiqueta(etiqueta)
+                .clasificacion(clasificacion)
+                .nuLeido(leido)
+                .nuUrgente(urgente)
+                .build();
+    }
+
+    private static ConteoMensajes conteo(String dia, String clasificacion, long cantidad, long noLeidos) {
+        return new ConteoMensajes() {
+            public String getRuc() { return RUC; }
+            public String getDia() { return dia; }
+            public String getEtiqueta() { return "13"; }
+            public String getClasificacion() { return clasificacion; }
+            public long getCantidad() { return cantidad; }
+            public long getNoLeidos() { return noLeidos; }
+            public long getUrgentes() { return 0; }
+            public long getConArchivos() { return 0; }
+        };
+    }
+}
@@ -0,0 +1,75 @@
+package upao.edu.pe.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.test.context.ActiveProfiles;
+import upao.edu.pe.dto.response.SunatApiResponse;
+import upao.edu.pe.model.MensajeSunat;
+import upao.edu.pe.repository.DetalleNotificacionRepository;
+import upao.edu.pe.repository.MensajeSunatRepositorio;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = WebEnvironment.NONE, properties = "gemini.enabled=false")
+@ActiveProfiles("test")
+class SunatNotificacionServiceIntegracionTest {
+
+    private static final long CODIGO = 990000000123L;
+
+    @Autowired
+    private SunatNotificacionService sunatNotificacionService;
+
+    @Autowired
+    private MensajeSunatRepositorio mensajeSunatRepositorio;
+
+    @Autowired
+    private DetalleNotificacionRepository detalleNotificacionRepository;
+
+    @AfterEach
+    void limpiar() {
+        detalleNotificacionRepository.findByCodMensaje(String.valueOf(CODIGO))
+                .ifPresent(detalleNotificacionRepository::delete);
+        mensajeSunatRepositorio.deleteById(CODIGO);
+    }
+
+    @Test
+    void testGuardarNotificacion_conservaLosCamposDeLaLista() {
+        LocalDateTime publicado = LocalDateTime.of(2026, 10, 1, 9, 30);
+        mensajeSunatRepositorio.save(MensajeSunat.builder()
+                .nuCodigoMensaje(CODIGO)
+                .vcAsunto("Resolución de Ejecución Coactiva 0230070123456")
+                .vcFechaPublica("01/10/2026 09:30:00")
+                .dtFechaPublica(publicado)
+                .nuCantidadArchivos(2)
+                .nuTipoMensaje(3)
+                .vcUsuarioEmisor("COBRANZA COACTIVA")
+                .vcNumeroRuc("20999999993")
+                .vcCodigoEtiqueta("00")
+                .nuLeido(1)
+                .nuArchivado(0)
+                .build());
+
+        SunatApiResponse detalle = new SunatApiResponse();
+        detalle.setCodMensaje(String.valueOf(CODIGO));
+        detalle.setMsjMensaje("<p>Se notifica la resolución coactiva</p>");
+        detalle.setCodUsuario("20999999993");
+        detalle.setFecEnvio("01/10/2026 09:30:00");
+
+        sunatNotificacionService.guardarNotificacion(String.valueOf(CODIGO), detalle);
+
+        MensajeSunat guardado = mensajeSunatRepositorio.findById(CODIGO).orElseThrow();
+        assertThat(guardado.getVcAsunto()).isEqualTo("Resolución de Ejecución Coactiva 0230070123456");
+        assertThat(guardado.getVcFechaPublica()).isEqualTo("01/10/2026 09:30:00");
+        assertThat(guardado.getDtFechaPublica()).isEqualTo(publicado);
+        assertThat(guardado.getNuCantidadArchivos()).isEqualTo(2);
+        assertThat(guardado.getNuTipoMensaje()).isEqualTo(3);
+        assertThat(guardado.getVcUsuarioEmisor()).isEqualTo("COBRANZA COACTIVA");
+        assertThat(guardado.getNuLeido()).isEqualTo(1);
+        assertThat(guardado.getClasificacion()).isNotNull();
+    }
+}
@@ -7,7 +7,8 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
 import upao.edu.pe.dto.response.SunatApiResponse;
 import upao.edu.pe.model.DetalleNotificacion;
 import upao.edu.pe.repository.AttachmentDetalleRepository;
@@ -32,9 +33,11 @@ class SunatNotificacionServiceTest {
     @Mock
     private AttachmentDetalleRepository attachmentDetalleRepository;
     @Mock
-    private RestTemplate restTemplate;
+    private SunatCliente sunatCliente;
     @Mock
     private ObjectMapper objectMapper;
+    @Spy
+    private MotorReglasClasificacion motorReglasClasificacion = new MotorReglasClasificacion();
 
     @Spy
     @InjectMocks
@@ -80,9 +83,9 @@ class SunatNotificacionServiceTest {
         // Arrange
         String codigoMensaje = "codigo";
         String cookie = "cookie";
-        // Simular que restTemplate lanza excepción
-        when(restTemplate.exchange(anyString(), any(), any(), eq(SunatApiResponse.class)))
-                .thenThrow(new RuntimeException("API Error"));
+        // Simular que la API responde con error
+        when(sunatCliente.obtenerDetalle(anyString(), anyString()))
+                .thenReturn(Mono.error(new RuntimeException("API Error")));
         // Act & Assert
         assertThatThrownBy(() -> service.consumirApiSunat(codigoMensaje, cookie))
                 .isInstanceOf(RuntimeException.class)
@@ -157,10 +160,8 @@ class SunatNotificacionServiceTest {
         String codigo = "codigo";
         String cookie = "cookie";
         // Simular respuesta no OK
-        org.springframework.http.ResponseEntity<SunatApiResponse> response =
-                new org.springframework.http.ResponseEntity<>(null, org.springframework.http.HttpStatus.BAD_REQUEST);
-        when(restTemplate.exchange(anyString(), any(), any(), eq(SunatApiResponse.class)))
-                .thenReturn(response);
+        when(sunatCliente.obtenerDetalle(anyString(), anyString()))
+                .thenReturn(Mono.error(WebClientResponseException.create(400, "Bad Request", null, null, null)));
         assertThatThrownBy(() -> service.consumirApiSunat(codigo, cookie))
                 .isInstanceOf(RuntimeException.class)
                 .hasMessageContaining("Error al consultar API de SUNAT");
@@ -170,10 +171,8 @@ class SunatNotificacionServiceTest {
     void testConsumirApiSunat_respuestaNula() {
         String codigo = "codigo";
         String cookie = "cookie";
-        org.springframework.http.ResponseEntity<SunatApiResponse> response =
-                new org.springframework.http.ResponseEntity<>(null, org.springframework.http.HttpStatus.OK);
-        when(restTemplate.exchange(anyString(), any(), any(), eq(SunatApiResponse.class)))
-                .thenReturn(response);
+        when(sunatCliente.obtenerDetalle(anyString(), anyString()))
+                .thenReturn(Mono.empty());
         assertThatThrownBy(() -> service.consumirApiSunat(codigo, cookie))
                 .isInstanceOf(RuntimeException.class)
                 .hasMessageContaining("Error al consultar API de SUNAT");
@@ -293,7 +292,7 @@ class SunatNotificacionServiceTest {
     void testConsumirApiSunat_lanzaExcepcionGeneral() {
         String codigo = "codigo";
         String cookie = "cookie";
-        when(restTemplate.exchange(anyString(), any(), any(), eq(SunatApiResponse.class)))
+        when(sunatCliente.obtenerDetalle(anyString(), anyString()))
                 .thenThrow(new NullPointerException("Null error"));
         assertThatThrownBy(() -> service.consumirApiSunat(codigo, cookie))
                 .isInstanceOf(RuntimeException.class)
@@ -364,10 +363,8 @@ class SunatNotificacionServiceTest {
         String codigo = "codigo";
         String cookie = "cookie";
         SunatApiResponse apiResponse = new SunatApiResponse();
-        org.springframework.http.ResponseEntity<SunatApiResponse> response =
-                new org.springframework.http.ResponseEntity<>(apiResponse, org.springframework.http.HttpStatus.OK);
-        when(restTemplate.exchange(anyString(), any(), any(), eq(SunatApiResponse.class)))
-                .thenReturn(response);
+        when(sunatCliente.obtenerDetalle(anyString(), anyString()))
+                .thenReturn(Mono.just(apiResponse));
         SunatApiResponse result = service.consumirApiSunat(codigo, cookie);
         assertThat(result).isNotNull();
     }
@@ -1,16 +1,27 @@
 package upao.edu.pe.service;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
 import upao.edu.pe.dto.MensajeSunatDTO;
 import upao.edu.pe.mapper.MensajeSunatMapper;
 import upao.edu.pe.model.MensajeSunat;
 import upao.edu.pe.repository.MensajeSunatRepositorio;
+import upao.edu.pe.repository.SincronizacionRucRepositorio;
+import upao.edu.pe.dto.response.ResultadoSincronizacionDTO;
+import upao.edu.pe.model.SincronizacionRuc;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
@@ -23,9 +34,15 @@ class SunatServicioTest {
     @Mock
     private MensajeSunatMapper mensajeSunatMapper;
     @Mock
-    private RestTemplate restTemplate;
+    private SunatCliente sunatCliente;
     @Mock
-    private SunatNotificacionService sunatDetalleService;
+    private DetallePendienteServicio detallePendienteServicio;
+    @Mock
+    private SincronizacionRucRepositorio sincronizacionRucRepositorio;
+    @Mock
+    private MensajeSunatServicio mensajeSunatServicio;
+    @Spy
+    private CodigosVistosPorRuc codigosVistos = new CodigosVistosPorRuc();
 
     @InjectMocks
     private SunatServicio sunatServicio;
@@ -59,24 +76,21 @@ class SunatServicioTest {
         when(dto2.getNuCodigoMensaje()).thenReturn(2L);
         List<MensajeSunatDTO> dtos = List.of(dto1, dto2);
 
-        when(mensajeSunatRepositorio.existsByNuCodigoMensaje(1L)).thenReturn(false);
-        when(mensajeSunatRepositorio.existsByNuCodigoMensaje(2L)).thenReturn(true);
+        when(mensajeSunatRepositorio.encontrarCodigosExistentes(List.of(1L, 2L))).thenReturn(Set.of(2L));
         MensajeSunat entidad1 = new MensajeSunat();
         when(mensajeSunatMapper.mapearAEntidad(dto1)).thenReturn(entidad1);
 
-        // Inyectar el mock de sunatDetalleService manualmente
         try {
-            var field = SunatServicio.class.getDeclaredField("sunatDetalleService");
-            field.setAccessible(true);
-            field.set(sunatServicio, sunatDetalleService);
-            var method = SunatServicio.class.getDeclaredMethod("F_PROCESAR_Y_FILTRAR_MENSAJES", List.class, String.class, String.class);
+            var method = SunatServicio.class.getDeclaredMethod("F_PROCESAR_Y_FILTRAR_MENSAJES", List.class, String.class);
             method.setAccessible(true);
-            List<MensajeSunat> result = (List<MensajeSunat>) method.invoke(sunatServicio, dtos, "12345678901", "cookie");
+            List<MensajeSunat> result = (List<MensajeSunat>) method.invoke(sunatServicio, dtos, "12345678901");
             assertThat(result).containsExactly(entidad1);
-            verify(mensajeSunatRepositorio).existsByNuCodigoMensaje(1L);
-            verify(mensajeSunatRepositorio).existsByNuCodigoMensaje(2L);
+            // Una sola consulta para toda la página
+            verify(mensajeSunatRepositorio).encontrarCodigosExistentes(List.of(1L, 2L));
+            verify(mensajeSunatRepositorio, never()).existsByNuCodigoMensaje(anyLong());
             verify(mensajeSunatMapper).mapearAEntidad(dto1);
-            verify(sunatDetalleService, times(2)).procesarYGuardarNotificacion(anyString(), anyString());
+            // El detalle ya no se descarga dentro del filtrado
+            verifyNoInteractions(detallePendienteServicio);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -92,36 +106,27 @@ class SunatServicioTest {
         MensajeSunatDTO dto = mock(MensajeSunatDTO.class);
         when(dto.getNuCodigoMensaje()).thenReturn(1L);
         when(respuestaDTO.getRows()).thenReturn(List.of(dto));
-        org.springframework.http.ResponseEntity<upao.edu.pe.dto.response.RespuestaSunatDTO> responseEntity =
-                org.springframework.http.ResponseEntity.ok(respuestaDTO);
-        when(restTemplate.exchange(anyString(), any(), any(), eq(upao.edu.pe.dto.response.RespuestaSunatDTO.class)))
-                .thenReturn(responseEntity)
-                .thenThrow(new RuntimeException("API Error")); // Simula error en la segunda llamada
-        when(mensajeSunatRepositorio.existsByNuCodigoMensaje(1L)).thenReturn(false);
-        when(mensajeSunatMapper.mapearAEntidad(dto)).thenReturn(new MensajeSunat());
-        // Inyectar el mock de sunatDetalleService manualmente
-        try {
-            var field = SunatServicio.class.getDeclaredField("sunatDetalleService");
-            field.setAccessible(true);
-            field.set(sunatServicio, sunatDetalleService);
-        } catch (Exception e) { throw new RuntimeException(e); }
+        // Las páginas se piden en paralelo: la respuesta depende de la página, no del orden de llamada
+        when(sunatCliente.listarPagina(anyString(), eq(1))).thenReturn(Mono.just(respuestaDTO));
+        when(sunatCliente.listarPagina(anyString(), intThat(pagina -> pagina > 1)))
+                .thenReturn(Mono.error(new RuntimeException("API Error"))); // Simula error desde la segunda página
+        when(mensajeSunatRepositorio.encontrarCodigosExistentes(List.of(1L))).thenReturn(Set.of());
+        when(mensajeSunatMapper.mapearAEntidad(dto)).thenReturn(MensajeSunat.builder().nuCodigoMensaje(1L).build());
         // Ejecutar método (solo 2 iteraciones para testear éxito y error)
         for (int i = 1; i <= 2; i++) {
             sunatServicio.SP_CONSULTAR_Y_GUARDAR_MENSAJES(cookie);
         }
-        verify(restTemplate, atLeastOnce()).exchange(anyString(), any(), any(), eq(upao.edu.pe.dto.response.RespuestaSunatDTO.class));
-        verify(mensajeSunatRepositorio, atLeastOnce()).saveAll(anyList());
+        verify(sunatCliente, atLeastOnce()).listarPagina(anyString(), anyInt());
+        verify(mensajeSunatServicio, atLeastOnce()).guardarNuevos(anyList());
+        // Los mensajes nuevos se encolan para descargar su detalle en segundo plano
+        verify(detallePendienteServicio).encolar("12345678901", cookie, List.of(1L));
     }
 
     @Test
     void testF_PROCESAR_Y_FILTRAR_MENSAJES_listaVacia() throws Exception {
-        // Inyectar el mock de sunatDetalleService manualmente
-        var field = SunatServicio.class.getDeclaredField("sunatDetalleService");
-        field.setAccessible(true);
-        field.set(sunatServicio, sunatDetalleService);
-        var method = SunatServicio.class.getDeclaredMethod("F_PROCESAR_Y_FILTRAR_MENSAJES", List.class, String.class, String.class);
+        var method = SunatServicio.class.getDeclaredMethod("F_PROCESAR_Y_FILTRAR_MENSAJES", List.class, String.class);
         method.setAccessible(true);
-        List<MensajeSunat> result = (List<MensajeSunat>) method.invoke(sunatServicio, List.of(), "12345678901", "cookie");
+        List<MensajeSunat> result = (List<MensajeSunat>) method.invoke(sunatServicio, List.of(), "12345678901");
         assertThat(result).isEmpty();
     }
 
@@ -129,7 +134,7 @@ class SunatServicioTest {
     void testSP_CONSULTAR_Y_GUARDAR_MENSAJES_usuarioNull() {
         // Si el usuario es null, solo debe loguear y no llamar a la API
         sunatServicio.SP_CONSULTAR_Y_GUARDAR_MENSAJES("sinformato");
-        verifyNoInteractions(restTemplate);
+        verifyNoInteractions(sunatCliente);
     }
 
     @Test
@@ -138,13 +143,11 @@ class SunatServicioTest {
         String cookie = "12345678901ABC=123;";
         upao.edu.pe.dto.response.RespuestaSunatDTO respuestaDTO = mock(upao.edu.pe.dto.response.RespuestaSunatDTO.class);
         when(respuestaDTO.getRows()).thenReturn(null);
-        org.springframework.http.ResponseEntity<upao.edu.pe.dto.response.RespuestaSunatDTO> responseEntity =
-                org.springframework.http.ResponseEntity.ok(respuestaDTO);
-        when(restTemplate.exchange(anyString(), any(), any(), eq(upao.edu.pe.dto.response.RespuestaSunatDTO.class)))
-                .thenReturn(responseEntity);
+        when(sunatCliente.listarPagina(anyString(), anyInt()))
+                .thenReturn(Mono.just(respuestaDTO));
         sunatServicio.SP_CONSULTAR_Y_GUARDAR_MENSAJES(cookie);
         // No debe intentar guardar mensajes
-        verify(mensajeSunatRepositorio, never()).saveAll(anyList());
+        verify(mensajeSunatServicio, never()).guardarNuevos(anyList());
     }
 
     @Test
@@ -153,13 +156,11 @@ class SunatServicioTest {
         String cookie = "12345678901ABC=123;";
         upao.edu.pe.dto.response.RespuestaSunatDTO respuestaDTO = mock(upao.edu.pe.dto.response.RespuestaSunatDTO.class);
         when(respuestaDTO.getRows()).thenReturn(java.util.Collections.emptyList());
-        org.springframework.http.ResponseEntity<upao.edu.pe.dto.response.RespuestaSunatDTO> responseEntity =
-                org.springframework.http.ResponseEntity.ok(respuestaDTO);
-        when(restTemplate.exchange(anyString(), any(), any(), eq(upao.edu.pe.dto.response.RespuestaSunatDTO.class)))
-                .thenReturn(responseEntity);
+        when(sunatCliente.listarPagina(anyString(), anyInt()))
+                .thenReturn(Mono.just(respuestaDTO));
         sunatServicio.SP_CONSULTAR_Y_GUARDAR_MENSAJES(cookie);
         // No debe intentar guardar mensajes
-        verify(mensajeSunatRepositorio, never()).saveAll(anyList());
+        verify(mensajeSunatServicio, never()).guardarNuevos(anyList());
     }
 
     @Test
@@ -168,12 +169,98 @@ class SunatServicioTest {
         String cookie = "12345678901ABC=123;";
         upao.edu.pe.dto.response.RespuestaSunatDTO respuestaDTO = mock(upao.edu.pe.dto.response.RespuestaSunatDTO.class);
         when(respuestaDTO.getRows()).thenReturn(java.util.Collections.emptyList());
-        org.springframework.http.ResponseEntity<upao.edu.pe.dto.response.RespuestaSunatDTO> responseEntity =
-                org.springframework.http.ResponseEntity.ok(respuestaDTO);
-        when(restTemplate.exchange(anyString(), any(), any(), eq(upao.edu.pe.dto.response.RespuestaSunatDTO.class)))
-                .thenReturn(responseEntity);
+        when(sunatCliente.listarPagina(anyString(), anyInt()))
+                .thenReturn(Mono.just(respuestaDTO));
         sunatServicio.SP_CONSULTAR_Y_GUARDAR_MENSAJES(cookie);
         // No debe intentar guardar mensajes
-        verify(mensajeSunatRepositorio, never()).saveAll(anyList());
+        verify(mensajeSunatServicio, never()).guardarNuevos(anyList());
+    }
+
+    @Test
+    void testSP_CONSULTAR_Y_GUARDAR_MENSAJES_detieneAlEncontrarPaginaVacia() {
+        // Una página vacía indica fin del listado: no se deben pedir las 30 páginas
+        String cookie = "12345678901ABC=123;";
+        upao.edu.pe.dto.response.RespuestaSunatDTO respuestaDTO = mock(upao.edu.pe.dto.response.RespuestaSunatDTO.class);
+        when(respuestaDTO.getRows()).thenReturn(java.util.Collections.emptyList());
+        when(sunatCliente.listarPagina(anyString(), anyInt()))
+                .thenReturn(Mono.just(respuestaDTO));
+        sunatServicio.SP_CONSULTAR_Y_GUARDAR_MENSAJES(cookie);
+        // Como máximo se despacha la ventana inicial (concurrencia + capacidad de la cola)
+        verify(sunatCliente, atMost(12)).listarPagina(anyString(), anyInt());
+        verify(mensajeSunatServicio, never()).guardarNuevos(anyList());
+    }
+
+    @Test
+    void testSP_CONSULTAR_Y_GUARDAR_MENSAJES_laConcurrenciaSeCompartePorUsuarioSol() {
+        ReflectionTestUtils.setField(sunatServicio, "concurrenciaPorCookie", 2);
+        String cookie = "12345678901ABC=123;";
+        upao.edu.pe.dto.response.RespuestaSunatDTO respuestaDTO = mock(upao.edu.pe.dto.response.RespuestaSunatDTO.class);
+        when(respuestaDTO.getRows()).thenReturn(java.util.Collections.emptyList());
+        AtomicInteger enVuelo = new AtomicInteger();
+        AtomicInteger maximo = new AtomicInteger();
+        when(sunatCliente.listarPagina(anyString(), anyInt())).thenAnswer(invocacion -> Mono.defer(() -> {
+            maximo.accumulateAndGet(enVuelo.incrementAndGet(), Math::max);
+            // Se descuenta antes de que el permiso se devuelva, al responder o al cancelarse la página
+            AtomicBoolean terminada = new AtomicBoolean();
+            Runnable terminar = () -> {
+                if (terminada.compareAndSet(false, true)) {
+                    enVuelo.decrementAndGet();
+                }
+            };
+            return Mono.just(respuestaDTO).delayElement(Duration.ofMillis(100))
+                    .doOnNext(respuesta -> terminar.run())
+                    .doOnCancel(terminar);
+        }));
+
+        CompletableFuture.allOf(
+                CompletableFuture.runAsync(() -> sunatServicio.SP_CONSULTAR_Y_GUARDAR_MENSAJES(cookie)),
+                CompletableFuture.runAsync(() -> sunatServicio.SP_CONSULTAR_Y_GUARDAR_MENSAJES(cookie))).join();
+
+        // Dos sincronizaciones del mismo usuario no suman 4 páginas en vuelo
+        assertThat(maximo.get()).isLessThanOrEqualTo(2);
+        verify(sunatCliente, atLeast(2)).listarPagina(anyString(), anyInt());
+    }
+
+    @Test
+    void testFProcesarYFiltrarMensajes_codigosVistosNoConsultanBaseDeDatos() throws Exception {
+        MensajeSunatDTO dto1 = mock(MensajeSunatDTO.class);
+        when(dto1.getNuCodigoMensaje()).thenReturn(1L);
+        codigosVistos.registrar("12345678901", List.of(1L));
+
+        var method = SunatServicio.class.getDeclaredMethod("F_PROCESAR_Y_FILTRAR_MENSAJES", List.class, String.class);
+        method.setAccessible(true);
+        List<MensajeSunat> result = (List<MensajeSunat>) method.invoke(sunatServicio, List.of(dto1), "12345678901");
+
+        assertThat(result).isEmpty();
+        verifyNoInteractions(mensajeSunatRepositorio, mensajeSunatMapper);
+    }
+
+    @Test
+    void testSP_CONSULTAR_Y_GUARDAR_MENSAJES_seDetieneEnLaMarcaDeAgua() throws Exception {
+        String cookie = "12345678901ABC=123;";
+        SincronizacionRuc marca = SincronizacionRuc.builder().vcNumeroRuc("12345678901").nuUltimoCodigoMensaje(5L).build();
+        when(sincronizacionRucRepositorio.findById("12345678901")).thenReturn(Optional.of(marca));
+
+        MensajeSunatDTO nuevo = mock(MensajeSunatDTO.class);
+        MensajeSunatDTO ingerido = mock(MensajeSunatDTO.class);
+        when(nuevo.getNuCodigoMensaje()).thenReturn(6L);
+        when(ingerido.getNuCodigoMensaje()).thenReturn(5L);
+        upao.edu.pe.dto.response.RespuestaSunatDTO respuestaDTO = mock(upao.edu.pe.dto.response.RespuestaSunatDTO.class);
+        when(respuestaDTO.getRows()).thenReturn(List.of(nuevo, ingerido));
+        when(sunatCliente.listarPagina(anyString(), eq(1))).thenReturn(Mono.just(respuestaDTO));
+        when(sunatCliente.listarPagina(anyString(), intThat(pagina -> pagina > 1)))
+                .thenReturn(Mono.just(mock(upao.edu.pe.dto.response.RespuestaSunatDTO.class)));
+        when(mensajeSunatRepositorio.encontrarCodigosExistentes(List.of(6L, 5L))).thenReturn(Set.of(5L));
+        when(mensajeSunatMapper.mapearAEntidad(nuevo)).thenReturn(MensajeSunat.builder().nuCodigoMensaje(6L).build());
+
+
+        ResultadoSincronizacionDTO resultado = sunatServicio.SP_CONSULTAR_Y_GUARDAR_MENSAJES(cookie);
+
+        assertThat(resultado.getMensajesNuevos()).isEqualTo(1);
+        assertThat(resultado.getMensajesOmitidos()).isEqualTo(1);
+        assertThat(resultado.getUltimoCodigoMensaje()).isEqualTo(6L);
+        assertThat(resultado.getPaginasConsultadas()).isGreaterThanOrEqualTo(1);
+        verify(sincronizacionRucRepositorio).save(marca);
+        assertThat(marca.getNuUltimoCodigoMensaje()).isEqualTo(6L);
     }
 }
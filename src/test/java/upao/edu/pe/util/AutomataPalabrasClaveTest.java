@@ -0,0 +1,45 @@
+package upao.edu.pe.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AutomataPalabrasClaveTest {
+
+    @Test
+    void testBuscar_encuentraPatronesSolapadosSinTildesNiMayusculas() {
+        AutomataPalabrasClave automata = AutomataPalabrasClave.compilar(List.of("resolucion", "resolucion coactiva", "coactiva", "iva"));
+        List<Integer> encontrados = new ArrayList<>();
+
+        automata.buscar("RESOLUCIÓN Coactiva N° 123", encontrados::add);
+
+        assertThat(encontrados).containsExactlyInAnyOrder(0, 1, 2, 3);
+    }
+
+    @Test
+    void testBuscarMascara_marcaUnBitPorPatron() {
+        AutomataPalabrasClave automata = AutomataPalabrasClave.compilar(List.of("multa", "cobranza", "embargo"));
+
+        assertThat(automata.buscarMascara("MULTA y Embargo")).isEqualTo(0b101L);
+    }
+
+    @Test
+    void testBuscar_sinCoincidencias() {
+        AutomataPalabrasClave automata = AutomataPalabrasClave.compilar(List.of("embargo"));
+        List<Integer> encontrados = new ArrayList<>();
+
+        automata.buscar("Constancia de presentación", encontrados::add);
+
+        assertThat(encontrados).isEmpty();
+    }
+
+    @Test
+    void testCompilar_rechazaPatronVacio() {
+        assertThatThrownBy(() -> AutomataPalabrasClave.compilar(List.of("")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,45 @@
+package upao.edu.pe.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CacheLruTtlTest {
+
+    @Test
+    void testGuardar_desalojaElMenosUsado() {
+        CacheLruTtl<String, Integer> cache = new CacheLruTtl<>(2, 0);
+        cache.guardar("a", 1);
+        cache.guardar("b", 2);
+        cache.obtener("a");
+        cache.guardar("c", 3);
+
+        assertThat(cache.obtener("a")).isEqualTo(1);
+        assertThat(cache.obtener("b")).isNull();
+        assertThat(cache.tamanio()).isEqualTo(2);
+    }
+
+    @Test
+    void testObtener_expiraPorTtl() {
+        Clock reloj = mock(Clock.class);
+        when(reloj.millis()).thenReturn(1_000L, 1_500L, 2_500L);
+        CacheLruTtl<String, Integer> cache = new CacheLruTtl<>(10, 1_000, reloj);
+        cache.guardar("a", 1);
+
+        assertThat(cache.obtener("a")).isEqualTo(1);
+        assertThat(cache.obtener("a")).isNull();
+    }
+
+    @Test
+    void testObtenerOCrear_soloCreaSiNoHayValorVigente() {
+        CacheLruTtl<String, Integer> cache = new CacheLruTtl<>(10, 0);
+
+        assertThat(cache.obtenerOCrear("a", clave -> 1)).isEqualTo(1);
+        assertThat(cache.obtenerOCrear("a", clave -> 2)).isEqualTo(1);
+        assertThat(cache.valoresVigentes()).containsExactly(1);
+    }
+}